@@ -0,0 +1,337 @@
+package com.library.api;
+
+import com.library.db.CircuitBreaker;
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.services.BookQuery;
+import com.library.services.BookService;
+import com.library.services.SearchOptions;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless JSON HTTP API over the book, user and transaction services
+ * for kiosks and the OPAC
+ *
+ * GET  /api/health                  UP, or DEGRADED while the database circuit breaker is open
+ * GET  /api/books?q=TERM&amp;limit=N      search books; add fuzziness=auto|1|2 to tolerate typos
+ *                                      or branches=all to search every branch's catalog
+ * GET  /api/books?limit=N              list books by title, with the list columns only
+ * GET  /api/books/{id}
+ * GET  /api/users/{id}
+ * GET  /api/users?username=NAME
+ * GET  /api/users/{id}/loans
+ * POST /api/loans                      userId, bookId, optional dueDate (yyyy-MM-dd)
+ * POST /api/loans/{id}/return
+ *
+ * POST bodies may be JSON objects or form-encoded. When api.key is set every
+ * request must carry it in the X-API-Key header. Without a key the loan
+ * endpoints answer 403, so an open server can only be read from.
+ */
+public class ApiServer {
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int DEFAULT_LIMIT = 100;
+    // Handlers set this exchange attribute to answer with something other than 200
+    private static final String STATUS_ATTRIBUTE = "api.status";
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String apiKey;
+    
+    // One instance of each service shared by every request thread, so they
+    // share the connection pool and any caches the services hold
+    private final BookService bookService = new BookService();
+    private final UserService userService = new UserService();
+    private final TransactionService transactionService = new TransactionService();
+    
+    public ApiServer(int port, int threads) throws IOException {
+        this.apiKey = ConfigManager.getProperty("api.key", "");
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor(threads);
+        
+        server.setExecutor(executor);
+        server.createContext("/api/health", exchange -> dispatch(exchange, this::handleHealth));
+        server.createContext("/api/books", exchange -> dispatch(exchange, this::handleBooks));
+        server.createContext("/api/users", exchange -> dispatch(exchange, this::handleUsers));
+        if (apiKey.isEmpty()) {
+            System.err.println("api.key is not set: /api/loans is disabled and the API is read-only");
+            server.createContext("/api/loans", exchange -> dispatch(exchange, this::refuseWrites));
+        } else {
+            server.createContext("/api/loans", exchange -> dispatch(exchange, this::handleLoans));
+        }
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Virtual thread per request when the runtime has them (Java 21+), otherwise
+     * a fixed pool; the connection pool bounds database concurrency either way
+     */
+    static ExecutorService newRequestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "api-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    private String handleHealth(HttpExchange exchange, String[] path, Map<String, String> params) {
+        requireMethod(exchange, "GET");
+        CircuitBreaker breaker = DatabaseConnection.forDesk().getCircuitBreaker();
+        return new Json.ObjectBuilder()
+                .field("status", breaker.isOpen() ? "DEGRADED" : "UP")
+                .field("database", breaker.getState())
+                .field("databaseFailures", breaker.getFailures())
+                .build();
+    }
+    
+    private String handleBooks(HttpExchange exchange, String[] path, Map<String, String> params) {
+        requireMethod(exchange, "GET");
+        if (path.length == 1) {
+            return Json.book(bookService.getBookById(parseId(path[0]))
+                    .orElseThrow(() -> new ApiException(404, "Book not found")));
+        }
+        if (path.length > 1) {
+            throw new ApiException(404, "Not found");
+        }
+        
+        String query = params.get("q");
+        // Every branch below has the database apply the limit
+        int limit = Math.max(parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)), "limit"), 0);
+        if (query == null || query.trim().isEmpty()) {
+            return Json.array(bookService.findBooks(new BookQuery().limit(limit)), Json::bookRow);
+        }
+        List<Book> books;
+        if ("all".equalsIgnoreCase(params.get("branches"))) {
+            books = bookService.searchAllBranches(query.trim(), limit);
+        } else {
+            books = bookService.searchBooks(query.trim(), new SearchOptions(parseFuzziness(params.get("fuzziness")), limit));
+        }
+        return Json.array(books, Json::book);
+    }
+    
+    private String handleUsers(HttpExchange exchange, String[] path, Map<String, String> params) {
+        requireMethod(exchange, "GET");
+        if (path.length == 0) {
+            String username = params.get("username");
+            if (username == null) {
+                throw new ApiException(400, "username is required");
+            }
+            return Json.user(userService.getUserByUsername(username)
+                    .orElseThrow(() -> new ApiException(404, "User not found")));
+        }
+        
+        int userId = parseId(path[0]);
+        if (path.length == 1) {
+            return Json.user(userService.getUserById(userId)
+                    .orElseThrow(() -> new ApiException(404, "User not found")));
+        }
+        if (path.length == 2 && "loans".equals(path[1])) {
+            return Json.array(transactionService.getTransactionsByUserId(userId), Json::transaction);
+        }
+        throw new ApiException(404, "Not found");
+    }
+    
+    private String handleLoans(HttpExchange exchange, String[] path, Map<String, String> params) {
+        requireMethod(exchange, "POST");
+        
+        if (path.length == 0) {
+            int userId = parseInt(params.get("userId"), "userId");
+            int bookId = parseInt(params.get("bookId"), "bookId");
+            LocalDate dueDate = LocalDate.now().plusDays(ConfigManager.getMaxIssueDays());
+            if (params.get("dueDate") != null) {
+                try {
+                    dueDate = LocalDate.parse(params.get("dueDate"));
+                } catch (RuntimeException e) {
+                    throw new ApiException(400, "dueDate must be yyyy-MM-dd");
+                }
+            }
+            if (!userService.getUserById(userId).isPresent()) {
+                throw new ApiException(404, "User not found");
+            }
+            if (!transactionService.issueBook(userId, bookId, dueDate)) {
+                throw new ApiException(409, "Book is not available");
+            }
+            exchange.setAttribute(STATUS_ATTRIBUTE, 201);
+            return new Json.ObjectBuilder()
+                    .field("userId", userId)
+                    .field("bookId", bookId)
+                    .field("dueDate", dueDate)
+                    .field("status", "ISSUED")
+                    .build();
+        }
+        
+        if (path.length == 2 && "return".equals(path[1])) {
+            int transactionId = parseId(path[0]);
+            if (!transactionService.returnBook(transactionId)) {
+                throw new ApiException(409, "Loan not found or already returned");
+            }
+            Optional<Transaction> transaction = transactionService.getTransactionById(transactionId);
+            return transaction.map(Json::transaction)
+                    .orElseGet(() -> new Json.ObjectBuilder().field("id", transactionId).build());
+        }
+        throw new ApiException(404, "Not found");
+    }
+    
+    private String refuseWrites(HttpExchange exchange, String[] path, Map<String, String> params) {
+        throw new ApiException(403, "Set api.key to enable the loan endpoints");
+    }
+    
+    private void dispatch(HttpExchange exchange, Route route) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            if (!apiKey.isEmpty() && !apiKey.equals(exchange.getRequestHeaders().getFirst("X-API-Key"))) {
+                throw new ApiException(401, "Missing or invalid API key");
+            }
+            String context = exchange.getHttpContext().getPath();
+            String rest = exchange.getRequestURI().getPath().substring(context.length());
+            String trimmed = rest.replaceAll("^/+|/+$", "");
+            String[] path = trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+            
+            body = route.handle(exchange, path, readParams(exchange));
+            Object override = exchange.getAttribute(STATUS_ATTRIBUTE);
+            if (override instanceof Integer) {
+                status = (Integer) override;
+            }
+        } catch (ApiException e) {
+            status = e.status;
+            body = Json.error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = Json.error(e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("API request failed: " + exchange.getRequestURI() + " - " + e);
+            status = 500;
+            body = Json.error("Internal server error");
+        }
+        
+        // Fixed-length responses keep the HTTP/1.1 connection alive for the next request
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        if (raw.length > 0) {
+            String content = new String(raw, StandardCharsets.UTF_8);
+            String type = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (type != null && type.startsWith("application/json")) {
+                params.putAll(Json.parseObject(content));
+            } else {
+                parseForm(content, params);
+            }
+        }
+        return params;
+    }
+    
+    private static void parseForm(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+    
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equalsIgnoreCase(exchange.getRequestMethod())) {
+            throw new ApiException(405, "Use " + method);
+        }
+    }
+    
+    private static int parseFuzziness(String value) {
+        if (value == null) {
+            return 0;
+        }
+        if ("auto".equalsIgnoreCase(value.trim())) {
+            return SearchOptions.AUTO;
+        }
+        int fuzziness = parseInt(value, "fuzziness");
+        if (fuzziness < 0 || fuzziness > 2) {
+            throw new ApiException(400, "fuzziness must be auto, 0, 1 or 2");
+        }
+        return fuzziness;
+    }
+    
+    private static int parseId(String value) {
+        return parseInt(value, "id");
+    }
+    
+    private static int parseInt(String value, String name) {
+        if (value == null) {
+            throw new ApiException(400, name + " is required");
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Route {
+        String handle(HttpExchange exchange, String[] path, Map<String, String> params);
+    }
+    
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int status;
+        
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.library.api;
+
+import com.library.entities.Book;
+import com.library.entities.BookListRow;
+import com.library.entities.Transaction;
+import com.library.entities.User;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Minimal JSON encoding for API responses and decoding of flat request bodies
+ */
+public final class Json {
+    
+    private Json() {
+    }
+    
+    public static String book(Book book) {
+        return new ObjectBuilder()
+                .field("id", book.getId())
+                .field("title", book.getTitle())
+                .field("author", book.getAuthor())
+                .field("isbn", book.getIsbn())
+                .field("category", book.getCategory())
+                .field("publisher", book.getPublisher())
+                .field("publicationYear", book.getPublicationYear())
+                .field("availableCopies", book.getAvailableCopies())
+                .field("totalCopies", book.getTotalCopies())
+                .field("description", book.getDescription())
+                .field("branchId", book.getBranchId() > 0 ? book.getBranchId() : null)
+                .build();
+    }
+    
+    /**
+     * Book list row, with the Book fields it carries under the same names
+     */
+    public static String bookRow(BookListRow row) {
+        return new ObjectBuilder()
+                .field("id", row.getId())
+                .field("title", row.getTitle())
+                .field("author", row.getAuthor())
+                .field("category", row.getCategory())
+                .field("availableCopies", row.getAvailableCopies())
+                .field("totalCopies", row.getTotalCopies())
+                .build();
+    }
+    
+    /**
+     * User without the password
+     */
+    public static String user(User user) {
+        return new ObjectBuilder()
+                .field("id", user.getId())
+                .field("username", user.getUsername())
+                .field("role", user.getRole() != null ? user.getRole().name() : null)
+                .field("email", user.getEmail())
+                .field("phone", user.getPhone())
+                .build();
+    }
+    
+    public static String transaction(Transaction transaction) {
+        return new ObjectBuilder()
+                .field("id", transaction.getId())
+                .field("userId", transaction.getUserId())
+                .field("bookId", transaction.getBookId())
+                .field("username", transaction.getUserName())
+                .field("bookTitle", transaction.getBookTitle())
+                .field("issueDate", transaction.getIssueDate())
+                .field("dueDate", transaction.getDueDate())
+                .field("returnDate", transaction.getReturnDate())
+                .field("status", transaction.getStatus() != null ? transaction.getStatus().name() : null)
+                .field("fineAmount", transaction.getFineAmount())
+                .build();
+    }
+    
+    public static <T> String array(List<T> items, Function<T, String> encoder) {
+        StringBuilder sb = new StringBuilder(items.size() * 128 + 2).append('[');
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(encoder.apply(items.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+    
+    public static String error(String message) {
+        return new ObjectBuilder().field("error", message).build();
+    }
+    
+    public static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+    
+    /**
+     * Parse a flat JSON object of string, number, boolean or null values
+     * Nested objects and arrays are rejected; values are returned as strings.
+     */
+    public static Map<String, String> parseObject(String json) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Parser parser = new Parser(json);
+        parser.skipWhitespace();
+        parser.expect('{');
+        parser.skipWhitespace();
+        if (parser.peek() == '}') {
+            parser.pos++;
+            return values;
+        }
+        while (true) {
+            parser.skipWhitespace();
+            String key = parser.readString();
+            parser.skipWhitespace();
+            parser.expect(':');
+            parser.skipWhitespace();
+            values.put(key, parser.readValue());
+            parser.skipWhitespace();
+            char c = parser.next();
+            if (c == '}') {
+                return values;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected ',' or '}' at offset " + (parser.pos - 1));
+            }
+        }
+    }
+    
+    /**
+     * Builds one JSON object, skipping null fields
+     */
+    public static class ObjectBuilder {
+        private final StringBuilder sb = new StringBuilder(256).append('{');
+        
+        public ObjectBuilder field(String name, Object value) {
+            if (value == null) {
+                return this;
+            }
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(quote(name)).append(':');
+            if (value instanceof Number || value instanceof Boolean) {
+                sb.append(value);
+            } else {
+                sb.append(quote(value.toString()));
+            }
+            return this;
+        }
+        
+        public ObjectBuilder raw(String name, String json) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(quote(name)).append(':').append(json);
+            return this;
+        }
+        
+        public String build() {
+            return sb.toString() + '}';
+        }
+    }
+    
+    private static class Parser {
+        private final String text;
+        private int pos;
+        
+        Parser(String text) {
+            this.text = text;
+        }
+        
+        char peek() {
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(pos);
+        }
+        
+        char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+        
+        void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at offset " + (pos - 1));
+            }
+        }
+        
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        
+        String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(escaped);
+                }
+            }
+        }
+        
+        String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalArgumentException("Nested values are not supported at offset " + pos);
+            }
+            int start = pos;
+            while (pos < text.length() && ",}".indexOf(text.charAt(pos)) < 0
+                    && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Missing value at offset " + start);
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+    }
+}
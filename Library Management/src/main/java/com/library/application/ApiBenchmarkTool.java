@@ -0,0 +1,87 @@
+package com.library.application;
+
+import com.library.db.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep-alive load benchmark for the HTTP API
+ * Each client reuses its HTTP/1.1 connection and issues requests back to back;
+ * the first WARMUP seconds are not measured.
+ *
+ * Usage: ApiBenchmarkTool URL [CLIENTS] [SECONDS] [WARMUP]
+ */
+public class ApiBenchmarkTool {
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ApiBenchmarkTool URL [CLIENTS] [SECONDS] [WARMUP]");
+            System.exit(1);
+        }
+        
+        URI uri = URI.create(args[0]);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().timeout(Duration.ofSeconds(30)).build();
+        
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Runnable> workers = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            workers.add(() -> {
+                while (true) {
+                    long start = System.nanoTime();
+                    if (start >= stopAt) {
+                        return;
+                    }
+                    boolean failed;
+                    try {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        failed = response.statusCode() >= 400;
+                    } catch (Exception e) {
+                        failed = true;
+                    }
+                    if (start >= measureFrom) {
+                        latency.record((System.nanoTime() - start) / 1000);
+                        if (failed) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        
+        System.out.printf("Benchmarking %s with %d keep-alive clients for %ds (+%ds warmup)%n", uri, clients, seconds, warmup);
+        workers.forEach(pool::execute);
+        pool.shutdown();
+        pool.awaitTermination(seconds + warmup + 60L, TimeUnit.SECONDS);
+        
+        System.out.printf("Requests: %d, errors: %d, throughput: %.1f req/s%n",
+                latency.getCount(), errors.get(), latency.getCount() / (double) seconds);
+        System.out.printf("Latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                latency.getPercentileMicros(50) / 1000.0,
+                latency.getPercentileMicros(90) / 1000.0,
+                latency.getPercentileMicros(99) / 1000.0,
+                latency.getMaxMicros() / 1000.0);
+    }
+}
@@ -0,0 +1,63 @@
+package com.library.application;
+
+import com.library.services.CatalogImportService;
+import com.library.services.CatalogImportService.ImportOptions;
+import com.library.services.CatalogImportService.ImportResult;
+import com.library.utils.CatalogRecordReader;
+import com.library.utils.CsvCatalogReader;
+import com.library.utils.MarcCatalogReader;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line entry point for bulk catalog imports
+ *
+ * Usage: CatalogImportTool [--marc] [--resume] [--batch-size N] [--threads N] FILE
+ * Rejects are written to FILE.rejects.csv and progress to FILE.checkpoint.
+ */
+public class CatalogImportTool {
+    
+    public static void main(String[] args) {
+        ImportOptions options = new ImportOptions();
+        boolean marc = false;
+        Path source = null;
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--marc":
+                    marc = true;
+                    break;
+                case "--resume":
+                    options.setResume(true);
+                    break;
+                case "--batch-size":
+                    options.setBatchSize(Integer.parseInt(args[++i]));
+                    break;
+                case "--threads":
+                    options.setValidationThreads(Integer.parseInt(args[++i]));
+                    break;
+                default:
+                    source = Paths.get(args[i]);
+                    break;
+            }
+        }
+        
+        if (source == null) {
+            System.err.println("Usage: CatalogImportTool [--marc] [--resume] [--batch-size N] [--threads N] FILE");
+            System.exit(1);
+        }
+        
+        options.setCheckpointFile(source.resolveSibling(source.getFileName() + ".checkpoint"));
+        options.setRejectsFile(source.resolveSibling(source.getFileName() + ".rejects.csv"));
+        
+        try (CatalogRecordReader reader = marc ? new MarcCatalogReader(source) : new CsvCatalogReader(source)) {
+            ImportResult result = new CatalogImportService().importCatalog(reader, options,
+                    progress -> System.out.println("Import progress: " + progress));
+            System.out.println("Import finished: " + result);
+        } catch (Exception e) {
+            System.err.println("Catalog import failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
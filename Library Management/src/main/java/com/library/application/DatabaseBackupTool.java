@@ -0,0 +1,32 @@
+package com.library.application;
+
+import com.library.db.BackupStats;
+import com.library.db.DatabaseBackup;
+
+import java.nio.file.Paths;
+
+/**
+ * Command line entry point for database export and restore
+ *
+ * Usage: DatabaseBackupTool export|restore FILE
+ */
+public class DatabaseBackupTool {
+    
+    public static void main(String[] args) {
+        if (args.length != 2 || !("export".equals(args[0]) || "restore".equals(args[0]))) {
+            System.err.println("Usage: DatabaseBackupTool export|restore FILE");
+            System.exit(1);
+        }
+        
+        try {
+            DatabaseBackup backup = new DatabaseBackup();
+            BackupStats stats = "export".equals(args[0])
+                    ? backup.export(Paths.get(args[1]))
+                    : backup.restore(Paths.get(args[1]));
+            System.out.println("Finished " + args[0] + ": " + stats);
+        } catch (Exception e) {
+            System.err.println("Database " + args[0] + " failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.library.application;
+
+import com.library.api.ApiServer;
+import com.library.db.DatabaseConfigWatcher;
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.services.ChangeEventPoller;
+import com.library.services.FuzzySearchService;
+import com.library.utils.ConfigManager;
+
+/**
+ * Headless entry point that serves the JSON HTTP API without the JavaFX client
+ *
+ * Usage: LibraryApiServer [PORT]
+ */
+public class LibraryApiServer {
+    
+    public static void main(String[] args) {
+        int port = ConfigManager.getIntProperty("api.port", 8080);
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: LibraryApiServer [PORT]");
+                System.exit(1);
+            }
+        }
+        
+        if (!DatabaseConnection.forDesk().testConnection()) {
+            System.err.println("Cannot reach the database, check the db.* settings");
+            System.exit(1);
+        }
+        DatabaseInitializer.migrateBranchDatabases();
+        
+        try {
+            ApiServer server = new ApiServer(port, ConfigManager.getIntProperty("api.threads", 32));
+            server.start();
+            FuzzySearchService.getInstance().preload();
+            DatabaseConfigWatcher.getInstance().start();
+            ChangeEventPoller.getInstance().start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                ChangeEventPoller.getInstance().stop();
+                DatabaseConnection.getInstance().closeConnection();
+            }));
+            System.out.println("Library API listening on port " + server.getPort());
+        } catch (Exception e) {
+            System.err.println("Failed to start API server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
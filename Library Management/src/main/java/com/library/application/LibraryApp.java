@@ -1,7 +1,11 @@
 package com.library.application;
 
+import com.library.db.DatabaseConfigWatcher;
 import com.library.db.DatabaseInitializer;
 import com.library.controllers.LoginController;
+import com.library.services.AutocompleteService;
+import com.library.services.ChangeEventPoller;
+import com.library.services.OfflineCirculation;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -19,6 +23,19 @@ public class LibraryApp extends Application {
         try {
             // Initialize database
             DatabaseInitializer.initializeDatabase();
+            DatabaseInitializer.migrateBranchDatabases();
+            
+            // Build the type-ahead indexes while the user logs in
+            AutocompleteService.getInstance().preload();
+            
+            // Pick up pool and cache changes to library.properties without a restart
+            DatabaseConfigWatcher.getInstance().start();
+            
+            // Apply other desks' changes to the in-memory indexes as they commit
+            ChangeEventPoller.getInstance().start();
+            
+            // Keep issuing and returning through database outages, replaying when it is back
+            OfflineCirculation.getInstance().start();
             
             // Load login FXML
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/Login.fxml"));
@@ -54,6 +71,8 @@ public class LibraryApp extends Application {
     public void stop() {
         // Clean up resources
         System.out.println("Application shutting down...");
+        ChangeEventPoller.getInstance().stop();
+        OfflineCirculation.getInstance().stop();
     }
     
     public static void main(String[] args) {
@@ -0,0 +1,141 @@
+package com.library.application;
+
+import com.library.cache.StringCanonicalizer;
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.entities.Book;
+import com.library.entities.User;
+import com.library.loadtest.LoadGenerator;
+import com.library.loadtest.LoadGenerator.Operation;
+import com.library.services.BookService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Command line load test for issue, return, search and login
+ *
+ * Usage: LoadTestTool [--mysql] [--clients=N] [--seconds=N] [--warmup=N]
+ *                     [--mix=issue:25,return:20,search:45,login:10] [--zipf=1.0]
+ *                     [--books=N] [--users=N]
+ *
+ * By default an in-memory embedded database is created and seeded with --books
+ * and --users rows. With --mysql the configured db.* database and its existing
+ * books and users are used, and the loans the test issues are left behind.
+ */
+public class LoadTestTool {
+    private static final String EMBEDDED_URL = "jdbc:h2:mem:loadtest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String[] TITLE_WORDS = {
+        "river", "shadow", "garden", "winter", "empire", "silent", "harbor", "secret", "mountain", "letters",
+        "night", "glass", "kingdom", "forest", "journey", "memory", "ocean", "stranger", "history", "island"
+    };
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        boolean mysql = options.containsKey("mysql");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        Map<Operation, Integer> mix = parseMix(options.getOrDefault("mix", "issue:25,return:20,search:45,login:10"));
+        
+        // One connection per client so the pool measures the database, not itself
+        ConfigManager.setIntProperty("db.pool_size", clients);
+        if (!mysql) {
+            ConfigManager.setProperty("db.url", EMBEDDED_URL);
+            ConfigManager.setProperty("db.username", "sa");
+            ConfigManager.setProperty("db.password", "");
+            seedEmbedded(Integer.parseInt(options.getOrDefault("books", "5000")),
+                         Integer.parseInt(options.getOrDefault("users", "500")));
+        } else if (!DatabaseConnection.getInstance().testConnection()) {
+            System.err.println("Cannot reach the database, check the db.* settings");
+            System.exit(1);
+        }
+        
+        List<Book> books = new BookService().getAllBooks();
+        List<User> users = new UserService().getAllUsers();
+        System.out.printf("Load test against %s: %d books, %d users, %d clients, mix %s, zipf %.2f%n",
+                mysql ? ConfigManager.getProperty("db.url") : "embedded database", books.size(), users.size(),
+                clients, mix, zipf);
+        
+        LoadGenerator generator = new LoadGenerator(books, users, mix, zipf);
+        System.out.print(generator.run(clients, warmup, seconds));
+        System.out.println(StringCanonicalizer.getInstance().getReport());
+    }
+    
+    private static void seedEmbedded(int bookCount, int userCount) throws SQLException {
+        Random random = new Random(1);
+        try (Connection conn = DatabaseConnection.getInstance().getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO books (title, author, isbn, category, publication_year, available_copies, total_copies) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= bookCount; i++) {
+                    int copies = 1 + random.nextInt(5);
+                    stmt.setString(1, word(random) + " " + word(random) + " " + i);
+                    stmt.setString(2, "Author " + (i % 997));
+                    stmt.setString(3, String.format("978%010d", i));
+                    stmt.setString(4, "Category " + (i % 25));
+                    stmt.setInt(5, 1900 + random.nextInt(125));
+                    stmt.setInt(6, copies);
+                    stmt.setInt(7, copies);
+                    stmt.addBatch();
+                    if (i % 1000 == 0) {
+                        stmt.executeBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO users (username, password, role, email) VALUES (?, ?, 'USER', ?)")) {
+                for (int i = 1; i <= userCount; i++) {
+                    stmt.setString(1, "patron" + i);
+                    stmt.setString(2, "secret" + i);
+                    stmt.setString(3, "patron" + i + "@library.test");
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+    
+    private static String word(Random random) {
+        return TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        return options;
+    }
+    
+    private static Map<Operation, Integer> parseMix(String spec) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Mix entries look like issue:25, got " + part);
+            }
+            mix.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,38 @@
+package com.library.application;
+
+import com.library.services.TransactionArchiver;
+import com.library.utils.ConfigManager;
+
+/**
+ * Command line entry point for archiving returned transactions
+ * Intended to be run periodically, e.g. from cron or a scheduled task
+ *
+ * Usage: TransactionArchiveTool [MONTHS] [BATCH_SIZE]
+ */
+public class TransactionArchiveTool {
+    
+    public static void main(String[] args) {
+        int months = ConfigManager.getArchiveAfterMonths();
+        int batchSize = ConfigManager.getArchiveBatchSize();
+        
+        try {
+            if (args.length > 0) {
+                months = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                batchSize = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: TransactionArchiveTool [MONTHS] [BATCH_SIZE]");
+            System.exit(1);
+        }
+        
+        if (months < 0 || batchSize <= 0) {
+            System.err.println("MONTHS must be >= 0 and BATCH_SIZE must be > 0");
+            System.exit(1);
+        }
+        
+        int archived = new TransactionArchiver().archiveReturnedTransactions(months, batchSize);
+        System.out.println("Archived " + archived + " transactions returned more than " + months + " months ago");
+    }
+}
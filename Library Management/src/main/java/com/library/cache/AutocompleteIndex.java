@@ -0,0 +1,462 @@
+package com.library.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Type-ahead index returning the heaviest terms that start with a prefix
+ *
+ * Terms are normalized (lower case, punctuation folded to spaces) and indexed from
+ * their first character and from the start of up to four later words, so "tol"
+ * finds "J.R.R. Tolkien". Those suffix entries are kept in one sorted long array
+ * (term id and offset packed together) with a max segment tree over the entry
+ * weights on top. A lookup is two binary searches for the prefix range plus a
+ * best-first walk of the tree that stops after k distinct terms.
+ *
+ * Weight changes update the tree in place. New terms are appended and merged into
+ * the sorted run before the next lookup; removals compact the array. All methods
+ * are synchronized.
+ */
+public class AutocompleteIndex {
+    private static final int MAX_WORD_STARTS = 4;
+    // Keeps word offsets within the 16 bits they are packed into
+    private static final int MAX_KEY_LENGTH = 200;
+    // Up to this many appended entries are merged one at a time, more trigger a full sort
+    private static final int INCREMENTAL_MERGE_LIMIT = 1024;
+    
+    private final Map<String, Integer> idsByKey = new HashMap<>();
+    private String[] terms = new String[16];
+    private String[] keys = new String[16];
+    private int[] weights = new int[16];
+    private int[] owners = new int[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+    
+    // Sorted by key suffix up to sortedCount, appended entries after that
+    private long[] entries = new long[64];
+    private int entryCount;
+    private int sortedCount;
+    // tree[n] is the position of the heaviest entry under node n, leaves start at treeSize
+    private int[] tree = new int[2];
+    private int treeSize = 1;
+    private boolean treeDirty;
+    
+    /**
+     * Add one owner of a term with the given weight and return its id
+     * Owners of the same normalized term share one id and their weights add up.
+     * Returns -1 for a blank term.
+     */
+    public synchronized int add(String term, int weight) {
+        String key = normalize(term);
+        if (key.isEmpty()) {
+            return -1;
+        }
+        Integer existing = idsByKey.get(key);
+        if (existing != null) {
+            owners[existing]++;
+            addWeight(existing, weight);
+            return existing;
+        }
+        
+        int id = allocateId();
+        terms[id] = term.trim();
+        keys[id] = key;
+        weights[id] = weight;
+        owners[id] = 1;
+        idsByKey.put(key, id);
+        for (int offset : wordStarts(key)) {
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[entryCount++] = pack(id, offset);
+        }
+        treeDirty = true;
+        return id;
+    }
+    
+    /**
+     * Drop one owner of a term and its weight; the term goes when its last owner does
+     */
+    public synchronized void remove(int id, int weight) {
+        if (!isLive(id)) {
+            return;
+        }
+        if (--owners[id] > 0) {
+            addWeight(id, -weight);
+            return;
+        }
+        
+        int write = 0;
+        int keptSorted = 0;
+        for (int read = 0; read < entryCount; read++) {
+            if (termOf(entries[read]) == id) {
+                continue;
+            }
+            if (read < sortedCount) {
+                keptSorted++;
+            }
+            entries[write++] = entries[read];
+        }
+        entryCount = write;
+        sortedCount = keptSorted;
+        treeDirty = true;
+        
+        idsByKey.remove(keys[id]);
+        terms[id] = null;
+        keys[id] = null;
+        weights[id] = 0;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+    
+    public synchronized void addWeight(int id, int delta) {
+        if (!isLive(id) || delta == 0) {
+            return;
+        }
+        weights[id] += delta;
+        if (treeDirty) {
+            return;
+        }
+        for (int offset : wordStarts(keys[id])) {
+            int position = findEntry(pack(id, offset));
+            if (position >= 0) {
+                updateTree(position);
+            }
+        }
+    }
+    
+    /**
+     * Whether id is the term that text normalizes to
+     */
+    public synchronized boolean matches(int id, String text) {
+        return isLive(id) && keys[id].equals(normalize(text));
+    }
+    
+    public synchronized String getTerm(int id) {
+        return isLive(id) ? terms[id] : null;
+    }
+    
+    public synchronized int getWeight(int id) {
+        return isLive(id) ? weights[id] : 0;
+    }
+    
+    /**
+     * Up to limit distinct terms starting with the prefix (at the start or at a word), heaviest first
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        List<String> result = new ArrayList<>(Math.max(limit, 0));
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return result;
+        }
+        flush();
+        int from = prefixBound(key, false);
+        int to = prefixBound(key, true);
+        if (from >= to) {
+            return result;
+        }
+        
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(32,
+                (a, b) -> a.equals(b) ? 0 : heavier(tree[a], tree[b]) == tree[a] ? -1 : 1);
+        for (int l = from + treeSize, r = to + treeSize; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                frontier.add(l++);
+            }
+            if ((r & 1) == 1) {
+                frontier.add(--r);
+            }
+        }
+        
+        int[] found = new int[limit];
+        int foundCount = 0;
+        while (!frontier.isEmpty() && foundCount < limit) {
+            int node = frontier.poll();
+            if (node >= treeSize) {
+                int id = termOf(entries[node - treeSize]);
+                if (!contains(found, foundCount, id)) {
+                    found[foundCount++] = id;
+                    result.add(terms[id]);
+                }
+            } else {
+                if (tree[2 * node] >= 0) {
+                    frontier.add(2 * node);
+                }
+                if (tree[2 * node + 1] >= 0) {
+                    frontier.add(2 * node + 1);
+                }
+            }
+        }
+        return result;
+    }
+    
+    public synchronized int size() {
+        return idsByKey.size();
+    }
+    
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+    
+    /**
+     * Approximate heap footprint: entry array, tree, term arrays, term strings and the key map
+     */
+    public synchronized long estimateBytes() {
+        long bytes = entries.length * 8L + tree.length * 4L + terms.length * 4L * 4 + freeIds.length * 4L;
+        for (int id = 0; id < nextId; id++) {
+            if (terms[id] != null) {
+                bytes += 40 + terms[id].length() + 40 + keys[id].length() + 40;
+            }
+        }
+        return bytes + idsByKey.size() * 4L;
+    }
+    
+    public synchronized void clear() {
+        idsByKey.clear();
+        Arrays.fill(terms, 0, nextId, null);
+        Arrays.fill(keys, 0, nextId, null);
+        nextId = 0;
+        freeCount = 0;
+        entryCount = 0;
+        sortedCount = 0;
+        treeDirty = true;
+    }
+    
+    /**
+     * Lower case letters and digits, everything else folded into single spaces
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(Math.min(text.length(), MAX_KEY_LENGTH));
+        boolean space = false;
+        for (int i = 0; i < text.length() && sb.length() < MAX_KEY_LENGTH; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static int[] wordStarts(String key) {
+        int[] starts = new int[MAX_WORD_STARTS + 1];
+        int count = 1;
+        for (int i = 1; i < key.length() && count < starts.length; i++) {
+            if (key.charAt(i - 1) == ' ') {
+                starts[count++] = i;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+    
+    private boolean isLive(int id) {
+        return id >= 0 && id < nextId && keys[id] != null;
+    }
+    
+    private int allocateId() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        if (nextId == terms.length) {
+            int capacity = terms.length * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+        return nextId++;
+    }
+    
+    /**
+     * Bring appended entries into the sorted run and rebuild the tree if the layout changed
+     */
+    private void flush() {
+        if (sortedCount < entryCount) {
+            if (entryCount - sortedCount <= INCREMENTAL_MERGE_LIMIT) {
+                while (sortedCount < entryCount) {
+                    long entry = entries[sortedCount];
+                    int position = insertionPoint(entry);
+                    System.arraycopy(entries, position, entries, position + 1, sortedCount - position);
+                    entries[position] = entry;
+                    sortedCount++;
+                }
+            } else {
+                long[] buffer = new long[entryCount];
+                mergeSort(entries, buffer, 0, entryCount);
+                sortedCount = entryCount;
+            }
+            treeDirty = true;
+        }
+        if (treeDirty) {
+            rebuildTree();
+        }
+    }
+    
+    private void rebuildTree() {
+        int size = Integer.highestOneBit(Math.max(entryCount, 1));
+        if (size < entryCount) {
+            size <<= 1;
+        }
+        if (tree.length != size * 2) {
+            tree = new int[size * 2];
+        }
+        treeSize = size;
+        for (int i = 0; i < size; i++) {
+            tree[size + i] = i < entryCount ? i : -1;
+        }
+        for (int node = size - 1; node >= 1; node--) {
+            tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+        }
+        treeDirty = false;
+    }
+    
+    private void updateTree(int position) {
+        int node = (position + treeSize) >> 1;
+        while (node >= 1) {
+            tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+            node >>= 1;
+        }
+    }
+    
+    /**
+     * The entry position with the larger weight, earlier (alphabetically first) on ties
+     */
+    private int heavier(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        int wa = weights[termOf(entries[a])];
+        int wb = weights[termOf(entries[b])];
+        if (wa != wb) {
+            return wa > wb ? a : b;
+        }
+        return a < b ? a : b;
+    }
+    
+    private int insertionPoint(long entry) {
+        int low = 0;
+        int high = sortedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareEntries(entries[mid], entry) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private int findEntry(long entry) {
+        int position = insertionPoint(entry);
+        return position < sortedCount && entries[position] == entry ? position : -1;
+    }
+    
+    /**
+     * First sorted position whose suffix starts with (upper = false) or sorts after (upper = true) the prefix
+     */
+    private int prefixBound(String prefix, boolean upper) {
+        int low = 0;
+        int high = sortedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(entries[mid], prefix);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private int comparePrefix(long entry, String prefix) {
+        String key = keys[termOf(entry)];
+        int offset = offsetOf(entry);
+        for (int i = 0; i < prefix.length(); i++) {
+            if (offset + i >= key.length()) {
+                return -1;
+            }
+            int diff = key.charAt(offset + i) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+    
+    private int compareEntries(long a, long b) {
+        String keyA = keys[termOf(a)];
+        String keyB = keys[termOf(b)];
+        int i = offsetOf(a);
+        int j = offsetOf(b);
+        while (i < keyA.length() && j < keyB.length()) {
+            int diff = keyA.charAt(i++) - keyB.charAt(j++);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        int remaining = (keyA.length() - i) - (keyB.length() - j);
+        return remaining != 0 ? remaining : Long.compare(a, b);
+    }
+    
+    private void mergeSort(long[] values, long[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(values, buffer, from, mid);
+        mergeSort(values, buffer, mid, to);
+        if (compareEntries(values[mid - 1], values[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, from, buffer, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compareEntries(buffer[i], buffer[j]) <= 0)) {
+                values[k] = buffer[i++];
+            } else {
+                values[k] = buffer[j++];
+            }
+        }
+    }
+    
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static long pack(int id, int offset) {
+        return ((long) id << 16) | offset;
+    }
+    
+    private static int termOf(long entry) {
+        return (int) (entry >>> 16);
+    }
+    
+    private static int offsetOf(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+}
@@ -0,0 +1,166 @@
+package com.library.cache;
+
+import com.library.entities.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented in-memory store for cached catalog rows
+ *
+ * Author, category and publisher are dictionary codes, the publication year is a
+ * short (0 when unknown) and copy counts are plain ints. Descriptions are not
+ * kept; Book objects built from the store have a null description. All methods
+ * are synchronized.
+ */
+public class CompactBookStore {
+    private final IntIntHashMap rowById;
+    private final StringDictionary authors = new StringDictionary();
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary publishers = new StringDictionary();
+    
+    private int size;
+    private int[] ids;
+    private String[] titles;
+    private String[] isbns;
+    private int[] authorCodes;
+    private int[] categoryCodes;
+    private int[] publisherCodes;
+    private short[] years;
+    private int[] availableCopies;
+    private int[] totalCopies;
+    
+    public CompactBookStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        this.rowById = new IntIntHashMap(capacity, -1);
+        this.ids = new int[capacity];
+        this.titles = new String[capacity];
+        this.isbns = new String[capacity];
+        this.authorCodes = new int[capacity];
+        this.categoryCodes = new int[capacity];
+        this.publisherCodes = new int[capacity];
+        this.years = new short[capacity];
+        this.availableCopies = new int[capacity];
+        this.totalCopies = new int[capacity];
+    }
+    
+    public synchronized void put(Book book) {
+        int row = rowById.get(book.getId());
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowById.put(book.getId(), row);
+        }
+        ids[row] = book.getId();
+        titles[row] = book.getTitle();
+        isbns[row] = book.getIsbn();
+        authorCodes[row] = authors.encode(book.getAuthor());
+        categoryCodes[row] = categories.encode(book.getCategory());
+        publisherCodes[row] = publishers.encode(book.getPublisher());
+        years[row] = book.getPublicationYear() != null ? book.getPublicationYear().shortValue() : 0;
+        availableCopies[row] = book.getAvailableCopies();
+        totalCopies[row] = book.getTotalCopies();
+    }
+    
+    public synchronized Book get(int id) {
+        int row = rowById.get(id);
+        return row < 0 ? null : materialize(row);
+    }
+    
+    public synchronized boolean remove(int id) {
+        int row = rowById.remove(id);
+        if (row < 0) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            titles[row] = titles[last];
+            isbns[row] = isbns[last];
+            authorCodes[row] = authorCodes[last];
+            categoryCodes[row] = categoryCodes[last];
+            publisherCodes[row] = publisherCodes[last];
+            years[row] = years[last];
+            availableCopies[row] = availableCopies[last];
+            totalCopies[row] = totalCopies[last];
+            rowById.put(ids[row], row);
+        }
+        titles[last] = null;
+        isbns[last] = null;
+        return true;
+    }
+    
+    /**
+     * Apply an issue (-1) or return (+1) without rebuilding the row
+     */
+    public synchronized void adjustAvailableCopies(int id, int change) {
+        int row = rowById.get(id);
+        if (row >= 0) {
+            availableCopies[row] += change;
+        }
+    }
+    
+    public synchronized int getAvailableCopies(int id) {
+        int row = rowById.get(id);
+        return row < 0 ? 0 : availableCopies[row];
+    }
+    
+    public synchronized List<Book> findByCategory(String category) {
+        List<Book> result = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            String value = categories.decode(categoryCodes[row]);
+            if (value != null && value.equalsIgnoreCase(category)) {
+                result.add(materialize(row));
+            }
+        }
+        return result;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * Distinct categories held in the store
+     */
+    public synchronized int getCategoryCount() {
+        return categories.size();
+    }
+    
+    /**
+     * Approximate heap footprint, counting title and ISBN strings once per row
+     */
+    public synchronized long estimateBytes() {
+        long bytes = (long) ids.length * (4 * 6 + 2 + 4 * 2) + 9 * 16;
+        for (int row = 0; row < size; row++) {
+            bytes += titles[row] != null ? 40 + titles[row].length() : 0;
+            bytes += isbns[row] != null ? 40 + isbns[row].length() : 0;
+        }
+        return bytes + rowById.estimateBytes()
+                + authors.estimateBytes() + categories.estimateBytes() + publishers.estimateBytes();
+    }
+    
+    private Book materialize(int row) {
+        return new Book(ids[row], titles[row], authors.decode(authorCodes[row]), isbns[row],
+                categories.decode(categoryCodes[row]), publishers.decode(publisherCodes[row]),
+                years[row] != 0 ? Integer.valueOf(years[row]) : null,
+                availableCopies[row], totalCopies[row], null, null, null);
+    }
+    
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(needed, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        isbns = Arrays.copyOf(isbns, capacity);
+        authorCodes = Arrays.copyOf(authorCodes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        publisherCodes = Arrays.copyOf(publisherCodes, capacity);
+        years = Arrays.copyOf(years, capacity);
+        availableCopies = Arrays.copyOf(availableCopies, capacity);
+        totalCopies = Arrays.copyOf(totalCopies, capacity);
+    }
+}
@@ -0,0 +1,258 @@
+package com.library.cache;
+
+import com.library.entities.Transaction;
+import com.library.entities.Transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Column-oriented in-memory store for a loan working set
+ *
+ * Each loan costs about 65 bytes including its id index slot: dates are epoch-day ints,
+ * audit timestamps are int seconds since 2000-01-01 UTC, the status is a byte, the fine
+ * is in cents, and username, title and author are dictionary codes. Rows are addressed
+ * through an int open-addressing id index, and Transaction objects are only built when
+ * read. All methods are synchronized.
+ */
+public class CompactLoanStore {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_TIME = Integer.MIN_VALUE;
+    private static final long TIME_BASE = LocalDateTime.of(2000, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    
+    private final IntIntHashMap rowById;
+    private final StringDictionary usernames = new StringDictionary();
+    private final StringDictionary titles = new StringDictionary();
+    private final StringDictionary authors = new StringDictionary();
+    
+    private int size;
+    private int[] ids;
+    private int[] userIds;
+    private int[] bookIds;
+    private int[] issueDays;
+    private int[] dueDays;
+    private int[] returnDays;
+    private byte[] statuses;
+    private int[] fineCents;
+    private int[] createdAt;
+    private int[] updatedAt;
+    private int[] usernameCodes;
+    private int[] titleCodes;
+    private int[] authorCodes;
+    
+    public CompactLoanStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        this.rowById = new IntIntHashMap(capacity, -1);
+        this.ids = new int[capacity];
+        this.userIds = new int[capacity];
+        this.bookIds = new int[capacity];
+        this.issueDays = new int[capacity];
+        this.dueDays = new int[capacity];
+        this.returnDays = new int[capacity];
+        this.statuses = new byte[capacity];
+        this.fineCents = new int[capacity];
+        this.createdAt = new int[capacity];
+        this.updatedAt = new int[capacity];
+        this.usernameCodes = new int[capacity];
+        this.titleCodes = new int[capacity];
+        this.authorCodes = new int[capacity];
+    }
+    
+    /**
+     * Insert or replace a loan from an entity
+     */
+    public synchronized void put(Transaction transaction) {
+        put(transaction.getId(), transaction.getUserId(), transaction.getBookId(),
+            toEpochDay(transaction.getIssueDate()), toEpochDay(transaction.getDueDate()),
+            toEpochDay(transaction.getReturnDate()), transaction.getStatus(),
+            (int) Math.round(transaction.getFineAmount() * 100),
+            toSeconds(transaction.getCreatedAt()), toSeconds(transaction.getUpdatedAt()),
+            transaction.getUserName(), transaction.getBookTitle(), transaction.getBookAuthor());
+    }
+    
+    /**
+     * Insert or replace a loan from primitive columns, as read straight from a ResultSet
+     * Dates are epoch days and timestamps come from toSeconds; missing values are Integer.MIN_VALUE.
+     */
+    public synchronized void put(int id, int userId, int bookId, int issueDay, int dueDay, int returnDay,
+                                 TransactionStatus status, int fine, int created, int updated,
+                                 String username, String title, String author) {
+        int row = rowById.get(id);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowById.put(id, row);
+        }
+        ids[row] = id;
+        userIds[row] = userId;
+        bookIds[row] = bookId;
+        issueDays[row] = issueDay;
+        dueDays[row] = dueDay;
+        returnDays[row] = returnDay;
+        statuses[row] = (byte) (status != null ? status.ordinal() : TransactionStatus.ISSUED.ordinal());
+        fineCents[row] = fine;
+        createdAt[row] = created;
+        updatedAt[row] = updated;
+        usernameCodes[row] = usernames.encode(username);
+        titleCodes[row] = titles.encode(title);
+        authorCodes[row] = authors.encode(author);
+    }
+    
+    public synchronized Transaction get(int id) {
+        int row = rowById.get(id);
+        return row < 0 ? null : materialize(row);
+    }
+    
+    public synchronized boolean contains(int id) {
+        return rowById.containsKey(id);
+    }
+    
+    /**
+     * Remove a loan, moving the last row into its slot
+     */
+    public synchronized boolean remove(int id) {
+        int row = rowById.remove(id);
+        if (row < 0) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            userIds[row] = userIds[last];
+            bookIds[row] = bookIds[last];
+            issueDays[row] = issueDays[last];
+            dueDays[row] = dueDays[last];
+            returnDays[row] = returnDays[last];
+            statuses[row] = statuses[last];
+            fineCents[row] = fineCents[last];
+            createdAt[row] = createdAt[last];
+            updatedAt[row] = updatedAt[last];
+            usernameCodes[row] = usernameCodes[last];
+            titleCodes[row] = titleCodes[last];
+            authorCodes[row] = authorCodes[last];
+            rowById.put(ids[row], row);
+        }
+        return true;
+    }
+    
+    public synchronized TransactionStatus getStatus(int id) {
+        int row = rowById.get(id);
+        return row < 0 ? null : STATUSES[statuses[row]];
+    }
+    
+    public synchronized void setStatus(int id, TransactionStatus status, LocalDate returnDate) {
+        int row = rowById.get(id);
+        if (row >= 0) {
+            statuses[row] = (byte) status.ordinal();
+            returnDays[row] = toEpochDay(returnDate);
+        }
+    }
+    
+    /**
+     * Count loans in a status without materializing them
+     */
+    public synchronized int countByStatus(TransactionStatus status) {
+        byte code = (byte) status.ordinal();
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (statuses[row] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Issued loans whose due date is before the given day
+     */
+    public synchronized List<Transaction> findOverdue(LocalDate today) {
+        int day = (int) today.toEpochDay();
+        byte issued = (byte) TransactionStatus.ISSUED.ordinal();
+        return collect(row -> statuses[row] == issued && dueDays[row] < day);
+    }
+    
+    public synchronized List<Transaction> findByUser(int userId) {
+        return collect(row -> userIds[row] == userId);
+    }
+    
+    public synchronized List<Transaction> findByBook(int bookId) {
+        return collect(row -> bookIds[row] == bookId);
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * Approximate heap footprint of the columns, id index and dictionaries
+     */
+    public synchronized long estimateBytes() {
+        long capacity = ids.length;
+        long columns = capacity * (4 * 12 + 1) + 13 * 16;
+        return columns + rowById.estimateBytes()
+                + usernames.estimateBytes() + titles.estimateBytes() + authors.estimateBytes();
+    }
+    
+    private List<Transaction> collect(IntPredicate rowFilter) {
+        List<Transaction> result = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            if (rowFilter.test(row)) {
+                result.add(materialize(row));
+            }
+        }
+        return result;
+    }
+    
+    private Transaction materialize(int row) {
+        Transaction transaction = new Transaction(ids[row], userIds[row], bookIds[row],
+                toLocalDate(issueDays[row]), toLocalDate(dueDays[row]), toLocalDate(returnDays[row]),
+                STATUSES[statuses[row]], fineCents[row] / 100.0,
+                toLocalDateTime(createdAt[row]), toLocalDateTime(updatedAt[row]));
+        transaction.setUserName(usernames.decode(usernameCodes[row]));
+        transaction.setBookTitle(titles.decode(titleCodes[row]));
+        transaction.setBookAuthor(authors.decode(authorCodes[row]));
+        return transaction;
+    }
+    
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(needed, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+        bookIds = Arrays.copyOf(bookIds, capacity);
+        issueDays = Arrays.copyOf(issueDays, capacity);
+        dueDays = Arrays.copyOf(dueDays, capacity);
+        returnDays = Arrays.copyOf(returnDays, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        fineCents = Arrays.copyOf(fineCents, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        updatedAt = Arrays.copyOf(updatedAt, capacity);
+        usernameCodes = Arrays.copyOf(usernameCodes, capacity);
+        titleCodes = Arrays.copyOf(titleCodes, capacity);
+        authorCodes = Arrays.copyOf(authorCodes, capacity);
+    }
+    
+    public static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+    
+    public static int toSeconds(LocalDateTime dateTime) {
+        return dateTime == null ? NO_TIME : (int) (dateTime.toEpochSecond(ZoneOffset.UTC) - TIME_BASE);
+    }
+    
+    private static LocalDate toLocalDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+    
+    private static LocalDateTime toLocalDateTime(int seconds) {
+        return seconds == NO_TIME ? null : LocalDateTime.ofEpochSecond(TIME_BASE + seconds, 0, ZoneOffset.UTC);
+    }
+}
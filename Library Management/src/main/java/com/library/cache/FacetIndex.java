@@ -0,0 +1,253 @@
+package com.library.cache;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitset index of books by category, publication decade and availability
+ *
+ * Every book gets a row, and every category, decade and the available flag is a
+ * bitset over rows, so a faceted query is a few word-wise ANDs and its counts are
+ * popcounts. Each facet is counted with the other facets' selections applied but
+ * not its own, so every option shows how many books selecting it would give.
+ * Rows freed by deletes are reused. All methods are synchronized.
+ */
+public class FacetIndex {
+    /** Decade key for books without a publication year */
+    public static final int UNKNOWN_DECADE = -1;
+    
+    private final IntIntHashMap rowById;
+    private int[] idByRow;
+    private String[] categoryByRow;
+    private int[] decadeByRow;
+    private int[] availableByRow;
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    
+    private int words;
+    private long[] live;
+    private long[] available;
+    private final Map<String, long[]> categories = new TreeMap<>();
+    private final Map<Integer, long[]> decades = new TreeMap<>();
+    
+    public FacetIndex(int expectedBooks) {
+        int capacity = Math.max(expectedBooks, 64);
+        this.rowById = new IntIntHashMap(capacity, -1);
+        this.idByRow = new int[capacity];
+        this.categoryByRow = new String[capacity];
+        this.decadeByRow = new int[capacity];
+        this.availableByRow = new int[capacity];
+        this.words = (capacity + 63) >>> 6;
+        this.live = new long[words];
+        this.available = new long[words];
+    }
+    
+    /**
+     * Add or replace a book's facet values
+     */
+    public synchronized void put(int bookId, String category, Integer publicationYear, int availableCopies) {
+        int row = rowById.get(bookId);
+        if (row >= 0) {
+            clearFacets(row);
+        } else {
+            row = allocateRow();
+            rowById.put(bookId, row);
+            idByRow[row] = bookId;
+            set(live, row);
+        }
+        categoryByRow[row] = category;
+        decadeByRow[row] = decadeOf(publicationYear);
+        availableByRow[row] = availableCopies;
+        if (category != null) {
+            set(categories.computeIfAbsent(category, c -> new long[words]), row);
+        }
+        set(decades.computeIfAbsent(decadeByRow[row], d -> new long[words]), row);
+        if (availableCopies > 0) {
+            set(available, row);
+        }
+    }
+    
+    public synchronized boolean remove(int bookId) {
+        int row = rowById.remove(bookId);
+        if (row < 0) {
+            return false;
+        }
+        clearFacets(row);
+        clear(live, row);
+        categoryByRow[row] = null;
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+        return true;
+    }
+    
+    /**
+     * Apply an issue (-1), return (+1) or stock change to a book's available copies
+     */
+    public synchronized void adjustAvailable(int bookId, int delta) {
+        int row = rowById.get(bookId);
+        if (row < 0) {
+            return;
+        }
+        availableByRow[row] += delta;
+        if (availableByRow[row] > 0) {
+            set(available, row);
+        } else {
+            clear(available, row);
+        }
+    }
+    
+    /**
+     * Books matching all given selections, with the counts for every facet
+     * A null selection leaves that facet open.
+     */
+    public synchronized FacetResult query(String category, Integer decade, Boolean availableOnly) {
+        long[] categoryMask = category == null ? null : categories.getOrDefault(category, new long[words]);
+        long[] decadeMask = decade == null ? null : decades.getOrDefault(decade, new long[words]);
+        
+        long[] matching = new long[words];
+        long[] forCategories = new long[words];
+        long[] forDecades = new long[words];
+        long[] forAvailability = new long[words];
+        for (int w = 0; w < words; w++) {
+            long categoryBits = categoryMask == null ? -1L : categoryMask[w];
+            long decadeBits = decadeMask == null ? -1L : decadeMask[w];
+            long availabilityBits = availableOnly == null ? -1L
+                    : availableOnly ? available[w] : ~available[w];
+            forCategories[w] = live[w] & decadeBits & availabilityBits;
+            forDecades[w] = live[w] & categoryBits & availabilityBits;
+            forAvailability[w] = live[w] & categoryBits & decadeBits;
+            matching[w] = forCategories[w] & categoryBits;
+        }
+        
+        Map<String, Integer> categoryCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> entry : categories.entrySet()) {
+            categoryCounts.put(entry.getKey(), countAnd(forCategories, entry.getValue()));
+        }
+        Map<Integer, Integer> decadeCounts = new LinkedHashMap<>();
+        for (Map.Entry<Integer, long[]> entry : decades.entrySet()) {
+            decadeCounts.put(entry.getKey(), countAnd(forDecades, entry.getValue()));
+        }
+        int availableCount = countAnd(forAvailability, available);
+        int unavailableCount = count(forAvailability) - availableCount;
+        
+        int[] bookIds = new int[count(matching)];
+        int n = 0;
+        for (int w = 0; w < words; w++) {
+            for (long bits = matching[w]; bits != 0; bits &= bits - 1) {
+                bookIds[n++] = idByRow[(w << 6) + Long.numberOfTrailingZeros(bits)];
+            }
+        }
+        Arrays.sort(bookIds);
+        return new FacetResult(bookIds, categoryCounts, decadeCounts, availableCount, unavailableCount);
+    }
+    
+    public synchronized int size() {
+        return rowById.size();
+    }
+    
+    /**
+     * Approximate heap footprint of the bitsets and row columns
+     */
+    public synchronized long estimateBytes() {
+        long bitsets = (2L + categories.size() + decades.size()) * (16 + words * 8L);
+        return bitsets + idByRow.length * 16L + rowById.estimateBytes() + categories.size() * 64L;
+    }
+    
+    public synchronized void clear() {
+        rowById.clear();
+        Arrays.fill(categoryByRow, null);
+        rowCount = 0;
+        freeRowCount = 0;
+        Arrays.fill(live, 0);
+        Arrays.fill(available, 0);
+        categories.clear();
+        decades.clear();
+    }
+    
+    /**
+     * Decade a publication year falls in, such as 1990 for 1994
+     */
+    public static int decadeOf(Integer publicationYear) {
+        if (publicationYear == null || publicationYear <= 0) {
+            return UNKNOWN_DECADE;
+        }
+        return publicationYear / 10 * 10;
+    }
+    
+    private void clearFacets(int row) {
+        String category = categoryByRow[row];
+        if (category != null) {
+            clearAndPrune(categories, category, row);
+        }
+        clearAndPrune(decades, decadeByRow[row], row);
+        clear(available, row);
+    }
+    
+    /**
+     * Clear the row from a value's bitset and drop the value once no book has it
+     */
+    private <K> void clearAndPrune(Map<K, long[]> facet, K key, int row) {
+        long[] bits = facet.get(key);
+        if (bits == null) {
+            return;
+        }
+        clear(bits, row);
+        if (count(bits) == 0) {
+            facet.remove(key);
+        }
+    }
+    
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == idByRow.length) {
+            int capacity = rowCount * 2;
+            idByRow = Arrays.copyOf(idByRow, capacity);
+            categoryByRow = Arrays.copyOf(categoryByRow, capacity);
+            decadeByRow = Arrays.copyOf(decadeByRow, capacity);
+            availableByRow = Arrays.copyOf(availableByRow, capacity);
+            words = (capacity + 63) >>> 6;
+            live = Arrays.copyOf(live, words);
+            available = Arrays.copyOf(available, words);
+            growAll(categories);
+            growAll(decades);
+        }
+        return rowCount++;
+    }
+    
+    private void growAll(Map<?, long[]> facet) {
+        for (Map.Entry<?, long[]> entry : facet.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), words));
+        }
+    }
+    
+    private static void set(long[] bits, int row) {
+        bits[row >>> 6] |= 1L << row;
+    }
+    
+    private static void clear(long[] bits, int row) {
+        bits[row >>> 6] &= ~(1L << row);
+    }
+    
+    private static int count(long[] bits) {
+        int total = 0;
+        for (long word : bits) {
+            total += Long.bitCount(word);
+        }
+        return total;
+    }
+    
+    private static int countAnd(long[] a, long[] b) {
+        int total = 0;
+        for (int w = 0; w < a.length; w++) {
+            total += Long.bitCount(a[w] & b[w]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,72 @@
+package com.library.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Books matching a faceted query and the counts for each facet option
+ */
+public class FacetResult {
+    private final int[] bookIds;
+    private final Map<String, Integer> categoryCounts;
+    private final Map<Integer, Integer> decadeCounts;
+    private final int availableCount;
+    private final int unavailableCount;
+    
+    public FacetResult(int[] bookIds, Map<String, Integer> categoryCounts, Map<Integer, Integer> decadeCounts,
+                       int availableCount, int unavailableCount) {
+        this.bookIds = bookIds;
+        this.categoryCounts = Collections.unmodifiableMap(categoryCounts);
+        this.decadeCounts = Collections.unmodifiableMap(decadeCounts);
+        this.availableCount = availableCount;
+        this.unavailableCount = unavailableCount;
+    }
+    
+    /**
+     * Matching book ids in ascending order
+     */
+    public int[] getBookIds() {
+        return bookIds.clone();
+    }
+    
+    public int getMatchCount() {
+        return bookIds.length;
+    }
+    
+    public boolean contains(int bookId) {
+        return Arrays.binarySearch(bookIds, bookId) >= 0;
+    }
+    
+    /**
+     * Books per category given the decade and availability selections, in category order
+     */
+    public Map<String, Integer> getCategoryCounts() {
+        return categoryCounts;
+    }
+    
+    /**
+     * Books per decade given the category and availability selections, oldest first
+     */
+    public Map<Integer, Integer> getDecadeCounts() {
+        return decadeCounts;
+    }
+    
+    public int getAvailableCount() {
+        return availableCount;
+    }
+    
+    public int getUnavailableCount() {
+        return unavailableCount;
+    }
+    
+    @Override
+    public String toString() {
+        return "FacetResult{matches=" + bookIds.length +
+               ", categories=" + categoryCounts +
+               ", decades=" + decadeCounts +
+               ", available=" + availableCount +
+               ", unavailable=" + unavailableCount +
+               '}';
+    }
+}
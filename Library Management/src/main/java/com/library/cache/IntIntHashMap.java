@@ -0,0 +1,213 @@
+package com.library.cache;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to int hash map with linear probing
+ * No boxing and two int arrays of storage; not thread-safe.
+ */
+public class IntIntHashMap {
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+    
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int threshold;
+    // Key 0 marks a free slot, so its entry is kept on the side
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+    
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR));
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE_KEY) {
+                return missingValue;
+            }
+        }
+    }
+    
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE_KEY) {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Returns the previous value, or the missing value if there was none
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) {
+                size++;
+            }
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= threshold) {
+            rehash(keys.length * 2);
+        }
+        return missingValue;
+    }
+    
+    /**
+     * Add delta to the value for key (starting from 0 when absent) and return the new value
+     */
+    public int addTo(int key, int delta) {
+        int updated = (containsKey(key) ? get(key) : 0) + delta;
+        put(key, updated);
+        return updated;
+    }
+    
+    /**
+     * Returns the removed value, or the missing value if there was none
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return missingValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == FREE_KEY) {
+                return missingValue;
+            }
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+        
+        // Backward-shift the rest of the probe run so lookups never stop early
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE_KEY; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            boolean movable = gap <= j ? (home <= gap || home > j) : (home <= gap && home > j);
+            if (movable) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE_KEY;
+        values[gap] = 0;
+        return removed;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, 0);
+        hasFreeKey = false;
+        size = 0;
+    }
+    
+    /**
+     * Visit every entry in table order
+     */
+    public void forEach(IntIntConsumer action) {
+        if (hasFreeKey) {
+            action.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+    
+    /**
+     * Approximate heap footprint of the backing arrays
+     */
+    public long estimateBytes() {
+        return 2L * (16 + 4L * keys.length) + 32;
+    }
+    
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+        size = hasFreeKey ? 1 : 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int j = mix(key) & mask;
+                while (keys[j] != FREE_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+                size++;
+            }
+        }
+    }
+    
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        return Math.max(capacity, 8);
+    }
+    
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+}
@@ -0,0 +1,142 @@
+package com.library.cache;
+
+import com.library.utils.ConfigManager;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe dictionary that hands out one shared instance per distinct string
+ *
+ * Used by the service mappers for low-cardinality columns (category, author, publisher,
+ * username, loan titles) so a list of thousands of rows holds each value once. Once the
+ * dictionary is full new values are passed through unchanged rather than evicting, which
+ * keeps lookups lock-free; values already admitted keep being shared.
+ */
+public class StringCanonicalizer implements StringCanonicalizerMBean {
+    // Longer values are rarely repeated and would crowd out the useful entries
+    private static final int MAX_LENGTH = 128;
+    
+    private static StringCanonicalizer instance;
+    
+    private final ConcurrentHashMap<String, String> values;
+    private final int maxSize;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    
+    public StringCanonicalizer(int maxSize) {
+        this.maxSize = maxSize;
+        this.values = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+    
+    public static synchronized StringCanonicalizer getInstance() {
+        if (instance == null) {
+            instance = new StringCanonicalizer(ConfigManager.getIntProperty("cache.canonical_strings_max", 20000));
+            instance.registerMBean();
+        }
+        return instance;
+    }
+    
+    /**
+     * Return the shared instance equal to value, admitting it if there is room
+     */
+    public String canonicalize(String value) {
+        if (value == null || maxSize <= 0) {
+            return value;
+        }
+        lookups.increment();
+        String existing = values.get(value);
+        if (existing != null) {
+            hits.increment();
+            bytesSaved.add(estimateBytes(value));
+            return existing;
+        }
+        if (value.length() > MAX_LENGTH || values.size() >= maxSize) {
+            rejected.increment();
+            return value;
+        }
+        existing = values.putIfAbsent(value, value);
+        if (existing != null) {
+            hits.increment();
+            bytesSaved.add(estimateBytes(value));
+            return existing;
+        }
+        return value;
+    }
+    
+    @Override
+    public int getSize() {
+        return values.size();
+    }
+    
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+    
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    @Override
+    public double getHitRate() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : hits.sum() / (double) total;
+    }
+    
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Bytes of duplicate strings that were not retained, assuming compact Latin-1 strings
+     * Cumulative: a duplicate that would have been collected soon anyway still counts.
+     */
+    @Override
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+    
+    @Override
+    public String getReport() {
+        return String.format("String canonicalizer: %d/%d entries, %d lookups, %.1f%% hits, %d rejected, %.1f KB saved",
+                getSize(), maxSize, getLookups(), getHitRate() * 100, getRejected(), getBytesSaved() / 1024.0);
+    }
+    
+    @Override
+    public void clear() {
+        values.clear();
+        lookups.reset();
+        hits.reset();
+        rejected.reset();
+        bytesSaved.reset();
+    }
+    
+    /**
+     * String header plus backing array header and one byte per char
+     */
+    private static long estimateBytes(String value) {
+        return 24 + 16 + value.length();
+    }
+    
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("com.library:type=StringCanonicalizer"));
+        } catch (JMException e) {
+            System.err.println("Error registering string canonicalizer MBean: " + e.getMessage());
+        }
+    }
+}
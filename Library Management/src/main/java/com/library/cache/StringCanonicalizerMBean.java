@@ -0,0 +1,28 @@
+package com.library.cache;
+
+/**
+ * JMX view of the string canonicalizer, registered as com.library:type=StringCanonicalizer
+ */
+public interface StringCanonicalizerMBean {
+    
+    int getSize();
+    
+    int getMaxSize();
+    
+    long getLookups();
+    
+    long getHits();
+    
+    double getHitRate();
+    
+    /**
+     * Rejected because the dictionary was full or the value too long
+     */
+    long getRejected();
+    
+    long getBytesSaved();
+    
+    String getReport();
+    
+    void clear();
+}
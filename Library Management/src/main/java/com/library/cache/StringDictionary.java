@@ -0,0 +1,57 @@
+package com.library.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for repeated strings: each distinct value is stored once
+ * and rows hold its int code. Code 0 is reserved for null. Not thread-safe.
+ */
+public class StringDictionary {
+    public static final int NULL_CODE = 0;
+    
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    
+    public StringDictionary() {
+        values.add(null);
+    }
+    
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+    
+    public String decode(int code) {
+        return values.get(code);
+    }
+    
+    /**
+     * Number of distinct non-null values
+     */
+    public int size() {
+        return values.size() - 1;
+    }
+    
+    /**
+     * Approximate heap footprint: each string once plus the lookup structures
+     */
+    public long estimateBytes() {
+        long bytes = 64 + 16 + 8L * values.size();
+        for (int i = 1; i < values.size(); i++) {
+            // String header + byte[] (Latin-1) + HashMap node and boxed code
+            bytes += 24 + 16 + values.get(i).length() + 32 + 16;
+        }
+        return bytes;
+    }
+}
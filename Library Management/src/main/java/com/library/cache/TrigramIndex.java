@@ -0,0 +1,456 @@
+package com.library.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Typo-tolerant token index over book titles and authors
+ *
+ * Each distinct word (lower case letters and digits) is a vocabulary token with a
+ * posting list of book ids, and every token is filed under its padded trigrams.
+ * A query word is matched against the vocabulary by counting shared trigrams:
+ * a token within k edits of a word with g distinct trigrams shares at least g - 3k
+ * of them, so only tokens over that count and within k characters of its length
+ * are checked with the bounded edit distance. Adjacent transpositions count as
+ * one edit, so "tolkein" is one edit from "tolkien".
+ *
+ * A book matches when every query word matches one of its tokens; results are
+ * ranked by the summed edit distance, ties in no set order. Candidates come from
+ * the query word with the shortest posting lists, closest tokens first, and are
+ * checked against the other words through each book's own token list. Tokens are never dropped from the vocabulary, only from
+ * posting lists. All methods are synchronized.
+ */
+public class TrigramIndex {
+    /** Fuzziness that allows 0 edits up to 2 characters, 1 up to 5 and 2 beyond */
+    public static final int AUTO = -1;
+    public static final int MAX_EDITS = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final char PAD = '\u0001';
+    
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final Map<Long, IntList> tokensByTrigram = new HashMap<>();
+    private String[] tokens = new String[1024];
+    private IntList[] postings = new IntList[1024];
+    private int tokenCount;
+    
+    // Token ids of each book are a slice of the pool; replaced slices become garbage
+    private final IntIntHashMap rowById;
+    private int[] rowStart;
+    private int[] rowLength;
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    private int[] pool = new int[1024];
+    private int poolSize;
+    private int garbage;
+    
+    // Reused per query: shared trigram counts per token and the tokens touched
+    private int[] trigramCounts = new int[1024];
+    private final IntList touched = new IntList();
+    
+    public TrigramIndex(int expectedBooks) {
+        int capacity = Math.max(expectedBooks, 16);
+        this.rowById = new IntIntHashMap(capacity, -1);
+        this.rowStart = new int[capacity];
+        this.rowLength = new int[capacity];
+    }
+    
+    /**
+     * Index or re-index a book's title and author
+     */
+    public synchronized void put(int bookId, String title, String author) {
+        remove(bookId);
+        int[] ids = tokenIdsOf(title, author);
+        
+        int row;
+        if (freeRowCount > 0) {
+            row = freeRows[--freeRowCount];
+        } else {
+            if (rowCount == rowStart.length) {
+                rowStart = Arrays.copyOf(rowStart, rowCount * 2);
+                rowLength = Arrays.copyOf(rowLength, rowCount * 2);
+            }
+            row = rowCount++;
+        }
+        rowById.put(bookId, row);
+        if (poolSize + ids.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + ids.length));
+        }
+        rowStart[row] = poolSize;
+        rowLength[row] = ids.length;
+        System.arraycopy(ids, 0, pool, poolSize, ids.length);
+        poolSize += ids.length;
+        for (int tokenId : ids) {
+            postings[tokenId].add(bookId);
+        }
+    }
+    
+    public synchronized boolean remove(int bookId) {
+        int row = rowById.remove(bookId);
+        if (row < 0) {
+            return false;
+        }
+        for (int i = rowStart[row], end = i + rowLength[row]; i < end; i++) {
+            postings[pool[i]].removeValue(bookId);
+        }
+        garbage += rowLength[row];
+        rowLength[row] = 0;
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+        if (garbage > 4096 && garbage > poolSize / 2) {
+            compactPool();
+        }
+        return true;
+    }
+    
+    /**
+     * Ids of the books matching every word of the query, closest first
+     * fuzziness is the edits allowed per word (0 to MAX_EDITS) or AUTO.
+     */
+    public synchronized int[] search(String query, int fuzziness, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+        
+        IntIntHashMap[] matches = new IntIntHashMap[words.length];
+        int driver = 0;
+        long driverPostings = Long.MAX_VALUE;
+        for (int i = 0; i < words.length; i++) {
+            matches[i] = matchTokens(words[i], maxEdits(words[i], fuzziness));
+            if (matches[i].isEmpty()) {
+                return new int[0];
+            }
+            long[] total = new long[1];
+            matches[i].forEach((tokenId, distance) -> total[0] += postings[tokenId].size);
+            if (total[0] < driverPostings) {
+                driverPostings = total[0];
+                driver = i;
+            }
+        }
+        
+        // Closest driver tokens first, so the scan can stop once nothing left can rank higher
+        long[] order = new long[matches[driver].size()];
+        int[] count = new int[1];
+        matches[driver].forEach((tokenId, distance) -> order[count[0]++] = ((long) distance << 32) | tokenId);
+        Arrays.sort(order);
+        
+        // Max-heap of score << 32 | book id, keeping the best limit books
+        PriorityQueue<Long> best = new PriorityQueue<>(limit + 1, (a, b) -> Long.compare(b, a));
+        IntIntHashMap seen = new IntIntHashMap(256, 0);
+        for (long entry : order) {
+            int distance = (int) (entry >>> 32);
+            IntList books = postings[(int) entry];
+            for (int p = 0; p < books.size; p++) {
+                if (best.size() == limit && (best.peek() >>> 32) <= distance) {
+                    break;
+                }
+                int bookId = books.values[p];
+                if (seen.put(bookId, 1) != 0) {
+                    continue;
+                }
+                int score = score(rowById.get(bookId), matches);
+                if (score < 0) {
+                    continue;
+                }
+                long key = ((long) score << 32) | bookId;
+                if (best.size() < limit) {
+                    best.add(key);
+                } else if (key < best.peek()) {
+                    best.poll();
+                    best.add(key);
+                }
+            }
+        }
+        
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) best.poll().longValue();
+        }
+        return result;
+    }
+    
+    public synchronized int size() {
+        return rowById.size();
+    }
+    
+    public synchronized int getTokenCount() {
+        return tokenCount;
+    }
+    
+    /**
+     * Approximate heap footprint: posting lists, trigram lists, book slices and the vocabulary
+     */
+    public synchronized long estimateBytes() {
+        long bytes = pool.length * 4L + rowStart.length * 8L + rowById.estimateBytes() + trigramCounts.length * 4L;
+        for (int i = 0; i < tokenCount; i++) {
+            bytes += 40 + tokens[i].length() + 32 + postings[i].values.length * 4L + 48;
+        }
+        for (IntList list : tokensByTrigram.values()) {
+            bytes += 32 + 16 + 48 + list.values.length * 4L;
+        }
+        return bytes;
+    }
+    
+    public synchronized void clear() {
+        tokenIds.clear();
+        tokensByTrigram.clear();
+        Arrays.fill(tokens, 0, tokenCount, null);
+        Arrays.fill(postings, 0, tokenCount, null);
+        tokenCount = 0;
+        rowById.clear();
+        rowCount = 0;
+        freeRowCount = 0;
+        poolSize = 0;
+        garbage = 0;
+    }
+    
+    /**
+     * Summed distance of the book's closest token for each query word, or -1 if a word has none
+     */
+    private int score(int row, IntIntHashMap[] matches) {
+        int total = 0;
+        int start = rowStart[row];
+        int end = start + rowLength[row];
+        for (IntIntHashMap match : matches) {
+            int closest = Integer.MAX_VALUE;
+            for (int i = start; i < end && closest > 0; i++) {
+                int distance = match.get(pool[i]);
+                if (distance >= 0 && distance < closest) {
+                    closest = distance;
+                }
+            }
+            if (closest == Integer.MAX_VALUE) {
+                return -1;
+            }
+            total += closest;
+        }
+        return total;
+    }
+    
+    /**
+     * Vocabulary tokens within maxEdits of word, mapped to their distance
+     */
+    private IntIntHashMap matchTokens(String word, int maxEdits) {
+        IntIntHashMap result = new IntIntHashMap(16, -1);
+        if (maxEdits == 0) {
+            Integer tokenId = tokenIds.get(word);
+            if (tokenId != null && postings[tokenId].size > 0) {
+                result.put(tokenId, 0);
+            }
+            return result;
+        }
+        
+        long[] grams = trigrams(word);
+        int needed = Math.max(grams.length - 3 * maxEdits, 1);
+        if (trigramCounts.length < tokenCount) {
+            trigramCounts = new int[tokens.length];
+        }
+        touched.size = 0;
+        for (long gram : grams) {
+            IntList list = tokensByTrigram.get(gram);
+            if (list == null) {
+                continue;
+            }
+            for (int p = 0; p < list.size; p++) {
+                int tokenId = list.values[p];
+                if (trigramCounts[tokenId]++ == 0) {
+                    touched.add(tokenId);
+                }
+            }
+        }
+        for (int p = 0; p < touched.size; p++) {
+            int tokenId = touched.values[p];
+            if (trigramCounts[tokenId] >= needed && postings[tokenId].size > 0) {
+                int distance = editDistance(word, tokens[tokenId], maxEdits);
+                if (distance <= maxEdits) {
+                    result.put(tokenId, distance);
+                }
+            }
+            trigramCounts[tokenId] = 0;
+        }
+        return result;
+    }
+    
+    private int[] tokenIdsOf(String title, String author) {
+        String[] titleWords = tokenize(title);
+        String[] authorWords = tokenize(author);
+        int[] ids = new int[titleWords.length + authorWords.length];
+        int count = 0;
+        for (String[] words : new String[][] {titleWords, authorWords}) {
+            for (String word : words) {
+                int tokenId = tokenId(word);
+                if (!contains(ids, count, tokenId)) {
+                    ids[count++] = tokenId;
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+    
+    private int tokenId(String word) {
+        Integer existing = tokenIds.get(word);
+        if (existing != null) {
+            return existing;
+        }
+        int tokenId = tokenCount++;
+        if (tokenId == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenId * 2);
+            postings = Arrays.copyOf(postings, tokenId * 2);
+        }
+        tokens[tokenId] = word;
+        postings[tokenId] = new IntList();
+        tokenIds.put(word, tokenId);
+        for (long gram : trigrams(word)) {
+            tokensByTrigram.computeIfAbsent(gram, g -> new IntList()).add(tokenId);
+        }
+        return tokenId;
+    }
+    
+    private void compactPool() {
+        int[] compacted = new int[Math.max(poolSize - garbage, 1024)];
+        int[] size = new int[1];
+        rowById.forEach((bookId, row) -> {
+            System.arraycopy(pool, rowStart[row], compacted, size[0], rowLength[row]);
+            rowStart[row] = size[0];
+            size[0] += rowLength[row];
+        });
+        pool = compacted;
+        poolSize = size[0];
+        garbage = 0;
+    }
+    
+    /**
+     * Edits allowed for a word of this length under the given fuzziness
+     */
+    static int maxEdits(String word, int fuzziness) {
+        if (fuzziness != AUTO) {
+            return Math.max(0, Math.min(fuzziness, MAX_EDITS));
+        }
+        return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+    }
+    
+    /**
+     * Distinct trigrams of the word padded with a marker at both ends
+     */
+    static long[] trigrams(String word) {
+        String padded = PAD + word + PAD;
+        long[] grams = new long[padded.length() - 2];
+        int count = 0;
+        for (int i = 0; i < grams.length; i++) {
+            long gram = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+            boolean duplicate = false;
+            for (int j = 0; j < count && !duplicate; j++) {
+                duplicate = grams[j] == gram;
+            }
+            if (!duplicate) {
+                grams[count++] = gram;
+            }
+        }
+        return Arrays.copyOf(grams, count);
+    }
+    
+    /**
+     * Lower-cased runs of letters and digits, without duplicates
+     */
+    static String[] tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return new String[0];
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                String token = word.length() > MAX_TOKEN_LENGTH ? word.substring(0, MAX_TOKEN_LENGTH) : word.toString();
+                if (!words.contains(token)) {
+                    words.add(token);
+                }
+                word.setLength(0);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+    
+    /**
+     * Optimal string alignment distance between a and b, or max + 1 once it is known to exceed max
+     */
+    public static int editDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) {
+            return max + 1;
+        }
+        int[] twoBack = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+                        previous[j - 1] + (ca == cb ? 0 : 1));
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    value = Math.min(value, twoBack[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            // Every later cell is at least the smallest cell of this row
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = twoBack;
+            twoBack = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[m], max + 1);
+    }
+    
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Growable int array for posting lists; order is not kept on removal
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        void removeValue(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+}
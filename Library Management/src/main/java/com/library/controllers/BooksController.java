@@ -3,15 +3,23 @@ package com.library.controllers;
 import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXComboBox;
 import com.jfoenix.controls.JFXTextField;
+import com.library.cache.FacetIndex;
+import com.library.cache.FacetResult;
 import com.library.entities.Book;
+import com.library.entities.BookListRow;
 import com.library.entities.User;
+import com.library.services.AutocompleteService;
+import com.library.services.BookQuery;
 import com.library.services.BookService;
+import com.library.services.FacetService;
 import com.library.utils.AlertUtils;
+import com.library.utils.AutocompleteUtils;
+import com.library.utils.ConfigManager;
+import com.library.utils.ListMerger;
 import com.library.utils.ValidationUtils;
 import javafx.animation.FadeTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.TableColumn;
@@ -20,7 +28,12 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.util.Duration;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 /**
@@ -28,23 +41,27 @@ import java.util.ResourceBundle;
  */
 public class BooksController extends BaseController implements Initializable {
     
-    @FXML private TableView<Book> booksTable;
-    @FXML private TableColumn<Book, String> titleColumn;
-    @FXML private TableColumn<Book, String> authorColumn;
-    @FXML private TableColumn<Book, String> categoryColumn;
-    @FXML private TableColumn<Book, Integer> availableColumn;
-    @FXML private TableColumn<Book, Integer> totalColumn;
+    @FXML private TableView<BookListRow> booksTable;
+    @FXML private TableColumn<BookListRow, String> titleColumn;
+    @FXML private TableColumn<BookListRow, String> authorColumn;
+    @FXML private TableColumn<BookListRow, String> categoryColumn;
+    @FXML private TableColumn<BookListRow, Integer> availableColumn;
+    @FXML private TableColumn<BookListRow, Integer> totalColumn;
     
     @FXML private JFXTextField searchField;
-    @FXML private JFXComboBox<String> categoryFilter;
+    @FXML private JFXComboBox<FacetChoice> categoryFilter;
+    @FXML private JFXComboBox<FacetChoice> decadeFilter;
+    @FXML private JFXComboBox<FacetChoice> availabilityFilter;
     @FXML private JFXButton addBookButton;
     @FXML private JFXButton editBookButton;
     @FXML private JFXButton deleteBookButton;
     @FXML private JFXButton refreshButton;
     
     private BookService bookService;
-    private ObservableList<Book> booksList;
-    private FilteredList<Book> filteredBooks;
+    private ObservableList<BookListRow> booksList;
+    private final Map<TableColumn<BookListRow, ?>, BookQuery.SortKey> sortKeys = new HashMap<>();
+    private String loadedSort = "";
+    private boolean updatingFacets;
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -73,34 +90,36 @@ public class BooksController extends BaseController implements Initializable {
         availableColumn.setCellValueFactory(new PropertyValueFactory<>("availableCopies"));
         totalColumn.setCellValueFactory(new PropertyValueFactory<>("totalCopies"));
         
+        sortKeys.put(titleColumn, BookQuery.SortKey.TITLE);
+        sortKeys.put(authorColumn, BookQuery.SortKey.AUTHOR);
+        sortKeys.put(categoryColumn, BookQuery.SortKey.CATEGORY);
+        sortKeys.put(availableColumn, BookQuery.SortKey.AVAILABLE);
+        sortKeys.put(totalColumn, BookQuery.SortKey.TOTAL);
+        
         // Initialize data
         booksList = FXCollections.observableArrayList();
-        filteredBooks = new FilteredList<>(booksList);
-        booksTable.setItems(filteredBooks);
+        booksTable.setItems(booksList);
         
-        // Setup search functionality
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            filteredBooks.setPredicate(book -> {
-                if (newVal == null || newVal.isEmpty()) {
-                    return true;
-                }
-                
-                String lowerCaseFilter = newVal.toLowerCase();
-                return book.getTitle().toLowerCase().contains(lowerCaseFilter) ||
-                       book.getAuthor().toLowerCase().contains(lowerCaseFilter) ||
-                       (book.getCategory() != null && book.getCategory().toLowerCase().contains(lowerCaseFilter));
-            });
+        // Sorting runs in the database; the table only shows the rows it gets back
+        booksTable.setSortPolicy(table -> {
+            if (!sortSpec().equals(loadedSort)) {
+                loadRows();
+            }
+            return true;
         });
         
-        // Setup category filter
-        categoryFilter.valueProperty().addListener((obs, oldVal, newVal) -> {
-            filteredBooks.setPredicate(book -> {
-                if (newVal == null || newVal.isEmpty() || "All Categories".equals(newVal)) {
-                    return true;
+        // Setup search functionality
+        AutocompleteUtils.attach(searchField, AutocompleteService.getInstance()::suggestBooks);
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> loadRows());
+        
+        // Facet selections refresh every facet's counts from the in-memory index, then the rows
+        for (JFXComboBox<FacetChoice> filter : List.of(categoryFilter, decadeFilter, availabilityFilter)) {
+            filter.valueProperty().addListener((obs, oldVal, newVal) -> {
+                if (!updatingFacets) {
+                    refreshFacets();
                 }
-                return newVal.equals(book.getCategory());
             });
-        });
+        }
     }
     
     private void setupEventHandlers() {
@@ -119,27 +138,95 @@ public class BooksController extends BaseController implements Initializable {
     }
     
     private void loadBooks() {
+        refreshFacets();
+    }
+    
+    /**
+     * Query the books matching the search text and facet selections, sorted by the table's sort column
+     */
+    private void loadRows() {
         try {
-            List<Book> books = bookService.getAllBooks();
-            booksList.clear();
-            booksList.addAll(books);
+            BookQuery query = new BookQuery()
+                    .text(searchField.getText())
+                    .category((String) selectedKey(categoryFilter))
+                    .available((Boolean) selectedKey(availabilityFilter))
+                    .limit(ConfigManager.getIntProperty("ui.list_limit", BookQuery.DEFAULT_LIMIT));
+            Integer decade = (Integer) selectedKey(decadeFilter);
+            if (decade != null && decade == FacetIndex.UNKNOWN_DECADE) {
+                query.yearUnknown();
+            } else if (decade != null) {
+                query.publishedBetween(decade, decade + 9);
+            }
+            TableColumn<BookListRow, ?> sortColumn = sortColumn();
+            if (sortColumn != null) {
+                query.sortBy(sortKeys.get(sortColumn), sortColumn.getSortType() == TableColumn.SortType.DESCENDING);
+            }
             
-            // Load categories for filter
-            loadCategories();
+            loadedSort = sortSpec();
+            ListMerger.merge(booksList, bookService.findBooks(query), BookListRow::getId, BookListRow::getUpdatedAt);
             
         } catch (Exception e) {
             AlertUtils.showError("Error", "Failed to load books: " + e.getMessage());
         }
     }
     
-    private void loadCategories() {
-        try {
-            List<String> categories = bookService.getAllCategories();
-            categories.add(0, "All Categories");
-            categoryFilter.setItems(FXCollections.observableArrayList(categories));
-        } catch (Exception e) {
-            System.err.println("Failed to load categories: " + e.getMessage());
+    private TableColumn<BookListRow, ?> sortColumn() {
+        for (TableColumn<BookListRow, ?> column : booksTable.getSortOrder()) {
+            if (sortKeys.containsKey(column)) {
+                return column;
+            }
         }
+        return null;
+    }
+    
+    private String sortSpec() {
+        TableColumn<BookListRow, ?> column = sortColumn();
+        return column == null ? "" : sortKeys.get(column) + " " + column.getSortType();
+    }
+    
+    private void refreshFacets() {
+        FacetResult result = FacetService.getInstance().search(
+                (String) selectedKey(categoryFilter), (Integer) selectedKey(decadeFilter), (Boolean) selectedKey(availabilityFilter));
+        if (result != null) {
+            List<FacetChoice> categories = new ArrayList<>();
+            categories.add(new FacetChoice(null, "All Categories"));
+            result.getCategoryCounts().forEach((category, count) ->
+                    categories.add(new FacetChoice(category, category + " (" + count + ")")));
+            
+            List<FacetChoice> decades = new ArrayList<>();
+            decades.add(new FacetChoice(null, "All Years"));
+            result.getDecadeCounts().forEach((decade, count) -> decades.add(new FacetChoice(decade,
+                    (decade == FacetIndex.UNKNOWN_DECADE ? "Unknown year" : decade + "s") + " (" + count + ")")));
+            
+            List<FacetChoice> availability = new ArrayList<>();
+            availability.add(new FacetChoice(null, "Any Availability"));
+            availability.add(new FacetChoice(Boolean.TRUE, "Available (" + result.getAvailableCount() + ")"));
+            availability.add(new FacetChoice(Boolean.FALSE, "Checked out (" + result.getUnavailableCount() + ")"));
+            
+            updatingFacets = true;
+            try {
+                setChoices(categoryFilter, categories);
+                setChoices(decadeFilter, decades);
+                setChoices(availabilityFilter, availability);
+            } finally {
+                updatingFacets = false;
+            }
+        }
+        loadRows();
+    }
+    
+    /**
+     * Replace the options with fresh counts, keeping the current selection
+     */
+    private static void setChoices(JFXComboBox<FacetChoice> filter, List<FacetChoice> choices) {
+        FacetChoice selected = filter.getValue();
+        filter.setItems(FXCollections.observableArrayList(choices));
+        int index = selected == null ? -1 : choices.indexOf(selected);
+        filter.setValue(index >= 0 ? choices.get(index) : null);
+    }
+    
+    private static Object selectedKey(JFXComboBox<FacetChoice> filter) {
+        return filter.getValue() == null ? null : filter.getValue().key;
     }
     
     private void showAddBookDialog() {
@@ -148,18 +235,26 @@ public class BooksController extends BaseController implements Initializable {
     }
     
     private void showEditBookDialog() {
-        Book selectedBook = booksTable.getSelectionModel().getSelectedItem();
+        BookListRow selectedBook = booksTable.getSelectionModel().getSelectedItem();
         if (selectedBook == null) {
             AlertUtils.showWarning("No Selection", "Please select a book to edit");
             return;
         }
         
+        // The list only holds the displayed columns, load the full book for editing
+        Optional<Book> book = bookService.getBookById(selectedBook.getId());
+        if (!book.isPresent()) {
+            AlertUtils.showWarning("Not Found", "This book no longer exists");
+            loadBooks();
+            return;
+        }
+        
         // TODO: Implement edit book dialog
         AlertUtils.showInfo("Edit Book", "Edit book functionality will be implemented here");
     }
     
     private void deleteSelectedBook() {
-        Book selectedBook = booksTable.getSelectionModel().getSelectedItem();
+        BookListRow selectedBook = booksTable.getSelectionModel().getSelectedItem();
         if (selectedBook == null) {
             AlertUtils.showWarning("No Selection", "Please select a book to delete");
             return;
@@ -180,4 +275,32 @@ public class BooksController extends BaseController implements Initializable {
             }
         }
     }
+    
+    /**
+     * Facet option shown with its count; equal to any option with the same key
+     */
+    private static final class FacetChoice {
+        private final Object key;
+        private final String label;
+        
+        FacetChoice(Object key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FacetChoice && Objects.equals(key, ((FacetChoice) o).key);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key);
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
 }
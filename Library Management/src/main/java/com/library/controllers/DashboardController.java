@@ -4,12 +4,19 @@ import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXDrawer;
 import com.jfoenix.controls.JFXHamburger;
 import com.jfoenix.transitions.hamburger.HamburgerBackArrowBasicTransition;
+import com.library.db.CircuitBreaker;
+import com.library.db.DatabaseConnection;
+import com.library.entities.LibraryStats;
 import com.library.entities.User;
-import com.library.services.BookService;
-import com.library.services.TransactionService;
-import com.library.services.UserService;
+import com.library.services.LiveStatsService;
+import com.library.services.OfflineCirculation;
+import com.library.services.OfflineListener;
+import com.library.services.ReplayReport;
+import com.library.utils.AlertUtils;
+import com.library.utils.FxUpdater;
 import javafx.animation.FadeTransition;
 import javafx.animation.TranslateTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -21,6 +28,7 @@ import javafx.util.Duration;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 
 /**
  * Main dashboard controller
@@ -33,6 +41,7 @@ public class DashboardController implements Initializable {
     @FXML private AnchorPane contentPane;
     @FXML private Label welcomeLabel;
     @FXML private Label statsLabel;
+    @FXML private Label connectionLabel;
     
     // Navigation buttons
     @FXML private JFXButton booksButton;
@@ -43,16 +52,24 @@ public class DashboardController implements Initializable {
     @FXML private JFXButton logoutButton;
     
     private User currentUser;
-    private BookService bookService;
-    private UserService userService;
-    private TransactionService transactionService;
+    // Counter updates arrive on the live-stats thread and are applied in coalesced FX batches
+    private final FxUpdater<LibraryStats> statsUpdater = new FxUpdater<>(this::showStats);
+    private final Consumer<LibraryStats> statsListener = statsUpdater::submit;
+    private final OfflineListener offlineListener = new OfflineListener() {
+        @Override
+        public void offlineChanged(boolean offline) {
+            Platform.runLater(DashboardController.this::showConnection);
+        }
+        
+        @Override
+        public void replayed(ReplayReport report) {
+            Platform.runLater(() -> showReplay(report));
+        }
+    };
+    private final Consumer<CircuitBreaker.State> breakerListener = state -> Platform.runLater(this::showConnection);
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        bookService = new BookService();
-        userService = new UserService();
-        transactionService = new TransactionService();
-        
         setupDrawer();
         setupAnimations();
         setupEventHandlers();
@@ -67,6 +84,9 @@ public class DashboardController implements Initializable {
         if (currentUser != null) {
             welcomeLabel.setText("Welcome, " + currentUser.getUsername() + "!");
             updateStats();
+            OfflineCirculation.getInstance().addListener(offlineListener);
+            DatabaseConnection.forDesk().getCircuitBreaker().addListener(breakerListener);
+            showConnection();
             
             // Hide admin-only features for regular users
             if (!currentUser.isAdmin()) {
@@ -76,23 +96,46 @@ public class DashboardController implements Initializable {
         }
     }
     
+    /**
+     * Show the live counters; they update on their own as loans and the catalog change
+     */
     private void updateStats() {
-        try {
-            int totalBooks = bookService.getAllBooks().size();
-            int availableBooks = bookService.getAvailableBooks().size();
-            int totalUsers = userService.getAllUsers().size();
-            int activeTransactions = transactionService.getActiveTransactions().size();
-            int overdueTransactions = transactionService.getOverdueTransactions().size();
-            
-            String stats = String.format(
-                "📚 Books: %d total, %d available | 👥 Users: %d | 📖 Active Issues: %d | ⚠️ Overdue: %d",
-                totalBooks, availableBooks, totalUsers, activeTransactions, overdueTransactions
-            );
-            
-            statsLabel.setText(stats);
-        } catch (Exception e) {
+        LiveStatsService liveStats = LiveStatsService.getInstance();
+        if (!liveStats.isLoaded() && !liveStats.load()) {
             statsLabel.setText("Unable to load statistics");
         }
+        liveStats.addListener(statsListener);
+    }
+    
+    private void showStats(LibraryStats stats) {
+        statsLabel.setText(String.format(
+            "📚 Books: %d total, %d available | 👥 Users: %d | 📖 Active Issues: %d | ⚠️ Overdue: %d",
+            stats.getTotalBooks(), stats.getAvailableBooks(), stats.getTotalUsers(),
+            stats.getActiveLoans(), stats.getOverdueLoans()
+        ));
+    }
+    
+    private void showConnection() {
+        OfflineCirculation circulation = OfflineCirculation.getInstance();
+        boolean databaseDown = DatabaseConnection.forDesk().getCircuitBreaker().isOpen();
+        if (circulation.isOffline()) {
+            connectionLabel.setText("Offline: issues and returns are saved on this desk");
+        } else if (circulation.getPendingCount() > 0) {
+            connectionLabel.setText("Sending " + circulation.getPendingCount() + " offline changes");
+        } else if (databaseDown) {
+            connectionLabel.setText("Database not responding, retrying shortly");
+        }
+        connectionLabel.setVisible(circulation.isOffline() || circulation.getPendingCount() > 0 || databaseDown);
+    }
+    
+    /**
+     * Report offline changes the database refused; they will not be retried
+     */
+    private void showReplay(ReplayReport report) {
+        showConnection();
+        if (!report.getConflicts().isEmpty()) {
+            AlertUtils.showWarning("Offline Changes Refused", String.join("\n", report.getConflicts()));
+        }
     }
     
     private void setupDrawer() {
@@ -202,6 +245,9 @@ public class DashboardController implements Initializable {
     
     @FXML
     private void handleLogout() {
+        LiveStatsService.getInstance().removeListener(statsListener);
+        OfflineCirculation.getInstance().removeListener(offlineListener);
+        DatabaseConnection.forDesk().getCircuitBreaker().removeListener(breakerListener);
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/Login.fxml"));
             javafx.scene.Scene scene = new javafx.scene.Scene(loader.load());
@@ -3,13 +3,19 @@ package com.library.controllers;
 import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXComboBox;
 import com.jfoenix.controls.JFXTextField;
-import com.library.entities.Transaction;
+import com.library.entities.LoanListRow;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.services.AutocompleteService;
+import com.library.services.LoanQuery;
+import com.library.services.OfflineCirculation;
 import com.library.services.TransactionService;
 import com.library.utils.AlertUtils;
+import com.library.utils.AutocompleteUtils;
+import com.library.utils.ConfigManager;
+import com.library.utils.ListMerger;
 import javafx.animation.FadeTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.TableColumn;
@@ -18,7 +24,8 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.util.Duration;
 
 import java.net.URL;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 /**
@@ -26,13 +33,13 @@ import java.util.ResourceBundle;
  */
 public class TransactionsController extends BaseController implements Initializable {
     
-    @FXML private TableView<Transaction> transactionsTable;
-    @FXML private TableColumn<Transaction, String> userNameColumn;
-    @FXML private TableColumn<Transaction, String> bookTitleColumn;
-    @FXML private TableColumn<Transaction, String> issueDateColumn;
-    @FXML private TableColumn<Transaction, String> dueDateColumn;
-    @FXML private TableColumn<Transaction, String> statusColumn;
-    @FXML private TableColumn<Transaction, String> returnDateColumn;
+    @FXML private TableView<LoanListRow> transactionsTable;
+    @FXML private TableColumn<LoanListRow, String> userNameColumn;
+    @FXML private TableColumn<LoanListRow, String> bookTitleColumn;
+    @FXML private TableColumn<LoanListRow, String> issueDateColumn;
+    @FXML private TableColumn<LoanListRow, String> dueDateColumn;
+    @FXML private TableColumn<LoanListRow, String> statusColumn;
+    @FXML private TableColumn<LoanListRow, String> returnDateColumn;
     
     @FXML private JFXTextField searchField;
     @FXML private JFXComboBox<String> statusFilter;
@@ -41,8 +48,9 @@ public class TransactionsController extends BaseController implements Initializa
     @FXML private JFXButton refreshButton;
     
     private TransactionService transactionService;
-    private ObservableList<Transaction> transactionsList;
-    private FilteredList<Transaction> filteredTransactions;
+    private ObservableList<LoanListRow> transactionsList;
+    private final Map<TableColumn<LoanListRow, ?>, LoanQuery.SortKey> sortKeys = new HashMap<>();
+    private String loadedSort = "";
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -62,33 +70,32 @@ public class TransactionsController extends BaseController implements Initializa
         statusColumn.setCellValueFactory(new PropertyValueFactory<>("status"));
         returnDateColumn.setCellValueFactory(new PropertyValueFactory<>("returnDate"));
         
+        sortKeys.put(userNameColumn, LoanQuery.SortKey.USERNAME);
+        sortKeys.put(bookTitleColumn, LoanQuery.SortKey.TITLE);
+        sortKeys.put(issueDateColumn, LoanQuery.SortKey.ISSUE_DATE);
+        sortKeys.put(dueDateColumn, LoanQuery.SortKey.DUE_DATE);
+        sortKeys.put(statusColumn, LoanQuery.SortKey.STATUS);
+        sortKeys.put(returnDateColumn, LoanQuery.SortKey.RETURN_DATE);
+        
         // Initialize data
         transactionsList = FXCollections.observableArrayList();
-        filteredTransactions = new FilteredList<>(transactionsList);
-        transactionsTable.setItems(filteredTransactions);
+        transactionsTable.setItems(transactionsList);
+        loadStatusOptions();
         
-        // Setup search functionality
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            filteredTransactions.setPredicate(transaction -> {
-                if (newVal == null || newVal.isEmpty()) {
-                    return true;
-                }
-                
-                String lowerCaseFilter = newVal.toLowerCase();
-                return (transaction.getUserName() != null && transaction.getUserName().toLowerCase().contains(lowerCaseFilter)) ||
-                       (transaction.getBookTitle() != null && transaction.getBookTitle().toLowerCase().contains(lowerCaseFilter));
-            });
+        // Sorting runs in the database; the table only shows the rows it gets back
+        transactionsTable.setSortPolicy(table -> {
+            if (!sortSpec().equals(loadedSort)) {
+                loadTransactions();
+            }
+            return true;
         });
         
+        // Setup search functionality
+        AutocompleteUtils.attach(searchField, AutocompleteService.getInstance()::suggestLoans);
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> loadTransactions());
+        
         // Setup status filter
-        statusFilter.valueProperty().addListener((obs, oldVal, newVal) -> {
-            filteredTransactions.setPredicate(transaction -> {
-                if (newVal == null || newVal.isEmpty() || "All Status".equals(newVal)) {
-                    return true;
-                }
-                return newVal.equals(transaction.getStatus().name());
-            });
-        });
+        statusFilter.valueProperty().addListener((obs, oldVal, newVal) -> loadTransactions());
     }
     
     private void setupEventHandlers() {
@@ -105,20 +112,45 @@ public class TransactionsController extends BaseController implements Initializa
         fadeIn.play();
     }
     
+    /**
+     * Query the loans matching the search text and status, sorted by the table's sort column
+     */
     private void loadTransactions() {
         try {
-            List<Transaction> transactions = transactionService.getAllTransactions();
-            transactionsList.clear();
-            transactionsList.addAll(transactions);
+            LoanQuery query = new LoanQuery()
+                    .text(searchField.getText())
+                    .limit(ConfigManager.getIntProperty("ui.list_limit", LoanQuery.DEFAULT_LIMIT));
+            String status = statusFilter.getValue();
+            if (status != null && !"All Status".equals(status)) {
+                query.status(TransactionStatus.valueOf(status));
+            }
+            TableColumn<LoanListRow, ?> sortColumn = sortColumn();
+            if (sortColumn != null) {
+                query.sortBy(sortKeys.get(sortColumn), sortColumn.getSortType() == TableColumn.SortType.DESCENDING);
+            }
             
-            // Load status options for filter
-            loadStatusOptions();
+            loadedSort = sortSpec();
+            ListMerger.merge(transactionsList, transactionService.findLoans(query), LoanListRow::getId, LoanListRow::getUpdatedAt);
             
         } catch (Exception e) {
             AlertUtils.showError("Error", "Failed to load transactions: " + e.getMessage());
         }
     }
     
+    private TableColumn<LoanListRow, ?> sortColumn() {
+        for (TableColumn<LoanListRow, ?> column : transactionsTable.getSortOrder()) {
+            if (sortKeys.containsKey(column)) {
+                return column;
+            }
+        }
+        return null;
+    }
+    
+    private String sortSpec() {
+        TableColumn<LoanListRow, ?> column = sortColumn();
+        return column == null ? "" : sortKeys.get(column) + " " + column.getSortType();
+    }
+    
     private void loadStatusOptions() {
         statusFilter.setItems(FXCollections.observableArrayList(
             "All Status", "ISSUED", "RETURNED", "OVERDUE"
@@ -131,7 +163,7 @@ public class TransactionsController extends BaseController implements Initializa
     }
     
     private void returnSelectedBook() {
-        Transaction selectedTransaction = transactionsTable.getSelectionModel().getSelectedItem();
+        LoanListRow selectedTransaction = transactionsTable.getSelectionModel().getSelectedItem();
         if (selectedTransaction == null) {
             AlertUtils.showWarning("No Selection", "Please select a transaction to return");
             return;
@@ -146,11 +178,16 @@ public class TransactionsController extends BaseController implements Initializa
                 "Are you sure you want to return '" + selectedTransaction.getBookTitle() + "'?")) {
             
             try {
-                if (transactionService.returnBook(selectedTransaction.getId())) {
+                OfflineCirculation circulation = OfflineCirculation.getInstance();
+                OfflineCirculation.Result result = circulation.returnBook(selectedTransaction.getId());
+                if (result == OfflineCirculation.Result.DONE) {
                     AlertUtils.showSuccess("Book returned successfully");
                     loadTransactions();
+                } else if (result == OfflineCirculation.Result.QUEUED) {
+                    AlertUtils.showInfo("Saved Offline",
+                            "The return was saved on this desk and will be sent when the database is back");
                 } else {
-                    AlertUtils.showError("Error", "Failed to return book");
+                    AlertUtils.showError("Error", "Failed to return book: " + circulation.getLastRejection());
                 }
             } catch (Exception e) {
                 AlertUtils.showError("Error", "Failed to return book: " + e.getMessage());
@@ -3,8 +3,13 @@ package com.library.controllers;
 import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXTextField;
 import com.library.entities.User;
+import com.library.entities.UserListRow;
+import com.library.services.AutocompleteService;
+import com.library.services.ChangeSet;
 import com.library.services.UserService;
 import com.library.utils.AlertUtils;
+import com.library.utils.AutocompleteUtils;
+import com.library.utils.ListMerger;
 import com.library.utils.ValidationUtils;
 import javafx.animation.FadeTransition;
 import javafx.collections.FXCollections;
@@ -18,7 +23,8 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.util.Duration;
 
 import java.net.URL;
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 /**
@@ -26,11 +32,11 @@ import java.util.ResourceBundle;
  */
 public class UsersController extends BaseController implements Initializable {
     
-    @FXML private TableView<User> usersTable;
-    @FXML private TableColumn<User, String> usernameColumn;
-    @FXML private TableColumn<User, String> emailColumn;
-    @FXML private TableColumn<User, String> roleColumn;
-    @FXML private TableColumn<User, String> phoneColumn;
+    @FXML private TableView<UserListRow> usersTable;
+    @FXML private TableColumn<UserListRow, String> usernameColumn;
+    @FXML private TableColumn<UserListRow, String> emailColumn;
+    @FXML private TableColumn<UserListRow, String> roleColumn;
+    @FXML private TableColumn<UserListRow, String> phoneColumn;
     
     @FXML private JFXTextField searchField;
     @FXML private JFXButton addUserButton;
@@ -39,8 +45,10 @@ public class UsersController extends BaseController implements Initializable {
     @FXML private JFXButton refreshButton;
     
     private UserService userService;
-    private ObservableList<User> usersList;
-    private FilteredList<User> filteredUsers;
+    private ObservableList<UserListRow> usersList;
+    private FilteredList<UserListRow> filteredUsers;
+    // Watermark of the last load; refreshes only fetch rows changed since
+    private LocalDateTime loadedUntil;
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -74,6 +82,7 @@ public class UsersController extends BaseController implements Initializable {
         usersTable.setItems(filteredUsers);
         
         // Setup search functionality
+        AutocompleteUtils.attach(searchField, AutocompleteService.getInstance()::suggestUsernames);
         searchField.textProperty().addListener((obs, oldVal, newVal) -> {
             filteredUsers.setPredicate(user -> {
                 if (newVal == null || newVal.isEmpty()) {
@@ -102,11 +111,23 @@ public class UsersController extends BaseController implements Initializable {
         fadeIn.play();
     }
     
+    /**
+     * Load the users, or on refresh only the ones changed or deleted since the last load
+     */
     private void loadUsers() {
         try {
-            List<User> users = userService.getAllUsers();
-            usersList.clear();
-            usersList.addAll(users);
+            ChangeSet<UserListRow> changes = userService.getUserListRowsChangedSince(loadedUntil);
+            if (changes == null) {
+                AlertUtils.showError("Error", "Failed to load users");
+                return;
+            }
+            if (changes.isFull()) {
+                ListMerger.merge(usersList, changes.getChanged(), UserListRow::getId, UserListRow::getUpdatedAt);
+            } else {
+                ListMerger.apply(usersList, changes.getChanged(), changes.getDeletedIds(),
+                        UserListRow::getId, UserListRow::getUpdatedAt, true);
+            }
+            loadedUntil = changes.getWatermark();
         } catch (Exception e) {
             AlertUtils.showError("Error", "Failed to load users: " + e.getMessage());
         }
@@ -118,18 +139,26 @@ public class UsersController extends BaseController implements Initializable {
     }
     
     private void showEditUserDialog() {
-        User selectedUser = usersTable.getSelectionModel().getSelectedItem();
+        UserListRow selectedUser = usersTable.getSelectionModel().getSelectedItem();
         if (selectedUser == null) {
             AlertUtils.showWarning("No Selection", "Please select a user to edit");
             return;
         }
         
+        // The list only holds the displayed columns, load the full user for editing
+        Optional<User> user = userService.getUserById(selectedUser.getId());
+        if (!user.isPresent()) {
+            AlertUtils.showWarning("Not Found", "This user no longer exists");
+            loadUsers();
+            return;
+        }
+        
         // TODO: Implement edit user dialog
         AlertUtils.showInfo("Edit User", "Edit user functionality will be implemented here");
     }
     
     private void deleteSelectedUser() {
-        User selectedUser = usersTable.getSelectionModel().getSelectedItem();
+        UserListRow selectedUser = usersTable.getSelectionModel().getSelectedItem();
         if (selectedUser == null) {
             AlertUtils.showWarning("No Selection", "Please select a user to delete");
             return;
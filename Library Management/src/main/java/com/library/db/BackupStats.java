@@ -0,0 +1,41 @@
+package com.library.db;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-table row counts and throughput for an export or restore run
+ */
+public class BackupStats {
+    private final Map<String, Long> rows = new LinkedHashMap<>();
+    private final Map<String, Long> nanos = new LinkedHashMap<>();
+    
+    void record(String table, long rowCount, long elapsedNanos) {
+        rows.merge(table, rowCount, Long::sum);
+        nanos.merge(table, elapsedNanos, Long::sum);
+    }
+    
+    public Map<String, Long> getRowsByTable() {
+        return Collections.unmodifiableMap(rows);
+    }
+    
+    public long getTotalRows() {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+    
+    public double getRowsPerSecond(String table) {
+        long elapsed = nanos.getOrDefault(table, 0L);
+        return elapsed == 0 ? 0 : rows.getOrDefault(table, 0L) * 1_000_000_000.0 / elapsed;
+    }
+    
+    public double getRowsPerSecond() {
+        long elapsed = nanos.values().stream().mapToLong(Long::longValue).sum();
+        return elapsed == 0 ? 0 : getTotalRows() * 1_000_000_000.0 / elapsed;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d rows %s (%.0f rows/s)", getTotalRows(), rows, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,273 @@
+package com.library.db;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Fails fast while a pool's database is unreachable or not answering
+ *
+ * After db.breaker.failure_threshold consecutive connection failures or timeouts
+ * the breaker opens and borrows from the pool throw at once instead of making every
+ * caller wait for the driver timeouts. After db.breaker.open_ms it lets a single
+ * probe borrow through (half-open): if the probe gets a working connection the
+ * breaker closes, otherwise it opens again. SQL errors such as constraint
+ * violations say nothing about the database's health and are not counted.
+ */
+public class CircuitBreaker implements CircuitBreakerMBean {
+    
+    public enum State {
+        /** Normal operation */
+        CLOSED,
+        /** Failing fast */
+        OPEN,
+        /** One probe is being let through */
+        HALF_OPEN
+    }
+    
+    private final String name;
+    private final CopyOnWriteArrayList<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder openCount = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private volatile int failureThreshold;
+    private volatile long openMillis;
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    
+    CircuitBreaker(String name, DatabaseConfig config) {
+        this.name = name;
+        configure(config);
+    }
+    
+    void configure(DatabaseConfig config) {
+        failureThreshold = config.getBreakerFailureThreshold();
+        openMillis = config.getBreakerOpenMillis();
+    }
+    
+    /**
+     * Let a borrow go to the database; throws openException() while open
+     * Returns true when the caller is the half-open probe: once the open period is
+     * over the first caller is let through and must report back through
+     * recordSuccess or recordFailure. Decided under the lock, so no other borrow
+     * can take the probe's place between the check and the report.
+     */
+    boolean allowRequest() throws SQLTransientConnectionException {
+        State next;
+        synchronized (this) {
+            if (failureThreshold <= 0 || state == State.CLOSED) {
+                return false;
+            }
+            if (state == State.HALF_OPEN || probing
+                    || System.currentTimeMillis() - openedAt < openMillis) {
+                rejections.increment();
+                throw openException();
+            }
+            probing = true;
+            next = transition(State.HALF_OPEN);
+        }
+        notifyListeners(next);
+        return true;
+    }
+    
+    void recordSuccess() {
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            // Every statement reports here; skip the lock in the common case
+            return;
+        }
+        State next;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            probing = false;
+            next = transition(State.CLOSED);
+        }
+        notifyListeners(next);
+    }
+    
+    void recordFailure() {
+        failures.increment();
+        State next = null;
+        synchronized (this) {
+            consecutiveFailures++;
+            boolean trip = state == State.HALF_OPEN
+                    || (state == State.CLOSED && failureThreshold > 0 && consecutiveFailures >= failureThreshold);
+            probing = false;
+            if (trip) {
+                openedAt = System.currentTimeMillis();
+                openCount.increment();
+                next = transition(State.OPEN);
+            }
+        }
+        notifyListeners(next);
+    }
+    
+    void recordRetry() {
+        retries.increment();
+    }
+    
+    /**
+     * What a borrow refused by the open breaker throws
+     */
+    private SQLTransientConnectionException openException() {
+        return new SQLTransientConnectionException("Database " + name + " is not responding (circuit open), failing fast");
+    }
+    
+    /**
+     * Count the exception against the breaker if it means the database is unreachable or not answering
+     */
+    void recordIfUnhealthy(SQLException e) {
+        if (isConnectivityFailure(e)) {
+            recordFailure();
+        }
+    }
+    
+    public boolean isOpen() {
+        return state != State.CLOSED;
+    }
+    
+    public State getCurrentState() {
+        return state;
+    }
+    
+    /**
+     * Called with the new state on whichever thread caused the change
+     */
+    public void addListener(Consumer<State> listener) {
+        listeners.addIfAbsent(listener);
+    }
+    
+    public void removeListener(Consumer<State> listener) {
+        listeners.remove(listener);
+    }
+    
+    @Override
+    public String getState() {
+        return state.name();
+    }
+    
+    @Override
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+    
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+    
+    @Override
+    public long getRejections() {
+        return rejections.sum();
+    }
+    
+    @Override
+    public long getOpenCount() {
+        return openCount.sum();
+    }
+    
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+    
+    @Override
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+    
+    @Override
+    public long getOpenMillis() {
+        return openMillis;
+    }
+    
+    @Override
+    public void reset() {
+        recordSuccess();
+    }
+    
+    public String getReport() {
+        return String.format("Database %s: %s, %d failures, opened %d times, %d borrows refused, %d reads retried",
+                name, state, getFailures(), getOpenCount(), getRejections(), getRetries());
+    }
+    
+    /**
+     * Lost connection, refused connection, or a statement that ran past its timeout
+     */
+    static boolean isConnectivityFailure(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String sqlState = current.getSQLState();
+            if (current instanceof SQLTimeoutException
+                    || current instanceof SQLRecoverableException
+                    || current instanceof SQLTransientConnectionException
+                    || current instanceof SQLNonTransientConnectionException
+                    || (sqlState != null && sqlState.startsWith("08"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Worth running again on a fresh connection: a connectivity failure, or a
+     * transient error such as a deadlock or serialization failure
+     */
+    static boolean isRetryable(SQLException e) {
+        return isConnectivityFailure(e)
+                || e instanceof SQLTransientException
+                || "40001".equals(e.getSQLState());
+    }
+    
+    /**
+     * Register over any breaker of the same name, since a replica pool can be closed and reopened
+     */
+    void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.library:type=CircuitBreaker,pool=" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.err.println("Error registering circuit breaker MBean: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Move to the given state; returns it if it changed, otherwise null
+     */
+    private State transition(State next) {
+        if (state == next) {
+            return null;
+        }
+        state = next;
+        if (next == State.OPEN) {
+            System.err.println("Database " + name + " is not responding, failing fast for " + openMillis + " ms");
+        } else if (next == State.CLOSED) {
+            System.err.println("Database " + name + " is responding again");
+        }
+        return next;
+    }
+    
+    private void notifyListeners(State next) {
+        if (next == null) {
+            return;
+        }
+        for (Consumer<State> listener : listeners) {
+            listener.accept(next);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.library.db;
+
+/**
+ * JMX view of a pool's circuit breaker, registered as com.library:type=CircuitBreaker,pool=NAME
+ */
+public interface CircuitBreakerMBean {
+    
+    /**
+     * CLOSED, OPEN or HALF_OPEN
+     */
+    String getState();
+    
+    int getConsecutiveFailures();
+    
+    long getFailures();
+    
+    /**
+     * Borrows refused without touching the database while open
+     */
+    long getRejections();
+    
+    /**
+     * How many times the breaker has opened
+     */
+    long getOpenCount();
+    
+    /**
+     * Reads run again after a retryable failure
+     */
+    long getRetries();
+    
+    int getFailureThreshold();
+    
+    long getOpenMillis();
+    
+    /**
+     * Close the breaker, e.g. once the database is known to be back
+     */
+    void reset();
+}
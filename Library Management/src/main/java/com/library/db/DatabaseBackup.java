@@ -0,0 +1,524 @@
+package com.library.db;
+
+import com.library.utils.ConfigManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming export and restore of the library tables
+ *
+ * File layout: the magic "LMSBAK", a version byte, then a sequence of frames.
+ * A table frame ('T') names the table and its columns, chunk frames ('C') hold
+ * up to CHUNK_ROWS deflate-compressed rows, an end frame ('E') closes the table
+ * with its row count and 'Z' ends the file. Only one chunk is ever held in
+ * memory, so heap use does not grow with table size in either direction.
+ */
+public class DatabaseBackup {
+    
+    private static final byte[] MAGIC = "LMSBAK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte VERSION = 1;
+    private static final byte FRAME_TABLE = 'T';
+    private static final byte FRAME_CHUNK = 'C';
+    private static final byte FRAME_TABLE_END = 'E';
+    private static final byte FRAME_FILE_END = 'Z';
+    
+    // Parents before children so a restore never sees a dangling reference
+    private static final String[] TABLES = {"branches", "users", "books", "transactions", "transactions_history",
+                                            "applied_operations"};
+    
+    private static final int CHUNK_ROWS = 5000;
+    // schema_migrations row present while a restore has not finished
+    private static final String RESTORE_MARKER = "restore_in_progress";
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int FALLBACK_FETCH_SIZE = 1000;
+    
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_DECIMAL = 2;
+    private static final byte KIND_DATE = 3;
+    private static final byte KIND_TIMESTAMP = 4;
+    private static final byte KIND_STRING = 5;
+    
+    private final DatabaseConnection dbConnection;
+    
+    public DatabaseBackup() {
+        this.dbConnection = DatabaseConnection.getInstance();
+    }
+    
+    /**
+     * Backup and restore of one branch's database
+     */
+    public DatabaseBackup(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+    }
+    
+    /**
+     * Export all library tables to the given file
+     * Reads from the replica when one is configured, so a backup does not load the primary.
+     */
+    public BackupStats export(Path file) throws SQLException, IOException {
+        BackupStats stats = new BackupStats();
+        
+        try (Connection conn = dbConnection.getReadConnection();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1);
+            header.put(MAGIC).put(VERSION).flip();
+            writeFully(channel, header);
+            
+            boolean mysql = conn.getMetaData().getURL().startsWith("jdbc:mysql");
+            for (String table : TABLES) {
+                long started = System.nanoTime();
+                long rows = exportTable(conn, channel, table, mysql);
+                stats.record(table, rows, System.nanoTime() - started);
+                System.out.printf("Exported %s: %d rows (%.0f rows/s)%n", table, rows, stats.getRowsPerSecond(table));
+            }
+            
+            writeFully(channel, ByteBuffer.allocate(1).put(FRAME_FILE_END).flip());
+            channel.force(true);
+        }
+        
+        return stats;
+    }
+    
+    private long exportTable(Connection conn, FileChannel channel, String table, boolean mysql)
+            throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J only streams row by row with this hint; other drivers take a normal fetch size
+            stmt.setFetchSize(mysql ? Integer.MIN_VALUE : FALLBACK_FETCH_SIZE);
+            
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY 1")) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                byte[] kinds = new byte[columnCount];
+                
+                ByteArrayOutputStream frame = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(frame);
+                out.writeByte(FRAME_TABLE);
+                out.writeUTF(table);
+                out.writeShort(columnCount);
+                for (int i = 0; i < columnCount; i++) {
+                    int jdbcType = meta.getColumnType(i + 1);
+                    kinds[i] = kindOf(jdbcType);
+                    out.writeUTF(meta.getColumnName(i + 1));
+                    out.writeByte(kinds[i]);
+                }
+                writeFully(channel, ByteBuffer.wrap(frame.toByteArray()));
+                
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_BYTES);
+                DataOutputStream rows = new DataOutputStream(chunk);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                long total = 0;
+                int inChunk = 0;
+                
+                try {
+                    while (rs.next()) {
+                        writeRow(rs, kinds, rows);
+                        total++;
+                        if (++inChunk == CHUNK_ROWS || chunk.size() >= CHUNK_BYTES) {
+                            writeChunk(channel, deflater, chunk, inChunk);
+                            inChunk = 0;
+                        }
+                    }
+                    if (inChunk > 0) {
+                        writeChunk(channel, deflater, chunk, inChunk);
+                    }
+                } finally {
+                    deflater.end();
+                }
+                
+                ByteBuffer end = ByteBuffer.allocate(9);
+                end.put(FRAME_TABLE_END).putLong(total).flip();
+                writeFully(channel, end);
+                return total;
+            }
+        }
+    }
+    
+    private void writeRow(ResultSet rs, byte[] kinds, DataOutputStream out) throws SQLException, IOException {
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            switch (kinds[i]) {
+                case KIND_LONG: {
+                    long value = rs.getLong(column);
+                    if (writeNullMarker(out, rs.wasNull())) {
+                        out.writeLong(value);
+                    }
+                    break;
+                }
+                case KIND_DATE: {
+                    Date value = rs.getDate(column);
+                    if (writeNullMarker(out, value == null)) {
+                        out.writeLong(value.toLocalDate().toEpochDay());
+                    }
+                    break;
+                }
+                case KIND_TIMESTAMP: {
+                    Timestamp value = rs.getTimestamp(column);
+                    if (writeNullMarker(out, value == null)) {
+                        LocalDateTime dateTime = value.toLocalDateTime();
+                        out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+                        out.writeInt(dateTime.getNano());
+                    }
+                    break;
+                }
+                case KIND_DECIMAL: {
+                    BigDecimal value = rs.getBigDecimal(column);
+                    if (writeNullMarker(out, value == null)) {
+                        writeString(out, value.toPlainString());
+                    }
+                    break;
+                }
+                default: {
+                    String value = rs.getString(column);
+                    if (writeNullMarker(out, value == null)) {
+                        writeString(out, value);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+    
+    private boolean writeNullMarker(DataOutputStream out, boolean isNull) throws IOException {
+        out.writeBoolean(!isNull);
+        return !isNull;
+    }
+    
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF caps at 64K, which TEXT columns can exceed
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private void writeChunk(FileChannel channel, Deflater deflater, ByteArrayOutputStream chunk, int rowCount)
+            throws IOException {
+        byte[] raw = chunk.toByteArray();
+        chunk.reset();
+        
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[Math.max(64, raw.length + raw.length / 1000 + 64)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, length);
+                compressed = larger;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.put(FRAME_CHUNK).putInt(rowCount).putInt(raw.length).putInt(length).flip();
+        writeFully(channel, header);
+        writeFully(channel, ByteBuffer.wrap(compressed, 0, length));
+    }
+    
+    /**
+     * Replace the contents of the library tables with a backup file
+     * The whole file is read and checked first, so a corrupt file is rejected
+     * before anything is deleted. The tables are then emptied children first and
+     * reloaded parents first, committing every CHUNK_ROWS rows, so no transaction
+     * grows with the size of the backup and foreign keys hold after each commit.
+     * A restore_in_progress row in schema_migrations stays until the last commit:
+     * if the database fails part way, it is left partly restored, the desk warns
+     * at startup (see isRestoreInterrupted), and running the restore again
+     * finishes it. The change_events outbox and the tombstones are cleared,
+     * since they describe changes to the replaced rows; DELETE keeps their id
+     * counters, so pollers' saved offsets stay valid. Delta clients should fetch
+     * a full set after a restore.
+     */
+    public BackupStats restore(Path file) throws SQLException, IOException {
+        BackupStats stats = new BackupStats();
+        
+        try (Connection conn = dbConnection.getConnection();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            
+            ByteBuffer header = readFully(channel, MAGIC.length + 1);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.get() != VERSION) {
+                throw new IOException("Not a library backup file: " + file);
+            }
+            long tablesStart = channel.position();
+            List<String> tables = readTables(null, channel, null);
+            channel.position(tablesStart);
+            
+            try (Statement session = conn.createStatement()) {
+                DatabaseInitializer.createMigrationsTable(session);
+            }
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement session = conn.createStatement()) {
+                setRestoreMarker(conn, true);
+                conn.commit();
+                
+                for (int i = TABLES.length - 1; i >= 0; i--) {
+                    if (tables.contains(TABLES[i])) {
+                        deleteInChunks(conn, session, TABLES[i]);
+                    }
+                }
+                if (ConfigManager.getSettings().getBoolean("outbox.enabled", true)) {
+                    deleteInChunks(conn, session, "change_events");
+                }
+                if (ConfigManager.getSettings().getBoolean("sync.tombstones_enabled", true)) {
+                    deleteInChunks(conn, session, "tombstones");
+                }
+                readTables(conn, channel, stats);
+                
+                setRestoreMarker(conn, false);
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        
+        return stats;
+    }
+    
+    /**
+     * Whether a restore into this database started and did not finish
+     */
+    public static boolean isRestoreInterrupted(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM schema_migrations WHERE name = ?")) {
+            stmt.setString(1, RESTORE_MARKER);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    private void setRestoreMarker(Connection conn, boolean set) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM schema_migrations WHERE name = ?")) {
+            delete.setString(1, RESTORE_MARKER);
+            delete.executeUpdate();
+        }
+        if (set) {
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO schema_migrations (name) VALUES (?)")) {
+                insert.setString(1, RESTORE_MARKER);
+                insert.executeUpdate();
+            }
+        }
+    }
+    
+    /**
+     * Empty a table a chunk at a time; DELETE rather than TRUNCATE, which resets the id counter
+     */
+    private void deleteInChunks(Connection conn, Statement session, String table) throws SQLException {
+        while (session.executeUpdate("DELETE FROM " + table + " LIMIT " + CHUNK_ROWS) > 0) {
+            conn.commit();
+        }
+    }
+    
+    /**
+     * Read every table frame up to the end of the file, returning the tables in file order
+     * With a null connection the rows are only decoded, to check the file before a restore.
+     */
+    private List<String> readTables(Connection conn, FileChannel channel, BackupStats stats)
+            throws SQLException, IOException {
+        List<String> tables = new ArrayList<>();
+        byte frame;
+        while ((frame = readFully(channel, 1).get()) != FRAME_FILE_END) {
+            if (frame != FRAME_TABLE) {
+                throw new IOException("Corrupt backup: expected table frame, found " + (char) frame);
+            }
+            tables.add(restoreTable(conn, channel, stats));
+        }
+        return tables;
+    }
+    
+    private String restoreTable(Connection conn, FileChannel channel, BackupStats stats)
+            throws SQLException, IOException {
+        long started = System.nanoTime();
+        // Unbuffered so the header read never consumes bytes of the following chunk
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        String table = in.readUTF();
+        if (!Arrays.asList(TABLES).contains(table)) {
+            throw new IOException("Corrupt backup: unknown table " + table);
+        }
+        int columnCount = in.readUnsignedShort();
+        List<String> columns = new ArrayList<>(columnCount);
+        byte[] kinds = new byte[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(in.readUTF());
+            kinds[i] = in.readByte();
+        }
+        
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columnCount; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        
+        Inflater inflater = new Inflater();
+        long restored = 0;
+        try (PreparedStatement insert = conn != null ? conn.prepareStatement(sql.toString()) : null) {
+            while (true) {
+                byte frame = readFully(channel, 1).get();
+                if (frame == FRAME_TABLE_END) {
+                    long expected = readFully(channel, 8).getLong();
+                    if (expected != restored) {
+                        throw new IOException("Corrupt backup: " + table + " declares " + expected +
+                                " rows but contains " + restored);
+                    }
+                    break;
+                }
+                if (frame != FRAME_CHUNK) {
+                    throw new IOException("Corrupt backup: unexpected frame " + (char) frame + " in " + table);
+                }
+                
+                ByteBuffer chunkHeader = readFully(channel, 12);
+                int rowCount = chunkHeader.getInt();
+                int rawLength = chunkHeader.getInt();
+                int compressedLength = chunkHeader.getInt();
+                byte[] raw = inflate(inflater, readFully(channel, compressedLength), rawLength);
+                
+                DataInputStream rows = new DataInputStream(new ByteArrayInputStream(raw));
+                for (int r = 0; r < rowCount; r++) {
+                    for (int i = 0; i < kinds.length; i++) {
+                        Object value = readValue(kinds[i], rows);
+                        if (insert != null) {
+                            insert.setObject(i + 1, value);
+                        }
+                    }
+                    if (insert != null) {
+                        insert.addBatch();
+                    }
+                }
+                if (insert != null) {
+                    insert.executeBatch();
+                    conn.commit();
+                }
+                restored += rowCount;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt backup chunk in " + table, e);
+        } finally {
+            inflater.end();
+        }
+        
+        if (stats != null) {
+            stats.record(table, restored, System.nanoTime() - started);
+            System.out.printf("Restored %s: %d rows (%.0f rows/s)%n", table, restored, stats.getRowsPerSecond(table));
+        }
+        return table;
+    }
+    
+    /**
+     * Read one column value as the JDBC type its kind binds as, or null
+     */
+    private Object readValue(byte kind, DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        switch (kind) {
+            case KIND_LONG:
+                return in.readLong();
+            case KIND_DATE:
+                return Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+            case KIND_TIMESTAMP:
+                long seconds = in.readLong();
+                int nanos = in.readInt();
+                return Timestamp.valueOf(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            case KIND_DECIMAL:
+                return new BigDecimal(readString(in));
+            default:
+                return readString(in);
+        }
+    }
+    
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private byte[] inflate(Inflater inflater, ByteBuffer compressed, int rawLength) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressed.limit());
+        byte[] raw = new byte[rawLength];
+        int length = 0;
+        while (length < rawLength && !inflater.finished()) {
+            length += inflater.inflate(raw, length, rawLength - length);
+        }
+        if (length != rawLength) {
+            throw new DataFormatException("Chunk inflated to " + length + " bytes, expected " + rawLength);
+        }
+        return raw;
+    }
+    
+    private static byte kindOf(int jdbcType) {
+        switch (jdbcType) {
+            case Types.BIT:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return KIND_LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return KIND_DECIMAL;
+            case Types.DATE:
+                return KIND_DATE;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return KIND_TIMESTAMP;
+            default:
+                return KIND_STRING;
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of backup file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
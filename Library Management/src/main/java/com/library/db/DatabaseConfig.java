@@ -0,0 +1,315 @@
+package com.library.db;
+
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+
+/**
+ * Immutable snapshot of the db.* and cache.* settings
+ *
+ * DatabaseConnection holds one snapshot at a time and swaps in a new one when
+ * library.properties changes (see DatabaseConfigWatcher). Pool size, timeouts,
+ * fetch size, retries, the circuit breaker and the index TTL apply live; the connection settings and the
+ * driver statement cache apply to connections opened after the swap.
+ */
+public class DatabaseConfig {
+    public static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/library_management";
+    public static final String DEFAULT_USERNAME = "root";
+    public static final String DEFAULT_PASSWORD = "password";
+    
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int poolSize;
+    private final long poolTimeoutMillis;
+    private final long validateAfterIdleMillis;
+    private final int connectTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final int queryTimeoutSeconds;
+    private final int readTimeoutMillis;
+    private final int writeTimeoutMillis;
+    private final int readRetries;
+    private final long retryBackoffMillis;
+    private final long retryMaxBackoffMillis;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMillis;
+    private final int fetchSize;
+    private final int statementCacheSize;
+    private final int statementCacheSqlLimit;
+    private final long indexTtlMillis;
+    
+    private DatabaseConfig(String url, String username, String password, int poolSize, long poolTimeoutMillis,
+                           long validateAfterIdleMillis, int connectTimeoutMillis, int socketTimeoutMillis,
+                           int queryTimeoutSeconds, int readTimeoutMillis, int writeTimeoutMillis,
+                           int readRetries, long retryBackoffMillis, long retryMaxBackoffMillis,
+                           int breakerFailureThreshold, long breakerOpenMillis, int fetchSize,
+                           int statementCacheSize, int statementCacheSqlLimit, long indexTtlMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.poolSize = poolSize;
+        this.poolTimeoutMillis = poolTimeoutMillis;
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.readRetries = readRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMillis = breakerOpenMillis;
+        this.fetchSize = fetchSize;
+        this.statementCacheSize = statementCacheSize;
+        this.statementCacheSqlLimit = statementCacheSqlLimit;
+        this.indexTtlMillis = indexTtlMillis;
+    }
+    
+    /**
+     * Snapshot of the current ConfigManager values
+     */
+    public static DatabaseConfig fromConfig() {
+        return from(ConfigManager.getSettings());
+    }
+    
+    /**
+     * Database settings from a settings snapshot, with defaults for anything missing or invalid
+     */
+    public static DatabaseConfig from(Settings settings) {
+        return from(settings, "db.");
+    }
+    
+    /**
+     * Settings for one branch's shard: db.shard.ID.url, username, password and pool_size
+     * override the db.* values, and everything else is shared
+     */
+    public static DatabaseConfig forShard(Settings settings, int branchId) {
+        return from(settings, shardPrefix(branchId));
+    }
+    
+    /**
+     * Whether the branch has a database of its own rather than the default one
+     */
+    public static boolean hasShard(Settings settings, int branchId) {
+        return settings.get(shardPrefix(branchId) + "url") != null;
+    }
+    
+    /**
+     * Settings for the read replica: db.replica.url, username, password and pool_size
+     * override the db.* values
+     */
+    public static DatabaseConfig forReplica(Settings settings) {
+        return from(settings, "db.replica.");
+    }
+    
+    public static boolean hasReplica(Settings settings) {
+        return !settings.get("db.replica.url", "").trim().isEmpty();
+    }
+    
+    private static String shardPrefix(int branchId) {
+        return "db.shard." + branchId + ".";
+    }
+    
+    private static DatabaseConfig from(Settings settings, String prefix) {
+        return new DatabaseConfig(
+                settings.get(prefix + "url", settings.get("db.url", DEFAULT_URL)),
+                settings.get(prefix + "username", settings.get("db.username", DEFAULT_USERNAME)),
+                settings.get(prefix + "password", settings.get("db.password", DEFAULT_PASSWORD)),
+                Math.max(1, settings.getInt(prefix + "pool_size", settings.getInt("db.pool_size", 10))),
+                Math.max(0, settings.getInt("db.pool_timeout_ms", 5000)),
+                Math.max(0, settings.getInt("db.validate_after_idle_ms", 30_000)),
+                Math.max(0, settings.getInt("db.connect_timeout_ms", 10_000)),
+                Math.max(0, settings.getInt("db.socket_timeout_ms", 0)),
+                Math.max(0, settings.getInt("db.query_timeout_seconds", 0)),
+                Math.max(0, settings.getInt("db.read_timeout_ms", 0)),
+                Math.max(0, settings.getInt("db.write_timeout_ms", 0)),
+                Math.max(0, settings.getInt("db.read_retries", 2)),
+                Math.max(0, settings.getInt("db.retry_backoff_ms", 100)),
+                Math.max(0, settings.getInt("db.retry_max_backoff_ms", 1000)),
+                Math.max(0, settings.getInt("db.breaker.failure_threshold", 5)),
+                Math.max(0, settings.getInt("db.breaker.open_ms", 10_000)),
+                Math.max(0, settings.getInt("db.fetch_size", 0)),
+                Math.max(0, settings.getInt("db.statement_cache_size", 250)),
+                Math.max(0, settings.getInt("db.statement_cache_sql_limit", 2048)),
+                Math.max(0, settings.getInt("cache.index_ttl_seconds", 0)) * 1000L);
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getPassword() {
+        return password;
+    }
+    
+    public int getPoolSize() {
+        return poolSize;
+    }
+    
+    public long getPoolTimeoutMillis() {
+        return poolTimeoutMillis;
+    }
+    
+    /**
+     * Idle connections older than this are validated with a round trip before reuse
+     */
+    public long getValidateAfterIdleMillis() {
+        return validateAfterIdleMillis;
+    }
+    
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+    
+    /**
+     * Socket read timeout for new connections, 0 for none
+     */
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+    
+    /**
+     * Default timeout for every statement, 0 for none
+     */
+    public int getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+    
+    /**
+     * Time limit for one read-only borrow's statements, 0 to use the socket and query timeouts
+     */
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+    
+    /**
+     * Time limit for one write borrow's statements, 0 to use the socket and query timeouts
+     */
+    public int getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+    
+    /**
+     * How many times DatabaseConnection.read runs its work again after a retryable failure
+     */
+    public int getReadRetries() {
+        return readRetries;
+    }
+    
+    /**
+     * Backoff before the first retry; each later one doubles it, up to getRetryMaxBackoffMillis
+     */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+    
+    public long getRetryMaxBackoffMillis() {
+        return retryMaxBackoffMillis;
+    }
+    
+    /**
+     * Consecutive connection failures or timeouts that open the circuit breaker, 0 to never open it
+     */
+    public int getBreakerFailureThreshold() {
+        return breakerFailureThreshold;
+    }
+    
+    /**
+     * How long an open breaker fails fast before letting a probe through
+     */
+    public long getBreakerOpenMillis() {
+        return breakerOpenMillis;
+    }
+    
+    /**
+     * Default fetch size for every statement, 0 for the driver default
+     * MySQL only honors it with useCursorFetch; the other drivers apply it directly.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+    
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+    
+    public int getStatementCacheSqlLimit() {
+        return statementCacheSqlLimit;
+    }
+    
+    /**
+     * How long the in-memory search and facet indexes live before being rebuilt, 0 for forever
+     * Rebuilding picks up books and loans changed by other desks.
+     */
+    public long getIndexTtlMillis() {
+        return indexTtlMillis;
+    }
+    
+    /**
+     * Whether an index loaded at the given time has outlived the TTL
+     */
+    public boolean isExpired(long loadedAtMillis) {
+        return indexTtlMillis > 0 && System.currentTimeMillis() - loadedAtMillis > indexTtlMillis;
+    }
+    
+    public boolean isMySql() {
+        return url.startsWith("jdbc:mysql:");
+    }
+    
+    /**
+     * Whether connections opened under this config would differ from ones opened under the other
+     */
+    public boolean connectionSettingsDiffer(DatabaseConfig other) {
+        return !url.equals(other.url)
+                || !username.equals(other.username)
+                || !password.equals(other.password)
+                || connectTimeoutMillis != other.connectTimeoutMillis
+                || socketTimeoutMillis != other.socketTimeoutMillis
+                || statementCacheSize != other.statementCacheSize
+                || statementCacheSqlLimit != other.statementCacheSqlLimit;
+    }
+    
+    /**
+     * Whether every setting matches the other snapshot
+     */
+    public boolean sameAs(DatabaseConfig other) {
+        return !connectionSettingsDiffer(other)
+                && poolSize == other.poolSize
+                && poolTimeoutMillis == other.poolTimeoutMillis
+                && validateAfterIdleMillis == other.validateAfterIdleMillis
+                && queryTimeoutSeconds == other.queryTimeoutSeconds
+                && readTimeoutMillis == other.readTimeoutMillis
+                && writeTimeoutMillis == other.writeTimeoutMillis
+                && readRetries == other.readRetries
+                && retryBackoffMillis == other.retryBackoffMillis
+                && retryMaxBackoffMillis == other.retryMaxBackoffMillis
+                && breakerFailureThreshold == other.breakerFailureThreshold
+                && breakerOpenMillis == other.breakerOpenMillis
+                && fetchSize == other.fetchSize
+                && indexTtlMillis == other.indexTtlMillis;
+    }
+    
+    @Override
+    public String toString() {
+        // Never prints the password
+        return "DatabaseConfig{url='" + url + '\'' +
+               ", username='" + username + '\'' +
+               ", poolSize=" + poolSize +
+               ", poolTimeoutMs=" + poolTimeoutMillis +
+               ", connectTimeoutMs=" + connectTimeoutMillis +
+               ", socketTimeoutMs=" + socketTimeoutMillis +
+               ", queryTimeoutSeconds=" + queryTimeoutSeconds +
+               ", readTimeoutMs=" + readTimeoutMillis +
+               ", writeTimeoutMs=" + writeTimeoutMillis +
+               ", readRetries=" + readRetries +
+               ", breakerFailureThreshold=" + breakerFailureThreshold +
+               ", fetchSize=" + fetchSize +
+               ", statementCacheSize=" + statementCacheSize +
+               ", indexTtlMs=" + indexTtlMillis +
+               '}';
+    }
+}
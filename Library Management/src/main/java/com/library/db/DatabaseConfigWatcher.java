@@ -0,0 +1,119 @@
+package com.library.db;
+
+import com.library.utils.ConfigManager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Reloads library.properties when it changes on disk, so the db.* and cache.*
+ * settings reach the running pool and other settings reach their listeners
+ *
+ * Lets an administrator resize the pool or change timeouts and the index TTL on
+ * every desk client without restarting them.
+ */
+public class DatabaseConfigWatcher {
+    // Editors often write a file in several steps; wait for them to finish
+    private static final long SETTLE_MILLIS = 250;
+    
+    private static DatabaseConfigWatcher instance;
+    
+    private final Path configFile;
+    private WatchService watchService;
+    private Thread thread;
+    
+    private DatabaseConfigWatcher() {
+        this.configFile = ConfigManager.getConfigFile();
+    }
+    
+    public static synchronized DatabaseConfigWatcher getInstance() {
+        if (instance == null) {
+            instance = new DatabaseConfigWatcher();
+        }
+        return instance;
+    }
+    
+    /**
+     * Start watching on a daemon thread; does nothing if already watching
+     */
+    public synchronized boolean start() {
+        if (thread != null) {
+            return true;
+        }
+        Path directory = configFile.getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // Create as well as modify, since some editors save by renaming a new file over the old one
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + configFile + " for changes: " + e.getMessage());
+            return false;
+        }
+        
+        thread = new Thread(this::watch, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+    
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Error closing config watcher: " + e.getMessage());
+        }
+        thread = null;
+    }
+    
+    /**
+     * Re-read the file; ConfigManager listeners such as the connection pool apply the changes
+     */
+    public void reload() {
+        ConfigManager.reload();
+    }
+    
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (context instanceof Path && configFile.getFileName().equals(context)) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                
+                Thread.sleep(SETTLE_MILLIS);
+                // Collapse the burst of events from one save into a single reload
+                WatchKey pending;
+                while ((pending = watchService.poll()) != null) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    System.err.println("Error applying changed configuration: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+}
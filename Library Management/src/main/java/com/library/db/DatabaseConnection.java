@@ -1,29 +1,78 @@
 package com.library.db;
 
+import com.library.utils.ConfigManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Properties;
-import java.io.InputStream;
-import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Database connection utility class
  * Handles MySQL database connections with connection pooling
+ *
+ * getConnection is for writes and reads that must see the latest data;
+ * getReadConnection may be served by a replica (see ReplicaRouter).
+ *
+ * Settings come from a DatabaseConfig snapshot. When the db.* or cache.* settings
+ * change, applyConfig swaps in a new one without a restart, resizing the pool in place.
+ *
+ * Each borrow gets the db.read_timeout_ms or db.write_timeout_ms limit as its
+ * statement and socket timeouts, and a CircuitBreaker per pool makes borrows
+ * throw at once while the database is not responding. read() retries
+ * read-only work that failed for a transient reason.
  */
 public class DatabaseConnection {
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/library_management";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "password";
     private static final String DB_DRIVER = "com.mysql.cj.jdbc.Driver";
+    // The socket outlasts the statement timeout by this much, so the server cancels
+    // a slow statement and the connection survives
+    private static final int NETWORK_TIMEOUT_GRACE_MILLIS = 2000;
+    private static final Executor SAME_THREAD = Runnable::run;
     
     private static DatabaseConnection instance;
-    private Connection connection;
     
-    private DatabaseConnection() {
+    private volatile DatabaseConfig config;
+    // Only the default pool has a replica
+    private volatile ReplicaRouter replicas;
+    private final ResizableSemaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final CircuitBreaker breaker;
+    
+    /**
+     * Read-only work for read(); may run more than once, on a new connection each time
+     */
+    public interface ReadWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * A separate pool, such as one branch's shard; most code uses getInstance() or ShardRouter
+     * The name identifies the pool's circuit breaker in logs and JMX.
+     */
+    DatabaseConnection(DatabaseConfig config, String name) {
+        this.config = config;
+        this.permits = new ResizableSemaphore(config.getPoolSize());
+        this.breaker = new CircuitBreaker(name, config);
+        breaker.registerMBean();
+        
         try {
-            Class.forName(DB_DRIVER);
-            this.connection = createConnection();
+            // Other drivers (e.g. the embedded database) register themselves
+            if (config.isMySql()) {
+                Class.forName(DB_DRIVER);
+            }
+            idle.offerFirst(new IdleConnection(createConnection()));
         } catch (ClassNotFoundException | SQLException e) {
             System.err.println("Database connection failed: " + e.getMessage());
         }
@@ -31,49 +80,474 @@ public class DatabaseConnection {
     
     public static synchronized DatabaseConnection getInstance() {
         if (instance == null) {
-            instance = new DatabaseConnection();
+            instance = new DatabaseConnection(DatabaseConfig.fromConfig(), "primary");
+            DatabaseConnection pool = instance;
+            pool.replicas = new ReplicaRouter(pool, ConfigManager.getSettings());
+            ConfigManager.addListener((previous, current) -> {
+                if (current.changed(previous, "db.") || current.changed(previous, "cache.")) {
+                    pool.applyConfig(DatabaseConfig.from(current));
+                }
+                if (current.changed(previous, "db.replica.")) {
+                    pool.replicas.configure(current);
+                }
+            });
         }
         return instance;
     }
     
-    public Connection getConnection() {
+    /**
+     * Pool for a branch's database; the default pool unless db.shard.ID.url is set
+     */
+    public static DatabaseConnection forBranch(int branchId) {
+        return ShardRouter.getInstance().route(branchId);
+    }
+    
+    /**
+     * Pool for this desk's branch (library.branch_id), which holds its books, users and loans
+     */
+    public static DatabaseConnection forDesk() {
+        return forBranch(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Borrow a connection from the pool
+     * Closing the returned connection hands it back to the pool instead of closing it.
+     * Throws if no connection could be obtained within the pool timeout, or at once
+     * with a SQLTransientConnectionException while the circuit breaker is open.
+     */
+    public Connection getConnection() throws SQLException {
+        return borrow(true);
+    }
+    
+    /**
+     * Borrow a connection for read-only work
+     * Served by the replica when one is configured, unless this session wrote within
+     * the pin window or the replica is unavailable. Throws like getConnection.
+     */
+    public Connection getReadConnection() throws SQLException {
+        ReplicaRouter router = replicas;
+        return router == null ? borrow(false) : router.getReadConnection();
+    }
+    
+    /**
+     * Borrow a connection to this pool's own database for read-only work that must not lag
+     * Never served by the replica, and unlike getConnection it does not start the
+     * read-your-writes pin, so frequent readers such as ChangeEventPoller can use it.
+     */
+    public Connection getPrimaryReadConnection() throws SQLException {
+        return borrow(false);
+    }
+    
+    /**
+     * Replica routing counters, or null for pools without replica routing
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return replicas;
+    }
+    
+    /**
+     * This pool's circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+    
+    /**
+     * Run read-only work on a read connection, retrying it after a transient failure
+     * Up to db.read_retries more attempts, each on a fresh connection after a jittered
+     * exponential backoff. No retries while the breaker is open, and none when no
+     * connection could be borrowed, since the borrow has already waited out its timeout.
+     */
+    public <T> T read(ReadWork<T> work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            Connection borrowed = getReadConnection();
+            try (Connection conn = borrowed) {
+                return work.run(conn);
+            } catch (SQLException e) {
+                DatabaseConfig settings = config;
+                if (attempt >= settings.getReadRetries() || breaker.isOpen() || !CircuitBreaker.isRetryable(e)) {
+                    throw e;
+                }
+                breaker.recordRetry();
+                backoff(settings, attempt, e);
+            }
+        }
+    }
+    
+    /**
+     * Borrow from this pool; handing back a write connection starts the read-your-writes pin
+     */
+    Connection borrow(boolean write) throws SQLException {
+        boolean probe = breaker.allowRequest();
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = acquire(write, probe);
+            if (probe) {
+                breaker.recordSuccess();
+            }
+        } catch (SQLException e) {
+            if (probe) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordIfUnhealthy(e);
+            }
+            throw e;
+        }
+        
+        // Statements run on the returned connection are timed per SQL template
+        QueryMetrics metrics = QueryMetrics.getInstance();
+        metrics.recordConnectionWait(System.nanoTime() - start);
+        return metrics.wrap(connection);
+    }
+    
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+    
+    /**
+     * Switch to new settings without dropping borrowed connections
+     * A smaller pool takes effect as borrowers give connections back. When the
+     * connection settings changed, idle connections are closed so the next borrow
+     * opens one with the new settings.
+     */
+    public synchronized void applyConfig(DatabaseConfig next) {
+        DatabaseConfig previous = config;
+        if (next.sameAs(previous)) {
+            return;
+        }
+        config = next;
+        breaker.configure(next);
+        
+        int delta = next.getPoolSize() - previous.getPoolSize();
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reduce(-delta);
+        }
+        
+        if (next.connectionSettingsDiffer(previous)) {
+            closeConnection();
+        } else {
+            trimIdle();
+        }
+        System.out.println("Database settings applied: " + next);
+    }
+    
+    public int getPoolSize() {
+        return config.getPoolSize();
+    }
+    
+    public int getIdleConnections() {
+        return idle.size();
+    }
+    
+    public int getActiveConnections() {
+        return Math.max(0, config.getPoolSize() - permits.availablePermits());
+    }
+    
+    /**
+     * Take a permit and an idle or new connection; validate forces a round trip on an idle one
+     */
+    private Connection acquire(boolean write, boolean validate) throws SQLException {
+        long poolTimeoutMillis = config.getPoolTimeoutMillis();
+        try {
+            if (!permits.tryAcquire(poolTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + poolTimeoutMillis + " ms waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        
+        try {
+            IdleConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (isUsable(candidate, validate)) {
+                    return pooled(candidate.connection, write);
+                }
+                closeQuietly(candidate.connection);
+            }
+            return pooled(createConnection(), write);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private boolean isUsable(IdleConnection candidate, boolean validate) {
+        try {
+            if (candidate.connection.isClosed()) {
+                return false;
+            }
+            boolean stale = validate || System.currentTimeMillis() - candidate.idleSince > config.getValidateAfterIdleMillis();
+            return !stale || candidate.connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Put a connection back in the pool, undoing any transaction state left by the borrower
+     */
+    private void release(Connection connection, boolean write) {
+        ReplicaRouter router = replicas;
+        if (write && router != null) {
+            router.recordWrite();
+        }
         try {
-            if (connection == null || connection.isClosed()) {
-                connection = createConnection();
+            if (connection.isClosed()) {
+                return;
             }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            // Most recently used first, so idle extras age out and get validated
+            idle.offerFirst(new IdleConnection(connection));
+            trimIdle();
+        } catch (SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    /**
+     * Close the least recently used idle connections beyond the pool size
+     */
+    private void trimIdle() {
+        IdleConnection extra;
+        while (idle.size() > config.getPoolSize() && (extra = idle.pollLast()) != null) {
+            closeQuietly(extra.connection);
+        }
+    }
+    
+    private Connection pooled(Connection physical, boolean write) throws SQLException {
+        try {
+            applyNetworkTimeout(physical, write);
         } catch (SQLException e) {
-            System.err.println("Error getting database connection: " + e.getMessage());
+            closeQuietly(physical);
+            throw e;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new PooledConnectionHandler(physical, write));
+    }
+    
+    /**
+     * Bound how long a read on the socket may block for this borrow
+     * MySQL only; the other drivers rely on the statement timeout.
+     */
+    private void applyNetworkTimeout(Connection physical, boolean write) throws SQLException {
+        DatabaseConfig settings = config;
+        if (!settings.isMySql()) {
+            return;
+        }
+        int operationMillis = write ? settings.getWriteTimeoutMillis() : settings.getReadTimeoutMillis();
+        int millis = operationMillis > 0 ? operationMillis + NETWORK_TIMEOUT_GRACE_MILLIS : settings.getSocketTimeoutMillis();
+        if (physical.getNetworkTimeout() != millis) {
+            physical.setNetworkTimeout(SAME_THREAD, millis);
+        }
+    }
+    
+    private static void backoff(DatabaseConfig settings, int attempt, SQLException cause) throws SQLException {
+        long cap = Math.min(settings.getRetryMaxBackoffMillis(), settings.getRetryBackoffMillis() << Math.min(attempt, 20));
+        long millis = ThreadLocalRandom.current().nextLong(cap + 1);
+        System.err.println("Retrying read in " + millis + " ms after: " + cause.getMessage());
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
         }
-        return connection;
     }
     
     private Connection createConnection() throws SQLException {
+        DatabaseConfig settings = config;
         Properties props = new Properties();
-        props.setProperty("user", DB_USER);
-        props.setProperty("password", DB_PASSWORD);
-        props.setProperty("useSSL", "false");
-        props.setProperty("serverTimezone", "UTC");
-        props.setProperty("allowPublicKeyRetrieval", "true");
+        props.setProperty("user", settings.getUsername());
+        props.setProperty("password", settings.getPassword());
+        if (settings.isMySql()) {
+            props.setProperty("useSSL", "false");
+            props.setProperty("serverTimezone", "UTC");
+            props.setProperty("allowPublicKeyRetrieval", "true");
+            // Send JDBC batches (restore, bulk updates) as multi-row statements
+            props.setProperty("rewriteBatchedStatements", "true");
+            // Cache parsed statements per connection so each query shape is parsed once; server-side
+            // prepared statements stay off because they cannot use the batch rewrite above
+            props.setProperty("cachePrepStmts", String.valueOf(settings.getStatementCacheSize() > 0));
+            props.setProperty("prepStmtCacheSize", String.valueOf(settings.getStatementCacheSize()));
+            props.setProperty("prepStmtCacheSqlLimit", String.valueOf(settings.getStatementCacheSqlLimit()));
+            props.setProperty("connectTimeout", String.valueOf(settings.getConnectTimeoutMillis()));
+            props.setProperty("socketTimeout", String.valueOf(settings.getSocketTimeoutMillis()));
+        }
         
-        return DriverManager.getConnection(DB_URL, props);
+        return DriverManager.getConnection(settings.getUrl(), props);
     }
     
-    public void closeConnection() {
+    public boolean isMySql() {
+        return config.isMySql();
+    }
+    
+    private static void closeQuietly(Connection connection) {
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
+            connection.close();
         } catch (SQLException e) {
-            System.err.println("Error closing database connection: " + e.getMessage());
+            // Already broken, nothing more to do
+        }
+    }
+    
+    /**
+     * Close every idle pooled connection
+     * Connections still borrowed go back to the pool as usual when closed.
+     */
+    public void closeConnection() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                candidate.connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing database connection: " + e.getMessage());
+            }
         }
     }
     
     public boolean testConnection() {
-        try {
-            Connection testConn = getConnection();
+        try (Connection testConn = getConnection()) {
             return testConn != null && !testConn.isClosed();
         } catch (SQLException e) {
             return false;
         }
     }
+    
+    /**
+     * Give a new statement the configured fetch size and timeout; callers may still override them
+     * The borrow's read or write timeout, rounded up to whole seconds, wins over db.query_timeout_seconds.
+     */
+    private void applyStatementDefaults(Statement statement, boolean write) throws SQLException {
+        DatabaseConfig settings = config;
+        if (settings.getFetchSize() > 0) {
+            statement.setFetchSize(settings.getFetchSize());
+        }
+        int operationMillis = write ? settings.getWriteTimeoutMillis() : settings.getReadTimeoutMillis();
+        int timeoutSeconds = operationMillis > 0 ? (operationMillis + 999) / 1000 : settings.getQueryTimeoutSeconds();
+        if (timeoutSeconds > 0) {
+            statement.setQueryTimeout(timeoutSeconds);
+        }
+    }
+    
+    /**
+     * Semaphore whose permit count can shrink while permits are held
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+        
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+        
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+    
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long idleSince;
+        
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Routes close() back to the pool and refuses use after close
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final boolean write;
+        private volatile boolean closed;
+        
+        PooledConnectionHandler(Connection physical, boolean write) {
+            this.physical = physical;
+            this.write = write;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(physical, write);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical;
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        applyStatementDefaults((Statement) result, write);
+                        return reportingHealth((Statement) result, (Connection) proxy);
+                    }
+                    return result;
+            }
+        }
+    }
+    
+    private Statement reportingHealth(Statement statement, Connection connection) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {type},
+                new HealthReportingHandler(statement, connection));
+    }
+    
+    /**
+     * Tells the circuit breaker how each statement execution went
+     */
+    private class HealthReportingHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection connection;
+        
+        HealthReportingHandler(Statement target, Connection connection) {
+            this.target = target;
+            this.connection = connection;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConnection".equals(method.getName())) {
+                return connection;
+            }
+            boolean execute = method.getName().startsWith("execute");
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (execute && e.getCause() instanceof SQLException) {
+                    breaker.recordIfUnhealthy((SQLException) e.getCause());
+                }
+                throw e.getCause();
+            }
+            if (execute) {
+                breaker.recordSuccess();
+            }
+            return result;
+        }
+    }
 }
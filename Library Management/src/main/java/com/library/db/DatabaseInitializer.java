@@ -1,10 +1,16 @@
 package com.library.db;
 
+import com.library.utils.ValidationUtils;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.Scanner;
 
 /**
@@ -12,6 +18,9 @@ import java.util.Scanner;
  * Creates tables and inserts sample data
  */
 public class DatabaseInitializer {
+    // Tables whose rows carry the branch that owns them
+    private static final String[] BRANCH_TABLES = {"books", "users", "transactions"};
+    private static final String NORMALIZE_ISBNS = "normalize_isbns";
     
     public static void initializeDatabase() {
         try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
@@ -34,6 +43,136 @@ public class DatabaseInitializer {
         }
     }
     
+    /**
+     * Bring every branch database up to date, see migrateBranchDatabase
+     * Runs at startup of the desk client and the API server, so createBook, createUser,
+     * issueBook and imports, which all write branch_id, work on upgraded databases,
+     * and imports match books that were entered with hyphenated ISBNs.
+     */
+    public static void migrateBranchDatabases() {
+        ShardRouter router = ShardRouter.getInstance();
+        Set<DatabaseConnection> pools = new LinkedHashSet<>();
+        for (int branchId : router.getBranchIds()) {
+            pools.add(router.route(branchId));
+        }
+        for (DatabaseConnection pool : pools) {
+            try (Connection connection = pool.getConnection()) {
+                migrateBranchDatabase(connection);
+            } catch (SQLException e) {
+                System.err.println("Database migration failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Add missing branch_id columns and indexes, and normalize stored ISBNs once
+     * The ISBN rewrite scans the books table, so schema_migrations records that it ran.
+     */
+    public static void migrateBranchDatabase(Connection connection) throws SQLException {
+        addBranchColumns(connection);
+        try (Statement statement = connection.createStatement()) {
+            createMigrationsTable(statement);
+        }
+        if (DatabaseBackup.isRestoreInterrupted(connection)) {
+            System.err.println("A database restore did not finish; run DatabaseBackupTool restore again");
+        }
+        if (!isApplied(connection, NORMALIZE_ISBNS)) {
+            int normalized = normalizeIsbns(connection);
+            markApplied(connection, NORMALIZE_ISBNS);
+            System.out.println("Normalized " + normalized + " ISBNs");
+        }
+    }
+    
+    /**
+     * Add branch_id and its indexes to the tables that lack them; a no-op on a current schema
+     * The books index also serves the import's lookups of books without an ISBN.
+     */
+    public static void addBranchColumns(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : BRANCH_TABLES) {
+                if (hasColumn(statement, table, "branch_id")) {
+                    continue;
+                }
+                statement.execute("ALTER TABLE " + table + " ADD COLUMN branch_id INT NOT NULL DEFAULT 1");
+                if (table.equals("transactions")) {
+                    statement.execute("CREATE INDEX idx_transactions_branch_status ON transactions(branch_id, status)");
+                }
+                System.out.println("Added branch_id to " + table);
+            }
+            if (!hasIndex(connection, "books", "idx_books_branch_title_author")) {
+                statement.execute("CREATE INDEX idx_books_branch_title_author ON books(branch_id, title, author)");
+                System.out.println("Added idx_books_branch_title_author");
+            }
+        }
+    }
+    
+    /**
+     * Rewrite ISBNs stored with hyphens, spaces or a prefix to the bare form BookService and imports store
+     * A row whose bare ISBN another row already holds is logged and left as is.
+     */
+    public static int normalizeIsbns(Connection connection) throws SQLException {
+        int normalized = 0;
+        try (Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, isbn FROM books WHERE isbn = '' OR isbn LIKE '%-%' " +
+                     "OR isbn LIKE '% %' OR isbn LIKE '%:%' OR isbn LIKE 'ISBN%' OR isbn LIKE '%x'");
+             PreparedStatement update = connection.prepareStatement("UPDATE books SET isbn = ? WHERE id = ?")) {
+            while (rs.next()) {
+                String isbn = ValidationUtils.normalizeISBN(rs.getString(2));
+                if (rs.getString(2).equals(isbn)) {
+                    continue;
+                }
+                update.setString(1, isbn);
+                update.setInt(2, rs.getInt(1));
+                try {
+                    normalized += update.executeUpdate();
+                } catch (SQLException e) {
+                    System.err.println("Cannot normalize ISBN of book " + rs.getInt(1) + " to " + isbn + ": " + e.getMessage());
+                }
+            }
+        }
+        return normalized;
+    }
+    
+    private static boolean hasColumn(Statement statement, String table, String column) {
+        try (ResultSet rs = statement.executeQuery("SELECT " + column + " FROM " + table + " WHERE 1 = 0")) {
+            return rs.getMetaData().getColumnCount() == 1;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    static void createMigrationsTable(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE IF NOT EXISTS schema_migrations (name VARCHAR(100) PRIMARY KEY, " +
+                "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+    }
+    
+    private static boolean isApplied(Connection connection, String migration) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM schema_migrations WHERE name = ?")) {
+            stmt.setString(1, migration);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    private static void markApplied(Connection connection, String migration) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO schema_migrations (name) VALUES (?)")) {
+            stmt.setString(1, migration);
+            stmt.executeUpdate();
+        }
+    }
+    
+    private static boolean hasIndex(Connection connection, String table, String index) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     private static String readResourceFile(String resourcePath) {
         try (InputStream inputStream = DatabaseInitializer.class.getResourceAsStream(resourcePath);
              Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name())) {
@@ -69,6 +208,39 @@ public class DatabaseInitializer {
         }
     }
     
+    /**
+     * Create the tables and indexes on an empty embedded database (load and shard tests)
+     * Skips the MySQL-only CREATE DATABASE / USE and the sample data, whose
+     * backslash-escaped quotes only MySQL understands.
+     */
+    public static void initializeEmbeddedDatabase(Connection connection) throws SQLException {
+        String schema = readResourceFile("/sql/schema.sql");
+        if (schema == null) {
+            throw new SQLException("Failed to read schema.sql file");
+        }
+        
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : schema.split(";")) {
+                sql = stripComments(sql);
+                if (sql.isEmpty() || sql.startsWith("CREATE DATABASE") || sql.startsWith("USE ")
+                        || sql.startsWith("INSERT")) {
+                    continue;
+                }
+                statement.execute(sql);
+            }
+        }
+    }
+    
+    private static String stripComments(String sql) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sb.append(line).append("\n");
+            }
+        }
+        return sb.toString().trim();
+    }
+    
     public static void resetDatabase() {
         try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
             if (connection == null) {
@@ -78,6 +250,11 @@ public class DatabaseInitializer {
             
             try (Statement statement = connection.createStatement()) {
                 // Drop tables in reverse order to handle foreign key constraints
+                statement.execute("DROP TABLE IF EXISTS schema_migrations");
+                statement.execute("DROP TABLE IF EXISTS change_events");
+                statement.execute("DROP TABLE IF EXISTS tombstones");
+                statement.execute("DROP TABLE IF EXISTS applied_operations");
+                statement.execute("DROP TABLE IF EXISTS transactions_history");
                 statement.execute("DROP TABLE IF EXISTS transactions");
                 statement.execute("DROP TABLE IF EXISTS books");
                 statement.execute("DROP TABLE IF EXISTS users");
@@ -0,0 +1,174 @@
+package com.library.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Dynamic proxies around JDBC objects that time statement execution and
+ * count rows into QueryMetrics
+ */
+final class InstrumentedJdbc {
+    
+    private InstrumentedJdbc() {
+    }
+    
+    static Connection wrap(Connection connection, QueryMetrics metrics) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection, metrics));
+    }
+    
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final QueryMetrics metrics;
+        
+        ConnectionHandler(Connection target, QueryMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedJdbc.invoke(target, method, args);
+            String name = method.getName();
+            
+            if (result instanceof Statement
+                    && ("createStatement".equals(name) || "prepareStatement".equals(name) || "prepareCall".equals(name))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                Class<?> type = result instanceof CallableStatement ? CallableStatement.class
+                        : result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {type},
+                        new StatementHandler((Statement) result, (Connection) proxy, sql, metrics));
+            }
+            return result;
+        }
+    }
+    
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection connection;
+        private final String preparedSql;
+        private final QueryMetrics metrics;
+        private String batchSql;
+        
+        StatementHandler(Statement target, Connection connection, String preparedSql, QueryMetrics metrics) {
+            this.target = target;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            
+            if ("getConnection".equals(name)) {
+                return connection;
+            }
+            if ("addBatch".equals(name) && args != null && args.length == 1 && batchSql == null) {
+                batchSql = (String) args[0];
+            }
+            if (!name.startsWith("execute")) {
+                return InstrumentedJdbc.invoke(target, method, args);
+            }
+            
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+                    : preparedSql != null ? preparedSql : batchSql;
+            QueryMetrics.QueryStats stats = metrics.statsFor(sql);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = InstrumentedJdbc.invoke(target, method, args);
+            } catch (Throwable t) {
+                metrics.recordExecution(stats, System.nanoTime() - start, 0, true);
+                throw t;
+            }
+            long elapsed = System.nanoTime() - start;
+            
+            if (result instanceof ResultSet) {
+                metrics.recordExecution(stats, elapsed, 0, false);
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                        new ResultSetHandler((ResultSet) result, (Statement) proxy, stats, metrics));
+            }
+            metrics.recordExecution(stats, elapsed, updateCount(result), false);
+            return result;
+        }
+        
+        private long updateCount(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            long total = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    total += Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    total += Math.max(count, 0);
+                }
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * Counts rows as they are consumed and reports them once the result set is exhausted or closed
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Statement statement;
+        private final QueryMetrics.QueryStats stats;
+        private final QueryMetrics metrics;
+        private long rows;
+        private boolean reported;
+        
+        ResultSetHandler(ResultSet target, Statement statement, QueryMetrics.QueryStats stats, QueryMetrics metrics) {
+            this.target = target;
+            this.statement = statement;
+            this.stats = stats;
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            
+            if ("getStatement".equals(name)) {
+                return statement;
+            }
+            Object result = InstrumentedJdbc.invoke(target, method, args);
+            if ("next".equals(name)) {
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                } else {
+                    report();
+                }
+            } else if ("close".equals(name)) {
+                report();
+            }
+            return result;
+        }
+        
+        private void report() {
+            if (!reported) {
+                reported = true;
+                metrics.recordRows(stats, rows);
+            }
+        }
+    }
+}
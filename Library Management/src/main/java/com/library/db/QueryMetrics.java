@@ -0,0 +1,332 @@
+package com.library.db;
+
+import com.library.utils.ConfigManager;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-SQL-template latency, row count and error metrics for every statement
+ * run through connections handed out by DatabaseConnection
+ * Exposed over JMX, dumped periodically to stdout, and slow statements are
+ * appended to a slow-query log.
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+    // Guards against unparameterized SQL producing an unbounded number of templates
+    private static final int MAX_TEMPLATES = 1000;
+    private static final String OTHER_TEMPLATE = "<other>";
+    
+    private static QueryMetrics instance;
+    
+    private final boolean enabled;
+    private final Map<String, QueryStats> byTemplate = new ConcurrentHashMap<>();
+    private final Map<String, QueryStats> bySql = new ConcurrentHashMap<>();
+    private final LatencyHistogram connectionWait = new LatencyHistogram();
+    private final LongAdder slowQueries = new LongAdder();
+    private final String slowQueryLog;
+    private volatile long slowThresholdMicros;
+    private PrintWriter slowLogWriter;
+    
+    private QueryMetrics() {
+        this.enabled = ConfigManager.getBooleanProperty("db.metrics_enabled", true);
+        this.slowThresholdMicros = ConfigManager.getIntProperty("db.slow_query_ms", 200) * 1000L;
+        this.slowQueryLog = ConfigManager.getProperty("db.slow_query_log", "slow-queries.log");
+        
+        if (enabled) {
+            registerMBean();
+            startPeriodicDump(ConfigManager.getIntProperty("db.metrics_dump_seconds", 300));
+        }
+    }
+    
+    public static synchronized QueryMetrics getInstance() {
+        if (instance == null) {
+            instance = new QueryMetrics();
+        }
+        return instance;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Wrap a connection so its statements report into these metrics
+     */
+    public Connection wrap(Connection connection) {
+        if (!enabled || connection == null) {
+            return connection;
+        }
+        return InstrumentedJdbc.wrap(connection, this);
+    }
+    
+    public void recordConnectionWait(long nanos) {
+        if (enabled) {
+            connectionWait.record(nanos / 1000);
+        }
+    }
+    
+    public LatencyHistogram getConnectionWait() {
+        return connectionWait;
+    }
+    
+    /**
+     * Stats bucket for a raw SQL string, normalized to its template
+     */
+    QueryStats statsFor(String sql) {
+        String key = sql == null ? OTHER_TEMPLATE : sql;
+        QueryStats stats = bySql.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        
+        String template = sql == null ? OTHER_TEMPLATE : normalize(sql);
+        if (byTemplate.size() >= MAX_TEMPLATES && !byTemplate.containsKey(template)) {
+            template = OTHER_TEMPLATE;
+        }
+        stats = byTemplate.computeIfAbsent(template, QueryStats::new);
+        if (bySql.size() < MAX_TEMPLATES) {
+            bySql.put(key, stats);
+        }
+        return stats;
+    }
+    
+    void recordExecution(QueryStats stats, long nanos, long rows, boolean failed) {
+        long micros = nanos / 1000;
+        stats.latency.record(micros);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+        if (micros >= slowThresholdMicros) {
+            slowQueries.increment();
+            logSlowQuery(stats.template, micros, failed);
+        }
+    }
+    
+    void recordRows(QueryStats stats, long rows) {
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+    }
+    
+    /**
+     * Snapshot of all templates, slowest total time first
+     */
+    public List<QueryStats> getStats() {
+        List<QueryStats> list = new ArrayList<>(byTemplate.values());
+        list.sort(Comparator.comparingLong((QueryStats s) -> s.latency.getTotalMicros()).reversed());
+        return list;
+    }
+    
+    @Override
+    public long getTotalQueries() {
+        return byTemplate.values().stream().mapToLong(QueryStats::getCalls).sum();
+    }
+    
+    @Override
+    public long getTotalErrors() {
+        return byTemplate.values().stream().mapToLong(QueryStats::getErrors).sum();
+    }
+    
+    @Override
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+    
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return slowThresholdMicros / 1000;
+    }
+    
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowThresholdMicros = Math.max(0, millis) * 1000;
+    }
+    
+    @Override
+    public double getConnectionWaitP99Millis() {
+        return connectionWait.getPercentileMicros(99) / 1000.0;
+    }
+    
+    @Override
+    public String[] getTemplateSummaries() {
+        return getStats().stream().map(QueryStats::toString).toArray(String[]::new);
+    }
+    
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Query metrics at %s: %d queries, %d errors, %d slow, connection wait p50 %.2f ms p99 %.2f ms%n",
+                LocalDateTime.now(), getTotalQueries(), getTotalErrors(), getSlowQueries(),
+                connectionWait.getPercentileMicros(50) / 1000.0, getConnectionWaitP99Millis()));
+        sb.append(String.format("%8s %6s %9s %9s %9s %9s %9s %11s  %s%n",
+                "calls", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "max ms", "total ms", "template"));
+        for (QueryStats stats : getStats()) {
+            sb.append(stats).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+    
+    @Override
+    public void reset() {
+        byTemplate.clear();
+        bySql.clear();
+        connectionWait.reset();
+        slowQueries.reset();
+    }
+    
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("com.library:type=QueryMetrics"));
+        } catch (JMException e) {
+            System.err.println("Error registering query metrics MBean: " + e.getMessage());
+        }
+    }
+    
+    private void startPeriodicDump(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "query-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            if (!byTemplate.isEmpty()) {
+                System.out.print(dump());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    private synchronized void logSlowQuery(String template, long micros, boolean failed) {
+        try {
+            if (slowLogWriter == null) {
+                slowLogWriter = new PrintWriter(Files.newBufferedWriter(Paths.get(slowQueryLog), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            }
+            slowLogWriter.printf("%s %.1f ms%s %s%n", LocalDateTime.now(), micros / 1000.0,
+                    failed ? " FAILED" : "", template);
+            slowLogWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing slow query log: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Reduce a SQL string to its template: literals become ?, whitespace is
+     * collapsed, and IN lists of placeholders fold to a single (?...)
+     */
+    public static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int j = i + 1;
+                while (j < n) {
+                    char d = sql.charAt(j);
+                    if (d == '\\') {
+                        j += 2;
+                    } else if (d == c && j + 1 < n && sql.charAt(j + 1) == c) {
+                        j += 2;
+                    } else if (d == c) {
+                        break;
+                    } else {
+                        j++;
+                    }
+                }
+                sb.append('?');
+                i = j + 1;
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierChar(sb.charAt(sb.length() - 1)))) {
+                int j = i;
+                while (j < n && (Character.isDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+                    j++;
+                }
+                sb.append('?');
+                i = j;
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString().trim().replaceAll("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)", "(?...)");
+    }
+    
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+    
+    /**
+     * Counters for one SQL template
+     */
+    public static class QueryStats {
+        private final String template;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        
+        QueryStats(String template) {
+            this.template = template;
+        }
+        
+        public String getTemplate() {
+            return template;
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+        
+        public long getCalls() {
+            return latency.getCount();
+        }
+        
+        public long getRows() {
+            return rows.sum();
+        }
+        
+        public long getErrors() {
+            return errors.sum();
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%8d %6d %9d %9.2f %9.2f %9.2f %9.2f %11.1f  %s",
+                    getCalls(), getErrors(), getRows(),
+                    latency.getMeanMicros() / 1000.0,
+                    latency.getPercentileMicros(50) / 1000.0,
+                    latency.getPercentileMicros(99) / 1000.0,
+                    latency.getMaxMicros() / 1000.0,
+                    latency.getTotalMicros() / 1000.0,
+                    template);
+        }
+    }
+}
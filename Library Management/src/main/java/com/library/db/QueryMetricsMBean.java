@@ -0,0 +1,28 @@
+package com.library.db;
+
+/**
+ * JMX view of the query metrics, registered as com.library:type=QueryMetrics
+ */
+public interface QueryMetricsMBean {
+    
+    long getTotalQueries();
+    
+    long getTotalErrors();
+    
+    long getSlowQueries();
+    
+    long getSlowQueryThresholdMillis();
+    
+    void setSlowQueryThresholdMillis(long millis);
+    
+    double getConnectionWaitP99Millis();
+    
+    /**
+     * One line per SQL template, slowest total time first
+     */
+    String[] getTemplateSummaries();
+    
+    String dump();
+    
+    void reset();
+}
@@ -0,0 +1,76 @@
+package com.library.db;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Small LRU cache of compiled SQL keyed by query shape
+ *
+ * A shape names which filters are present and how results are sorted, not the
+ * values, so every query of one shape sends identical SQL text. That keeps the
+ * driver's statement cache (see DatabaseConnection) and the QueryMetrics templates
+ * to one entry per shape, and the SQL is only built once.
+ */
+public class QueryPlanCache {
+    private final Map<String, String> plans;
+    private long hits;
+    private long misses;
+    
+    public QueryPlanCache(int capacity) {
+        this.plans = new LinkedHashMap<String, String>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    
+    /**
+     * The SQL for a shape, compiling it on first use
+     */
+    public synchronized String get(String shape, Supplier<String> compiler) {
+        String sql = plans.get(shape);
+        if (sql != null) {
+            hits++;
+            return sql;
+        }
+        misses++;
+        sql = compiler.get();
+        plans.put(shape, sql);
+        return sql;
+    }
+    
+    public synchronized int size() {
+        return plans.size();
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Bind parameters in order; dates become SQL dates and enums their names
+     */
+    public static void bind(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object value = params.get(i);
+            if (value instanceof LocalDate) {
+                stmt.setDate(i + 1, Date.valueOf((LocalDate) value));
+            } else if (value instanceof Enum) {
+                stmt.setString(i + 1, ((Enum<?>) value).name());
+            } else {
+                stmt.setObject(i + 1, value);
+            }
+        }
+    }
+}
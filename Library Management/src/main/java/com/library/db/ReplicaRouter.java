@@ -0,0 +1,141 @@
+package com.library.db;
+
+import com.library.utils.Settings;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only work to a replica while keeping read-your-writes
+ *
+ * Once a session hands back a primary connection it borrowed for writing, its
+ * reads go to the primary for db.replica.pin_ms, so they see the write even if
+ * the replica lags. With db.replica.pin_scope=process (the default) a write pins
+ * the whole process, which covers a desk client's librarian and every client of
+ * an API server. With thread, only later reads on the writing thread are pinned;
+ * pooled API threads serve a client's next request on any thread, so that
+ * request may read from the lagging replica. When the replica cannot hand out a
+ * connection, reads use the primary and the replica is skipped for a few seconds.
+ */
+public class ReplicaRouter {
+    private static final long NEVER = Long.MIN_VALUE;
+    private static final long RETRY_REPLICA_NANOS = TimeUnit.SECONDS.toNanos(5);
+    
+    private final DatabaseConnection primary;
+    private final ThreadLocal<long[]> threadLastWrite = ThreadLocal.withInitial(() -> new long[] {NEVER});
+    private volatile DatabaseConnection replica;
+    private volatile long pinNanos;
+    private volatile boolean threadScope;
+    private volatile long lastWrite = NEVER;
+    private volatile long replicaDownUntil = NEVER;
+    
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+    
+    ReplicaRouter(DatabaseConnection primary, Settings settings) {
+        this.primary = primary;
+        configure(settings);
+    }
+    
+    /**
+     * Apply the db.replica.* settings, opening, reconfiguring or closing the replica pool
+     */
+    synchronized void configure(Settings settings) {
+        pinNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, settings.getInt("db.replica.pin_ms", 2000)));
+        threadScope = "thread".equalsIgnoreCase(settings.get("db.replica.pin_scope", "process").trim());
+        
+        if (!DatabaseConfig.hasReplica(settings)) {
+            if (replica != null) {
+                replica.closeConnection();
+                replica = null;
+            }
+            return;
+        }
+        DatabaseConfig config = DatabaseConfig.forReplica(settings);
+        if (replica == null) {
+            replica = new DatabaseConnection(config, "replica");
+        } else {
+            replica.applyConfig(config);
+        }
+        replicaDownUntil = NEVER;
+    }
+    
+    /**
+     * A connection for read-only work: the replica unless this session just wrote
+     * Throws only if the primary cannot hand out a connection either.
+     */
+    Connection getReadConnection() throws SQLException {
+        DatabaseConnection current = replica;
+        if (current == null) {
+            return primary.borrow(false);
+        }
+        if (isPinned()) {
+            pinnedReads.increment();
+            return primary.borrow(false);
+        }
+        long now = System.nanoTime();
+        if (replicaDownUntil == NEVER || now - replicaDownUntil >= 0) {
+            try {
+                Connection connection = current.borrow(false);
+                replicaDownUntil = NEVER;
+                replicaReads.increment();
+                return connection;
+            } catch (SQLException e) {
+                System.err.println("Replica unavailable, reading from the primary: " + e.getMessage());
+                replicaDownUntil = now + RETRY_REPLICA_NANOS;
+            }
+        }
+        fallbackReads.increment();
+        return primary.borrow(false);
+    }
+    
+    /**
+     * Start the pin window for the writing session
+     */
+    void recordWrite() {
+        long now = System.nanoTime();
+        lastWrite = now;
+        threadLastWrite.get()[0] = now;
+    }
+    
+    /**
+     * Whether this session wrote recently enough that its reads must see the primary
+     */
+    public boolean isPinned() {
+        long last = threadScope ? threadLastWrite.get()[0] : lastWrite;
+        return last != NEVER && System.nanoTime() - last < pinNanos;
+    }
+    
+    public boolean hasReplica() {
+        return replica != null;
+    }
+    
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+    
+    /**
+     * Reads sent to the primary because the session had just written
+     */
+    public long getPinnedReads() {
+        return pinnedReads.sum();
+    }
+    
+    /**
+     * Reads sent to the primary because the replica was unavailable
+     */
+    public long getFallbackReads() {
+        return fallbackReads.sum();
+    }
+    
+    public String getReport() {
+        if (replica == null) {
+            return "Replica: none, all reads on the primary";
+        }
+        return String.format("Replica: %d reads, %d pinned to primary, %d fell back to primary",
+                getReplicaReads(), getPinnedReads(), getFallbackReads());
+    }
+}
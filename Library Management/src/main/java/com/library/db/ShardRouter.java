@@ -0,0 +1,154 @@
+package com.library.db;
+
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Maps library branches to the databases that hold their books and loans
+ *
+ * A branch with db.shard.ID.url set gets its own connection pool, so branches
+ * no longer contend on one set of tables; every other branch uses the default
+ * pool. db.shards lists the branches a cross-branch query visits. Branches
+ * pointing at the same database are queried once.
+ */
+public class ShardRouter {
+    private static ShardRouter instance;
+    
+    private final ConcurrentHashMap<Integer, DatabaseConnection> shards = new ConcurrentHashMap<>();
+    private final ExecutorService fanOutPool;
+    
+    private ShardRouter() {
+        AtomicInteger counter = new AtomicInteger();
+        this.fanOutPool = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "shard-fanout-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static synchronized ShardRouter getInstance() {
+        if (instance == null) {
+            instance = new ShardRouter();
+            ConfigManager.addListener((previous, current) -> {
+                if (current.changed(previous, "db.")) {
+                    instance.reconfigure(current);
+                }
+            });
+        }
+        return instance;
+    }
+    
+    /**
+     * Pool for the branch's database
+     */
+    public DatabaseConnection route(int branchId) {
+        Settings settings = ConfigManager.getSettings();
+        if (!DatabaseConfig.hasShard(settings, branchId)) {
+            return DatabaseConnection.getInstance();
+        }
+        return shards.computeIfAbsent(branchId, id -> new DatabaseConnection(DatabaseConfig.forShard(settings, id), "shard-" + id));
+    }
+    
+    /**
+     * Branches visited by cross-branch queries: db.shards plus this desk's own branch
+     */
+    public List<Integer> getBranchIds() {
+        Set<Integer> ids = new LinkedHashSet<>();
+        ids.add(ConfigManager.getBranchId());
+        for (String id : ConfigManager.getProperty("db.shards", "").split(",")) {
+            try {
+                if (!id.trim().isEmpty()) {
+                    ids.add(Integer.parseInt(id.trim()));
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid branch id in db.shards: " + id);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+    
+    /**
+     * Run the query against every branch database in parallel and concatenate the results
+     * A database that fails is logged and left out, so one branch being down does not
+     * hide the others' results. Callers sort or merge the combined list themselves.
+     */
+    public <T> List<T> fanOut(Function<DatabaseConnection, List<T>> query) {
+        Map<String, DatabaseConnection> targets = new LinkedHashMap<>();
+        for (int branchId : getBranchIds()) {
+            DatabaseConnection pool = route(branchId);
+            targets.putIfAbsent(databaseKey(pool.getConfig()), pool);
+        }
+        if (targets.size() == 1) {
+            return new ArrayList<>(query.apply(targets.values().iterator().next()));
+        }
+        
+        Map<String, Future<List<T>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, DatabaseConnection> target : targets.entrySet()) {
+            futures.put(target.getKey(), fanOutPool.submit(() -> query.apply(target.getValue())));
+        }
+        List<T> merged = new ArrayList<>();
+        for (Map.Entry<String, Future<List<T>>> future : futures.entrySet()) {
+            try {
+                merged.addAll(future.getValue().get());
+            } catch (ExecutionException e) {
+                System.err.println("Shard query failed on " + future.getKey() + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Whether the branch's rows live in the database behind this pool
+     */
+    public boolean isStoredIn(int branchId, DatabaseConnection pool) {
+        DatabaseConnection branchPool = route(branchId);
+        return branchPool == pool || databaseKey(branchPool.getConfig()).equals(databaseKey(pool.getConfig()));
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    /**
+     * Close the idle connections of every shard pool
+     */
+    public void closeAll() {
+        for (DatabaseConnection pool : shards.values()) {
+            pool.closeConnection();
+        }
+    }
+    
+    /**
+     * Apply changed db.* settings to the shard pools, dropping shards no longer configured
+     */
+    private void reconfigure(Settings settings) {
+        for (Map.Entry<Integer, DatabaseConnection> shard : shards.entrySet()) {
+            if (DatabaseConfig.hasShard(settings, shard.getKey())) {
+                shard.getValue().applyConfig(DatabaseConfig.forShard(settings, shard.getKey()));
+            } else if (shards.remove(shard.getKey(), shard.getValue())) {
+                shard.getValue().closeConnection();
+            }
+        }
+    }
+    
+    private static String databaseKey(DatabaseConfig config) {
+        return config.getUsername() + "@" + config.getUrl();
+    }
+}
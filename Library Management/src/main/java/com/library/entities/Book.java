@@ -1,5 +1,6 @@
 package com.library.entities;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 
 /**
@@ -17,8 +18,12 @@ public class Book {
     private int availableCopies;
     private int totalCopies;
     private String description;
+    private int branchId;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    // Raw column values from the mapper, converted on first read since most views never show them
+    private Timestamp createdAtColumn;
+    private Timestamp updatedAtColumn;
     
     // Default constructor
     public Book() {}
@@ -123,6 +128,14 @@ public class Book {
         this.totalCopies = totalCopies;
     }
     
+    public int getBranchId() {
+        return branchId;
+    }
+    
+    public void setBranchId(int branchId) {
+        this.branchId = branchId;
+    }
+    
     public String getDescription() {
         return description;
     }
@@ -132,19 +145,39 @@ public class Book {
     }
     
     public LocalDateTime getCreatedAt() {
+        if (createdAt == null && createdAtColumn != null) {
+            createdAt = createdAtColumn.toLocalDateTime();
+            createdAtColumn = null;
+        }
         return createdAt;
     }
     
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
+        this.createdAtColumn = null;
+    }
+    
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = null;
+        this.createdAtColumn = createdAt;
     }
     
     public LocalDateTime getUpdatedAt() {
+        if (updatedAt == null && updatedAtColumn != null) {
+            updatedAt = updatedAtColumn.toLocalDateTime();
+            updatedAtColumn = null;
+        }
         return updatedAt;
     }
     
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
+        this.updatedAtColumn = null;
+    }
+    
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = null;
+        this.updatedAtColumn = updatedAt;
     }
     
     public boolean isAvailable() {
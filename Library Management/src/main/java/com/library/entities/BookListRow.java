@@ -0,0 +1,70 @@
+package com.library.entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only book row for list views
+ * Holds only the displayed columns and updated_at, the row version for ListMerger;
+ * load the full Book by id when a row is opened.
+ */
+public class BookListRow {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final String category;
+    private final int availableCopies;
+    private final int totalCopies;
+    private final LocalDateTime updatedAt;
+    
+    public BookListRow(int id, String title, String author, String category, int availableCopies, int totalCopies,
+                       LocalDateTime updatedAt) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.category = category;
+        this.availableCopies = availableCopies;
+        this.totalCopies = totalCopies;
+        this.updatedAt = updatedAt;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getAuthor() {
+        return author;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public int getAvailableCopies() {
+        return availableCopies;
+    }
+    
+    public int getTotalCopies() {
+        return totalCopies;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public boolean isAvailable() {
+        return availableCopies > 0;
+    }
+    
+    @Override
+    public String toString() {
+        return "BookListRow{" +
+                "id=" + id +
+                ", title='" + title + '\'' +
+                ", availableCopies=" + availableCopies +
+                '}';
+    }
+}
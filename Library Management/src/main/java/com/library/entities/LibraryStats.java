@@ -0,0 +1,72 @@
+package com.library.entities;
+
+/**
+ * Snapshot of the dashboard counters, see LiveStatsService
+ */
+public class LibraryStats {
+    private final int totalBooks;
+    private final int availableBooks;
+    private final int totalUsers;
+    private final int activeLoans;
+    private final int overdueLoans;
+    
+    public LibraryStats(int totalBooks, int availableBooks, int totalUsers, int activeLoans, int overdueLoans) {
+        this.totalBooks = totalBooks;
+        this.availableBooks = availableBooks;
+        this.totalUsers = totalUsers;
+        this.activeLoans = activeLoans;
+        this.overdueLoans = overdueLoans;
+    }
+    
+    public int getTotalBooks() {
+        return totalBooks;
+    }
+    
+    /**
+     * Books with at least one copy on the shelf
+     */
+    public int getAvailableBooks() {
+        return availableBooks;
+    }
+    
+    public int getTotalUsers() {
+        return totalUsers;
+    }
+    
+    /**
+     * Loans not yet returned, overdue ones included
+     */
+    public int getActiveLoans() {
+        return activeLoans;
+    }
+    
+    /**
+     * Loans not yet returned whose due date has passed
+     */
+    public int getOverdueLoans() {
+        return overdueLoans;
+    }
+    
+    /**
+     * Whether every counter matches the other snapshot
+     */
+    public boolean sameAs(LibraryStats other) {
+        return other != null
+                && totalBooks == other.totalBooks
+                && availableBooks == other.availableBooks
+                && totalUsers == other.totalUsers
+                && activeLoans == other.activeLoans
+                && overdueLoans == other.overdueLoans;
+    }
+    
+    @Override
+    public String toString() {
+        return "LibraryStats{" +
+                "totalBooks=" + totalBooks +
+                ", availableBooks=" + availableBooks +
+                ", totalUsers=" + totalUsers +
+                ", activeLoans=" + activeLoans +
+                ", overdueLoans=" + overdueLoans +
+                '}';
+    }
+}
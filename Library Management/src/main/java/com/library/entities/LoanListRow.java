@@ -0,0 +1,93 @@
+package com.library.entities;
+
+import com.library.entities.Transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Read-only loan row for list views
+ * Carries the patron name and book title from the join but not the fine or
+ * author; updated_at is kept as the row version for ListMerger.
+ */
+public class LoanListRow {
+    private final int id;
+    private final int userId;
+    private final int bookId;
+    private final String userName;
+    private final String bookTitle;
+    private final LocalDate issueDate;
+    private final LocalDate dueDate;
+    private final LocalDate returnDate;
+    private final TransactionStatus status;
+    private final LocalDateTime updatedAt;
+    
+    public LoanListRow(int id, int userId, int bookId, String userName, String bookTitle,
+                       LocalDate issueDate, LocalDate dueDate, LocalDate returnDate, TransactionStatus status,
+                       LocalDateTime updatedAt) {
+        this.id = id;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.userName = userName;
+        this.bookTitle = bookTitle;
+        this.issueDate = issueDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
+        this.status = status;
+        this.updatedAt = updatedAt;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public int getUserId() {
+        return userId;
+    }
+    
+    public int getBookId() {
+        return bookId;
+    }
+    
+    public String getUserName() {
+        return userName;
+    }
+    
+    public String getBookTitle() {
+        return bookTitle;
+    }
+    
+    public LocalDate getIssueDate() {
+        return issueDate;
+    }
+    
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+    
+    public LocalDate getReturnDate() {
+        return returnDate;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public boolean isReturned() {
+        return status == TransactionStatus.RETURNED;
+    }
+    
+    @Override
+    public String toString() {
+        return "LoanListRow{" +
+                "id=" + id +
+                ", userName='" + userName + '\'' +
+                ", bookTitle='" + bookTitle + '\'' +
+                ", status=" + status +
+                '}';
+    }
+}
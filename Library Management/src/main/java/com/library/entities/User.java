@@ -1,5 +1,6 @@
 package com.library.entities;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 
 /**
@@ -15,6 +16,9 @@ public class User {
     private String phone;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    // Raw column values from the mapper, converted on first read since most views never show them
+    private Timestamp createdAtColumn;
+    private Timestamp updatedAtColumn;
     
     public enum UserRole {
         ADMIN, USER
@@ -93,19 +97,39 @@ public class User {
     }
     
     public LocalDateTime getCreatedAt() {
+        if (createdAt == null && createdAtColumn != null) {
+            createdAt = createdAtColumn.toLocalDateTime();
+            createdAtColumn = null;
+        }
         return createdAt;
     }
     
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
+        this.createdAtColumn = null;
+    }
+    
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = null;
+        this.createdAtColumn = createdAt;
     }
     
     public LocalDateTime getUpdatedAt() {
+        if (updatedAt == null && updatedAtColumn != null) {
+            updatedAt = updatedAtColumn.toLocalDateTime();
+            updatedAtColumn = null;
+        }
         return updatedAt;
     }
     
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
+        this.updatedAtColumn = null;
+    }
+    
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = null;
+        this.updatedAtColumn = updatedAt;
     }
     
     public boolean isAdmin() {
@@ -0,0 +1,59 @@
+package com.library.entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only user row for list views, without the password
+ * updated_at is kept as the row version for ListMerger.
+ */
+public class UserListRow {
+    private final int id;
+    private final String username;
+    private final String email;
+    private final User.UserRole role;
+    private final String phone;
+    private final LocalDateTime updatedAt;
+    
+    public UserListRow(int id, String username, String email, User.UserRole role, String phone,
+                       LocalDateTime updatedAt) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.role = role;
+        this.phone = phone;
+        this.updatedAt = updatedAt;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public User.UserRole getRole() {
+        return role;
+    }
+    
+    public String getPhone() {
+        return phone;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    @Override
+    public String toString() {
+        return "UserListRow{" +
+                "id=" + id +
+                ", username='" + username + '\'' +
+                ", role=" + role +
+                '}';
+    }
+}
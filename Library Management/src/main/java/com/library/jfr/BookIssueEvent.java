@@ -0,0 +1,33 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for TransactionService.issueBook
+ */
+@Name("com.library.BookIssue")
+@Label("Book Issue")
+@Category({"Library", "Transactions"})
+@Description("Issuing a book to a user, including the availability check and copy update")
+@StackTrace(false)
+public class BookIssueEvent extends Event {
+    @Label("User ID")
+    public int userId;
+    
+    @Label("Book ID")
+    public int bookId;
+    
+    @Label("Transaction ID")
+    public int transactionId;
+    
+    @Label("Rows Affected")
+    public int rowsAffected;
+    
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,30 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for TransactionService.returnBook
+ */
+@Name("com.library.BookReturn")
+@Label("Book Return")
+@Category({"Library", "Transactions"})
+@Description("Returning an issued book, including the copy update")
+@StackTrace(false)
+public class BookReturnEvent extends Event {
+    @Label("Transaction ID")
+    public int transactionId;
+    
+    @Label("Book ID")
+    public int bookId;
+    
+    @Label("Rows Affected")
+    public int rowsAffected;
+    
+    @Label("Success")
+    public boolean success;
+}
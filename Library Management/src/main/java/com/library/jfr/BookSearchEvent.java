@@ -0,0 +1,28 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for BookService.searchBooks
+ */
+@Name("com.library.BookSearch")
+@Label("Book Search")
+@Category({"Library", "Catalog"})
+@Description("Catalog search by title, author or category")
+@StackTrace(false)
+public class BookSearchEvent extends Event {
+    @Label("Search Term")
+    public String searchTerm;
+    
+    @Label("Fuzziness")
+    @Description("Edits allowed per word, -1 for automatic, 0 for a substring search")
+    public int fuzziness;
+    
+    @Label("Result Count")
+    public int resultCount;
+}
@@ -0,0 +1,39 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the dashboard statistics refresh
+ */
+@Name("com.library.DashboardRefresh")
+@Label("Dashboard Refresh")
+@Category({"Library", "UI"})
+@Description("Recomputing the dashboard statistics line")
+@StackTrace(false)
+public class DashboardRefreshEvent extends Event {
+    @Label("User ID")
+    public int userId;
+    
+    @Label("Total Books")
+    public int totalBooks;
+    
+    @Label("Available Books")
+    public int availableBooks;
+    
+    @Label("Total Users")
+    public int totalUsers;
+    
+    @Label("Active Transactions")
+    public int activeTransactions;
+    
+    @Label("Overdue Transactions")
+    public int overdueTransactions;
+    
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,27 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for UserService.authenticate
+ */
+@Name("com.library.Login")
+@Label("Login")
+@Category({"Library", "Security"})
+@Description("Username and password check against the users table")
+@StackTrace(false)
+public class LoginEvent extends Event {
+    @Label("Username")
+    public String username;
+    
+    @Label("User ID")
+    public int userId;
+    
+    @Label("Success")
+    public boolean success;
+}
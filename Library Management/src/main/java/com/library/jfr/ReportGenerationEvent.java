@@ -0,0 +1,28 @@
+package com.library.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for ReportGenerator report builders
+ */
+@Name("com.library.ReportGeneration")
+@Label("Report Generation")
+@Category({"Library", "Reports"})
+@Description("Loading the rows for a report and formatting it")
+@StackTrace(false)
+public class ReportGenerationEvent extends Event {
+    @Label("Report Type")
+    public String reportType;
+    
+    @Label("Row Count")
+    public int rowCount;
+    
+    @Label("Report Length")
+    @Description("Characters in the generated report")
+    public int reportLength;
+}
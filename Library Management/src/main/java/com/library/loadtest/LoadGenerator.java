@@ -0,0 +1,285 @@
+package com.library.loadtest;
+
+import com.library.db.LatencyHistogram;
+import com.library.db.QueryMetrics;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the desk and kiosk workload against the services from N concurrent simulated clients
+ *
+ * Issues and searches pick books with Zipf-distributed popularity. A return looks up
+ * the loans of a patron who recently borrowed and returns one of them, the way a desk
+ * does. A false result from issue or return (copy gone, loan already returned) counts
+ * as a conflict; exceptions count as errors.
+ */
+public class LoadGenerator {
+    
+    public enum Operation {
+        ISSUE, RETURN, SEARCH, LOGIN
+    }
+    
+    private final List<Book> books;
+    private final List<User> users;
+    private final Map<Operation, Integer> mix;
+    private final ZipfDistribution bookPopularity;
+    private final ZipfDistribution userActivity;
+    private final int totalWeight;
+    
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    // Patrons with a loan we issued, so returns have something to return
+    private final ConcurrentLinkedQueue<Integer> borrowers = new ConcurrentLinkedQueue<>();
+    
+    private final BookService bookService = new BookService();
+    private final UserService userService = new UserService();
+    private final TransactionService transactionService = new TransactionService();
+    
+    public LoadGenerator(List<Book> books, List<User> users, Map<Operation, Integer> mix, double zipfExponent) {
+        if (books.isEmpty() || users.isEmpty()) {
+            throw new IllegalArgumentException("Load test needs at least one book and one user");
+        }
+        this.books = books;
+        this.users = users;
+        this.mix = new EnumMap<>(mix);
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Workload mix must have a positive weight");
+        }
+        this.bookPopularity = new ZipfDistribution(books.size(), zipfExponent, 42);
+        this.userActivity = new ZipfDistribution(users.size(), zipfExponent, 7);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+    
+    /**
+     * Run the clients for warmup + duration seconds, measuring only after the warmup
+     */
+    public Report run(int clients, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        QueryMetrics metrics = QueryMetrics.getInstance();
+        CountDownLatch done = new CountDownLatch(clients);
+        
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    clientLoop(measureFrom, stopAt);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+        
+        long untilMeasure = measureFrom - System.nanoTime();
+        if (untilMeasure > 0) {
+            TimeUnit.NANOSECONDS.sleep(untilMeasure);
+        }
+        long dbErrorsBefore = metrics.getTotalErrors();
+        done.await();
+        
+        return new Report(stats, clients, durationSeconds, metrics.getTotalErrors() - dbErrorsBefore,
+                metrics.getConnectionWait().getPercentileMicros(99));
+    }
+    
+    private void clientLoop(long measureFrom, long stopAt) {
+        while (true) {
+            long start = System.nanoTime();
+            if (start >= stopAt) {
+                return;
+            }
+            Operation operation = pickOperation();
+            Outcome outcome;
+            try {
+                outcome = execute(operation);
+            } catch (RuntimeException e) {
+                outcome = Outcome.ERROR;
+            }
+            if (start >= measureFrom) {
+                stats.get(operation).record(System.nanoTime() - start, outcome);
+            }
+        }
+    }
+    
+    private Operation pickOperation() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.SEARCH;
+    }
+    
+    private Outcome execute(Operation operation) {
+        switch (operation) {
+            case ISSUE: {
+                int userId = users.get(userActivity.next()).getId();
+                int bookId = books.get(bookPopularity.next()).getId();
+                if (transactionService.issueBook(userId, bookId, LocalDate.now().plusDays(ConfigManager.getMaxIssueDays()))) {
+                    borrowers.add(userId);
+                    return Outcome.OK;
+                }
+                return Outcome.CONFLICT;
+            }
+            case RETURN: {
+                Integer userId = borrowers.poll();
+                if (userId == null) {
+                    return Outcome.SKIPPED;
+                }
+                for (Transaction loan : transactionService.getTransactionsByUserId(userId)) {
+                    if (loan.isIssued()) {
+                        return transactionService.returnBook(loan.getId()) ? Outcome.OK : Outcome.CONFLICT;
+                    }
+                }
+                return Outcome.CONFLICT;
+            }
+            case SEARCH: {
+                bookService.searchBooks(searchTerm(books.get(bookPopularity.next())));
+                return Outcome.OK;
+            }
+            case LOGIN: {
+                User user = users.get(userActivity.next());
+                return userService.authenticate(user.getUsername(), user.getPassword()).isPresent()
+                        ? Outcome.OK : Outcome.ERROR;
+            }
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+    
+    /**
+     * A word from the book's title, as a patron would type it
+     */
+    private static String searchTerm(Book book) {
+        String[] words = book.getTitle().split("\\s+");
+        String word = words[ThreadLocalRandom.current().nextInt(words.length)];
+        return word.length() > 3 ? word : book.getTitle();
+    }
+    
+    enum Outcome {
+        OK, CONFLICT, ERROR, SKIPPED
+    }
+    
+    /**
+     * Latency and outcome counters for one operation type
+     */
+    public static class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        
+        void record(long nanos, Outcome outcome) {
+            switch (outcome) {
+                case OK:
+                    ok.increment();
+                    break;
+                case CONFLICT:
+                    conflicts.increment();
+                    break;
+                case ERROR:
+                    errors.increment();
+                    break;
+                default:
+                    skipped.increment();
+                    return;
+            }
+            latency.record(nanos / 1000);
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+        
+        public long getOk() {
+            return ok.sum();
+        }
+        
+        public long getConflicts() {
+            return conflicts.sum();
+        }
+        
+        public long getErrors() {
+            return errors.sum();
+        }
+        
+        public long getSkipped() {
+            return skipped.sum();
+        }
+    }
+    
+    /**
+     * Results of one run
+     */
+    public static class Report {
+        private final Map<Operation, OperationStats> stats;
+        private final int clients;
+        private final int seconds;
+        private final long databaseErrors;
+        private final long connectionWaitP99Micros;
+        
+        Report(Map<Operation, OperationStats> stats, int clients, int seconds, long databaseErrors,
+               long connectionWaitP99Micros) {
+            this.stats = stats;
+            this.clients = clients;
+            this.seconds = seconds;
+            this.databaseErrors = databaseErrors;
+            this.connectionWaitP99Micros = connectionWaitP99Micros;
+        }
+        
+        public Map<Operation, OperationStats> getStats() {
+            return stats;
+        }
+        
+        public long getTotalOperations() {
+            return stats.values().stream().mapToLong(s -> s.getLatency().getCount()).sum();
+        }
+        
+        public double getThroughput() {
+            return getTotalOperations() / (double) seconds;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d clients, %d s: %d operations, %.1f ops/s, %d database errors, connection wait p99 %.2f ms%n",
+                    clients, seconds, getTotalOperations(), getThroughput(), databaseErrors,
+                    connectionWaitP99Micros / 1000.0));
+            sb.append(String.format("%-8s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+                    "op", "count", "ops/s", "ok", "conflict", "error", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+            for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+                OperationStats s = entry.getValue();
+                LatencyHistogram h = s.getLatency();
+                sb.append(String.format("%-8s %9d %9.1f %9d %9d %9d %9.2f %9.2f %9.2f %9.2f%n",
+                        entry.getKey().name().toLowerCase(), h.getCount(), h.getCount() / (double) seconds,
+                        s.getOk(), s.getConflicts(), s.getErrors(),
+                        h.getPercentileMicros(50) / 1000.0, h.getPercentileMicros(95) / 1000.0,
+                        h.getPercentileMicros(99) / 1000.0, h.getMaxMicros() / 1000.0));
+            }
+            return sb.toString();
+        }
+    }
+}
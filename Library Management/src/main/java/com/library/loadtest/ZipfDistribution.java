@@ -0,0 +1,53 @@
+package com.library.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf-distributed ranks over n items: rank k is drawn with probability proportional to 1 / k^s
+ * Ranks are mapped through a fixed shuffle so popularity is not tied to id order.
+ */
+public class ZipfDistribution {
+    private final double[] cumulative;
+    private final int[] itemForRank;
+    
+    public ZipfDistribution(int items, double exponent, long seed) {
+        if (items <= 0) {
+            throw new IllegalArgumentException("Zipf distribution needs at least one item");
+        }
+        this.cumulative = new double[items];
+        double sum = 0;
+        for (int k = 1; k <= items; k++) {
+            sum += 1.0 / Math.pow(k, exponent);
+            cumulative[k - 1] = sum;
+        }
+        for (int i = 0; i < items; i++) {
+            cumulative[i] /= sum;
+        }
+        
+        this.itemForRank = new int[items];
+        for (int i = 0; i < items; i++) {
+            itemForRank[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = items - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = itemForRank[i];
+            itemForRank[i] = itemForRank[j];
+            itemForRank[j] = tmp;
+        }
+    }
+    
+    /**
+     * Index of the next item, between 0 and items - 1
+     */
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int rank = Arrays.binarySearch(cumulative, u);
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        return itemForRank[Math.min(rank, itemForRank.length - 1)];
+    }
+}
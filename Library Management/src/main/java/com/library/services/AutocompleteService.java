@@ -0,0 +1,326 @@
+package com.library.services;
+
+import com.library.cache.AutocompleteIndex;
+import com.library.cache.IntIntHashMap;
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+import com.library.entities.User;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Type-ahead suggestions for book titles, authors and usernames
+ *
+ * Terms are ranked by popularity: a title or author weighs the number of loans of
+ * its books (current and archived), a username the number of loans of that user.
+ * The indexes are built once from the database on a background thread and then
+ * kept current through CatalogEvents, so saves, deletes and new loans never
+ * trigger a reload. Until the first load finishes suggestions are empty.
+ */
+public class AutocompleteService implements CatalogListener, AutocompleteServiceMBean {
+    private static final String BOOK_LOANS = "SELECT book_id, COUNT(*) FROM (SELECT book_id FROM transactions " +
+                                             "UNION ALL SELECT book_id FROM transactions_history) t GROUP BY book_id";
+    private static final String USER_LOANS = "SELECT user_id, COUNT(*) FROM (SELECT user_id FROM transactions " +
+                                             "UNION ALL SELECT user_id FROM transactions_history) t GROUP BY user_id";
+    
+    private static AutocompleteService instance;
+    
+    private final DatabaseConnection dbConnection;
+    private final AutocompleteIndex titles = new AutocompleteIndex();
+    private final AutocompleteIndex authors = new AutocompleteIndex();
+    private final AutocompleteIndex usernames = new AutocompleteIndex();
+    
+    // Term ids held by each book and user, and the loan counts their weights came from
+    private final IntIntHashMap bookTitles = new IntIntHashMap(1024, -1);
+    private final IntIntHashMap bookAuthors = new IntIntHashMap(1024, -1);
+    private final IntIntHashMap bookLoans = new IntIntHashMap(1024, 0);
+    private final IntIntHashMap userTerms = new IntIntHashMap(256, -1);
+    private final IntIntHashMap userLoans = new IntIntHashMap(256, 0);
+    
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile boolean loaded;
+    private volatile long loadMillis;
+    private volatile long loadedAt;
+    
+    private AutocompleteService() {
+        this.dbConnection = DatabaseConnection.forDesk();
+    }
+    
+    public static synchronized AutocompleteService getInstance() {
+        if (instance == null) {
+            instance = new AutocompleteService();
+            instance.registerMBean();
+            CatalogEvents.addListener(instance, instance.dbConnection);
+        }
+        return instance;
+    }
+    
+    /**
+     * Start loading the indexes on a background thread unless they are loaded or loading
+     */
+    public void preload() {
+        if (isCurrent() || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                load();
+            } finally {
+                loading.set(false);
+            }
+        }, "autocomplete-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Rebuild all three indexes from the database
+     */
+    public synchronized boolean load() {
+        long start = System.nanoTime();
+        clearIndexes();
+        
+        try (Connection conn = dbConnection.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            
+            try (ResultSet rs = stmt.executeQuery(BOOK_LOANS)) {
+                while (rs.next()) {
+                    bookLoans.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(USER_LOANS)) {
+                while (rs.next()) {
+                    userLoans.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, title, author FROM books")) {
+                while (rs.next()) {
+                    addBook(rs.getInt(1), rs.getString(2), rs.getString(3));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, username FROM users")) {
+                while (rs.next()) {
+                    addUser(rs.getInt(1), rs.getString(2));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading autocomplete indexes: " + e.getMessage());
+            clearIndexes();
+            loaded = false;
+            return false;
+        }
+        
+        loadMillis = (System.nanoTime() - start) / 1_000_000;
+        loadedAt = System.currentTimeMillis();
+        loaded = true;
+        return true;
+    }
+    
+    public List<String> suggestTitles(String prefix, int limit) {
+        return suggest(titles, prefix, limit);
+    }
+    
+    public List<String> suggestAuthors(String prefix, int limit) {
+        return suggest(authors, prefix, limit);
+    }
+    
+    public List<String> suggestUsernames(String prefix, int limit) {
+        return suggest(usernames, prefix, limit);
+    }
+    
+    /**
+     * Matching titles first, then authors, without duplicates
+     */
+    public List<String> suggestBooks(String prefix, int limit) {
+        return merge(suggestTitles(prefix, limit), suggestAuthors(prefix, limit), limit);
+    }
+    
+    /**
+     * Matching usernames first, then titles, for the loan search
+     */
+    public List<String> suggestLoans(String prefix, int limit) {
+        return merge(suggestUsernames(prefix, limit), suggestTitles(prefix, limit), limit);
+    }
+    
+    private List<String> suggest(AutocompleteIndex index, String prefix, int limit) {
+        if (!isCurrent()) {
+            preload();
+            if (!loaded) {
+                return Collections.emptyList();
+            }
+        }
+        return index.suggest(prefix, limit);
+    }
+    
+    /**
+     * Loaded and younger than the configured index TTL
+     */
+    private boolean isCurrent() {
+        return loaded && !dbConnection.getConfig().isExpired(loadedAt);
+    }
+    
+    private static List<String> merge(List<String> first, List<String> second, int limit) {
+        List<String> result = new ArrayList<>(first);
+        for (String term : second) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!result.contains(term)) {
+                result.add(term);
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public synchronized void bookSaved(Book book) {
+        if (!loaded) {
+            return;
+        }
+        int id = book.getId();
+        int loans = bookLoans.get(id);
+        int titleId = bookTitles.get(id);
+        if (titleId < 0 || !titles.matches(titleId, book.getTitle())) {
+            titles.remove(titleId, loans);
+            bookTitles.put(id, titles.add(book.getTitle(), loans));
+        }
+        int authorId = bookAuthors.get(id);
+        if (authorId < 0 || !authors.matches(authorId, book.getAuthor())) {
+            authors.remove(authorId, loans);
+            bookAuthors.put(id, authors.add(book.getAuthor(), loans));
+        }
+    }
+    
+    @Override
+    public synchronized void bookDeleted(int bookId) {
+        if (!loaded) {
+            return;
+        }
+        int loans = bookLoans.remove(bookId);
+        titles.remove(bookTitles.remove(bookId), loans);
+        authors.remove(bookAuthors.remove(bookId), loans);
+    }
+    
+    @Override
+    public synchronized void userSaved(User user) {
+        if (!loaded) {
+            return;
+        }
+        int id = user.getId();
+        int termId = userTerms.get(id);
+        if (termId < 0 || !usernames.matches(termId, user.getUsername())) {
+            int loans = userLoans.get(id);
+            usernames.remove(termId, loans);
+            userTerms.put(id, usernames.add(user.getUsername(), loans));
+        }
+    }
+    
+    @Override
+    public synchronized void userDeleted(int userId) {
+        if (!loaded) {
+            return;
+        }
+        usernames.remove(userTerms.remove(userId), userLoans.remove(userId));
+    }
+    
+    @Override
+    public synchronized void loanIssued(int transactionId, int userId, int bookId) {
+        if (!loaded) {
+            return;
+        }
+        bookLoans.addTo(bookId, 1);
+        titles.addWeight(bookTitles.get(bookId), 1);
+        authors.addWeight(bookAuthors.get(bookId), 1);
+        userLoans.addTo(userId, 1);
+        usernames.addWeight(userTerms.get(userId), 1);
+    }
+    
+    @Override
+    public void catalogReloaded() {
+        loaded = false;
+        preload();
+    }
+    
+    @Override
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    @Override
+    public int getTitleCount() {
+        return titles.size();
+    }
+    
+    @Override
+    public int getAuthorCount() {
+        return authors.size();
+    }
+    
+    @Override
+    public int getUsernameCount() {
+        return usernames.size();
+    }
+    
+    @Override
+    public synchronized long getEstimatedBytes() {
+        return titles.estimateBytes() + authors.estimateBytes() + usernames.estimateBytes()
+                + bookTitles.estimateBytes() + bookAuthors.estimateBytes() + bookLoans.estimateBytes()
+                + userTerms.estimateBytes() + userLoans.estimateBytes();
+    }
+    
+    @Override
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+    
+    @Override
+    public String getReport() {
+        return String.format("Autocomplete: %d titles, %d authors, %d usernames, %.1f KB, loaded in %d ms",
+                getTitleCount(), getAuthorCount(), getUsernameCount(), getEstimatedBytes() / 1024.0, loadMillis);
+    }
+    
+    @Override
+    public void reload() {
+        load();
+    }
+    
+    private void addBook(int id, String title, String author) {
+        int loans = bookLoans.get(id);
+        bookTitles.put(id, titles.add(title, loans));
+        bookAuthors.put(id, authors.add(author, loans));
+    }
+    
+    private void addUser(int id, String username) {
+        userTerms.put(id, usernames.add(username, userLoans.get(id)));
+    }
+    
+    private void clearIndexes() {
+        titles.clear();
+        authors.clear();
+        usernames.clear();
+        bookTitles.clear();
+        bookAuthors.clear();
+        bookLoans.clear();
+        userTerms.clear();
+        userLoans.clear();
+    }
+    
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("com.library:type=Autocomplete"));
+        } catch (JMException e) {
+            System.err.println("Error registering autocomplete MBean: " + e.getMessage());
+        }
+    }
+}
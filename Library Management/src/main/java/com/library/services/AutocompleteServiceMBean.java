@@ -0,0 +1,26 @@
+package com.library.services;
+
+/**
+ * JMX view of the type-ahead indexes, registered as com.library:type=Autocomplete
+ */
+public interface AutocompleteServiceMBean {
+    
+    boolean isLoaded();
+    
+    int getTitleCount();
+    
+    int getAuthorCount();
+    
+    int getUsernameCount();
+    
+    /**
+     * Approximate heap used by the three indexes and their id maps
+     */
+    long getEstimatedBytes();
+    
+    long getLoadMillis();
+    
+    String getReport();
+    
+    void reload();
+}
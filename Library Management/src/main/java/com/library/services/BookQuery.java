@@ -0,0 +1,171 @@
+package com.library.services;
+
+import java.util.List;
+
+/**
+ * Filters, sort order and limit for BookService.findBooks
+ *
+ * Unset filters are not applied. The text filter is a prefix match on title or
+ * author so it can use their indexes; category and year filters use theirs.
+ * Setters return the query so a spec reads as one expression.
+ */
+public class BookQuery {
+    public static final int DEFAULT_LIMIT = 500;
+    
+    public enum SortKey {
+        TITLE("title"),
+        AUTHOR("author"),
+        CATEGORY("category"),
+        YEAR("publication_year"),
+        AVAILABLE("available_copies"),
+        TOTAL("total_copies");
+        
+        private final String column;
+        
+        SortKey(String column) {
+            this.column = column;
+        }
+    }
+    
+    private String text;
+    private String category;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private boolean yearUnknown;
+    private Boolean available;
+    private SortKey sortKey = SortKey.TITLE;
+    private boolean descending;
+    private int limit = DEFAULT_LIMIT;
+    
+    public BookQuery text(String text) {
+        this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+        return this;
+    }
+    
+    public BookQuery category(String category) {
+        this.category = category;
+        return this;
+    }
+    
+    /**
+     * Publication year range, inclusive; either end may be null
+     */
+    public BookQuery publishedBetween(Integer from, Integer to) {
+        this.yearFrom = from;
+        this.yearTo = to;
+        this.yearUnknown = false;
+        return this;
+    }
+    
+    /**
+     * Only books without a publication year
+     */
+    public BookQuery yearUnknown() {
+        this.yearFrom = null;
+        this.yearTo = null;
+        this.yearUnknown = true;
+        return this;
+    }
+    
+    /**
+     * True for books with a copy on the shelf, false for fully checked out, null for both
+     */
+    public BookQuery available(Boolean available) {
+        this.available = available;
+        return this;
+    }
+    
+    public BookQuery sortBy(SortKey sortKey, boolean descending) {
+        this.sortKey = sortKey;
+        this.descending = descending;
+        return this;
+    }
+    
+    public BookQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public Integer getYearFrom() {
+        return yearFrom;
+    }
+    
+    public Integer getYearTo() {
+        return yearTo;
+    }
+    
+    public boolean isYearUnknown() {
+        return yearUnknown;
+    }
+    
+    public Boolean getAvailable() {
+        return available;
+    }
+    
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    /**
+     * Which filters are set and the sort order; queries of one shape share their SQL
+     */
+    public String shape() {
+        return "book:" + (text != null ? "T" : "") + (category != null ? "C" : "") +
+               (yearFrom != null ? "F" : "") + (yearTo != null ? "U" : "") + (yearUnknown ? "N" : "") +
+               (available == null ? "" : available ? "A" : "O") + ":" + sortKey + (descending ? ":D" : ":A");
+    }
+    
+    /**
+     * Append the WHERE, ORDER BY and LIMIT clauses to sql (when not null) and their values to params
+     * Both come from this one method so the SQL and the parameters always line up.
+     */
+    public void appendClauses(StringBuilder sql, List<Object> params) {
+        QueryClauses where = new QueryClauses(sql);
+        if (text != null) {
+            String prefix = QueryClauses.likePrefix(text);
+            where.add("(title LIKE ? OR author LIKE ?)");
+            params.add(prefix);
+            params.add(prefix);
+        }
+        if (category != null) {
+            where.add("category = ?");
+            params.add(category);
+        }
+        if (yearFrom != null) {
+            where.add("publication_year >= ?");
+            params.add(yearFrom);
+        }
+        if (yearTo != null) {
+            where.add("publication_year <= ?");
+            params.add(yearTo);
+        }
+        if (yearUnknown) {
+            where.add("(publication_year IS NULL OR publication_year <= 0)");
+        }
+        if (available != null) {
+            where.add(available ? "available_copies > 0" : "available_copies <= 0");
+        }
+        if (sql != null) {
+            String direction = descending ? " DESC" : " ASC";
+            sql.append(" ORDER BY ").append(sortKey.column).append(direction).append(", id").append(direction)
+               .append(" LIMIT ?");
+        }
+        params.add(limit);
+    }
+}
@@ -1,11 +1,24 @@
 package com.library.services;
 
+import com.library.cache.CompactBookStore;
+import com.library.cache.StringCanonicalizer;
 import com.library.db.DatabaseConnection;
+import com.library.db.QueryPlanCache;
+import com.library.db.ShardRouter;
 import com.library.entities.Book;
+import com.library.entities.BookListRow;
+import com.library.jfr.BookSearchEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+import com.library.utils.ValidationUtils;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -13,21 +26,55 @@ import java.util.Optional;
  * Handles all database operations related to books
  */
 public class BookService {
+    // Column order is fixed so mapResultSetToBook can read by index
+    private static final String SELECT_BOOKS = "SELECT id, title, author, isbn, category, publisher, publication_year, " +
+                                               "available_copies, total_copies, description, created_at, updated_at FROM books";
+    // SELECT_BOOKS columns plus branch_id, for results merged across branch databases
+    private static final String BRANCH_SEARCH = "SELECT id, title, author, isbn, category, publisher, publication_year, " +
+                                                "available_copies, total_copies, description, created_at, updated_at, branch_id " +
+                                                "FROM books WHERE title LIKE ? OR author LIKE ? OR category LIKE ? " +
+                                                "ORDER BY title LIMIT ?";
+    private static final Comparator<Book> BY_TITLE = Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingInt(Book::getBranchId)
+            .thenComparingInt(Book::getId);
+    // Column order is fixed so mapResultSetToBookListRow can read by index
+    private static final String BOOK_LIST_SELECT = "SELECT id, title, author, category, available_copies, total_copies, updated_at FROM books";
+    // Compiled BookQuery SQL by shape, shared by every instance
+    private static final QueryPlanCache PLANS = new QueryPlanCache(64);
+    
     private final DatabaseConnection dbConnection;
+    private final StringCanonicalizer strings;
+    private final int branchId;
     
     public BookService() {
-        this.dbConnection = DatabaseConnection.getInstance();
+        this(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Service over one branch's catalog, in that branch's database
+     */
+    public BookService(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+        this.strings = StringCanonicalizer.getInstance();
+        this.branchId = branchId;
     }
     
     /**
      * Create a new book
+     * The ISBN is stored in its normalized form, the key catalog imports upsert on.
      */
     public boolean createBook(Book book) {
         String sql = "INSERT INTO books (title, author, isbn, category, publisher, publication_year, " +
-                    "available_copies, total_copies, description) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    "available_copies, total_copies, description, branch_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        if (book.getBranchId() <= 0) {
+            book.setBranchId(branchId);
+        }
+        book.setIsbn(ValidationUtils.normalizeISBN(book.getIsbn()));
         
+        // The pool rolls back a transaction left open by a failed write
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
             
             stmt.setString(1, book.getTitle());
             stmt.setString(2, book.getAuthor());
@@ -38,6 +85,7 @@ public class BookService {
             stmt.setInt(7, book.getAvailableCopies());
             stmt.setInt(8, book.getTotalCopies());
             stmt.setString(9, book.getDescription());
+            stmt.setInt(10, book.getBranchId());
             
             int affectedRows = stmt.executeUpdate();
             
@@ -47,6 +95,9 @@ public class BookService {
                         book.setId(generatedKeys.getInt(1));
                     }
                 }
+                ChangeOutbox.append(conn, Entity.BOOK, book.getId(), Action.INSERT);
+                conn.commit();
+                CatalogEvents.fireBookSaved(branchId, book);
                 return true;
             }
         } catch (SQLException e) {
@@ -60,18 +111,21 @@ public class BookService {
      * Get book by ID
      */
     public Optional<Book> getBookById(int id) {
-        String sql = "SELECT * FROM books WHERE id = ?";
+        String sql = SELECT_BOOKS + " WHERE id = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapResultSetToBook(rs));
+        try {
+            return dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, id);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return Optional.of(mapResultSetToBook(rs));
+                        }
+                    }
                 }
-            }
+                return Optional.empty();
+            });
         } catch (SQLException e) {
             System.err.println("Error getting book by ID: " + e.getMessage());
         }
@@ -79,46 +133,183 @@ public class BookService {
         return Optional.empty();
     }
     
+    /**
+     * Get books by ID in the order given, skipping any that no longer exist
+     */
+    public List<Book> getBooksByIds(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        StringBuilder sql = new StringBuilder(SELECT_BOOKS).append(" WHERE id IN (");
+        for (int i = 0; i < ids.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        
+        try {
+            return dbConnection.read(conn -> {
+                Map<Integer, Book> byId = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < ids.length; i++) {
+                        stmt.setInt(i + 1, ids[i]);
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Book book = mapResultSetToBook(rs);
+                            byId.put(book.getId(), book);
+                        }
+                    }
+                }
+                List<Book> books = new ArrayList<>(ids.length);
+                for (int id : ids) {
+                    Book book = byId.get(id);
+                    if (book != null) {
+                        books.add(book);
+                    }
+                }
+                return books;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting books by ID: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+    
     /**
      * Get all books
      */
     public List<Book> getAllBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books ORDER BY title";
+        String sql = SELECT_BOOKS + " ORDER BY title";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                books.add(mapResultSetToBook(rs));
-            }
+        try {
+            return dbConnection.read(conn -> {
+                List<Book> books = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        books.add(mapResultSetToBook(rs));
+                    }
+                }
+                return books;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting all books: " + e.getMessage());
         }
         
-        return books;
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get the books created, updated or deleted since a watermark, oldest change first
+     * A null since returns every book. Returns null if the database could not be read.
+     */
+    public ChangeSet<Book> getBooksChangedSince(LocalDateTime since) {
+        try {
+            return dbConnection.read(conn -> {
+                LocalDateTime now = Tombstones.databaseTime(conn);
+                boolean full = !Tombstones.covers(since, now);
+                String sql = SELECT_BOOKS + (full ? "" : " WHERE updated_at >= ?") + " ORDER BY updated_at, id";
+                List<Book> books = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    if (!full) {
+                        stmt.setTimestamp(1, Timestamp.valueOf(since));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            books.add(mapResultSetToBook(rs));
+                        }
+                    }
+                }
+                List<Integer> deleted = full ? new ArrayList<>() : Tombstones.deletedSince(conn, Entity.BOOK, since);
+                return new ChangeSet<>(books, deleted, Tombstones.watermark(now), full);
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting changed books: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Get the book list view rows, without descriptions or audit columns
+     */
+    public List<BookListRow> getBookListRows() {
+        String sql = BOOK_LIST_SELECT + " ORDER BY title";
+        
+        try {
+            return dbConnection.read(conn -> {
+                List<BookListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapResultSetToBookListRow(rs));
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting book list: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get book list rows matching a query spec, filtered, sorted and limited by the database
+     */
+    public List<BookListRow> findBooks(BookQuery query) {
+        String sql = PLANS.get(query.shape(), () -> {
+            StringBuilder compiled = new StringBuilder(BOOK_LIST_SELECT);
+            query.appendClauses(compiled, new ArrayList<>());
+            return compiled.toString();
+        });
+        List<Object> params = new ArrayList<>();
+        query.appendClauses(null, params);
+        
+        try {
+            return dbConnection.read(conn -> {
+                List<BookListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    QueryPlanCache.bind(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(mapResultSetToBookListRow(rs));
+                        }
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error finding books: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
     }
     
     /**
      * Get available books (with available copies > 0)
      */
     public List<Book> getAvailableBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE available_copies > 0 ORDER BY title";
+        String sql = SELECT_BOOKS + " WHERE available_copies > 0 ORDER BY title";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                books.add(mapResultSetToBook(rs));
-            }
+        try {
+            return dbConnection.read(conn -> {
+                List<Book> books = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        books.add(mapResultSetToBook(rs));
+                    }
+                }
+                return books;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting available books: " + e.getMessage());
         }
         
-        return books;
+        return new ArrayList<>();
     }
     
     /**
@@ -128,9 +319,11 @@ public class BookService {
         String sql = "UPDATE books SET title = ?, author = ?, isbn = ?, category = ?, " +
                     "publisher = ?, publication_year = ?, available_copies = ?, total_copies = ?, " +
                     "description = ? WHERE id = ?";
+        book.setIsbn(ValidationUtils.normalizeISBN(book.getIsbn()));
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
             stmt.setString(1, book.getTitle());
             stmt.setString(2, book.getAuthor());
@@ -143,7 +336,12 @@ public class BookService {
             stmt.setString(9, book.getDescription());
             stmt.setInt(10, book.getId());
             
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                ChangeOutbox.append(conn, Entity.BOOK, book.getId(), Action.UPDATE);
+                conn.commit();
+                CatalogEvents.fireBookSaved(branchId, book);
+                return true;
+            }
         } catch (SQLException e) {
             System.err.println("Error updating book: " + e.getMessage());
         }
@@ -159,9 +357,18 @@ public class BookService {
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
+            // Its loans go with it (ON DELETE CASCADE)
+            Tombstones.recordLoansOf(conn, Tombstones.LoanOwner.BOOK, id);
             stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                Tombstones.record(conn, Entity.BOOK, id);
+                ChangeOutbox.append(conn, Entity.BOOK, id, Action.DELETE);
+                conn.commit();
+                CatalogEvents.fireBookDeleted(branchId, id);
+                return true;
+            }
         } catch (SQLException e) {
             System.err.println("Error deleting book: " + e.getMessage());
         }
@@ -173,26 +380,121 @@ public class BookService {
      * Search books by title, author, or category
      */
     public List<Book> searchBooks(String searchTerm) {
+        return searchBooks(searchTerm, -1);
+    }
+    
+    /**
+     * Search books by title, author, or category, returning at most limit matches; a negative limit means all
+     */
+    public List<Book> searchBooks(String searchTerm, int limit) {
+        BookSearchEvent event = new BookSearchEvent();
+        event.begin();
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE title LIKE ? OR author LIKE ? OR category LIKE ? ORDER BY title";
+        String sql = SELECT_BOOKS + " WHERE title LIKE ? OR author LIKE ? OR category LIKE ? ORDER BY title" +
+                     (limit >= 0 ? " LIMIT ?" : "");
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            String searchPattern = "%" + searchTerm + "%";
-            stmt.setString(1, searchPattern);
-            stmt.setString(2, searchPattern);
-            stmt.setString(3, searchPattern);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapResultSetToBook(rs));
+        try {
+            books = dbConnection.read(conn -> {
+                List<Book> found = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    String searchPattern = "%" + searchTerm + "%";
+                    stmt.setString(1, searchPattern);
+                    stmt.setString(2, searchPattern);
+                    stmt.setString(3, searchPattern);
+                    if (limit >= 0) {
+                        stmt.setInt(4, limit);
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(mapResultSetToBook(rs));
+                        }
+                    }
                 }
-            }
+                return found;
+            });
         } catch (SQLException e) {
             System.err.println("Error searching books: " + e.getMessage());
         }
         
+        event.searchTerm = searchTerm;
+        event.resultCount = books.size();
+        event.commit();
+        return books;
+    }
+    
+    /**
+     * Search every branch's catalog in parallel and merge the results by title
+     * Each branch database returns its first {@code limit} matches, so the merged
+     * first {@code limit} are exact. A branch whose database fails is left out.
+     */
+    public List<Book> searchAllBranches(String searchTerm, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        BookSearchEvent event = new BookSearchEvent();
+        event.begin();
+        List<Book> books = ShardRouter.getInstance().fanOut(shard -> searchShard(shard, searchTerm, limit));
+        books.sort(BY_TITLE);
+        if (books.size() > limit) {
+            books = new ArrayList<>(books.subList(0, limit));
+        }
+        
+        event.searchTerm = searchTerm;
+        event.resultCount = books.size();
+        event.commit();
+        return books;
+    }
+    
+    private List<Book> searchShard(DatabaseConnection shard, String searchTerm, int limit) {
+        try {
+            return shard.read(conn -> {
+                List<Book> books = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(BRANCH_SEARCH)) {
+                    String searchPattern = "%" + searchTerm + "%";
+                    stmt.setString(1, searchPattern);
+                    stmt.setString(2, searchPattern);
+                    stmt.setString(3, searchPattern);
+                    stmt.setInt(4, limit);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Book book = mapResultSetToBook(rs);
+                            book.setBranchId(rs.getInt(13));
+                            books.add(book);
+                        }
+                    }
+                }
+                return books;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error searching branch books: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Search books with options; fuzzy searches match title and author words despite typos
+     * Falls back to the substring search if the fuzzy index cannot be built, and for
+     * branches other than the desk's, since the index holds the desk's database.
+     */
+    public List<Book> searchBooks(String searchTerm, SearchOptions options) {
+        if (!options.isFuzzy() || branchId != ConfigManager.getBranchId()) {
+            return searchBooks(searchTerm, options.getLimit());
+        }
+        
+        BookSearchEvent event = new BookSearchEvent();
+        event.begin();
+        int[] ids = FuzzySearchService.getInstance().search(searchTerm, options);
+        if (ids == null) {
+            return searchBooks(searchTerm, new SearchOptions(0, options.getLimit()));
+        }
+        List<Book> books = getBooksByIds(ids);
+        
+        event.searchTerm = searchTerm;
+        event.fuzziness = options.getFuzziness();
+        event.resultCount = books.size();
+        event.commit();
         return books;
     }
     
@@ -200,45 +502,51 @@ public class BookService {
      * Get books by category
      */
     public List<Book> getBooksByCategory(String category) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE category = ? ORDER BY title";
+        String sql = SELECT_BOOKS + " WHERE category = ? ORDER BY title";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, category);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapResultSetToBook(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Book> books = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, category);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            books.add(mapResultSetToBook(rs));
+                        }
+                    }
                 }
-            }
+                return books;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting books by category: " + e.getMessage());
         }
         
-        return books;
+        return new ArrayList<>();
     }
     
     /**
      * Get all unique categories
      */
     public List<String> getAllCategories() {
-        List<String> categories = new ArrayList<>();
         String sql = "SELECT DISTINCT category FROM books WHERE category IS NOT NULL ORDER BY category";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                categories.add(rs.getString("category"));
-            }
+        try {
+            return dbConnection.read(conn -> {
+                List<String> categories = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        categories.add(rs.getString("category"));
+                    }
+                }
+                return categories;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting categories: " + e.getMessage());
         }
         
-        return categories;
+        return new ArrayList<>();
     }
     
     /**
@@ -249,11 +557,17 @@ public class BookService {
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
             stmt.setInt(1, change);
             stmt.setInt(2, bookId);
             
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                ChangeOutbox.append(conn, Entity.BOOK, bookId, Action.UPDATE);
+                conn.commit();
+                CatalogEvents.fireCopiesChanged(branchId, bookId, change);
+                return true;
+            }
         } catch (SQLException e) {
             System.err.println("Error updating available copies: " + e.getMessage());
         }
@@ -267,16 +581,16 @@ public class BookService {
     public boolean isBookAvailable(int bookId) {
         String sql = "SELECT available_copies FROM books WHERE id = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, bookId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("available_copies") > 0;
+        try {
+            return dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, bookId);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() && rs.getInt("available_copies") > 0;
+                    }
                 }
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error checking book availability: " + e.getMessage());
         }
@@ -284,34 +598,64 @@ public class BookService {
         return false;
     }
     
+    /**
+     * Load the whole catalog into a compact store
+     * Returns the number of books loaded, or -1 on error. A retried attempt
+     * overwrites the rows the failed one already stored.
+     */
+    public int loadInto(CompactBookStore store) {
+        String sql = SELECT_BOOKS;
+        
+        try {
+            return dbConnection.read(conn -> {
+                int loaded = 0;
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        store.put(mapResultSetToBook(rs));
+                        loaded++;
+                    }
+                }
+                return loaded;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error loading books into store: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Map a BOOK_LIST_SELECT row to a BookListRow
+     */
+    private BookListRow mapResultSetToBookListRow(ResultSet rs) throws SQLException {
+        return new BookListRow(rs.getInt(1), rs.getString(2), strings.canonicalize(rs.getString(3)),
+                strings.canonicalize(rs.getString(4)), rs.getInt(5), rs.getInt(6), toLocalDateTime(rs.getTimestamp(7)));
+    }
+    
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+    
     /**
      * Map ResultSet to Book object
      */
     private Book mapResultSetToBook(ResultSet rs) throws SQLException {
         Book book = new Book();
-        book.setId(rs.getInt("id"));
-        book.setTitle(rs.getString("title"));
-        book.setAuthor(rs.getString("author"));
-        book.setIsbn(rs.getString("isbn"));
-        book.setCategory(rs.getString("category"));
-        book.setPublisher(rs.getString("publisher"));
-        
-        Integer pubYear = rs.getObject("publication_year", Integer.class);
-        book.setPublicationYear(pubYear);
-        
-        book.setAvailableCopies(rs.getInt("available_copies"));
-        book.setTotalCopies(rs.getInt("total_copies"));
-        book.setDescription(rs.getString("description"));
-        
-        Timestamp createdAt = rs.getTimestamp("created_at");
-        if (createdAt != null) {
-            book.setCreatedAt(createdAt.toLocalDateTime());
-        }
+        book.setId(rs.getInt(1));
+        book.setTitle(rs.getString(2));
+        book.setAuthor(strings.canonicalize(rs.getString(3)));
+        book.setIsbn(rs.getString(4));
+        book.setCategory(strings.canonicalize(rs.getString(5)));
+        book.setPublisher(strings.canonicalize(rs.getString(6)));
         
-        Timestamp updatedAt = rs.getTimestamp("updated_at");
-        if (updatedAt != null) {
-            book.setUpdatedAt(updatedAt.toLocalDateTime());
-        }
+        int pubYear = rs.getInt(7);
+        book.setPublicationYear(rs.wasNull() ? null : pubYear);
+        
+        book.setAvailableCopies(rs.getInt(8));
+        book.setTotalCopies(rs.getInt(9));
+        book.setDescription(rs.getString(10));
+        book.setCreatedAt(rs.getTimestamp(11));
+        book.setUpdatedAt(rs.getTimestamp(12));
         
         return book;
     }
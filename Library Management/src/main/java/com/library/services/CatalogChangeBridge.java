@@ -0,0 +1,101 @@
+package com.library.services;
+
+import com.library.entities.Book;
+import com.library.entities.User;
+import com.library.services.ChangeEvent.Action;
+import com.library.utils.ConfigManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Replays other processes' changes through CatalogEvents
+ *
+ * Each changed book or user is read back once per batch and fired as saved or
+ * deleted, so listeners get the current row rather than a delta. A row that
+ * cannot be read back is left alone; if it was deleted, its own event follows.
+ * Loan events are not replayed: the book update written alongside every
+ * issue and return already carries the new available copies. The poller reads
+ * the desk's database, so the events are fired as the desk's branch.
+ */
+class CatalogChangeBridge implements ChangeEventListener {
+    private final int branchId = ConfigManager.getBranchId();
+    
+    @Override
+    public void changesPublished(List<ChangeEvent> events) {
+        if (!CatalogEvents.hasListeners()) {
+            return;
+        }
+        Map<Integer, Action> books = new LinkedHashMap<>();
+        Map<Integer, Action> users = new LinkedHashMap<>();
+        boolean reload = false;
+        for (ChangeEvent event : events) {
+            if (!event.isRemote()) {
+                continue;
+            }
+            switch (event.getEntity()) {
+                case BOOK:
+                    if (event.isBulk()) {
+                        reload = true;
+                    } else {
+                        books.put(event.getEntityId(), event.getAction());
+                    }
+                    break;
+                case USER:
+                    users.put(event.getEntityId(), event.getAction());
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        if (reload) {
+            CatalogEvents.fireCatalogReloaded(branchId);
+        } else {
+            replayBooks(books);
+        }
+        replayUsers(users);
+    }
+    
+    private void replayBooks(Map<Integer, Action> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        List<Integer> saved = new ArrayList<>();
+        for (Map.Entry<Integer, Action> entry : books.entrySet()) {
+            if (entry.getValue() != Action.DELETE) {
+                saved.add(entry.getKey());
+            }
+        }
+        Map<Integer, Book> current = new HashMap<>();
+        if (!saved.isEmpty()) {
+            for (Book book : new BookService(branchId).getBooksByIds(saved.stream().mapToInt(Integer::intValue).toArray())) {
+                current.put(book.getId(), book);
+            }
+        }
+        for (Map.Entry<Integer, Action> entry : books.entrySet()) {
+            Book book = current.get(entry.getKey());
+            if (entry.getValue() == Action.DELETE) {
+                CatalogEvents.fireBookDeleted(branchId, entry.getKey());
+            } else if (book != null) {
+                CatalogEvents.fireBookSaved(branchId, book);
+            }
+        }
+    }
+    
+    private void replayUsers(Map<Integer, Action> users) {
+        UserService userService = new UserService(branchId);
+        for (Map.Entry<Integer, Action> entry : users.entrySet()) {
+            if (entry.getValue() == Action.DELETE) {
+                CatalogEvents.fireUserDeleted(branchId, entry.getKey());
+            } else {
+                Optional<User> user = userService.getUserById(entry.getKey());
+                user.ifPresent(saved -> CatalogEvents.fireUserSaved(branchId, saved));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.User;
+
+import java.time.LocalDate;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Process-wide registry of CatalogListeners
+ * Every event names the branch whose database it was committed to, and a listener
+ * only hears about the database it was registered for, so a service working on
+ * another branch's database never feeds its ids into the desk's indexes.
+ * A failing listener is logged and does not stop the others or the change itself.
+ */
+public final class CatalogEvents {
+    private static final CopyOnWriteArrayList<Registration> listeners = new CopyOnWriteArrayList<>();
+    
+    private CatalogEvents() {
+    }
+    
+    /**
+     * Listen to changes committed to the given database, by any branch stored in it
+     */
+    public static synchronized void addListener(CatalogListener listener, DatabaseConnection database) {
+        for (Registration registration : listeners) {
+            if (registration.listener == listener) {
+                return;
+            }
+        }
+        listeners.add(new Registration(listener, database));
+    }
+    
+    public static void removeListener(CatalogListener listener) {
+        listeners.removeIf(registration -> registration.listener == listener);
+    }
+    
+    public static boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+    
+    public static void fireBookSaved(int branchId, Book book) {
+        fire(branchId, listener -> listener.bookSaved(book));
+    }
+    
+    public static void fireBookDeleted(int branchId, int bookId) {
+        fire(branchId, listener -> listener.bookDeleted(bookId));
+    }
+    
+    public static void fireCopiesChanged(int branchId, int bookId, int delta) {
+        fire(branchId, listener -> listener.copiesChanged(bookId, delta));
+    }
+    
+    public static void fireUserSaved(int branchId, User user) {
+        fire(branchId, listener -> listener.userSaved(user));
+    }
+    
+    public static void fireUserDeleted(int branchId, int userId) {
+        fire(branchId, listener -> listener.userDeleted(userId));
+    }
+    
+    public static void fireLoanIssued(int branchId, int transactionId, int userId, int bookId, LocalDate dueDate) {
+        fire(branchId, listener -> listener.loanIssued(transactionId, userId, bookId, dueDate));
+    }
+    
+    public static void fireLoanReturned(int branchId, int transactionId, int bookId) {
+        fire(branchId, listener -> listener.loanReturned(transactionId, bookId));
+    }
+    
+    public static void fireCatalogReloaded(int branchId) {
+        fire(branchId, CatalogListener::catalogReloaded);
+    }
+    
+    private static void fire(int branchId, Consumer<CatalogListener> event) {
+        for (Registration registration : listeners) {
+            if (!ShardRouter.getInstance().isStoredIn(branchId, registration.database)) {
+                continue;
+            }
+            try {
+                event.accept(registration.listener);
+            } catch (RuntimeException e) {
+                System.err.println("Catalog listener failed: " + e);
+            }
+        }
+    }
+    
+    private static final class Registration {
+        final CatalogListener listener;
+        final DatabaseConnection database;
+        
+        Registration(CatalogListener listener, DatabaseConnection database) {
+            this.listener = listener;
+            this.database = database;
+        }
+    }
+}
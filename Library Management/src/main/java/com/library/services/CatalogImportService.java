@@ -0,0 +1,543 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+import com.library.utils.CatalogRecord;
+import com.library.utils.CatalogRecordReader;
+import com.library.utils.ConfigManager;
+import com.library.utils.ValidationUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Service for bulk catalog imports
+ * Streams records from a reader through a bounded pipeline: one thread reads,
+ * a worker pool validates chunks in parallel and the calling thread upserts
+ * them in order with multi-row inserts keyed on the unique ISBN. Records
+ * without an ISBN match an existing book without one on title and author.
+ */
+public class CatalogImportService {
+    
+    private static final String INSERT_PREFIX = "INSERT INTO books (title, author, isbn, category, publisher, " +
+            "publication_year, available_copies, total_copies, description, branch_id) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // available_copies is assigned first so it still sees the old total_copies
+    private static final String UPSERT_SUFFIX = " ON DUPLICATE KEY UPDATE title = VALUES(title), " +
+            "author = VALUES(author), category = VALUES(category), publisher = VALUES(publisher), " +
+            "publication_year = VALUES(publication_year), " +
+            "available_copies = GREATEST(0, available_copies + VALUES(total_copies) - total_copies), " +
+            "total_copies = VALUES(total_copies), description = VALUES(description)";
+    // Same assignments as UPSERT_SUFFIX, for records that have no ISBN to key on
+    private static final String UPDATE_WITHOUT_ISBN = "UPDATE books SET category = ?, publisher = ?, " +
+            "publication_year = ?, available_copies = GREATEST(0, available_copies + ? - total_copies), " +
+            "total_copies = ?, description = ? WHERE isbn IS NULL AND title = ? AND author = ? AND branch_id = ?";
+    
+    private static final Future<List<CatalogRecord>> END_OF_INPUT = CompletableFuture.completedFuture(null);
+    
+    private final DatabaseConnection dbConnection;
+    private final int branchId;
+    
+    public CatalogImportService() {
+        this(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Import into one branch's catalog, in that branch's database
+     */
+    public CatalogImportService(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+        this.branchId = branchId;
+    }
+    
+    /**
+     * Import all records from the reader
+     * When {@code checkpointFile} is given and {@code options.isResume()} is set,
+     * records up to the last committed checkpoint are skipped, and rejects
+     * written after that checkpoint are dropped from the rejects file.
+     */
+    public ImportResult importCatalog(CatalogRecordReader reader, ImportOptions options,
+                                      Consumer<ImportResult> progressListener) throws IOException, SQLException {
+        Checkpoint checkpoint = options.isResume() ? readCheckpoint(options.getCheckpointFile()) : Checkpoint.NONE;
+        long resumeAfter = checkpoint.lastRecord;
+        ImportResult result = new ImportResult(resumeAfter);
+        
+        ExecutorService validators = Executors.newFixedThreadPool(options.getValidationThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "catalog-import-validator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Future<List<CatalogRecord>>> pending =
+                new ArrayBlockingQueue<>(options.getValidationThreads() * 2);
+        AtomicReference<IOException> readFailure = new AtomicReference<>();
+        
+        Thread readerThread = new Thread(() -> readChunks(reader, options, resumeAfter, validators, pending, readFailure),
+                "catalog-import-reader");
+        readerThread.setDaemon(true);
+        
+        try (Connection conn = dbConnection.getConnection();
+             BufferedWriter rejects = openRejectsFile(options, checkpoint)) {
+            conn.setAutoCommit(false);
+            readerThread.start();
+            
+            int uncommittedBatches = 0;
+            long lastRecord = resumeAfter;
+            long committedUpserts = 0;
+            try (PreparedStatement fullBatch = conn.prepareStatement(buildUpsert(options.getBatchSize()))) {
+                while (true) {
+                    List<CatalogRecord> chunk = pending.take().get();
+                    if (chunk == null) {
+                        break;
+                    }
+                    
+                    List<Book> valid = new ArrayList<>(chunk.size());
+                    List<Book> withoutIsbn = new ArrayList<>();
+                    for (CatalogRecord record : chunk) {
+                        if (record.isRejected()) {
+                            writeReject(rejects, record);
+                            result.rejected++;
+                        } else if (record.getBook().getIsbn() == null) {
+                            withoutIsbn.add(record.getBook());
+                        } else {
+                            valid.add(record.getBook());
+                        }
+                        lastRecord = record.getRecordNumber();
+                    }
+                    result.recordsRead += chunk.size();
+                    
+                    if (!valid.isEmpty()) {
+                        if (valid.size() == options.getBatchSize()) {
+                            bindRows(fullBatch, valid);
+                            fullBatch.executeUpdate();
+                        } else {
+                            try (PreparedStatement partial = conn.prepareStatement(buildUpsert(valid.size()))) {
+                                bindRows(partial, valid);
+                                partial.executeUpdate();
+                            }
+                        }
+                        result.upserted += valid.size();
+                    }
+                    if (!withoutIsbn.isEmpty()) {
+                        upsertWithoutIsbn(conn, withoutIsbn);
+                        result.upserted += withoutIsbn.size();
+                    }
+                    
+                    if (++uncommittedBatches >= options.getCommitEveryBatches()) {
+                        commit(conn, rejects, options, lastRecord, result.upserted > committedUpserts);
+                        committedUpserts = result.upserted;
+                        uncommittedBatches = 0;
+                        result.lastCommittedRecord = lastRecord;
+                        if (progressListener != null) {
+                            progressListener.accept(result.snapshot());
+                        }
+                    }
+                }
+            }
+            
+            commit(conn, rejects, options, lastRecord, result.upserted > committedUpserts);
+            result.lastCommittedRecord = lastRecord;
+            conn.setAutoCommit(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Catalog import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Catalog validation failed: " + e.getCause(), e.getCause());
+        } finally {
+            readerThread.interrupt();
+            validators.shutdownNow();
+        }
+        
+        if (readFailure.get() != null) {
+            throw readFailure.get();
+        }
+        
+        result.finish();
+        if (result.upserted > 0) {
+            CatalogEvents.fireCatalogReloaded(branchId);
+        }
+        if (progressListener != null) {
+            progressListener.accept(result.snapshot());
+        }
+        return result;
+    }
+    
+    /**
+     * Reader thread: cut the source into chunks and hand each to the validator pool
+     * The queue of futures bounds how far reading can run ahead of the writer.
+     */
+    private void readChunks(CatalogRecordReader reader, ImportOptions options, long resumeAfter,
+                            ExecutorService validators, BlockingQueue<Future<List<CatalogRecord>>> pending,
+                            AtomicReference<IOException> readFailure) {
+        try {
+            List<CatalogRecord> chunk = new ArrayList<>(options.getBatchSize());
+            CatalogRecord record;
+            while ((record = reader.next()) != null) {
+                if (record.getRecordNumber() <= resumeAfter) {
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() == options.getBatchSize()) {
+                    List<CatalogRecord> toValidate = chunk;
+                    pending.put(validators.submit(() -> validate(toValidate)));
+                    chunk = new ArrayList<>(options.getBatchSize());
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<CatalogRecord> toValidate = chunk;
+                pending.put(validators.submit(() -> validate(toValidate)));
+            }
+        } catch (IOException e) {
+            readFailure.set(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        
+        try {
+            pending.put(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Validate and normalize a chunk of records, marking rejects in place
+     */
+    private List<CatalogRecord> validate(List<CatalogRecord> chunk) {
+        int maxYear = Year.now().getValue() + 1;
+        for (CatalogRecord record : chunk) {
+            if (record.isRejected()) {
+                continue;
+            }
+            Book book = record.getBook();
+            book.setTitle(ValidationUtils.sanitizeString(book.getTitle()));
+            book.setAuthor(ValidationUtils.sanitizeString(book.getAuthor()));
+            
+            if (!ValidationUtils.isValidTitle(book.getTitle())) {
+                record.reject("Missing or too long title");
+            } else if (!ValidationUtils.isValidAuthor(book.getAuthor())) {
+                record.reject("Missing or too long author");
+            } else if (!ValidationUtils.isValidISBN(book.getIsbn())) {
+                record.reject("Invalid ISBN: " + book.getIsbn());
+            } else if (book.getCategory() != null && !ValidationUtils.isValidCategory(book.getCategory())) {
+                record.reject("Category too long");
+            } else if (book.getPublicationYear() != null
+                    && (book.getPublicationYear() <= 0 || book.getPublicationYear() > maxYear)) {
+                // Not isValidYear(): catalogs legitimately hold pre-1900 titles
+                record.reject("Invalid publication year: " + book.getPublicationYear());
+            } else if (!ValidationUtils.isPositiveInteger(book.getTotalCopies())) {
+                record.reject("Total copies must be positive");
+            } else {
+                book.setIsbn(ValidationUtils.normalizeISBN(book.getIsbn()));
+                if (book.getCategory() != null) {
+                    book.setCategory(ValidationUtils.sanitizeString(book.getCategory()));
+                }
+            }
+        }
+        return chunk;
+    }
+    
+    private String buildUpsert(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW_PLACEHOLDERS.length() + 2)
+                + UPSERT_SUFFIX.length());
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+        }
+        return sql.append(UPSERT_SUFFIX).toString();
+    }
+    
+    /**
+     * Update the branch's book without an ISBN that has the same title and author, or insert a new one
+     */
+    private void upsertWithoutIsbn(Connection conn, List<Book> books) throws SQLException {
+        try (PreparedStatement update = conn.prepareStatement(UPDATE_WITHOUT_ISBN);
+             PreparedStatement insert = conn.prepareStatement(buildUpsert(1))) {
+            for (Book book : books) {
+                update.setString(1, book.getCategory());
+                update.setString(2, book.getPublisher());
+                if (book.getPublicationYear() != null) {
+                    update.setInt(3, book.getPublicationYear());
+                } else {
+                    update.setNull(3, Types.INTEGER);
+                }
+                update.setInt(4, book.getTotalCopies());
+                update.setInt(5, book.getTotalCopies());
+                update.setString(6, book.getDescription());
+                update.setString(7, book.getTitle());
+                update.setString(8, book.getAuthor());
+                update.setInt(9, branchId);
+                if (update.executeUpdate() == 0) {
+                    bindRows(insert, List.of(book));
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+    
+    private void bindRows(PreparedStatement stmt, List<Book> books) throws SQLException {
+        int index = 1;
+        for (Book book : books) {
+            stmt.setString(index++, book.getTitle());
+            stmt.setString(index++, book.getAuthor());
+            stmt.setString(index++, book.getIsbn());
+            stmt.setString(index++, book.getCategory());
+            stmt.setString(index++, book.getPublisher());
+            if (book.getPublicationYear() != null) {
+                stmt.setInt(index++, book.getPublicationYear());
+            } else {
+                stmt.setNull(index++, Types.INTEGER);
+            }
+            stmt.setInt(index++, book.getAvailableCopies());
+            stmt.setInt(index++, book.getTotalCopies());
+            stmt.setString(index++, book.getDescription());
+            stmt.setInt(index++, branchId);
+        }
+    }
+    
+    /**
+     * Commit the open batches; one change event stands for all the books they upserted
+     * The checkpoint records the rejects file's length at this commit, so a resumed
+     * import can drop rejects flushed from batches that were never committed.
+     */
+    private void commit(Connection conn, BufferedWriter rejects, ImportOptions options, long lastRecord,
+                        boolean booksChanged) throws SQLException, IOException {
+        if (booksChanged) {
+            ChangeOutbox.append(conn, ChangeEvent.Entity.BOOK, 0, ChangeEvent.Action.UPDATE);
+        }
+        conn.commit();
+        long rejectsLength = -1;
+        if (rejects != null) {
+            rejects.flush();
+            rejectsLength = Files.size(options.getRejectsFile());
+        }
+        writeCheckpoint(options.getCheckpointFile(), new Checkpoint(lastRecord, rejectsLength));
+    }
+    
+    private BufferedWriter openRejectsFile(ImportOptions options, Checkpoint checkpoint) throws IOException {
+        Path rejectsFile = options.getRejectsFile();
+        if (rejectsFile == null) {
+            return null;
+        }
+        boolean append = options.isResume() && checkpoint.lastRecord > 0 && Files.exists(rejectsFile);
+        if (append && checkpoint.rejectsLength >= 0) {
+            try (FileChannel channel = FileChannel.open(rejectsFile, StandardOpenOption.WRITE)) {
+                if (channel.size() > checkpoint.rejectsLength) {
+                    channel.truncate(checkpoint.rejectsLength);
+                }
+            }
+        }
+        BufferedWriter writer = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        if (!append) {
+            writer.write("record,reason");
+            writer.newLine();
+        }
+        return writer;
+    }
+    
+    private void writeReject(BufferedWriter rejects, CatalogRecord record) throws IOException {
+        if (rejects == null) {
+            return;
+        }
+        rejects.write(record.getRecordNumber() + ",\"" + record.getError().replace("\"", "\"\"") + "\"");
+        rejects.newLine();
+    }
+    
+    private Checkpoint readCheckpoint(Path checkpointFile) {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return Checkpoint.NONE;
+        }
+        try {
+            // "record,rejectsLength"; older checkpoints hold the record number alone
+            String[] fields = new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim().split(",");
+            return new Checkpoint(Long.parseLong(fields[0]), fields.length > 1 ? Long.parseLong(fields[1]) : -1);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable import checkpoint: " + e.getMessage());
+            return Checkpoint.NONE;
+        }
+    }
+    
+    private void writeCheckpoint(Path checkpointFile, Checkpoint checkpoint) throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        // Write-then-rename so a crash never leaves a half written checkpoint
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temp, (checkpoint.lastRecord + "," + checkpoint.rejectsLength).getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Last committed record and the rejects file's length at that commit (-1 if unknown)
+     */
+    private static class Checkpoint {
+        static final Checkpoint NONE = new Checkpoint(0, -1);
+        
+        final long lastRecord;
+        final long rejectsLength;
+        
+        Checkpoint(long lastRecord, long rejectsLength) {
+            this.lastRecord = lastRecord;
+            this.rejectsLength = rejectsLength;
+        }
+    }
+    
+    /**
+     * Tuning and bookkeeping options for an import run
+     */
+    public static class ImportOptions {
+        private int batchSize = 500;
+        private int commitEveryBatches = 4;
+        private int validationThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        private boolean resume;
+        private Path checkpointFile;
+        private Path rejectsFile;
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = batchSize;
+        }
+        
+        public int getCommitEveryBatches() {
+            return commitEveryBatches;
+        }
+        
+        public void setCommitEveryBatches(int commitEveryBatches) {
+            this.commitEveryBatches = Math.max(1, commitEveryBatches);
+        }
+        
+        public int getValidationThreads() {
+            return validationThreads;
+        }
+        
+        public void setValidationThreads(int validationThreads) {
+            this.validationThreads = Math.max(1, validationThreads);
+        }
+        
+        public boolean isResume() {
+            return resume;
+        }
+        
+        public void setResume(boolean resume) {
+            this.resume = resume;
+        }
+        
+        public Path getCheckpointFile() {
+            return checkpointFile;
+        }
+        
+        public void setCheckpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+        }
+        
+        public Path getRejectsFile() {
+            return rejectsFile;
+        }
+        
+        public void setRejectsFile(Path rejectsFile) {
+            this.rejectsFile = rejectsFile;
+        }
+    }
+    
+    /**
+     * Counters for an import run, also used as progress snapshots
+     */
+    public static class ImportResult {
+        private final long startNanos = System.nanoTime();
+        private final long skipped;
+        private long recordsRead;
+        private long upserted;
+        private long rejected;
+        private long lastCommittedRecord;
+        private long elapsedMillis;
+        
+        private ImportResult(long skipped) {
+            this.skipped = skipped;
+            this.lastCommittedRecord = skipped;
+        }
+        
+        private ImportResult(ImportResult source) {
+            this.skipped = source.skipped;
+            this.recordsRead = source.recordsRead;
+            this.upserted = source.upserted;
+            this.rejected = source.rejected;
+            this.lastCommittedRecord = source.lastCommittedRecord;
+            this.elapsedMillis = (System.nanoTime() - source.startNanos) / 1_000_000;
+        }
+        
+        private ImportResult snapshot() {
+            return new ImportResult(this);
+        }
+        
+        private void finish() {
+            this.elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        }
+        
+        public long getSkipped() {
+            return skipped;
+        }
+        
+        public long getRecordsRead() {
+            return recordsRead;
+        }
+        
+        public long getUpserted() {
+            return upserted;
+        }
+        
+        public long getRejected() {
+            return rejected;
+        }
+        
+        public long getLastCommittedRecord() {
+            return lastCommittedRecord;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        public double getRecordsPerSecond() {
+            return elapsedMillis == 0 ? 0 : recordsRead * 1000.0 / elapsedMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("read=%d upserted=%d rejected=%d skipped=%d committed-through=%d (%.0f records/s)",
+                    recordsRead, upserted, rejected, skipped, lastCommittedRecord, getRecordsPerSecond());
+        }
+    }
+}
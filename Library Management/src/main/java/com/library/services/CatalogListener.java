@@ -0,0 +1,61 @@
+package com.library.services;
+
+import com.library.entities.Book;
+import com.library.entities.User;
+
+import java.time.LocalDate;
+
+/**
+ * Callbacks for committed catalog, user and loan changes, fired by the services
+ * so in-memory indexes can update incrementally instead of reloading
+ *
+ * Callbacks run on the thread that made the change and must be quick.
+ */
+public interface CatalogListener {
+    
+    /**
+     * A book was created or updated
+     */
+    default void bookSaved(Book book) {
+    }
+    
+    default void bookDeleted(int bookId) {
+    }
+    
+    /**
+     * Available copies of a book changed by delta outside an issue or return
+     */
+    default void copiesChanged(int bookId, int delta) {
+    }
+    
+    /**
+     * A user was created or updated
+     */
+    default void userSaved(User user) {
+    }
+    
+    default void userDeleted(int userId) {
+    }
+    
+    /**
+     * A loan was committed; transactionId is 0 when the key was not read back
+     */
+    default void loanIssued(int transactionId, int userId, int bookId) {
+    }
+    
+    /**
+     * A loan was committed with the given due date; forwards to the three-argument form unless overridden
+     */
+    default void loanIssued(int transactionId, int userId, int bookId, LocalDate dueDate) {
+        loanIssued(transactionId, userId, bookId);
+    }
+    
+    default void loanReturned(int transactionId, int bookId) {
+    }
+    
+    /**
+     * Many rows changed at once (bulk import, restore); reload anything derived from the database
+     */
+    default void catalogReloaded() {
+    }
+}
@@ -0,0 +1,212 @@
+package com.library.services;
+
+import com.library.cache.IntIntHashMap;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.entities.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+
+/**
+ * Local copy of what offline circulation needs to check an issue or return
+ *
+ * Available copies by book, the user ids, and the book of every open loan. Kept
+ * current with the changed-since queries while online and saved to a file, so
+ * a desk that loses the link, or starts without one, can still tell whether a
+ * copy is on the shelf. Offline issues and returns are applied to it as they
+ * are journaled; the next refresh after replay brings it back in line with the
+ * server.
+ */
+final class CatalogSnapshot {
+    private static final int FORMAT_VERSION = 1;
+    
+    private IntIntHashMap copies = new IntIntHashMap(1024, -1);
+    private IntIntHashMap users = new IntIntHashMap(256, -1);
+    // Book id by open loan id
+    private IntIntHashMap loans = new IntIntHashMap(256, -1);
+    private LocalDateTime booksSince;
+    private LocalDateTime usersSince;
+    private LocalDateTime loansSince;
+    private boolean stale;
+    
+    /**
+     * Pull the changes since the last refresh
+     * Returns the number of rows changed or deleted, or -1 if any table could not be read.
+     */
+    synchronized int refresh(BookService bookService, UserService userService,
+                             TransactionService transactionService) {
+        ChangeSet<Book> books = bookService.getBooksChangedSince(stale ? null : booksSince);
+        ChangeSet<User> changedUsers = userService.getUsersChangedSince(stale ? null : usersSince);
+        ChangeSet<Transaction> transactions = transactionService.getTransactionsChangedSince(stale ? null : loansSince);
+        if (books == null || changedUsers == null || transactions == null) {
+            return -1;
+        }
+        
+        if (books.isFull()) {
+            copies = new IntIntHashMap(Math.max(1024, books.getChanged().size()), -1);
+        }
+        for (Book book : books.getChanged()) {
+            copies.put(book.getId(), book.getAvailableCopies());
+        }
+        books.getDeletedIds().forEach(copies::remove);
+        
+        if (changedUsers.isFull()) {
+            users = new IntIntHashMap(Math.max(256, changedUsers.getChanged().size()), -1);
+        }
+        for (User user : changedUsers.getChanged()) {
+            users.put(user.getId(), 0);
+        }
+        changedUsers.getDeletedIds().forEach(users::remove);
+        
+        if (transactions.isFull()) {
+            loans = new IntIntHashMap(256, -1);
+        }
+        for (Transaction transaction : transactions.getChanged()) {
+            if (transaction.getStatus() == TransactionStatus.RETURNED) {
+                loans.remove(transaction.getId());
+            } else {
+                loans.put(transaction.getId(), transaction.getBookId());
+            }
+        }
+        transactions.getDeletedIds().forEach(loans::remove);
+        
+        booksSince = books.getWatermark();
+        usersSince = changedUsers.getWatermark();
+        loansSince = transactions.getWatermark();
+        stale = false;
+        return books.getChanged().size() + books.getDeletedIds().size()
+                + changedUsers.getChanged().size() + changedUsers.getDeletedIds().size()
+                + transactions.getChanged().size() + transactions.getDeletedIds().size();
+    }
+    
+    /**
+     * Make the next refresh reload everything, dropping local changes the server did not take
+     */
+    synchronized void invalidate() {
+        stale = true;
+    }
+    
+    synchronized boolean isLoaded() {
+        return booksSince != null;
+    }
+    
+    /**
+     * Why the issue cannot be made, or null if it can
+     */
+    synchronized String checkIssue(int userId, int bookId) {
+        if (!users.containsKey(userId)) {
+            return "Unknown user " + userId;
+        }
+        int available = copies.get(bookId);
+        if (available < 0) {
+            return "Unknown book " + bookId;
+        }
+        return available == 0 ? "No copies of book " + bookId + " are available" : null;
+    }
+    
+    synchronized void applyIssue(int bookId) {
+        copies.addTo(bookId, -1);
+    }
+    
+    /**
+     * Book of the open loan, or -1 if the loan is not known to be open
+     */
+    synchronized int getLoanBook(int transactionId) {
+        return loans.get(transactionId);
+    }
+    
+    synchronized void applyReturn(int transactionId) {
+        int bookId = loans.remove(transactionId);
+        if (bookId >= 0 && copies.containsKey(bookId)) {
+            copies.addTo(bookId, 1);
+        }
+    }
+    
+    synchronized void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            writeWatermark(out, booksSince);
+            writeWatermark(out, usersSince);
+            writeWatermark(out, loansSince);
+            writeMap(out, copies);
+            writeMap(out, users);
+            writeMap(out, loans);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Read a saved snapshot; false if there is none or it is unreadable
+     */
+    synchronized boolean load(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return false;
+            }
+            LocalDateTime loadedBooksSince = readWatermark(in);
+            LocalDateTime loadedUsersSince = readWatermark(in);
+            LocalDateTime loadedLoansSince = readWatermark(in);
+            IntIntHashMap loadedCopies = readMap(in);
+            IntIntHashMap loadedUsers = readMap(in);
+            IntIntHashMap loadedLoans = readMap(in);
+            
+            copies = loadedCopies;
+            users = loadedUsers;
+            loans = loadedLoans;
+            booksSince = loadedBooksSince;
+            usersSince = loadedUsersSince;
+            loansSince = loadedLoansSince;
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable catalog snapshot " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private static void writeWatermark(DataOutputStream out, LocalDateTime watermark) throws IOException {
+        out.writeUTF(watermark != null ? watermark.toString() : "");
+    }
+    
+    private static LocalDateTime readWatermark(DataInputStream in) throws IOException {
+        String value = in.readUTF();
+        return value.isEmpty() ? null : LocalDateTime.parse(value);
+    }
+    
+    private static void writeMap(DataOutputStream out, IntIntHashMap map) throws IOException {
+        out.writeInt(map.size());
+        IOException[] failure = new IOException[1];
+        map.forEach((key, value) -> {
+            try {
+                out.writeInt(key);
+                out.writeInt(value);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+    
+    private static IntIntHashMap readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        IntIntHashMap map = new IntIntHashMap(Math.max(16, size), -1);
+        for (int i = 0; i < size; i++) {
+            map.put(in.readInt(), in.readInt());
+        }
+        return map;
+    }
+}
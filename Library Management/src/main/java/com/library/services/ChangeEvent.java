@@ -0,0 +1,115 @@
+package com.library.services;
+
+import java.time.LocalDateTime;
+
+/**
+ * One committed change read back from the change_events outbox
+ * An entity id of 0 means many rows of that entity changed at once (overdue
+ * sweep, bulk import).
+ */
+public class ChangeEvent {
+    private long id;
+    private Entity entity;
+    private int entityId;
+    private Action action;
+    private String origin;
+    private LocalDateTime createdAt;
+    
+    public enum Entity {
+        BOOK, USER, TRANSACTION
+    }
+    
+    public enum Action {
+        INSERT, UPDATE, DELETE
+    }
+    
+    public ChangeEvent() {
+    }
+    
+    public ChangeEvent(long id, Entity entity, int entityId, Action action, String origin) {
+        this.id = id;
+        this.entity = entity;
+        this.entityId = entityId;
+        this.action = action;
+        this.origin = origin;
+    }
+    
+    /**
+     * Position in the outbox; events are published in id order
+     */
+    public long getId() {
+        return id;
+    }
+    
+    public void setId(long id) {
+        this.id = id;
+    }
+    
+    public Entity getEntity() {
+        return entity;
+    }
+    
+    public void setEntity(Entity entity) {
+        this.entity = entity;
+    }
+    
+    public int getEntityId() {
+        return entityId;
+    }
+    
+    public void setEntityId(int entityId) {
+        this.entityId = entityId;
+    }
+    
+    public Action getAction() {
+        return action;
+    }
+    
+    public void setAction(Action action) {
+        this.action = action;
+    }
+    
+    /**
+     * Node id of the process that made the change, see ChangeOutbox.getNodeId
+     */
+    public String getOrigin() {
+        return origin;
+    }
+    
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    /**
+     * Whether this event covers many rows rather than one
+     */
+    public boolean isBulk() {
+        return entityId == 0;
+    }
+    
+    /**
+     * Whether another process made the change
+     */
+    public boolean isRemote() {
+        return !ChangeOutbox.getNodeId().equals(origin);
+    }
+    
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "id=" + id +
+                ", entity=" + entity +
+                ", entityId=" + entityId +
+                ", action=" + action +
+                ", origin='" + origin + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.library.services;
+
+import java.util.List;
+
+/**
+ * Subscriber to the change event stream, see ChangeEventPoller
+ *
+ * Batches arrive in outbox order on the poller thread, including this
+ * process's own changes; callbacks must be quick.
+ */
+@FunctionalInterface
+public interface ChangeEventListener {
+    
+    void changesPublished(List<ChangeEvent> events);
+}
@@ -0,0 +1,277 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the change_events outbox to in-process subscribers
+ *
+ * A daemon thread reads events past the last published id every outbox.poll_ms
+ * and hands them to the listeners in id order. The offset is saved to
+ * outbox.offset_file after each batch, so a restart resumes where it stopped;
+ * without the file it starts from the newest event. Auto-increment ids can
+ * commit out of order, so a missing id holds the stream back for up to
+ * outbox.gap_wait_ms in case its transaction is still in flight. The outbox is
+ * read from the primary, never the replica, so replica lag cannot pass for a
+ * gap and be skipped. Events older
+ * than outbox.retention_hours are deleted once an hour, along with expired
+ * tombstones (see Tombstones).
+ *
+ * A built-in subscriber replays other processes' book and user changes
+ * through CatalogEvents, so the search, facet and autocomplete indexes catch
+ * up within a poll instead of waiting for cache.index_ttl_seconds.
+ */
+public class ChangeEventPoller {
+    private static final String SELECT_EVENTS = "SELECT id, entity, entity_id, action, origin, created_at " +
+                                                "FROM change_events WHERE id > ? ORDER BY id LIMIT ?";
+    private static final long PRUNE_EVERY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long UNKNOWN = -1;
+    
+    private static ChangeEventPoller instance;
+    
+    private final DatabaseConnection dbConnection;
+    private final CopyOnWriteArrayList<ChangeEventListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private volatile long offset = UNKNOWN;
+    // Poller thread only
+    private long gapSeenAt;
+    private long lastPruned = System.currentTimeMillis();
+    
+    private ChangeEventPoller() {
+        this(DatabaseConnection.forDesk());
+    }
+    
+    /**
+     * Poller over a given database, without the CatalogEvents subscriber
+     */
+    public ChangeEventPoller(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+    
+    public static synchronized ChangeEventPoller getInstance() {
+        if (instance == null) {
+            instance = new ChangeEventPoller();
+            instance.addListener(new CatalogChangeBridge());
+        }
+        return instance;
+    }
+    
+    /**
+     * Start polling on a daemon thread; does nothing if already polling or the outbox is disabled
+     */
+    public synchronized void start() {
+        if (scheduler != null || !ChangeOutbox.isEnabled()) {
+            return;
+        }
+        long pollMillis = Math.max(100, ConfigManager.getSettings().getInt("outbox.poll_ms", 1000));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "change-event-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollQuietly, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop polling and save the offset
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        if (offset != UNKNOWN) {
+            saveOffset(offset);
+        }
+    }
+    
+    public void addListener(ChangeEventListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+    
+    public void removeListener(ChangeEventListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Id of the last published event, or -1 before the first poll
+     */
+    public long getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Publish the events committed since the last poll
+     * Called by the poller thread; returns the number of events published.
+     */
+    public synchronized int poll() {
+        if (offset == UNKNOWN && !initializeOffset()) {
+            return 0;
+        }
+        Settings settings = ConfigManager.getSettings();
+        List<ChangeEvent> batch = fetch(offset, Math.max(1, settings.getInt("outbox.batch_size", 500)));
+        long now = System.currentTimeMillis();
+        if (now - lastPruned >= PRUNE_EVERY_MILLIS) {
+            prune(settings.getInt("outbox.retention_hours", 24));
+            Tombstones.prune(dbConnection);
+            lastPruned = now;
+        }
+        
+        List<ChangeEvent> ready = takeReady(batch, now, settings.getInt("outbox.gap_wait_ms", 2000));
+        if (ready.isEmpty()) {
+            return 0;
+        }
+        List<ChangeEvent> published = Collections.unmodifiableList(ready);
+        for (ChangeEventListener listener : listeners) {
+            try {
+                listener.changesPublished(published);
+            } catch (RuntimeException e) {
+                System.err.println("Change event listener failed: " + e);
+            }
+        }
+        offset = ready.get(ready.size() - 1).getId();
+        saveOffset(offset);
+        return ready.size();
+    }
+    
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            System.err.println("Error polling change events: " + e);
+        }
+    }
+    
+    /**
+     * The leading events with no unexplained gap before them
+     * A gap is waited out for gapWaitMillis, then assumed to be a rolled back transaction.
+     */
+    private List<ChangeEvent> takeReady(List<ChangeEvent> batch, long now, long gapWaitMillis) {
+        List<ChangeEvent> ready = new ArrayList<>(batch.size());
+        long expected = offset + 1;
+        for (ChangeEvent event : batch) {
+            if (event.getId() != expected) {
+                if (!ready.isEmpty() || gapSeenAt == 0) {
+                    gapSeenAt = now;
+                    break;
+                }
+                if (now - gapSeenAt < gapWaitMillis) {
+                    break;
+                }
+            }
+            ready.add(event);
+            expected = event.getId() + 1;
+            gapSeenAt = 0;
+        }
+        return ready;
+    }
+    
+    private List<ChangeEvent> fetch(long after, int limit) {
+        List<ChangeEvent> events = new ArrayList<>();
+        try (Connection conn = dbConnection.getPrimaryReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_EVENTS)) {
+            
+            stmt.setLong(1, after);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ChangeEvent event = new ChangeEvent(rs.getLong(1), Entity.valueOf(rs.getString(2)), rs.getInt(3),
+                            Action.valueOf(rs.getString(4)), rs.getString(5));
+                    Timestamp createdAt = rs.getTimestamp(6);
+                    if (createdAt != null) {
+                        event.setCreatedAt(createdAt.toLocalDateTime());
+                    }
+                    events.add(event);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading change events: " + e.getMessage());
+        }
+        return events;
+    }
+    
+    /**
+     * Resume from the saved offset, or skip the backlog when there is none
+     */
+    private boolean initializeOffset() {
+        Path file = getOffsetFile();
+        try {
+            offset = Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+            return true;
+        } catch (NoSuchFileException e) {
+            // First run; the indexes are loaded fresh, so older events are of no use
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable change event offset in " + file + ": " + e.getMessage());
+        }
+        
+        try (Connection conn = dbConnection.getPrimaryReadConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM change_events");
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                offset = rs.getLong(1);
+                return true;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading change event offset: " + e.getMessage());
+        }
+        return false;
+    }
+    
+    private void saveOffset(long value) {
+        Path file = getOffsetFile();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, Long.toString(value).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving change event offset: " + e.getMessage());
+        }
+    }
+    
+    private Path getOffsetFile() {
+        return Paths.get(ConfigManager.getSettings().get("outbox.offset_file", "change-events.offset"));
+    }
+    
+    private void prune(int retentionHours) {
+        if (retentionHours <= 0) {
+            return;
+        }
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM change_events WHERE created_at < ?")) {
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now().minusHours(retentionHours)));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error pruning change events: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.library.services;
+
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Writes change events to the change_events table
+ *
+ * Services call append on the connection of the write itself, before committing,
+ * so an event exists exactly when its change does. ChangeEventPoller reads them
+ * back on every node. Set outbox.enabled=false on a database that does not have
+ * the table yet.
+ */
+public final class ChangeOutbox {
+    private static final String INSERT_SQL = "INSERT INTO change_events (entity, entity_id, action, origin) VALUES (?, ?, ?, ?)";
+    // Unique per process so a desk and an API server on one host tell their changes apart
+    private static final String NODE_ID = UUID.randomUUID().toString();
+    
+    private ChangeOutbox() {
+    }
+    
+    /**
+     * Record a change as part of the connection's open transaction
+     */
+    public static void append(Connection conn, Entity entity, int entityId, Action action) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setString(1, entity.name());
+            stmt.setInt(2, entityId);
+            stmt.setString(3, action.name());
+            stmt.setString(4, NODE_ID);
+            stmt.executeUpdate();
+        }
+    }
+    
+    public static boolean isEnabled() {
+        return ConfigManager.getSettings().getBoolean("outbox.enabled", true);
+    }
+    
+    /**
+     * Origin written with this process's events
+     */
+    public static String getNodeId() {
+        return NODE_ID;
+    }
+}
@@ -0,0 +1,63 @@
+package com.library.services;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rows changed and ids deleted since a watermark, from the *ChangedSince service methods
+ *
+ * Pass getWatermark() as the next call's since. Rows may be delivered again on
+ * the next call, so apply them by id and version. When isFull() is set the
+ * changed rows are the whole table: the caller had no watermark, or one older
+ * than the tombstones go back, and should drop every row it does not get back.
+ */
+public class ChangeSet<T> {
+    private final List<T> changed;
+    private final List<Integer> deletedIds;
+    private final LocalDateTime watermark;
+    private final boolean full;
+    
+    public ChangeSet(List<T> changed, List<Integer> deletedIds, LocalDateTime watermark, boolean full) {
+        this.changed = Collections.unmodifiableList(changed);
+        this.deletedIds = Collections.unmodifiableList(deletedIds);
+        this.watermark = watermark;
+        this.full = full;
+    }
+    
+    /**
+     * Rows created or updated since the watermark, oldest change first unless documented otherwise
+     */
+    public List<T> getChanged() {
+        return changed;
+    }
+    
+    /**
+     * Ids deleted since the watermark; always empty for a full set
+     */
+    public List<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+    
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+    
+    public boolean isFull() {
+        return full;
+    }
+    
+    public boolean isEmpty() {
+        return changed.isEmpty() && deletedIds.isEmpty();
+    }
+    
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "changed=" + changed.size() +
+                ", deleted=" + deletedIds.size() +
+                ", watermark=" + watermark +
+                ", full=" + full +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+package com.library.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of circulation operations made while offline
+ *
+ * Each record is a length, a CRC32 and a UTF-8 payload, appended through a
+ * FileChannel and forced to disk before append returns, so an operation the desk
+ * confirmed survives a crash or power cut. Replayed operations are marked with
+ * an ACK record; once nothing is pending the file is truncated. On open, a torn
+ * or corrupt record at the tail (a crash mid-append) is cut off.
+ */
+public final class CirculationJournal implements Closeable {
+    private static final String ACK = "ACK";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, JournalEntry> pending = new LinkedHashMap<>();
+    
+    public CirculationJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+    }
+    
+    /**
+     * Write an operation and wait for it to reach the disk
+     */
+    public synchronized void append(JournalEntry entry) throws IOException {
+        write(entry.encode());
+        // force(false) is fdatasync: the data and the new length, without the timestamps
+        channel.force(false);
+        pending.put(entry.getKey(), entry);
+    }
+    
+    /**
+     * Mark operations as replayed; truncates the file once none are pending
+     */
+    public synchronized void acknowledge(Collection<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            if (pending.remove(key) != null) {
+                write(ACK + "\t" + key);
+            }
+        }
+        if (pending.isEmpty()) {
+            channel.truncate(0);
+        }
+        channel.force(false);
+    }
+    
+    /**
+     * Operations not yet replayed, oldest first
+     */
+    public synchronized List<JournalEntry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+    
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+    
+    private void write(String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bytes.length);
+        buffer.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    /**
+     * Read every record back, dropping acknowledged entries and anything after the first bad record
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            apply(new String(payload.array(), StandardCharsets.UTF_8));
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            System.err.println("Circulation journal " + path + ": dropping " + (size - position) +
+                    " bytes of incomplete or corrupt records at the end");
+            channel.truncate(position);
+            channel.force(false);
+        }
+    }
+    
+    private void apply(String payload) {
+        String[] fields = payload.split("\t", -1);
+        if (ACK.equals(fields[0])) {
+            pending.remove(fields[1]);
+        } else {
+            JournalEntry entry = JournalEntry.decode(fields);
+            pending.put(entry.getKey(), entry);
+        }
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of circulation journal " + path);
+            }
+            position += read;
+        }
+    }
+}
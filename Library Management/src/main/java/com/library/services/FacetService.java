@@ -0,0 +1,144 @@
+package com.library.services;
+
+import com.library.cache.FacetIndex;
+import com.library.cache.FacetResult;
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Category, decade and availability facets over the whole catalog
+ *
+ * The bitset index is built from the books table on first use and then kept
+ * current through CatalogEvents, including every issue and return, so facet
+ * queries never touch the database. A bulk reload marks it stale and the next
+ * query rebuilds it.
+ */
+public class FacetService implements CatalogListener {
+    private static FacetService instance;
+    
+    private final DatabaseConnection dbConnection;
+    private volatile FacetIndex index;
+    private volatile boolean stale = true;
+    private volatile long loadedAt;
+    
+    private FacetService() {
+        this.dbConnection = DatabaseConnection.forDesk();
+    }
+    
+    public static synchronized FacetService getInstance() {
+        if (instance == null) {
+            instance = new FacetService();
+            CatalogEvents.addListener(instance, instance.dbConnection);
+        }
+        return instance;
+    }
+    
+    /**
+     * Books matching the selections (null for any) with per-category, per-decade and availability counts
+     * Returns null if the index could not be built.
+     */
+    public FacetResult search(String category, Integer decade, Boolean availableOnly) {
+        FacetIndex current = ensureLoaded();
+        return current == null ? null : current.query(category, decade, availableOnly);
+    }
+    
+    /**
+     * Rebuild from the database on the next query
+     */
+    public void invalidate() {
+        stale = true;
+    }
+    
+    @Override
+    public synchronized void bookSaved(Book book) {
+        if (index != null) {
+            index.put(book.getId(), book.getCategory(), book.getPublicationYear(), book.getAvailableCopies());
+        }
+    }
+    
+    @Override
+    public synchronized void bookDeleted(int bookId) {
+        if (index != null) {
+            index.remove(bookId);
+        }
+    }
+    
+    @Override
+    public synchronized void copiesChanged(int bookId, int delta) {
+        if (index != null) {
+            index.adjustAvailable(bookId, delta);
+        }
+    }
+    
+    @Override
+    public synchronized void loanIssued(int transactionId, int userId, int bookId) {
+        if (index != null) {
+            index.adjustAvailable(bookId, -1);
+        }
+    }
+    
+    @Override
+    public synchronized void loanReturned(int transactionId, int bookId) {
+        if (index != null) {
+            index.adjustAvailable(bookId, 1);
+        }
+    }
+    
+    @Override
+    public void catalogReloaded() {
+        stale = true;
+    }
+    
+    private FacetIndex ensureLoaded() {
+        if (isCurrent()) {
+            return index;
+        }
+        synchronized (this) {
+            if (!isCurrent()) {
+                FacetIndex rebuilt = load();
+                if (rebuilt != null) {
+                    index = rebuilt;
+                    loadedAt = System.currentTimeMillis();
+                    stale = false;
+                }
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * Loaded, not invalidated, and younger than the configured index TTL
+     */
+    private boolean isCurrent() {
+        return !stale && !dbConnection.getConfig().isExpired(loadedAt);
+    }
+    
+    private FacetIndex load() {
+        try (Connection conn = dbConnection.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM books")) {
+                if (rs.next()) {
+                    count = rs.getInt(1);
+                }
+            }
+            FacetIndex rebuilt = new FacetIndex(count);
+            try (ResultSet rs = stmt.executeQuery("SELECT id, category, publication_year, available_copies FROM books")) {
+                while (rs.next()) {
+                    int year = rs.getInt(3);
+                    rebuilt.put(rs.getInt(1), rs.getString(2), rs.wasNull() ? null : year, rs.getInt(4));
+                }
+            }
+            return rebuilt;
+        } catch (SQLException e) {
+            System.err.println("Error building facet index: " + e.getMessage());
+            return null;
+        }
+    }
+}
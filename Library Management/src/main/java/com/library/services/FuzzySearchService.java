@@ -0,0 +1,146 @@
+package com.library.services;
+
+import com.library.cache.TrigramIndex;
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the typo-tolerant title and author index behind fuzzy book searches
+ *
+ * The index is built from the books table on first use (or in the background via
+ * preload) and then kept current through CatalogEvents. A bulk reload marks it
+ * stale so the next search rebuilds it; searches during a rebuild use the old one.
+ */
+public class FuzzySearchService implements CatalogListener {
+    private static FuzzySearchService instance;
+    
+    private final DatabaseConnection dbConnection;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile TrigramIndex index;
+    private volatile boolean stale = true;
+    private volatile long loadedAt;
+    
+    private FuzzySearchService() {
+        this.dbConnection = DatabaseConnection.forDesk();
+    }
+    
+    public static synchronized FuzzySearchService getInstance() {
+        if (instance == null) {
+            instance = new FuzzySearchService();
+            CatalogEvents.addListener(instance, instance.dbConnection);
+        }
+        return instance;
+    }
+    
+    /**
+     * Build the index on a background thread unless it is current or being built
+     */
+    public void preload() {
+        if (isCurrent() || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                ensureLoaded();
+            } finally {
+                loading.set(false);
+            }
+        }, "fuzzy-search-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Ids of the best matching books, closest first, or null if the index could not be built
+     */
+    public int[] search(String query, SearchOptions options) {
+        TrigramIndex current = ensureLoaded();
+        return current == null ? null : current.search(query, options.getFuzziness(), options.getLimit());
+    }
+    
+    public int getIndexedBooks() {
+        TrigramIndex current = index;
+        return current == null ? 0 : current.size();
+    }
+    
+    public String getReport() {
+        TrigramIndex current = index;
+        if (current == null) {
+            return "Fuzzy search: not loaded";
+        }
+        return String.format("Fuzzy search: %d books, %d words, %.1f MB",
+                current.size(), current.getTokenCount(), current.estimateBytes() / (1024.0 * 1024.0));
+    }
+    
+    @Override
+    public synchronized void bookSaved(Book book) {
+        if (index != null) {
+            index.put(book.getId(), book.getTitle(), book.getAuthor());
+        }
+    }
+    
+    @Override
+    public synchronized void bookDeleted(int bookId) {
+        if (index != null) {
+            index.remove(bookId);
+        }
+    }
+    
+    @Override
+    public void catalogReloaded() {
+        stale = true;
+    }
+    
+    private TrigramIndex ensureLoaded() {
+        if (isCurrent()) {
+            return index;
+        }
+        synchronized (this) {
+            if (!isCurrent()) {
+                TrigramIndex rebuilt = load();
+                if (rebuilt != null) {
+                    index = rebuilt;
+                    loadedAt = System.currentTimeMillis();
+                    stale = false;
+                }
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * Loaded, not invalidated, and younger than the configured index TTL
+     */
+    private boolean isCurrent() {
+        return !stale && !dbConnection.getConfig().isExpired(loadedAt);
+    }
+    
+    private TrigramIndex load() {
+        try (Connection conn = dbConnection.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM books")) {
+                if (rs.next()) {
+                    count = rs.getInt(1);
+                }
+            }
+            TrigramIndex rebuilt = new TrigramIndex(count);
+            try (ResultSet rs = stmt.executeQuery("SELECT id, title, author FROM books")) {
+                while (rs.next()) {
+                    rebuilt.put(rs.getInt(1), rs.getString(2), rs.getString(3));
+                }
+            }
+            return rebuilt;
+        } catch (SQLException e) {
+            System.err.println("Error building fuzzy search index: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.library.services;
+
+import java.time.LocalDate;
+
+/**
+ * One circulation operation recorded while offline, see CirculationJournal
+ *
+ * The key is the operation's idempotency key: replay records it in
+ * applied_operations in the same transaction as the change, so an operation
+ * replayed twice is applied once.
+ */
+public final class JournalEntry {
+    public enum Type {
+        ISSUE,
+        RETURN
+    }
+    
+    private final String key;
+    private final Type type;
+    private final int userId;
+    private final int bookId;
+    private final int transactionId;
+    private final LocalDate date;
+    private final LocalDate dueDate;
+    
+    private JournalEntry(String key, Type type, int userId, int bookId, int transactionId,
+                         LocalDate date, LocalDate dueDate) {
+        this.key = key;
+        this.type = type;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.transactionId = transactionId;
+        this.date = date;
+        this.dueDate = dueDate;
+    }
+    
+    public static JournalEntry issue(String key, int userId, int bookId, LocalDate issueDate, LocalDate dueDate) {
+        return new JournalEntry(key, Type.ISSUE, userId, bookId, 0, issueDate, dueDate);
+    }
+    
+    public static JournalEntry returned(String key, int transactionId, int bookId, LocalDate returnDate) {
+        return new JournalEntry(key, Type.RETURN, 0, bookId, transactionId, returnDate, null);
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public int getUserId() {
+        return userId;
+    }
+    
+    public int getBookId() {
+        return bookId;
+    }
+    
+    /**
+     * Loan being returned; 0 for an issue
+     */
+    public int getTransactionId() {
+        return transactionId;
+    }
+    
+    /**
+     * Day the desk issued or took back the book
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+    
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+    
+    /**
+     * Tab-separated journal payload
+     */
+    String encode() {
+        return type + "\t" + key + "\t" + userId + "\t" + bookId + "\t" + transactionId + "\t" + date + "\t" +
+                (dueDate != null ? dueDate : "");
+    }
+    
+    static JournalEntry decode(String[] fields) {
+        return new JournalEntry(fields[1], Type.valueOf(fields[0]), Integer.parseInt(fields[2]),
+                Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), LocalDate.parse(fields[5]),
+                fields.length > 6 && !fields[6].isEmpty() ? LocalDate.parse(fields[6]) : null);
+    }
+    
+    @Override
+    public String toString() {
+        return type == Type.ISSUE
+                ? "issue of book " + bookId + " to user " + userId + " on " + date
+                : "return of loan " + transactionId + " on " + date;
+    }
+}
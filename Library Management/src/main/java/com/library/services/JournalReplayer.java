@@ -0,0 +1,209 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.ShardRouter;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies a batch of journaled circulation operations in one database transaction
+ *
+ * Every operation's idempotency key is written to applied_operations with its
+ * outcome in the same transaction, so a batch that committed but was not
+ * acknowledged in the journal is skipped on the next attempt. Operations the
+ * database can no longer honour (the last copy went to another desk, the loan
+ * was already returned, the user was deleted) are recorded as conflicts and not
+ * retried. Like TransactionService.issueBook, a loan is stamped with its book's
+ * branch, and a book whose branch keeps its loans in another database is a conflict.
+ */
+public final class JournalReplayer {
+    private static final String APPLIED_SQL = "INSERT INTO applied_operations (idempotency_key, outcome, transaction_id) " +
+                                              "VALUES (?, ?, ?)";
+    private static final String USER_SQL = "SELECT id FROM users WHERE id = ?";
+    private static final String BRANCH_SQL = "SELECT branch_id FROM books WHERE id = ?";
+    private static final String RESERVE_SQL = "UPDATE books SET available_copies = available_copies - 1 " +
+                                              "WHERE id = ? AND available_copies > 0";
+    private static final String ISSUE_SQL = "INSERT INTO transactions (user_id, book_id, issue_date, due_date, status, " +
+                                            "branch_id) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String LOAN_SQL = "SELECT book_id, status FROM transactions WHERE id = ?";
+    private static final String RETURN_SQL = "UPDATE transactions SET return_date = ?, status = ? WHERE id = ?";
+    private static final String RELEASE_SQL = "UPDATE books SET available_copies = available_copies + 1 WHERE id = ?";
+    
+    private final DatabaseConnection dbConnection;
+    private final int branchId;
+    
+    /**
+     * Replayer into one branch's database
+     */
+    public JournalReplayer(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+        this.branchId = branchId;
+    }
+    
+    /**
+     * Apply the batch and return the keys it settled, applied or not
+     * Throws if the database cannot be reached, in which case nothing was applied.
+     */
+    public List<String> replay(List<JournalEntry> batch, ReplayReport report) throws SQLException {
+        List<String> settled = new ArrayList<>();
+        List<Runnable> notifications = new ArrayList<>();
+        // Counted into the report only once the batch commits
+        ReplayReport outcome = new ReplayReport();
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Set<String> done = findApplied(conn, batch);
+            for (JournalEntry entry : batch) {
+                settled.add(entry.getKey());
+                if (done.contains(entry.getKey())) {
+                    outcome.addDuplicate();
+                    continue;
+                }
+                String conflict = entry.getType() == JournalEntry.Type.ISSUE
+                        ? issue(conn, entry, notifications)
+                        : returnLoan(conn, entry, notifications);
+                if (conflict == null) {
+                    outcome.addApplied();
+                } else {
+                    record(conn, entry.getKey(), "CONFLICT", 0);
+                    outcome.addConflict("Offline " + entry + ": " + conflict);
+                }
+            }
+            conn.commit();
+        }
+        
+        report.add(outcome);
+        for (Runnable notification : notifications) {
+            notification.run();
+        }
+        return settled;
+    }
+    
+    private Set<String> findApplied(Connection conn, List<JournalEntry> batch) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT idempotency_key FROM applied_operations WHERE idempotency_key IN (");
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        Set<String> applied = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < batch.size(); i++) {
+                stmt.setString(i + 1, batch.get(i).getKey());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    applied.add(rs.getString(1));
+                }
+            }
+        }
+        return applied;
+    }
+    
+    /**
+     * Make the loan as of its journaled dates; returns the conflict, or null once applied
+     */
+    private String issue(Connection conn, JournalEntry entry, List<Runnable> notifications) throws SQLException {
+        try (PreparedStatement user = conn.prepareStatement(USER_SQL)) {
+            user.setInt(1, entry.getUserId());
+            try (ResultSet rs = user.executeQuery()) {
+                if (!rs.next()) {
+                    return "user " + entry.getUserId() + " no longer exists";
+                }
+            }
+        }
+        int bookBranch;
+        try (PreparedStatement branch = conn.prepareStatement(BRANCH_SQL)) {
+            branch.setInt(1, entry.getBookId());
+            try (ResultSet rs = branch.executeQuery()) {
+                if (!rs.next()) {
+                    return "book " + entry.getBookId() + " was deleted or has no copies left";
+                }
+                bookBranch = rs.getInt(1);
+            }
+        }
+        if (!ShardRouter.getInstance().isStoredIn(bookBranch, dbConnection)) {
+            return "book " + entry.getBookId() + " belongs to branch " + bookBranch +
+                   ", whose loans are kept in another database";
+        }
+        try (PreparedStatement reserve = conn.prepareStatement(RESERVE_SQL)) {
+            reserve.setInt(1, entry.getBookId());
+            if (reserve.executeUpdate() == 0) {
+                return "book " + entry.getBookId() + " was deleted or has no copies left";
+            }
+        }
+        
+        int transactionId = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(ISSUE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, entry.getUserId());
+            stmt.setInt(2, entry.getBookId());
+            stmt.setDate(3, Date.valueOf(entry.getDate()));
+            stmt.setDate(4, Date.valueOf(entry.getDueDate()));
+            stmt.setString(5, TransactionStatus.ISSUED.name());
+            stmt.setInt(6, bookBranch);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    transactionId = keys.getInt(1);
+                }
+            }
+        }
+        record(conn, entry.getKey(), "APPLIED", transactionId);
+        ChangeOutbox.append(conn, Entity.TRANSACTION, transactionId, Action.INSERT);
+        ChangeOutbox.append(conn, Entity.BOOK, entry.getBookId(), Action.UPDATE);
+        
+        int loanId = transactionId;
+        notifications.add(() -> CatalogEvents.fireLoanIssued(branchId, loanId, entry.getUserId(), entry.getBookId(), entry.getDueDate()));
+        return null;
+    }
+    
+    private String returnLoan(Connection conn, JournalEntry entry, List<Runnable> notifications) throws SQLException {
+        int bookId;
+        try (PreparedStatement loan = conn.prepareStatement(LOAN_SQL)) {
+            loan.setInt(1, entry.getTransactionId());
+            try (ResultSet rs = loan.executeQuery()) {
+                if (!rs.next()) {
+                    return "loan " + entry.getTransactionId() + " no longer exists";
+                }
+                if (TransactionStatus.RETURNED.name().equals(rs.getString(2))) {
+                    return "loan " + entry.getTransactionId() + " was already returned";
+                }
+                bookId = rs.getInt(1);
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(RETURN_SQL);
+             PreparedStatement release = conn.prepareStatement(RELEASE_SQL)) {
+            stmt.setDate(1, Date.valueOf(entry.getDate()));
+            stmt.setString(2, TransactionStatus.RETURNED.name());
+            stmt.setInt(3, entry.getTransactionId());
+            stmt.executeUpdate();
+            release.setInt(1, bookId);
+            release.executeUpdate();
+        }
+        record(conn, entry.getKey(), "APPLIED", entry.getTransactionId());
+        ChangeOutbox.append(conn, Entity.TRANSACTION, entry.getTransactionId(), Action.UPDATE);
+        ChangeOutbox.append(conn, Entity.BOOK, bookId, Action.UPDATE);
+        
+        notifications.add(() -> CatalogEvents.fireLoanReturned(branchId, entry.getTransactionId(), bookId));
+        return null;
+    }
+    
+    private void record(Connection conn, String key, String outcome, int transactionId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(APPLIED_SQL)) {
+            stmt.setString(1, key);
+            stmt.setString(2, outcome);
+            stmt.setInt(3, transactionId);
+            stmt.executeUpdate();
+        }
+    }
+}
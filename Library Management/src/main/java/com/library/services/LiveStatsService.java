@@ -0,0 +1,379 @@
+package com.library.services;
+
+import com.library.cache.IntIntHashMap;
+import com.library.db.DatabaseConnection;
+import com.library.entities.Book;
+import com.library.entities.LibraryStats;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.entities.User;
+import com.library.jfr.DashboardRefreshEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Dashboard counters kept current as books, users and loans change
+ *
+ * Loaded once from the database, then updated in memory from CatalogEvents and,
+ * for loans made on other desks, from the change event stream. Open loans are
+ * counted by due day, so loans become overdue at midnight without a query.
+ * Listeners get a new snapshot at most once per ui.live_stats_interval_ms, and
+ * only when a counter changed.
+ */
+public class LiveStatsService implements CatalogListener, ChangeEventListener {
+    private static final int NO_DUE_DAY = Integer.MIN_VALUE;
+    private static final long TICK_SECONDS = 60;
+    private static LiveStatsService instance;
+    
+    private final DatabaseConnection dbConnection;
+    private final CopyOnWriteArrayList<Consumer<LibraryStats>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService publisher;
+    private final AtomicBoolean publishPending = new AtomicBoolean();
+    private final AtomicBoolean loading = new AtomicBoolean();
+    
+    // Available copies by book id, user ids, and due epoch day by open loan id
+    private IntIntHashMap bookCopies = new IntIntHashMap(1024, -1);
+    private IntIntHashMap users = new IntIntHashMap(256, -1);
+    private IntIntHashMap loanDueDays = new IntIntHashMap(256, NO_DUE_DAY);
+    private TreeMap<Integer, Integer> loansByDueDay = new TreeMap<>();
+    private int availableBooks;
+    private volatile boolean loaded;
+    private volatile long loadedAt;
+    // Publisher thread only
+    private LibraryStats published;
+    
+    private LiveStatsService() {
+        this(DatabaseConnection.forDesk());
+    }
+    
+    /**
+     * Counters over a given database, not subscribed to CatalogEvents or the change event stream
+     */
+    public LiveStatsService(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Picks up the date rolling over and the index TTL expiring
+        publisher.scheduleWithFixedDelay(this::changed, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public static synchronized LiveStatsService getInstance() {
+        if (instance == null) {
+            instance = new LiveStatsService();
+            CatalogEvents.addListener(instance, instance.dbConnection);
+            ChangeEventPoller.getInstance().addListener(instance);
+        }
+        return instance;
+    }
+    
+    /**
+     * Receive every changed snapshot on the publisher thread, starting with the current one if loaded
+     */
+    public void addListener(Consumer<LibraryStats> listener) {
+        listeners.addIfAbsent(listener);
+        if (loaded) {
+            listener.accept(getStats());
+        }
+    }
+    
+    public void removeListener(Consumer<LibraryStats> listener) {
+        listeners.remove(listener);
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Start loading the counters on a background thread unless loading already
+     */
+    public void preload() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                load();
+            } finally {
+                loading.set(false);
+            }
+        }, "live-stats-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Count everything from the database and notify listeners
+     */
+    public synchronized boolean load() {
+        DashboardRefreshEvent event = new DashboardRefreshEvent();
+        event.begin();
+        IntIntHashMap loadedBooks = new IntIntHashMap(1024, -1);
+        IntIntHashMap loadedUsers = new IntIntHashMap(256, -1);
+        IntIntHashMap loadedLoans = new IntIntHashMap(256, NO_DUE_DAY);
+        int available = 0;
+        
+        try (Connection conn = dbConnection.getReadConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, available_copies FROM books");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loadedBooks.put(rs.getInt(1), rs.getInt(2));
+                    if (rs.getInt(2) > 0) {
+                        available++;
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM users");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loadedUsers.put(rs.getInt(1), 0);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, due_date FROM transactions WHERE status <> ?")) {
+                stmt.setString(1, TransactionStatus.RETURNED.name());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        loadedLoans.put(rs.getInt(1), (int) rs.getDate(2).toLocalDate().toEpochDay());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading dashboard statistics: " + e.getMessage());
+            event.commit();
+            return false;
+        }
+        
+        bookCopies = loadedBooks;
+        users = loadedUsers;
+        loanDueDays = loadedLoans;
+        availableBooks = available;
+        loansByDueDay = new TreeMap<>();
+        loanDueDays.forEach((loanId, dueDay) -> loansByDueDay.merge(dueDay, 1, Integer::sum));
+        loadedAt = System.currentTimeMillis();
+        loaded = true;
+        
+        LibraryStats stats = getStats();
+        event.totalBooks = stats.getTotalBooks();
+        event.availableBooks = stats.getAvailableBooks();
+        event.totalUsers = stats.getTotalUsers();
+        event.activeTransactions = stats.getActiveLoans();
+        event.overdueTransactions = stats.getOverdueLoans();
+        event.success = true;
+        event.commit();
+        changed();
+        return true;
+    }
+    
+    /**
+     * Current counters, or all zero before the first load
+     */
+    public synchronized LibraryStats getStats() {
+        int overdue = 0;
+        for (int count : loansByDueDay.headMap((int) LocalDate.now().toEpochDay()).values()) {
+            overdue += count;
+        }
+        return new LibraryStats(bookCopies.size(), availableBooks, users.size(), loanDueDays.size(), overdue);
+    }
+    
+    @Override
+    public synchronized void bookSaved(Book book) {
+        if (loaded) {
+            int previous = bookCopies.put(book.getId(), book.getAvailableCopies());
+            countAvailability(previous, book.getAvailableCopies());
+            changed();
+        }
+    }
+    
+    @Override
+    public synchronized void bookDeleted(int bookId) {
+        if (loaded) {
+            countAvailability(bookCopies.remove(bookId), -1);
+            // Its loans went with it (ON DELETE CASCADE)
+            preload();
+        }
+    }
+    
+    @Override
+    public synchronized void copiesChanged(int bookId, int delta) {
+        if (loaded) {
+            adjustCopies(bookId, delta);
+            changed();
+        }
+    }
+    
+    @Override
+    public synchronized void userSaved(User user) {
+        if (loaded) {
+            users.put(user.getId(), 0);
+            changed();
+        }
+    }
+    
+    @Override
+    public synchronized void userDeleted(int userId) {
+        if (loaded) {
+            users.remove(userId);
+            preload();
+        }
+    }
+    
+    @Override
+    public synchronized void loanIssued(int transactionId, int userId, int bookId, LocalDate dueDate) {
+        if (loaded) {
+            adjustCopies(bookId, -1);
+            if (transactionId > 0) {
+                addLoan(transactionId, (int) dueDate.toEpochDay());
+            }
+            changed();
+        }
+    }
+    
+    @Override
+    public synchronized void loanReturned(int transactionId, int bookId) {
+        if (loaded) {
+            adjustCopies(bookId, 1);
+            removeLoan(transactionId);
+            changed();
+        }
+    }
+    
+    @Override
+    public void catalogReloaded() {
+        preload();
+    }
+    
+    /**
+     * Apply loans issued and returned on other desks
+     * Their book changes arrive through CatalogEvents; only the loan counters are handled here.
+     */
+    @Override
+    public void changesPublished(List<ChangeEvent> events) {
+        if (!loaded) {
+            return;
+        }
+        List<Integer> issued = new ArrayList<>();
+        List<Integer> returned = new ArrayList<>();
+        for (ChangeEvent event : events) {
+            if (event.isRemote() && event.getEntity() == Entity.TRANSACTION && !event.isBulk()) {
+                (event.getAction() == Action.INSERT ? issued : returned).add(event.getEntityId());
+            }
+        }
+        if (issued.isEmpty() && returned.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> dueDays = loadDueDays(issued);
+        synchronized (this) {
+            dueDays.forEach(this::addLoan);
+            returned.forEach(this::removeLoan);
+        }
+        changed();
+    }
+    
+    private void adjustCopies(int bookId, int delta) {
+        int previous = bookCopies.get(bookId);
+        if (previous >= 0) {
+            bookCopies.put(bookId, previous + delta);
+            countAvailability(previous, previous + delta);
+        }
+    }
+    
+    private void countAvailability(int previousCopies, int copies) {
+        availableBooks += (copies > 0 ? 1 : 0) - (previousCopies > 0 ? 1 : 0);
+    }
+    
+    private void addLoan(int loanId, int dueDay) {
+        if (loanDueDays.put(loanId, dueDay) == NO_DUE_DAY) {
+            loansByDueDay.merge(dueDay, 1, Integer::sum);
+        }
+    }
+    
+    private void removeLoan(int loanId) {
+        int dueDay = loanDueDays.remove(loanId);
+        if (dueDay != NO_DUE_DAY) {
+            loansByDueDay.computeIfPresent(dueDay, (day, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+    
+    /**
+     * Due days of the given loans that are still open
+     */
+    private Map<Integer, Integer> loadDueDays(List<Integer> loanIds) {
+        Map<Integer, Integer> dueDays = new TreeMap<>();
+        if (loanIds.isEmpty()) {
+            return dueDays;
+        }
+        StringBuilder sql = new StringBuilder("SELECT id, due_date FROM transactions WHERE status <> ? AND id IN (");
+        for (int i = 0; i < loanIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        
+        try (Connection conn = dbConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            stmt.setString(1, TransactionStatus.RETURNED.name());
+            for (int i = 0; i < loanIds.size(); i++) {
+                stmt.setInt(i + 2, loanIds.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    dueDays.put(rs.getInt(1), (int) rs.getDate(2).toLocalDate().toEpochDay());
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading due dates: " + e.getMessage());
+        }
+        return dueDays;
+    }
+    
+    /**
+     * Schedule a publish unless one is already pending
+     */
+    private void changed() {
+        if (publishPending.compareAndSet(false, true)) {
+            long delay = Math.max(50, ConfigManager.getSettings().getInt("ui.live_stats_interval_ms", 250));
+            publisher.schedule(this::publish, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void publish() {
+        publishPending.set(false);
+        if (!loaded) {
+            return;
+        }
+        if (dbConnection.getConfig().isExpired(loadedAt)) {
+            // Catch up on changes the event stream missed, for instance with the outbox disabled
+            preload();
+        }
+        LibraryStats stats = getStats();
+        if (stats.sameAs(published)) {
+            return;
+        }
+        published = stats;
+        for (Consumer<LibraryStats> listener : listeners) {
+            try {
+                listener.accept(stats);
+            } catch (RuntimeException e) {
+                System.err.println("Live stats listener failed: " + e);
+            }
+        }
+    }
+}
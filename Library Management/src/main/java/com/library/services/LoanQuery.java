@@ -0,0 +1,210 @@
+package com.library.services;
+
+import com.library.entities.Transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filters, sort order and limit for TransactionService.findLoans
+ *
+ * Unset filters are not applied. The text filter is a prefix match on the patron's
+ * username or the book title. Date ranges are inclusive and either end may be
+ * null. Setters return the query so a spec reads as one expression.
+ */
+public class LoanQuery {
+    public static final int DEFAULT_LIMIT = 500;
+    
+    public enum SortKey {
+        ISSUE_DATE("t.issue_date"),
+        DUE_DATE("t.due_date"),
+        RETURN_DATE("t.return_date"),
+        STATUS("t.status"),
+        USERNAME("u.username"),
+        TITLE("b.title"),
+        CREATED("t.created_at");
+        
+        private final String column;
+        
+        SortKey(String column) {
+            this.column = column;
+        }
+    }
+    
+    private EnumSet<TransactionStatus> statuses = EnumSet.noneOf(TransactionStatus.class);
+    private Integer userId;
+    private Integer bookId;
+    private String text;
+    private LocalDate issuedFrom;
+    private LocalDate issuedTo;
+    private LocalDate dueFrom;
+    private LocalDate dueTo;
+    private LocalDate returnedFrom;
+    private LocalDate returnedTo;
+    private boolean includeHistory;
+    private SortKey sortKey = SortKey.CREATED;
+    private boolean descending = true;
+    private int limit = DEFAULT_LIMIT;
+    
+    /**
+     * Loans in any of the given statuses; none given means any status
+     */
+    public LoanQuery status(TransactionStatus... statuses) {
+        this.statuses = EnumSet.noneOf(TransactionStatus.class);
+        for (TransactionStatus status : statuses) {
+            if (status != null) {
+                this.statuses.add(status);
+            }
+        }
+        return this;
+    }
+    
+    public LoanQuery user(Integer userId) {
+        this.userId = userId;
+        return this;
+    }
+    
+    public LoanQuery book(Integer bookId) {
+        this.bookId = bookId;
+        return this;
+    }
+    
+    public LoanQuery text(String text) {
+        this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+        return this;
+    }
+    
+    public LoanQuery issuedBetween(LocalDate from, LocalDate to) {
+        this.issuedFrom = from;
+        this.issuedTo = to;
+        return this;
+    }
+    
+    public LoanQuery dueBetween(LocalDate from, LocalDate to) {
+        this.dueFrom = from;
+        this.dueTo = to;
+        return this;
+    }
+    
+    public LoanQuery returnedBetween(LocalDate from, LocalDate to) {
+        this.returnedFrom = from;
+        this.returnedTo = to;
+        return this;
+    }
+    
+    /**
+     * Also search the archived loans in transactions_history
+     */
+    public LoanQuery includeHistory(boolean includeHistory) {
+        this.includeHistory = includeHistory;
+        return this;
+    }
+    
+    public LoanQuery sortBy(SortKey sortKey, boolean descending) {
+        this.sortKey = sortKey;
+        this.descending = descending;
+        return this;
+    }
+    
+    public LoanQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+    
+    public Set<TransactionStatus> getStatuses() {
+        return statuses.clone();
+    }
+    
+    public Integer getUserId() {
+        return userId;
+    }
+    
+    public Integer getBookId() {
+        return bookId;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public boolean isIncludeHistory() {
+        return includeHistory;
+    }
+    
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    /**
+     * Which filters are set and the sort order; queries of one shape share their SQL
+     */
+    public String shape() {
+        return "loan:" + statuses.size() + ":" + (userId != null ? "U" : "") + (bookId != null ? "B" : "") +
+               (text != null ? "T" : "") + (issuedFrom != null ? "I" : "") + (issuedTo != null ? "i" : "") +
+               (dueFrom != null ? "D" : "") + (dueTo != null ? "d" : "") +
+               (returnedFrom != null ? "R" : "") + (returnedTo != null ? "r" : "") + (includeHistory ? ":H:" : "::") +
+               sortKey + (descending ? ":D" : ":A");
+    }
+    
+    /**
+     * Append the WHERE, ORDER BY and LIMIT clauses to sql (when not null) and their values to params
+     * Both come from this one method so the SQL and the parameters always line up.
+     */
+    public void appendClauses(StringBuilder sql, List<Object> params) {
+        QueryClauses where = new QueryClauses(sql);
+        if (!statuses.isEmpty()) {
+            StringBuilder in = new StringBuilder("t.status IN (");
+            String separator = "";
+            for (TransactionStatus status : statuses) {
+                in.append(separator).append('?');
+                separator = ", ";
+                params.add(status);
+            }
+            where.add(in.append(")").toString());
+        }
+        if (userId != null) {
+            where.add("t.user_id = ?");
+            params.add(userId);
+        }
+        if (bookId != null) {
+            where.add("t.book_id = ?");
+            params.add(bookId);
+        }
+        if (text != null) {
+            String prefix = QueryClauses.likePrefix(text);
+            where.add("(u.username LIKE ? OR b.title LIKE ?)");
+            params.add(prefix);
+            params.add(prefix);
+        }
+        range(where, params, "t.issue_date", issuedFrom, issuedTo);
+        range(where, params, "t.due_date", dueFrom, dueTo);
+        range(where, params, "t.return_date", returnedFrom, returnedTo);
+        if (sql != null) {
+            String direction = descending ? " DESC" : " ASC";
+            sql.append(" ORDER BY ").append(sortKey.column).append(direction).append(", t.id").append(direction)
+               .append(" LIMIT ?");
+        }
+        params.add(limit);
+    }
+    
+    private static void range(QueryClauses where, List<Object> params, String column, LocalDate from, LocalDate to) {
+        if (from != null) {
+            where.add(column + " >= ?");
+            params.add(from);
+        }
+        if (to != null) {
+            where.add(column + " <= ?");
+            params.add(to);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and returns that keep working while the database is unreachable
+ *
+ * Online, calls go straight to TransactionService. When the database cannot be
+ * reached, the desk switches to offline mode: operations are checked against a
+ * local CatalogSnapshot and appended to the CirculationJournal, which is forced
+ * to disk before the call returns. Every offline.sync_seconds a background
+ * thread replays the journal in batches of offline.replay_batch_size, each in
+ * one database transaction keyed by the operations' idempotency keys, reports
+ * conflicts to the listeners, and then refreshes the snapshot. While anything
+ * is still journaled, new operations are journaled behind it so they reach the
+ * database in order.
+ */
+public class OfflineCirculation {
+    private static OfflineCirculation instance;
+    
+    public enum Result {
+        /** Applied to the database */
+        DONE,
+        /** Journaled offline, to be replayed when the database is back */
+        QUEUED,
+        /** Refused; see getLastRejection */
+        REJECTED
+    }
+    
+    private final DatabaseConnection dbConnection;
+    private final TransactionService transactionService;
+    private final BookService bookService;
+    private final UserService userService;
+    private final CatalogSnapshot snapshot = new CatalogSnapshot();
+    private final JournalReplayer replayer;
+    private final CopyOnWriteArrayList<OfflineListener> listeners = new CopyOnWriteArrayList<>();
+    // Keeps the snapshot check, journal append and snapshot update of one operation together
+    private final Object journalLock = new Object();
+    private CirculationJournal journal;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean offline;
+    private volatile String lastRejection;
+    
+    private OfflineCirculation() {
+        this.dbConnection = DatabaseConnection.forDesk();
+        this.transactionService = new TransactionService();
+        this.bookService = new BookService();
+        this.userService = new UserService();
+        this.replayer = new JournalReplayer(ConfigManager.getBranchId());
+    }
+    
+    public static synchronized OfflineCirculation getInstance() {
+        if (instance == null) {
+            instance = new OfflineCirculation();
+        }
+        return instance;
+    }
+    
+    /**
+     * Open the journal and snapshot and start syncing; does nothing when offline.enabled is false
+     */
+    public synchronized void start() {
+        Settings settings = ConfigManager.getSettings();
+        if (scheduler != null || !settings.getBoolean("offline.enabled", true)) {
+            return;
+        }
+        try {
+            journal = new CirculationJournal(Paths.get(settings.get("offline.journal_file", "circulation.journal")));
+        } catch (IOException e) {
+            System.err.println("Offline mode unavailable, cannot open the circulation journal: " + e.getMessage());
+            return;
+        }
+        snapshot.load(getSnapshotFile());
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "offline-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, settings.getInt("offline.sync_seconds", 10));
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, period, TimeUnit.SECONDS);
+    }
+    
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing the circulation journal: " + e.getMessage());
+        }
+        scheduler = null;
+    }
+    
+    public void addListener(OfflineListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+    
+    public void removeListener(OfflineListener listener) {
+        listeners.remove(listener);
+    }
+    
+    public boolean isOffline() {
+        return offline;
+    }
+    
+    /**
+     * Operations journaled and not yet replayed
+     */
+    public int getPendingCount() {
+        CirculationJournal current = journal;
+        return current != null ? current.getPendingCount() : 0;
+    }
+    
+    /**
+     * Why the last REJECTED result was refused
+     */
+    public String getLastRejection() {
+        return lastRejection;
+    }
+    
+    public Result issueBook(int userId, int bookId, LocalDate dueDate) {
+        if (isDirect()) {
+            if (issueOnline(userId, bookId, dueDate)) {
+                return Result.DONE;
+            }
+            if (journal == null) {
+                return reject("The issue could not be recorded");
+            }
+            if (dbConnection.testConnection()) {
+                return reject("The book is not available");
+            }
+            setOffline(true);
+        }
+        synchronized (journalLock) {
+            if (!snapshot.isLoaded()) {
+                return reject("No local catalog snapshot to check the loan against");
+            }
+            String reason = snapshot.checkIssue(userId, bookId);
+            if (reason != null) {
+                return reject(reason);
+            }
+            if (!append(JournalEntry.issue(UUID.randomUUID().toString(), userId, bookId, LocalDate.now(), dueDate))) {
+                return reject("The offline journal could not be written");
+            }
+            snapshot.applyIssue(bookId);
+            return Result.QUEUED;
+        }
+    }
+    
+    public Result returnBook(int transactionId) {
+        if (isDirect()) {
+            if (returnOnline(transactionId)) {
+                return Result.DONE;
+            }
+            if (journal == null) {
+                return reject("The return could not be recorded");
+            }
+            if (dbConnection.testConnection()) {
+                return reject("The loan is not open");
+            }
+            setOffline(true);
+        }
+        synchronized (journalLock) {
+            int bookId = snapshot.getLoanBook(transactionId);
+            if (bookId < 0) {
+                return reject("Loan " + transactionId + " is not open in the local catalog snapshot");
+            }
+            if (!append(JournalEntry.returned(UUID.randomUUID().toString(), transactionId, bookId, LocalDate.now()))) {
+                return reject("The offline journal could not be written");
+            }
+            snapshot.applyReturn(transactionId);
+            return Result.QUEUED;
+        }
+    }
+    
+    /**
+     * Replay the journal, then refresh the snapshot once nothing is pending
+     * Returns the replay report, or null if there was nothing to replay or the database is unreachable.
+     */
+    public synchronized ReplayReport sync() {
+        if (journal == null) {
+            return null;
+        }
+        if (offline && !dbConnection.testConnection()) {
+            return null;
+        }
+        ReplayReport report = replay();
+        if (journal.getPendingCount() == 0) {
+            int changes = snapshot.refresh(bookService, userService, transactionService);
+            if (changes < 0) {
+                setOffline(!dbConnection.testConnection());
+                return report;
+            }
+            setOffline(false);
+            if (changes > 0) {
+                saveSnapshot();
+            }
+        }
+        return report;
+    }
+    
+    private ReplayReport replay() {
+        List<JournalEntry> pending = journal.getPending();
+        if (pending.isEmpty()) {
+            return null;
+        }
+        int batchSize = Math.max(1, ConfigManager.getSettings().getInt("offline.replay_batch_size", 50));
+        ReplayReport report = new ReplayReport();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<JournalEntry> batch = pending.subList(from, Math.min(pending.size(), from + batchSize));
+            try {
+                journal.acknowledge(replayer.replay(batch, report));
+            } catch (SQLException e) {
+                System.err.println("Error replaying the circulation journal: " + e.getMessage());
+                break;
+            } catch (IOException e) {
+                // Committed but not acknowledged; the idempotency keys skip them next time
+                System.err.println("Error acknowledging replayed operations: " + e.getMessage());
+                break;
+            }
+        }
+        report.setPending(journal.getPendingCount());
+        
+        for (String conflict : report.getConflicts()) {
+            System.err.println(conflict);
+        }
+        if (!report.getConflicts().isEmpty()) {
+            // The snapshot counted the refused operations as done
+            snapshot.invalidate();
+        }
+        if (report.getApplied() + report.getDuplicates() + report.getConflicts().size() > 0) {
+            for (OfflineListener listener : listeners) {
+                listener.replayed(report);
+            }
+        }
+        return report;
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            System.err.println("Error syncing offline circulation: " + e);
+        }
+    }
+    
+    /**
+     * Whether to try the database directly: online with nothing journaled ahead
+     */
+    private boolean isDirect() {
+        return !offline && getPendingCount() == 0;
+    }
+    
+    private boolean issueOnline(int userId, int bookId, LocalDate dueDate) {
+        try {
+            return transactionService.issueBook(userId, bookId, dueDate);
+        } catch (RuntimeException e) {
+            // Database errors come back as false; anything else must not lose the desk's operation
+            return false;
+        }
+    }
+    
+    private boolean returnOnline(int transactionId) {
+        try {
+            return transactionService.returnBook(transactionId);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    
+    private boolean append(JournalEntry entry) {
+        try {
+            journal.append(entry);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing the circulation journal: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private Result reject(String reason) {
+        lastRejection = reason;
+        return Result.REJECTED;
+    }
+    
+    private void setOffline(boolean value) {
+        if (offline == value) {
+            return;
+        }
+        offline = value;
+        System.err.println(value ? "Database unreachable, circulation continues offline"
+                                 : "Database reachable again, circulation is back online");
+        for (OfflineListener listener : listeners) {
+            listener.offlineChanged(value);
+        }
+    }
+    
+    private void saveSnapshot() {
+        try {
+            snapshot.save(getSnapshotFile());
+        } catch (IOException e) {
+            System.err.println("Error saving the catalog snapshot: " + e.getMessage());
+        }
+    }
+    
+    private Path getSnapshotFile() {
+        return Paths.get(ConfigManager.getSettings().get("offline.snapshot_file", "catalog-snapshot.dat"));
+    }
+}
@@ -0,0 +1,15 @@
+package com.library.services;
+
+/**
+ * Receives offline mode changes and journal replay results from OfflineCirculation
+ *
+ * Callbacks arrive on the caller's or the replay thread; hand UI work to the FX thread.
+ */
+public interface OfflineListener {
+    
+    default void offlineChanged(boolean offline) {
+    }
+    
+    default void replayed(ReplayReport report) {
+    }
+}
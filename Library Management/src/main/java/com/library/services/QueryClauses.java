@@ -0,0 +1,29 @@
+package com.library.services;
+
+/**
+ * Builds the WHERE clause for the query specs
+ * Conditions are joined with AND; with a null builder nothing is appended, so a
+ * spec can walk its filters once just to collect the parameter values.
+ */
+final class QueryClauses {
+    private final StringBuilder sql;
+    private boolean first = true;
+    
+    QueryClauses(StringBuilder sql) {
+        this.sql = sql;
+    }
+    
+    void add(String condition) {
+        if (sql != null) {
+            sql.append(first ? " WHERE " : " AND ").append(condition);
+        }
+        first = false;
+    }
+    
+    /**
+     * LIKE pattern matching values that start with text, with wildcards in text escaped
+     */
+    static String likePrefix(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
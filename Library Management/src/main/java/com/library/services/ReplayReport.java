@@ -0,0 +1,75 @@
+package com.library.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of replaying the offline circulation journal, see OfflineCirculation
+ */
+public class ReplayReport {
+    private int applied;
+    private int duplicates;
+    private final List<String> conflicts = new ArrayList<>();
+    private int pending;
+    
+    void addApplied() {
+        applied++;
+    }
+    
+    void addDuplicate() {
+        duplicates++;
+    }
+    
+    void addConflict(String conflict) {
+        conflicts.add(conflict);
+    }
+    
+    void add(ReplayReport other) {
+        applied += other.applied;
+        duplicates += other.duplicates;
+        conflicts.addAll(other.conflicts);
+    }
+    
+    void setPending(int pending) {
+        this.pending = pending;
+    }
+    
+    /**
+     * Operations applied to the database by this replay
+     */
+    public int getApplied() {
+        return applied;
+    }
+    
+    /**
+     * Operations found already applied, by an earlier replay that stopped before acknowledging them
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+    
+    /**
+     * Operations the database refused, one description each; they are not retried
+     */
+    public List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+    
+    /**
+     * Operations still waiting in the journal after this replay
+     */
+    public int getPending() {
+        return pending;
+    }
+    
+    @Override
+    public String toString() {
+        return "ReplayReport{" +
+                "applied=" + applied +
+                ", duplicates=" + duplicates +
+                ", conflicts=" + conflicts.size() +
+                ", pending=" + pending +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.library.services;
+
+import com.library.cache.TrigramIndex;
+
+/**
+ * Options for BookService.searchBooks
+ *
+ * Fuzziness 0 is the substring search over title, author and category. Anything
+ * else matches whole title and author words allowing that many typos per word
+ * (at most 2), or AUTO to scale the allowance with the word length.
+ */
+public class SearchOptions {
+    public static final int AUTO = TrigramIndex.AUTO;
+    public static final int DEFAULT_LIMIT = 100;
+    
+    private int fuzziness;
+    private int limit = DEFAULT_LIMIT;
+    
+    public SearchOptions() {
+    }
+    
+    public SearchOptions(int fuzziness, int limit) {
+        this.fuzziness = fuzziness;
+        this.limit = limit;
+    }
+    
+    public static SearchOptions exact() {
+        return new SearchOptions(0, DEFAULT_LIMIT);
+    }
+    
+    public static SearchOptions fuzzy() {
+        return new SearchOptions(AUTO, DEFAULT_LIMIT);
+    }
+    
+    public boolean isFuzzy() {
+        return fuzziness != 0;
+    }
+    
+    public int getFuzziness() {
+        return fuzziness;
+    }
+    
+    public void setFuzziness(int fuzziness) {
+        this.fuzziness = fuzziness;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    @Override
+    public String toString() {
+        return "SearchOptions{fuzziness=" + (fuzziness == AUTO ? "AUTO" : String.valueOf(fuzziness)) +
+               ", limit=" + limit + "}";
+    }
+}
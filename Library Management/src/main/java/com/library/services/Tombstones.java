@@ -0,0 +1,159 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deleted row ids for the *ChangedSince methods, and the watermark rules they share
+ *
+ * Services record a tombstone on the connection of the delete itself, before
+ * committing. Loans deleted by ON DELETE CASCADE or moved out by
+ * TransactionArchiver are recorded too. Tombstones older than
+ * sync.tombstone_retention_days are pruned; a since older than that gets a full
+ * set. Watermarks come from the database clock and are set back by
+ * sync.overlap_seconds to cover transactions still committing and replica lag.
+ * Set sync.tombstones_enabled=false on a database that does not have the table yet.
+ */
+final class Tombstones {
+    /**
+     * Parent row whose loans cascade with it, and the loan column that points at it
+     */
+    enum LoanOwner {
+        BOOK("book_id"),
+        USER("user_id");
+        
+        private final String column;
+        
+        LoanOwner(String column) {
+            this.column = column;
+        }
+    }
+    
+    private static final String INSERT_SQL = "INSERT INTO tombstones (entity, entity_id) VALUES (?, ?)";
+    private static final String SELECT_SQL = "SELECT DISTINCT entity_id FROM tombstones WHERE entity = ? AND deleted_at >= ?";
+    
+    private Tombstones() {
+    }
+    
+    /**
+     * Record a deleted row as part of the connection's open transaction
+     */
+    static void record(Connection conn, Entity entity, int entityId) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setString(1, entity.name());
+            stmt.setInt(2, entityId);
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Record the live loans of a book or user, before its delete cascades to them
+     */
+    static void recordLoansOf(Connection conn, LoanOwner owner, int id) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO tombstones (entity, entity_id) SELECT '" +
+                Entity.TRANSACTION.name() + "', id FROM transactions WHERE " + owner.column + " = ?")) {
+            stmt.setInt(1, id);
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Record loans about to leave the transactions table
+     */
+    static void recordLoans(Connection conn, List<Integer> ids) throws SQLException {
+        if (!isEnabled() || ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            for (int id : ids) {
+                stmt.setString(1, Entity.TRANSACTION.name());
+                stmt.setInt(2, id);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+    
+    static List<Integer> deletedSince(Connection conn, Entity entity, LocalDateTime since) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        if (!isEnabled()) {
+            return ids;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_SQL)) {
+            stmt.setString(1, entity.name());
+            stmt.setTimestamp(2, Timestamp.valueOf(since));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * The database's current time, read before the changed rows so nothing committed later is skipped
+     */
+    static LocalDateTime databaseTime(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT CURRENT_TIMESTAMP");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1).toLocalDateTime();
+        }
+    }
+    
+    /**
+     * Whether a delta since the given time can be answered, or a full set is needed
+     * Without tombstones deletes cannot be tracked, so every call gets a full set.
+     */
+    static boolean covers(LocalDateTime since, LocalDateTime now) {
+        return since != null && isEnabled() && since.isAfter(now.minusDays(getRetentionDays()));
+    }
+    
+    /**
+     * Watermark to hand out for a read that started at the given database time
+     */
+    static LocalDateTime watermark(LocalDateTime now) {
+        return now.minusSeconds(Math.max(0, ConfigManager.getSettings().getInt("sync.overlap_seconds", 5)));
+    }
+    
+    /**
+     * Delete tombstones past the retention period
+     */
+    static void prune(DatabaseConnection dbConnection) {
+        if (!isEnabled()) {
+            return;
+        }
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM tombstones WHERE deleted_at < ?")) {
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now().minusDays(getRetentionDays())));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error pruning tombstones: " + e.getMessage());
+        }
+    }
+    
+    static boolean isEnabled() {
+        return ConfigManager.getSettings().getBoolean("sync.tombstones_enabled", true);
+    }
+    
+    private static int getRetentionDays() {
+        return Math.max(1, ConfigManager.getSettings().getInt("sync.tombstone_retention_days", 7));
+    }
+}
@@ -0,0 +1,127 @@
+package com.library.services;
+
+import com.library.db.DatabaseConnection;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves closed loans out of the live transactions table
+ * RETURNED rows older than the configured number of months are copied to
+ * transactions_history and deleted from transactions in small batches, each
+ * in its own database transaction, so the live table only holds recent loans.
+ * Each archived loan gets a tombstone and a DELETE change event, like a deleted one.
+ */
+public class TransactionArchiver {
+    private static final String HISTORY_COLUMNS = "id, user_id, book_id, issue_date, due_date, return_date, " +
+                                                  "status, fine_amount, created_at, updated_at";
+    
+    private final DatabaseConnection dbConnection;
+    
+    public TransactionArchiver() {
+        this(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Archiver over one branch's database
+     */
+    public TransactionArchiver(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+    }
+    
+    /**
+     * Archive using the configured age and batch size
+     */
+    public int archiveReturnedTransactions() {
+        return archiveReturnedTransactions(ConfigManager.getArchiveAfterMonths(), ConfigManager.getArchiveBatchSize());
+    }
+    
+    /**
+     * Archive returned transactions whose return date is older than the given number of months
+     * Returns the number of rows moved.
+     */
+    public int archiveReturnedTransactions(int olderThanMonths, int batchSize) {
+        LocalDate cutoff = LocalDate.now().minusMonths(olderThanMonths);
+        String selectSql = "SELECT id FROM transactions WHERE status = ? AND return_date < ? " +
+                           "ORDER BY id LIMIT ? FOR UPDATE";
+        int archived = 0;
+        
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                while (true) {
+                    List<Integer> ids = new ArrayList<>(batchSize);
+                    try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                        stmt.setString(1, TransactionStatus.RETURNED.name());
+                        stmt.setDate(2, Date.valueOf(cutoff));
+                        stmt.setInt(3, batchSize);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                ids.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                    
+                    if (ids.isEmpty()) {
+                        conn.commit();
+                        break;
+                    }
+                    
+                    String idList = placeholders(ids.size());
+                    try (PreparedStatement copy = conn.prepareStatement(
+                             "INSERT INTO transactions_history (" + HISTORY_COLUMNS + ") SELECT " + HISTORY_COLUMNS +
+                             " FROM transactions WHERE id IN (" + idList + ")");
+                         PreparedStatement delete = conn.prepareStatement(
+                             "DELETE FROM transactions WHERE id IN (" + idList + ")")) {
+                        bindIds(copy, ids);
+                        bindIds(delete, ids);
+                        copy.executeUpdate();
+                        Tombstones.recordLoans(conn, ids);
+                        archived += delete.executeUpdate();
+                        for (int id : ids) {
+                            ChangeOutbox.append(conn, Entity.TRANSACTION, id, Action.DELETE);
+                        }
+                    }
+                    conn.commit();
+                    
+                    if (ids.size() < batchSize) {
+                        break;
+                    }
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error archiving transactions: " + e.getMessage());
+        }
+        
+        return archived;
+    }
+    
+    private String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+    
+    private void bindIds(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            stmt.setInt(i + 1, ids.get(i));
+        }
+    }
+}
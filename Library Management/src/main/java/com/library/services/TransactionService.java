@@ -1,8 +1,18 @@
 package com.library.services;
 
+import com.library.cache.CompactLoanStore;
+import com.library.cache.StringCanonicalizer;
 import com.library.db.DatabaseConnection;
+import com.library.db.QueryPlanCache;
+import com.library.db.ShardRouter;
+import com.library.entities.LoanListRow;
 import com.library.entities.Transaction;
 import com.library.entities.Transaction.TransactionStatus;
+import com.library.jfr.BookIssueEvent;
+import com.library.jfr.BookReturnEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -15,43 +25,123 @@ import java.util.Optional;
  * Handles all database operations related to book transactions
  */
 public class TransactionService {
+    private static final String TRANSACTION_COLUMNS = "id, user_id, book_id, issue_date, due_date, return_date, " +
+                                                      "status, fine_amount, created_at, updated_at";
+    // Column order is fixed so mapResultSetToTransaction can read by index
+    private static final String SELECT_TRANSACTIONS = "SELECT t.id, t.user_id, t.book_id, t.issue_date, t.due_date, " +
+                                                      "t.return_date, t.status, t.fine_amount, t.created_at, " +
+                                                      "t.updated_at, u.username, b.title, b.author FROM ";
+    private static final String LIVE_TRANSACTIONS = "transactions t ";
+    // Archived rows only ever hold RETURNED loans, see TransactionArchiver
+    private static final String ALL_TRANSACTIONS = "(SELECT " + TRANSACTION_COLUMNS + " FROM transactions " +
+                                                   "UNION ALL SELECT " + TRANSACTION_COLUMNS +
+                                                   " FROM transactions_history) t ";
+    private static final String JOIN_USERS_AND_BOOKS = "LEFT JOIN users u ON t.user_id = u.id " +
+                                                       "LEFT JOIN books b ON t.book_id = b.id ";
+    // Column order is fixed so mapResultSetToLoanListRow can read by index
+    private static final String LOAN_LIST_SELECT = "SELECT t.id, t.user_id, t.book_id, u.username, b.title, " +
+                                                   "t.issue_date, t.due_date, t.return_date, t.status, t.updated_at FROM ";
+    // Compiled LoanQuery SQL by shape, shared by every instance
+    private static final QueryPlanCache PLANS = new QueryPlanCache(64);
+    
     private final DatabaseConnection dbConnection;
-    private final BookService bookService;
+    private final StringCanonicalizer strings;
+    private final int branchId;
     
     public TransactionService() {
-        this.dbConnection = DatabaseConnection.getInstance();
-        this.bookService = new BookService();
+        this(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Service over one branch's loans, in that branch's database
+     * A loan lives in the same database as its book, so issue a branch's books
+     * through that branch's service.
+     */
+    public TransactionService(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+        this.strings = StringCanonicalizer.getInstance();
+        this.branchId = branchId;
     }
     
     /**
      * Issue a book to a user
+     * The copy is reserved and the loan recorded in one database transaction on
+     * one connection, so concurrent desks cannot issue the last copy twice.
+     * A book whose branch keeps its loans in another database is refused.
      */
     public boolean issueBook(int userId, int bookId, LocalDate dueDate) {
-        // Check if book is available
-        if (!bookService.isBookAvailable(bookId)) {
-            return false;
-        }
+        BookIssueEvent event = new BookIssueEvent();
+        event.begin();
+        event.userId = userId;
+        event.bookId = bookId;
         
-        String sql = "INSERT INTO transactions (user_id, book_id, issue_date, due_date, status) VALUES (?, ?, ?, ?, ?)";
+        String branchSql = "SELECT branch_id FROM books WHERE id = ?";
+        String reserveSql = "UPDATE books SET available_copies = available_copies - 1 WHERE id = ? AND available_copies > 0";
+        String sql = "INSERT INTO transactions (user_id, book_id, issue_date, due_date, status, branch_id) VALUES (?, ?, ?, ?, ?, ?)";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            
-            stmt.setInt(1, userId);
-            stmt.setInt(2, bookId);
-            stmt.setDate(3, Date.valueOf(LocalDate.now()));
-            stmt.setDate(4, Date.valueOf(dueDate));
-            stmt.setString(5, TransactionStatus.ISSUED.name());
-            
-            int affectedRows = stmt.executeUpdate();
-            
-            if (affectedRows > 0) {
-                // Update available copies
-                bookService.updateAvailableCopies(bookId, -1);
-                return true;
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement branch = conn.prepareStatement(branchSql);
+                 PreparedStatement reserve = conn.prepareStatement(reserveSql);
+                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                
+                branch.setInt(1, bookId);
+                int bookBranch = branchId;
+                try (ResultSet rs = branch.executeQuery()) {
+                    if (rs.next()) {
+                        bookBranch = rs.getInt(1);
+                    }
+                }
+                if (!ShardRouter.getInstance().isStoredIn(bookBranch, dbConnection)) {
+                    System.err.println("Error issuing book: book " + bookId + " belongs to branch " + bookBranch +
+                                       ", whose loans are kept in another database");
+                    conn.rollback();
+                    return false;
+                }
+                
+                // Check if book is available and take a copy
+                reserve.setInt(1, bookId);
+                if (reserve.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                
+                stmt.setInt(1, userId);
+                stmt.setInt(2, bookId);
+                stmt.setDate(3, Date.valueOf(LocalDate.now()));
+                stmt.setDate(4, Date.valueOf(dueDate));
+                stmt.setString(5, TransactionStatus.ISSUED.name());
+                stmt.setInt(6, bookBranch);
+                
+                int affectedRows = stmt.executeUpdate();
+                event.rowsAffected = affectedRows;
+                
+                if (affectedRows > 0) {
+                    // Only read the generated key back when the outbox, a recording or a listener wants it
+                    if (ChangeOutbox.isEnabled() || event.isEnabled() || CatalogEvents.hasListeners()) {
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            if (keys.next()) {
+                                event.transactionId = keys.getInt(1);
+                            }
+                        }
+                    }
+                    ChangeOutbox.append(conn, Entity.TRANSACTION, event.transactionId, Action.INSERT);
+                    ChangeOutbox.append(conn, Entity.BOOK, bookId, Action.UPDATE);
+                    
+                    conn.commit();
+                    event.success = true;
+                    CatalogEvents.fireLoanIssued(branchId, event.transactionId, userId, bookId, dueDate);
+                    return true;
+                }
+                conn.rollback();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             System.err.println("Error issuing book: " + e.getMessage());
+        } finally {
+            event.commit();
         }
         
         return false;
@@ -61,28 +151,53 @@ public class TransactionService {
      * Return a book
      */
     public boolean returnBook(int transactionId) {
+        BookReturnEvent event = new BookReturnEvent();
+        event.begin();
+        event.transactionId = transactionId;
         String sql = "UPDATE transactions SET return_date = ?, status = ? WHERE id = ? AND status = ?";
+        String bookSql = "SELECT book_id FROM transactions WHERE id = ?";
+        String releaseSql = "UPDATE books SET available_copies = available_copies + 1 WHERE id = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setDate(1, Date.valueOf(LocalDate.now()));
-            stmt.setString(2, TransactionStatus.RETURNED.name());
-            stmt.setInt(3, transactionId);
-            stmt.setString(4, TransactionStatus.ISSUED.name());
-            
-            int affectedRows = stmt.executeUpdate();
-            
-            if (affectedRows > 0) {
-                // Get book ID and update available copies
-                Optional<Transaction> transaction = getTransactionById(transactionId);
-                if (transaction.isPresent()) {
-                    bookService.updateAvailableCopies(transaction.get().getBookId(), 1);
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                 PreparedStatement bookStmt = conn.prepareStatement(bookSql);
+                 PreparedStatement release = conn.prepareStatement(releaseSql)) {
+                
+                stmt.setDate(1, Date.valueOf(LocalDate.now()));
+                stmt.setString(2, TransactionStatus.RETURNED.name());
+                stmt.setInt(3, transactionId);
+                stmt.setString(4, TransactionStatus.ISSUED.name());
+                
+                int affectedRows = stmt.executeUpdate();
+                event.rowsAffected = affectedRows;
+                
+                if (affectedRows > 0) {
+                    // Get book ID and update available copies
+                    bookStmt.setInt(1, transactionId);
+                    try (ResultSet rs = bookStmt.executeQuery()) {
+                        if (rs.next()) {
+                            event.bookId = rs.getInt("book_id");
+                            release.setInt(1, event.bookId);
+                            release.executeUpdate();
+                        }
+                    }
+                    ChangeOutbox.append(conn, Entity.TRANSACTION, transactionId, Action.UPDATE);
+                    ChangeOutbox.append(conn, Entity.BOOK, event.bookId, Action.UPDATE);
+                    conn.commit();
+                    event.success = true;
+                    CatalogEvents.fireLoanReturned(branchId, transactionId, event.bookId);
+                    return true;
                 }
-                return true;
+                conn.rollback();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             System.err.println("Error returning book: " + e.getMessage());
+        } finally {
+            event.commit();
         }
         
         return false;
@@ -92,21 +207,28 @@ public class TransactionService {
      * Get transaction by ID
      */
     public Optional<Transaction> getTransactionById(int id) {
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
-                    "WHERE t.id = ?";
+        return getTransactionById(id, false);
+    }
+    
+    /**
+     * Get transaction by ID, optionally also looking in the archived history
+     */
+    public Optional<Transaction> getTransactionById(int id, boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS + "WHERE t.id = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, id);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return Optional.of(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return Optional.empty();
+            });
         } catch (SQLException e) {
             System.err.println("Error getting transaction by ID: " + e.getMessage());
         }
@@ -118,149 +240,277 @@ public class TransactionService {
      * Get all transactions
      */
     public List<Transaction> getAllTransactions() {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
-                    "ORDER BY t.created_at DESC";
+        return getAllTransactions(false);
+    }
+    
+    /**
+     * Get all transactions, optionally including the archived history
+     */
+    public List<Transaction> getAllTransactions(boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS + "ORDER BY t.created_at DESC";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                transactions.add(mapResultSetToTransaction(rs));
-            }
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        transactions.add(mapResultSetToTransaction(rs));
+                    }
+                }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting all transactions: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get the live transactions created, updated or removed since a watermark, oldest change first
+     * Loans moved to the history by TransactionArchiver count as removed. A null since
+     * returns every live transaction. Returns null if the database could not be read.
+     */
+    public ChangeSet<Transaction> getTransactionsChangedSince(LocalDateTime since) {
+        try {
+            return dbConnection.read(conn -> {
+                LocalDateTime now = Tombstones.databaseTime(conn);
+                boolean full = !Tombstones.covers(since, now);
+                String sql = SELECT_TRANSACTIONS + LIVE_TRANSACTIONS + JOIN_USERS_AND_BOOKS +
+                             (full ? "" : "WHERE t.updated_at >= ? ") + "ORDER BY t.updated_at, t.id";
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    if (!full) {
+                        stmt.setTimestamp(1, Timestamp.valueOf(since));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
+                }
+                List<Integer> deleted = full ? new ArrayList<>() : Tombstones.deletedSince(conn, Entity.TRANSACTION, since);
+                return new ChangeSet<>(transactions, deleted, Tombstones.watermark(now), full);
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting changed transactions: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Get the loan list view rows
+     */
+    public List<LoanListRow> getLoanListRows() {
+        return getLoanListRows(false);
+    }
+    
+    /**
+     * Get the loan list view rows, optionally including the archived history
+     * Only the displayed columns are fetched and the join skips the book author.
+     */
+    public List<LoanListRow> getLoanListRows(boolean includeHistory) {
+        String sql = LOAN_LIST_SELECT + source(includeHistory) + JOIN_USERS_AND_BOOKS + "ORDER BY t.created_at DESC";
+        
+        try {
+            return dbConnection.read(conn -> {
+                List<LoanListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapResultSetToLoanListRow(rs));
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting loan list: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get loan list rows matching a query spec, filtered, sorted and limited by the database
+     */
+    public List<LoanListRow> findLoans(LoanQuery query) {
+        String sql = PLANS.get(query.shape(), () -> {
+            StringBuilder compiled = new StringBuilder(LOAN_LIST_SELECT).append(source(query.isIncludeHistory()))
+                    .append(JOIN_USERS_AND_BOOKS.trim());
+            query.appendClauses(compiled, new ArrayList<>());
+            return compiled.toString();
+        });
+        List<Object> params = new ArrayList<>();
+        query.appendClauses(null, params);
+        
+        try {
+            return dbConnection.read(conn -> {
+                List<LoanListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    QueryPlanCache.bind(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(mapResultSetToLoanListRow(rs));
+                        }
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error finding loans: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
     }
     
     /**
      * Get transactions by user ID
      */
     public List<Transaction> getTransactionsByUserId(int userId) {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
+        return getTransactionsByUserId(userId, false);
+    }
+    
+    /**
+     * Get transactions by user ID, optionally including the archived history
+     */
+    public List<Transaction> getTransactionsByUserId(int userId, boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS +
                     "WHERE t.user_id = ? ORDER BY t.created_at DESC";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, userId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, userId);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting transactions by user ID: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
     }
     
     /**
      * Get transactions by book ID
      */
     public List<Transaction> getTransactionsByBookId(int bookId) {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
+        return getTransactionsByBookId(bookId, false);
+    }
+    
+    /**
+     * Get transactions by book ID, optionally including the archived history
+     */
+    public List<Transaction> getTransactionsByBookId(int bookId, boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS +
                     "WHERE t.book_id = ? ORDER BY t.created_at DESC";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, bookId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, bookId);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting transactions by book ID: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
     }
     
     /**
      * Get overdue transactions
      */
     public List<Transaction> getOverdueTransactions() {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
+        String sql = SELECT_TRANSACTIONS + LIVE_TRANSACTIONS + JOIN_USERS_AND_BOOKS +
                     "WHERE t.status = ? AND t.due_date < ? ORDER BY t.due_date";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, TransactionStatus.ISSUED.name());
-            stmt.setDate(2, Date.valueOf(LocalDate.now()));
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, TransactionStatus.ISSUED.name());
+                    stmt.setDate(2, Date.valueOf(LocalDate.now()));
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting overdue transactions: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
     }
     
     /**
      * Get active transactions (issued but not returned)
      */
     public List<Transaction> getActiveTransactions() {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
+        String sql = SELECT_TRANSACTIONS + LIVE_TRANSACTIONS + JOIN_USERS_AND_BOOKS +
                     "WHERE t.status = ? ORDER BY t.due_date";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, TransactionStatus.ISSUED.name());
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, TransactionStatus.ISSUED.name());
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting active transactions: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
     }
     
     /**
      * Update overdue transactions
+     * Recorded as a single change event covering every loan it marks.
      */
     public void updateOverdueTransactions() {
         String sql = "UPDATE transactions SET status = ? WHERE status = ? AND due_date < ?";
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
             stmt.setString(1, TransactionStatus.OVERDUE.name());
             stmt.setString(2, TransactionStatus.ISSUED.name());
             stmt.setDate(3, Date.valueOf(LocalDate.now()));
             
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() > 0) {
+                ChangeOutbox.append(conn, Entity.TRANSACTION, 0, Action.UPDATE);
+            }
+            conn.commit();
         } catch (SQLException e) {
             System.err.println("Error updating overdue transactions: " + e.getMessage());
         }
@@ -282,31 +532,104 @@ public class TransactionService {
      * Search transactions
      */
     public List<Transaction> searchTransactions(String searchTerm) {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
-                    "LEFT JOIN users u ON t.user_id = u.id " +
-                    "LEFT JOIN books b ON t.book_id = b.id " +
+        return searchTransactions(searchTerm, false);
+    }
+    
+    /**
+     * Search transactions, optionally including the archived history
+     */
+    public List<Transaction> searchTransactions(String searchTerm, boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS +
                     "WHERE u.username LIKE ? OR b.title LIKE ? OR b.author LIKE ? " +
                     "ORDER BY t.created_at DESC";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            String searchPattern = "%" + searchTerm + "%";
-            stmt.setString(1, searchPattern);
-            stmt.setString(2, searchPattern);
-            stmt.setString(3, searchPattern);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(mapResultSetToTransaction(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<Transaction> transactions = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    String searchPattern = "%" + searchTerm + "%";
+                    stmt.setString(1, searchPattern);
+                    stmt.setString(2, searchPattern);
+                    stmt.setString(3, searchPattern);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(mapResultSetToTransaction(rs));
+                        }
+                    }
                 }
-            }
+                return transactions;
+            });
         } catch (SQLException e) {
             System.err.println("Error searching transactions: " + e.getMessage());
         }
         
-        return transactions;
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Load transactions into a compact store without building Transaction objects
+     * Returns the number of rows loaded, or -1 on error. A retried attempt
+     * overwrites the rows the failed one already stored.
+     */
+    public int loadInto(CompactLoanStore store, boolean includeHistory) {
+        String sql = SELECT_TRANSACTIONS + source(includeHistory) + JOIN_USERS_AND_BOOKS;
+        
+        try {
+            return dbConnection.read(conn -> {
+                int loaded = 0;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setFetchSize(1000);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            store.put(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                                    epochDay(rs.getDate(4)), epochDay(rs.getDate(5)), epochDay(rs.getDate(6)),
+                                    TransactionStatus.valueOf(rs.getString(7)), (int) Math.round(rs.getDouble(8) * 100),
+                                    seconds(rs.getTimestamp(9)), seconds(rs.getTimestamp(10)),
+                                    rs.getString(11), rs.getString(12), rs.getString(13));
+                            loaded++;
+                        }
+                    }
+                }
+                return loaded;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error loading transactions into store: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+    
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+    
+    private static int epochDay(Date date) {
+        return CompactLoanStore.toEpochDay(date != null ? date.toLocalDate() : null);
+    }
+    
+    private static int seconds(Timestamp timestamp) {
+        return CompactLoanStore.toSeconds(timestamp != null ? timestamp.toLocalDateTime() : null);
+    }
+    
+    /**
+     * Map a LOAN_LIST_SELECT row to a LoanListRow
+     */
+    private LoanListRow mapResultSetToLoanListRow(ResultSet rs) throws SQLException {
+        return new LoanListRow(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                strings.canonicalize(rs.getString(4)), strings.canonicalize(rs.getString(5)),
+                toLocalDate(rs.getDate(6)), toLocalDate(rs.getDate(7)), toLocalDate(rs.getDate(8)),
+                TransactionStatus.valueOf(rs.getString(9)), toLocalDateTime(rs.getTimestamp(10)));
+    }
+    
+    /**
+     * Pick the live table alone or the live table plus archived history
+     */
+    private String source(boolean includeHistory) {
+        return includeHistory ? ALL_TRANSACTIONS : LIVE_TRANSACTIONS;
     }
     
     /**
@@ -314,42 +637,34 @@ public class TransactionService {
      */
     private Transaction mapResultSetToTransaction(ResultSet rs) throws SQLException {
         Transaction transaction = new Transaction();
-        transaction.setId(rs.getInt("id"));
-        transaction.setUserId(rs.getInt("user_id"));
-        transaction.setBookId(rs.getInt("book_id"));
+        transaction.setId(rs.getInt(1));
+        transaction.setUserId(rs.getInt(2));
+        transaction.setBookId(rs.getInt(3));
         
-        Date issueDate = rs.getDate("issue_date");
+        Date issueDate = rs.getDate(4);
         if (issueDate != null) {
             transaction.setIssueDate(issueDate.toLocalDate());
         }
         
-        Date dueDate = rs.getDate("due_date");
+        Date dueDate = rs.getDate(5);
         if (dueDate != null) {
             transaction.setDueDate(dueDate.toLocalDate());
         }
         
-        Date returnDate = rs.getDate("return_date");
+        Date returnDate = rs.getDate(6);
         if (returnDate != null) {
             transaction.setReturnDate(returnDate.toLocalDate());
         }
         
-        transaction.setStatus(TransactionStatus.valueOf(rs.getString("status")));
-        transaction.setFineAmount(rs.getDouble("fine_amount"));
+        transaction.setStatus(TransactionStatus.valueOf(rs.getString(7)));
+        transaction.setFineAmount(rs.getDouble(8));
+        transaction.setCreatedAt(rs.getTimestamp(9));
+        transaction.setUpdatedAt(rs.getTimestamp(10));
         
         // Additional fields from joins
-        transaction.setUserName(rs.getString("username"));
-        transaction.setBookTitle(rs.getString("title"));
-        transaction.setBookAuthor(rs.getString("author"));
-        
-        Timestamp createdAt = rs.getTimestamp("created_at");
-        if (createdAt != null) {
-            transaction.setCreatedAt(createdAt.toLocalDateTime());
-        }
-        
-        Timestamp updatedAt = rs.getTimestamp("updated_at");
-        if (updatedAt != null) {
-            transaction.setUpdatedAt(updatedAt.toLocalDateTime());
-        }
+        transaction.setUserName(strings.canonicalize(rs.getString(11)));
+        transaction.setBookTitle(strings.canonicalize(rs.getString(12)));
+        transaction.setBookAuthor(strings.canonicalize(rs.getString(13)));
         
         return transaction;
     }
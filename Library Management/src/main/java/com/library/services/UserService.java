@@ -1,7 +1,13 @@
 package com.library.services;
 
+import com.library.cache.StringCanonicalizer;
 import com.library.db.DatabaseConnection;
 import com.library.entities.User;
+import com.library.entities.UserListRow;
+import com.library.jfr.LoginEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.utils.ConfigManager;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -13,31 +19,55 @@ import java.util.Optional;
  * Handles all database operations related to users
  */
 public class UserService {
+    // Column order is fixed so mapResultSetToUser can read by index
+    private static final String SELECT_USERS = "SELECT id, username, password, role, email, phone, created_at, updated_at FROM users";
+    
     private final DatabaseConnection dbConnection;
+    private final StringCanonicalizer strings;
+    private final int branchId;
     
     public UserService() {
-        this.dbConnection = DatabaseConnection.getInstance();
+        this(ConfigManager.getBranchId());
+    }
+    
+    /**
+     * Service over one branch's members, in that branch's database
+     */
+    public UserService(int branchId) {
+        this.dbConnection = DatabaseConnection.forBranch(branchId);
+        this.strings = StringCanonicalizer.getInstance();
+        this.branchId = branchId;
     }
     
     /**
      * Authenticate user with username and password
      */
     public Optional<User> authenticate(String username, String password) {
-        String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        event.username = username;
+        String sql = SELECT_USERS + " WHERE username = ? AND password = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapResultSetToUser(rs));
+        try {
+            Optional<User> user = dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, username);
+                    stmt.setString(2, password);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? Optional.of(mapResultSetToUser(rs)) : Optional.<User>empty();
+                    }
                 }
+            });
+            if (user.isPresent()) {
+                event.userId = user.get().getId();
+                event.success = true;
             }
+            return user;
         } catch (SQLException e) {
             System.err.println("Authentication error: " + e.getMessage());
+        } finally {
+            event.commit();
         }
         
         return Optional.empty();
@@ -47,16 +77,19 @@ public class UserService {
      * Create a new user
      */
     public boolean createUser(User user) {
-        String sql = "INSERT INTO users (username, password, role, email, phone) VALUES (?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO users (username, password, role, email, phone, branch_id) VALUES (?, ?, ?, ?, ?, ?)";
         
+        // The pool rolls back a transaction left open by a failed write
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
             
             stmt.setString(1, user.getUsername());
             stmt.setString(2, user.getPassword());
             stmt.setString(3, user.getRole().name());
             stmt.setString(4, user.getEmail());
             stmt.setString(5, user.getPhone());
+            stmt.setInt(6, branchId);
             
             int affectedRows = stmt.executeUpdate();
             
@@ -66,6 +99,9 @@ public class UserService {
                         user.setId(generatedKeys.getInt(1));
                     }
                 }
+                ChangeOutbox.append(conn, Entity.USER, user.getId(), Action.INSERT);
+                conn.commit();
+                CatalogEvents.fireUserSaved(branchId, user);
                 return true;
             }
         } catch (SQLException e) {
@@ -79,18 +115,21 @@ public class UserService {
      * Get user by ID
      */
     public Optional<User> getUserById(int id) {
-        String sql = "SELECT * FROM users WHERE id = ?";
+        String sql = SELECT_USERS + " WHERE id = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapResultSetToUser(rs));
+        try {
+            return dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, id);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return Optional.of(mapResultSetToUser(rs));
+                        }
+                    }
                 }
-            }
+                return Optional.empty();
+            });
         } catch (SQLException e) {
             System.err.println("Error getting user by ID: " + e.getMessage());
         }
@@ -102,18 +141,21 @@ public class UserService {
      * Get user by username
      */
     public Optional<User> getUserByUsername(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
+        String sql = SELECT_USERS + " WHERE username = ?";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, username);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapResultSetToUser(rs));
+        try {
+            return dbConnection.read(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, username);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return Optional.of(mapResultSetToUser(rs));
+                        }
+                    }
                 }
-            }
+                return Optional.empty();
+            });
         } catch (SQLException e) {
             System.err.println("Error getting user by username: " + e.getMessage());
         }
@@ -125,21 +167,118 @@ public class UserService {
      * Get all users
      */
     public List<User> getAllUsers() {
-        List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users ORDER BY created_at DESC";
+        String sql = SELECT_USERS + " ORDER BY created_at DESC";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                users.add(mapResultSetToUser(rs));
-            }
+        try {
+            return dbConnection.read(conn -> {
+                List<User> users = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        users.add(mapResultSetToUser(rs));
+                    }
+                }
+                return users;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting all users: " + e.getMessage());
         }
         
-        return users;
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get the user list view rows, without passwords or audit columns
+     */
+    public List<UserListRow> getUserListRows() {
+        String sql = "SELECT id, username, email, role, phone, updated_at FROM users ORDER BY created_at DESC";
+        
+        try {
+            return dbConnection.read(conn -> {
+                List<UserListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapResultSetToUserListRow(rs));
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting user list: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Get the users created, updated or deleted since a watermark, oldest change first
+     * A null since returns every user. Returns null if the database could not be read.
+     */
+    public ChangeSet<User> getUsersChangedSince(LocalDateTime since) {
+        try {
+            return dbConnection.read(conn -> {
+                LocalDateTime now = Tombstones.databaseTime(conn);
+                boolean full = !Tombstones.covers(since, now);
+                String sql = SELECT_USERS + (full ? "" : " WHERE updated_at >= ?") + " ORDER BY updated_at, id";
+                List<User> users = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    if (!full) {
+                        stmt.setTimestamp(1, Timestamp.valueOf(since));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            users.add(mapResultSetToUser(rs));
+                        }
+                    }
+                }
+                List<Integer> deleted = full ? new ArrayList<>() : Tombstones.deletedSince(conn, Entity.USER, since);
+                return new ChangeSet<>(users, deleted, Tombstones.watermark(now), full);
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting changed users: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Users list rows changed since a watermark, newest user first like getUserListRows
+     * A null since returns every row. Returns null if the database could not be read.
+     */
+    public ChangeSet<UserListRow> getUserListRowsChangedSince(LocalDateTime since) {
+        try {
+            return dbConnection.read(conn -> {
+                LocalDateTime now = Tombstones.databaseTime(conn);
+                boolean full = !Tombstones.covers(since, now);
+                String sql = "SELECT id, username, email, role, phone, updated_at FROM users" +
+                             (full ? "" : " WHERE updated_at >= ?") + " ORDER BY created_at DESC";
+                List<UserListRow> rows = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    if (!full) {
+                        stmt.setTimestamp(1, Timestamp.valueOf(since));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(mapResultSetToUserListRow(rs));
+                        }
+                    }
+                }
+                List<Integer> deleted = full ? new ArrayList<>() : Tombstones.deletedSince(conn, Entity.USER, since);
+                return new ChangeSet<>(rows, deleted, Tombstones.watermark(now), full);
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting changed users: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    private UserListRow mapResultSetToUserListRow(ResultSet rs) throws SQLException {
+        Timestamp updatedAt = rs.getTimestamp(6);
+        return new UserListRow(rs.getInt(1), strings.canonicalize(rs.getString(2)), rs.getString(3),
+                User.UserRole.valueOf(rs.getString(4)), rs.getString(5),
+                updatedAt != null ? updatedAt.toLocalDateTime() : null);
     }
     
     /**
@@ -150,6 +289,7 @@ public class UserService {
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
             stmt.setString(1, user.getUsername());
             stmt.setString(2, user.getPassword());
@@ -158,7 +298,12 @@ public class UserService {
             stmt.setString(5, user.getPhone());
             stmt.setInt(6, user.getId());
             
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                ChangeOutbox.append(conn, Entity.USER, user.getId(), Action.UPDATE);
+                conn.commit();
+                CatalogEvents.fireUserSaved(branchId, user);
+                return true;
+            }
         } catch (SQLException e) {
             System.err.println("Error updating user: " + e.getMessage());
         }
@@ -174,9 +319,18 @@ public class UserService {
         
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
             
+            // Their loans go with them (ON DELETE CASCADE)
+            Tombstones.recordLoansOf(conn, Tombstones.LoanOwner.USER, id);
             stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                Tombstones.record(conn, Entity.USER, id);
+                ChangeOutbox.append(conn, Entity.USER, id, Action.DELETE);
+                conn.commit();
+                CatalogEvents.fireUserDeleted(branchId, id);
+                return true;
+            }
         } catch (SQLException e) {
             System.err.println("Error deleting user: " + e.getMessage());
         }
@@ -211,26 +365,29 @@ public class UserService {
      * Search users by username or email
      */
     public List<User> searchUsers(String searchTerm) {
-        List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users WHERE username LIKE ? OR email LIKE ? ORDER BY username";
+        String sql = SELECT_USERS + " WHERE username LIKE ? OR email LIKE ? ORDER BY username";
         
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            String searchPattern = "%" + searchTerm + "%";
-            stmt.setString(1, searchPattern);
-            stmt.setString(2, searchPattern);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    users.add(mapResultSetToUser(rs));
+        try {
+            return dbConnection.read(conn -> {
+                List<User> users = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    String searchPattern = "%" + searchTerm + "%";
+                    stmt.setString(1, searchPattern);
+                    stmt.setString(2, searchPattern);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            users.add(mapResultSetToUser(rs));
+                        }
+                    }
                 }
-            }
+                return users;
+            });
         } catch (SQLException e) {
             System.err.println("Error searching users: " + e.getMessage());
         }
         
-        return users;
+        return new ArrayList<>();
     }
     
     /**
@@ -238,22 +395,14 @@ public class UserService {
      */
     private User mapResultSetToUser(ResultSet rs) throws SQLException {
         User user = new User();
-        user.setId(rs.getInt("id"));
-        user.setUsername(rs.getString("username"));
-        user.setPassword(rs.getString("password"));
-        user.setRole(User.UserRole.valueOf(rs.getString("role")));
-        user.setEmail(rs.getString("email"));
-        user.setPhone(rs.getString("phone"));
-        
-        Timestamp createdAt = rs.getTimestamp("created_at");
-        if (createdAt != null) {
-            user.setCreatedAt(createdAt.toLocalDateTime());
-        }
-        
-        Timestamp updatedAt = rs.getTimestamp("updated_at");
-        if (updatedAt != null) {
-            user.setUpdatedAt(updatedAt.toLocalDateTime());
-        }
+        user.setId(rs.getInt(1));
+        user.setUsername(strings.canonicalize(rs.getString(2)));
+        user.setPassword(rs.getString(3));
+        user.setRole(User.UserRole.valueOf(rs.getString(4)));
+        user.setEmail(rs.getString(5));
+        user.setPhone(rs.getString(6));
+        user.setCreatedAt(rs.getTimestamp(7));
+        user.setUpdatedAt(rs.getTimestamp(8));
         
         return user;
     }
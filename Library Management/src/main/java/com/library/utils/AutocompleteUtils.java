@@ -0,0 +1,57 @@
+package com.library.utils;
+
+import com.jfoenix.controls.JFXAutoCompletePopup;
+import javafx.scene.control.TextField;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Utility class for attaching type-ahead suggestions to text fields
+ */
+public class AutocompleteUtils {
+    public static final int MIN_PREFIX_LENGTH = 2;
+    public static final int MAX_SUGGESTIONS = 8;
+    
+    /**
+     * Show suggestions from source under the field as the user types
+     * The source gets the typed text and a limit; picking a suggestion replaces the field text.
+     */
+    public static JFXAutoCompletePopup<String> attach(TextField field, BiFunction<String, Integer, List<String>> source) {
+        JFXAutoCompletePopup<String> popup = new JFXAutoCompletePopup<>();
+        popup.setCellLimit(MAX_SUGGESTIONS);
+        boolean[] selecting = new boolean[1];
+        
+        popup.setSelectionHandler(event -> {
+            selecting[0] = true;
+            field.setText(event.getObject());
+            field.positionCaret(field.getText().length());
+            selecting[0] = false;
+            popup.hide();
+        });
+        
+        field.textProperty().addListener((obs, oldVal, newVal) -> {
+            if (selecting[0]) {
+                return;
+            }
+            List<String> suggestions = newVal == null || newVal.trim().length() < MIN_PREFIX_LENGTH
+                    ? List.of()
+                    : source.apply(newVal, MAX_SUGGESTIONS);
+            popup.getSuggestions().setAll(suggestions);
+            // The index already matched and ranked them; show them as they are
+            popup.filter(suggestion -> true);
+            if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).equalsIgnoreCase(newVal))) {
+                popup.hide();
+            } else if (!popup.isShowing()) {
+                popup.show(field);
+            }
+        });
+        
+        field.focusedProperty().addListener((obs, oldVal, newVal) -> {
+            if (!newVal) {
+                popup.hide();
+            }
+        });
+        return popup;
+    }
+}
@@ -0,0 +1,44 @@
+package com.library.utils;
+
+import com.library.entities.Book;
+
+/**
+ * A single record read from a catalog import source
+ * Carries its position in the source so rejects and checkpoints can refer to it
+ */
+public class CatalogRecord {
+    private final long recordNumber;
+    private final Book book;
+    private String error;
+    
+    public CatalogRecord(long recordNumber, Book book) {
+        this.recordNumber = recordNumber;
+        this.book = book;
+    }
+    
+    public CatalogRecord(long recordNumber, String error) {
+        this.recordNumber = recordNumber;
+        this.book = null;
+        this.error = error;
+    }
+    
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+    
+    public Book getBook() {
+        return book;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void reject(String error) {
+        this.error = error;
+    }
+    
+    public boolean isRejected() {
+        return error != null;
+    }
+}
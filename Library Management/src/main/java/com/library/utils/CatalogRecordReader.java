@@ -0,0 +1,15 @@
+package com.library.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming source of catalog records for bulk import
+ */
+public interface CatalogRecordReader extends Closeable {
+    
+    /**
+     * Read the next record, or return null at the end of the source
+     */
+    CatalogRecord next() throws IOException;
+}
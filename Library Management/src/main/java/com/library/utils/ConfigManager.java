@@ -3,25 +3,31 @@ package com.library.utils;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
  * Configuration manager for application settings
+ *
+ * Values live in an immutable Settings snapshot behind an atomic reference, so
+ * lookups never lock. Every change publishes a whole new snapshot and then
+ * notifies the SettingsListeners.
  */
 public class ConfigManager {
     
     private static final String CONFIG_FILE = "library.properties";
-    private static Properties properties;
-    
-    static {
-        loadProperties();
-    }
+    private static final CopyOnWriteArrayList<SettingsListener> listeners = new CopyOnWriteArrayList<>();
+    private static final AtomicReference<Settings> settings = new AtomicReference<>(loadProperties());
     
     /**
      * Load properties from file
      */
-    private static void loadProperties() {
-        properties = new Properties();
+    private static Settings loadProperties() {
+        Properties properties = new Properties();
         
         // Default properties
         properties.setProperty("app.name", "Library Management System");
@@ -38,6 +44,9 @@ public class ConfigManager {
         properties.setProperty("library.max_issue_days", "14");
         properties.setProperty("library.fine_per_day", "1.00");
         properties.setProperty("library.max_books_per_user", "5");
+        properties.setProperty("library.archive_after_months", "12");
+        properties.setProperty("library.archive_batch_size", "1000");
+        properties.setProperty("library.branch_id", "1");
         
         // Notification settings
         properties.setProperty("notifications.email_enabled", "false");
@@ -51,14 +60,46 @@ public class ConfigManager {
             // File doesn't exist or can't be read, use defaults
             System.out.println("Using default configuration");
         }
+        return Settings.of(properties);
+    }
+    
+    /**
+     * Re-read the configuration file, dropping unsaved changes
+     */
+    public static synchronized void reload() {
+        Settings next = loadProperties();
+        publish(settings.getAndSet(next), next);
+    }
+    
+    /**
+     * Current snapshot of every setting
+     * Read several values from one snapshot to see them consistently.
+     */
+    public static Settings getSettings() {
+        return settings.get();
+    }
+    
+    public static void addListener(SettingsListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+    
+    public static void removeListener(SettingsListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Location of the configuration file
+     */
+    public static Path getConfigFile() {
+        return Paths.get(CONFIG_FILE).toAbsolutePath();
     }
     
     /**
      * Save properties to file
      */
-    public static void saveProperties() {
+    public static synchronized void saveProperties() {
         try (FileOutputStream fos = new FileOutputStream(CONFIG_FILE)) {
-            properties.store(fos, "Library Management System Configuration");
+            settings.get().toProperties().store(fos, "Library Management System Configuration");
         } catch (IOException e) {
             System.err.println("Error saving configuration: " + e.getMessage());
         }
@@ -68,71 +109,70 @@ public class ConfigManager {
      * Get property value
      */
     public static String getProperty(String key) {
-        return properties.getProperty(key);
+        return settings.get().get(key);
     }
     
     /**
      * Get property value with default
      */
     public static String getProperty(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return settings.get().get(key, defaultValue);
     }
     
     /**
      * Set property value
      */
     public static void setProperty(String key, String value) {
-        properties.setProperty(key, value);
+        update(current -> current.with(key, value));
+    }
+    
+    /**
+     * Remove property value
+     */
+    public static void removeProperty(String key) {
+        update(current -> current.without(key));
     }
     
     /**
      * Get integer property
      */
     public static int getIntProperty(String key, int defaultValue) {
-        try {
-            return Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)));
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        return settings.get().getInt(key, defaultValue);
     }
     
     /**
      * Get double property
      */
     public static double getDoubleProperty(String key, double defaultValue) {
-        try {
-            return Double.parseDouble(properties.getProperty(key, String.valueOf(defaultValue)));
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        return settings.get().getDouble(key, defaultValue);
     }
     
     /**
      * Get boolean property
      */
     public static boolean getBooleanProperty(String key, boolean defaultValue) {
-        return Boolean.parseBoolean(properties.getProperty(key, String.valueOf(defaultValue)));
+        return settings.get().getBoolean(key, defaultValue);
     }
     
     /**
      * Set integer property
      */
     public static void setIntProperty(String key, int value) {
-        properties.setProperty(key, String.valueOf(value));
+        setProperty(key, String.valueOf(value));
     }
     
     /**
      * Set double property
      */
     public static void setDoubleProperty(String key, double value) {
-        properties.setProperty(key, String.valueOf(value));
+        setProperty(key, String.valueOf(value));
     }
     
     /**
      * Set boolean property
      */
     public static void setBooleanProperty(String key, boolean value) {
-        properties.setProperty(key, String.valueOf(value));
+        setProperty(key, String.valueOf(value));
     }
     
     /**
@@ -167,41 +207,91 @@ public class ConfigManager {
      * Get maximum issue days
      */
     public static int getMaxIssueDays() {
-        return getIntProperty("library.max_issue_days", 14);
+        return settings.get().getMaxIssueDays();
     }
     
     /**
      * Get fine per day
      */
     public static double getFinePerDay() {
-        return getDoubleProperty("library.fine_per_day", 1.00);
+        return settings.get().getFinePerDay();
     }
     
     /**
      * Get maximum books per user
      */
     public static int getMaxBooksPerUser() {
-        return getIntProperty("library.max_books_per_user", 5);
+        return settings.get().getMaxBooksPerUser();
+    }
+    
+    /**
+     * Get age in months after which returned transactions are archived
+     */
+    public static int getArchiveAfterMonths() {
+        return settings.get().getArchiveAfterMonths();
+    }
+    
+    /**
+     * Get number of transactions moved per archive batch
+     */
+    public static int getArchiveBatchSize() {
+        return settings.get().getArchiveBatchSize();
+    }
+    
+    /**
+     * Get the branch this desk belongs to
+     */
+    public static int getBranchId() {
+        return settings.get().getBranchId();
     }
     
     /**
      * Check if email notifications are enabled
      */
     public static boolean isEmailNotificationsEnabled() {
-        return getBooleanProperty("notifications.email_enabled", false);
+        return settings.get().isEmailNotificationsEnabled();
     }
     
     /**
      * Check if overdue alerts are enabled
      */
     public static boolean isOverdueAlertsEnabled() {
-        return getBooleanProperty("notifications.overdue_alerts", true);
+        return settings.get().isOverdueAlertsEnabled();
     }
     
     /**
      * Check if system updates are enabled
      */
     public static boolean isSystemUpdatesEnabled() {
-        return getBooleanProperty("notifications.system_updates", true);
+        return settings.get().isSystemUpdatesEnabled();
+    }
+    
+    /**
+     * Swap in the snapshot the change produces, retrying if another writer got there first
+     */
+    private static void update(UnaryOperator<Settings> change) {
+        Settings previous;
+        Settings next;
+        do {
+            previous = settings.get();
+            next = change.apply(previous);
+            if (next == previous) {
+                return;
+            }
+        } while (!settings.compareAndSet(previous, next));
+        publish(previous, next);
+    }
+    
+    private static void publish(Settings previous, Settings current) {
+        if (previous.changedKeys(current).isEmpty()) {
+            return;
+        }
+        for (SettingsListener listener : listeners) {
+            try {
+                listener.settingsChanged(previous, current);
+            } catch (RuntimeException e) {
+                System.err.println("Settings listener failed: " + e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,158 @@
+package com.library.utils;
+
+import com.library.entities.Book;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming CSV reader for catalog imports
+ * Expects a header row naming the columns (title, author, isbn, category,
+ * publisher, publication_year, total_copies, description) in any order.
+ * Quoted fields may contain commas, doubled quotes and line breaks.
+ */
+public class CsvCatalogReader implements CatalogRecordReader {
+    
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private long recordNumber;
+    
+    public CsvCatalogReader(Path file) throws IOException {
+        this(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+    
+    public CsvCatalogReader(Reader source) throws IOException {
+        this.reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        readHeader();
+    }
+    
+    private void readHeader() throws IOException {
+        if (!readRow()) {
+            throw new IOException("CSV file is empty");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            String name = fields.get(i).trim().toLowerCase(Locale.ROOT).replace(' ', '_');
+            if (i == 0 && name.startsWith("\uFEFF")) {
+                name = name.substring(1);
+            }
+            columns.put(name, i);
+        }
+        if (!columns.containsKey("title") || !columns.containsKey("author")) {
+            throw new IOException("CSV header must contain 'title' and 'author' columns");
+        }
+    }
+    
+    @Override
+    public CatalogRecord next() throws IOException {
+        while (readRow()) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue; // blank line
+            }
+            recordNumber++;
+            return toRecord();
+        }
+        return null;
+    }
+    
+    private CatalogRecord toRecord() {
+        Book book = new Book();
+        book.setTitle(column("title"));
+        book.setAuthor(column("author"));
+        book.setIsbn(column("isbn"));
+        book.setCategory(column("category"));
+        book.setPublisher(column("publisher"));
+        book.setDescription(column("description"));
+        
+        try {
+            String year = column("publication_year");
+            if (year != null) {
+                book.setPublicationYear(Integer.parseInt(year));
+            }
+            String copies = column("total_copies");
+            int totalCopies = copies != null ? Integer.parseInt(copies) : 1;
+            book.setTotalCopies(totalCopies);
+            book.setAvailableCopies(totalCopies);
+        } catch (NumberFormatException e) {
+            return new CatalogRecord(recordNumber, "Invalid number: " + e.getMessage());
+        }
+        
+        return new CatalogRecord(recordNumber, book);
+    }
+    
+    private String column(String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+    
+    /**
+     * Read one logical row into {@code fields}, returning false at end of input
+     */
+    private boolean readRow() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        
+        fields.add(field.toString());
+        return true;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.library.utils;
+
+import javafx.application.Platform;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Hands values from any thread to the JavaFX application thread, coalescing bursts
+ *
+ * Only the latest value submitted before the FX thread gets to it is applied, so
+ * a burst of updates costs one Platform.runLater and one repaint.
+ */
+public class FxUpdater<T> {
+    private final Consumer<T> apply;
+    private final Executor fxThread;
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    
+    public FxUpdater(Consumer<T> apply) {
+        this(apply, Platform::runLater);
+    }
+    
+    /**
+     * Updater that runs its updates on the given executor instead of the FX thread
+     */
+    public FxUpdater(Consumer<T> apply, Executor fxThread) {
+        this.apply = apply;
+        this.fxThread = fxThread;
+    }
+    
+    public void submit(T value) {
+        Objects.requireNonNull(value);
+        if (pending.getAndSet(value) == null) {
+            fxThread.execute(() -> apply.accept(pending.getAndSet(null)));
+        }
+    }
+}
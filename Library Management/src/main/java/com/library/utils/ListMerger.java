@@ -0,0 +1,116 @@
+package com.library.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Brings a list in line with fresh rows by key and version, touching only what changed
+ *
+ * Meant for the ObservableLists behind TableViews: a changed row is replaced with
+ * set(), new and vanished rows are added and removed, and everything else is
+ * left alone. Unchanged cells are not redrawn, the selection and scroll position
+ * survive a refresh, and a FilteredList only re-tests the rows that changed.
+ * Rows are matched by id and compared by version (their updated_at).
+ */
+public final class ListMerger {
+    
+    private ListMerger() {
+    }
+    
+    /**
+     * Make target hold exactly the fresh rows in their order
+     * Returns the number of rows added, removed, replaced or moved.
+     */
+    public static <T> int merge(List<T> target, List<T> fresh, ToIntFunction<T> key, Function<T, ?> version) {
+        Set<Integer> freshKeys = new HashSet<>();
+        for (T row : fresh) {
+            freshKeys.add(key.applyAsInt(row));
+        }
+        List<T> gone = new ArrayList<>();
+        Map<Integer, T> current = new HashMap<>();
+        for (T row : target) {
+            if (freshKeys.contains(key.applyAsInt(row))) {
+                current.put(key.applyAsInt(row), row);
+            } else {
+                gone.add(row);
+            }
+        }
+        int changes = gone.size();
+        if (!gone.isEmpty()) {
+            // One batched change instead of an event per row
+            target.removeAll(gone);
+        }
+        
+        for (int i = 0; i < fresh.size(); i++) {
+            T row = fresh.get(i);
+            int rowKey = key.applyAsInt(row);
+            T existing = i < target.size() ? target.get(i) : null;
+            if (existing != null && key.applyAsInt(existing) == rowKey) {
+                if (!Objects.equals(version.apply(existing), version.apply(row))) {
+                    target.set(i, row);
+                    changes++;
+                }
+                continue;
+            }
+            T moved = current.get(rowKey);
+            if (moved != null) {
+                // Sort order changed; only the moved row is touched
+                target.remove(target.indexOf(moved));
+            }
+            target.add(i, row);
+            changes++;
+        }
+        return changes;
+    }
+    
+    /**
+     * Apply a delta: replace changed rows in place, add new ones, and drop the removed keys
+     * New rows go to the top when newFirst is set (lists ordered newest first), else the bottom.
+     * Returns the number of rows added, removed or replaced.
+     */
+    public static <T> int apply(List<T> target, List<T> changed, Collection<Integer> removedKeys,
+                                ToIntFunction<T> key, Function<T, ?> version, boolean newFirst) {
+        List<T> gone = new ArrayList<>();
+        if (!removedKeys.isEmpty()) {
+            Set<Integer> removed = new HashSet<>(removedKeys);
+            for (T row : target) {
+                if (removed.contains(key.applyAsInt(row))) {
+                    gone.add(row);
+                }
+            }
+            if (!gone.isEmpty()) {
+                target.removeAll(gone);
+            }
+        }
+        
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < target.size(); i++) {
+            positions.put(key.applyAsInt(target.get(i)), i);
+        }
+        int changes = gone.size();
+        Map<Integer, T> added = new LinkedHashMap<>();
+        for (T row : changed) {
+            Integer position = positions.get(key.applyAsInt(row));
+            if (position == null) {
+                added.put(key.applyAsInt(row), row);
+            } else if (!Objects.equals(version.apply(target.get(position)), version.apply(row))) {
+                target.set(position, row);
+                changes++;
+            }
+        }
+        if (!added.isEmpty()) {
+            target.addAll(newFirst ? 0 : target.size(), added.values());
+            changes += added.size();
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,195 @@
+package com.library.utils;
+
+import com.library.entities.Book;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming reader for binary MARC 21 (ISO 2709) bibliographic records
+ * Maps the common fields onto books: 020 ISBN, 100/110 author, 245 title,
+ * 260/264 publisher and year, 650 category and 520 description.
+ * Records are expected to be UTF-8 encoded (leader position 9 = 'a').
+ */
+public class MarcCatalogReader implements CatalogRecordReader {
+    
+    private static final byte SUBFIELD_DELIMITER = 0x1F;
+    private static final byte FIELD_TERMINATOR = 0x1E;
+    private static final int LEADER_LENGTH = 24;
+    private static final int DIRECTORY_ENTRY_LENGTH = 12;
+    private static final Pattern YEAR_PATTERN = Pattern.compile("(\\d{4})");
+    
+    private final DataInputStream input;
+    private long recordNumber;
+    
+    public MarcCatalogReader(Path file) throws IOException {
+        this(Files.newInputStream(file));
+    }
+    
+    public MarcCatalogReader(InputStream source) {
+        this.input = new DataInputStream(new BufferedInputStream(source, 64 * 1024));
+    }
+    
+    @Override
+    public CatalogRecord next() throws IOException {
+        byte[] lengthBytes = new byte[5];
+        int first = input.read();
+        // Skip stray line breaks some exporters put between records
+        while (first == '\n' || first == '\r') {
+            first = input.read();
+        }
+        if (first == -1) {
+            return null;
+        }
+        lengthBytes[0] = (byte) first;
+        try {
+            input.readFully(lengthBytes, 1, 4);
+        } catch (EOFException e) {
+            throw new IOException("Truncated MARC record after record " + recordNumber);
+        }
+        
+        recordNumber++;
+        int recordLength;
+        try {
+            recordLength = Integer.parseInt(new String(lengthBytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid MARC record length at record " + recordNumber);
+        }
+        if (recordLength < LEADER_LENGTH + 1) {
+            throw new IOException("Invalid MARC record length at record " + recordNumber);
+        }
+        
+        byte[] record = new byte[recordLength];
+        System.arraycopy(lengthBytes, 0, record, 0, 5);
+        input.readFully(record, 5, recordLength - 5);
+        
+        try {
+            return new CatalogRecord(recordNumber, parse(record));
+        } catch (RuntimeException e) {
+            return new CatalogRecord(recordNumber, "Malformed MARC record: " + e.getMessage());
+        }
+    }
+    
+    private Book parse(byte[] record) {
+        int baseAddress = Integer.parseInt(new String(record, 12, 5, StandardCharsets.US_ASCII));
+        Book book = new Book();
+        book.setTotalCopies(1);
+        book.setAvailableCopies(1);
+        
+        for (int entry = LEADER_LENGTH; entry + DIRECTORY_ENTRY_LENGTH <= baseAddress - 1;
+             entry += DIRECTORY_ENTRY_LENGTH) {
+            String tag = new String(record, entry, 3, StandardCharsets.US_ASCII);
+            int length = Integer.parseInt(new String(record, entry + 3, 4, StandardCharsets.US_ASCII));
+            int start = baseAddress + Integer.parseInt(new String(record, entry + 7, 5, StandardCharsets.US_ASCII));
+            
+            switch (tag) {
+                case "020":
+                    if (book.getIsbn() == null) {
+                        String isbn = subfield(record, start, length, 'a');
+                        if (isbn != null) {
+                            // Drop qualifiers such as "(pbk.)"
+                            book.setIsbn(isbn.split("\\s")[0]);
+                        }
+                    }
+                    break;
+                case "100":
+                case "110":
+                    if (book.getAuthor() == null) {
+                        book.setAuthor(trimPunctuation(subfield(record, start, length, 'a')));
+                    }
+                    break;
+                case "245":
+                    String title = subfield(record, start, length, 'a');
+                    String subtitle = subfield(record, start, length, 'b');
+                    if (title != null && subtitle != null) {
+                        title = trimPunctuation(title) + ": " + subtitle;
+                    }
+                    book.setTitle(trimPunctuation(title));
+                    break;
+                case "260":
+                case "264":
+                    if (book.getPublisher() == null) {
+                        book.setPublisher(trimPunctuation(subfield(record, start, length, 'b')));
+                    }
+                    if (book.getPublicationYear() == null) {
+                        String date = subfield(record, start, length, 'c');
+                        if (date != null) {
+                            Matcher matcher = YEAR_PATTERN.matcher(date);
+                            if (matcher.find()) {
+                                book.setPublicationYear(Integer.parseInt(matcher.group(1)));
+                            }
+                        }
+                    }
+                    break;
+                case "520":
+                    if (book.getDescription() == null) {
+                        book.setDescription(subfield(record, start, length, 'a'));
+                    }
+                    break;
+                case "650":
+                    if (book.getCategory() == null) {
+                        book.setCategory(trimPunctuation(subfield(record, start, length, 'a')));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        return book;
+    }
+    
+    /**
+     * Return the first occurrence of a subfield within a variable data field
+     */
+    private String subfield(byte[] record, int start, int length, char code) {
+        int end = Math.min(start + length, record.length);
+        for (int i = start; i < end - 1; i++) {
+            if (record[i] == SUBFIELD_DELIMITER && record[i + 1] == code) {
+                int valueStart = i + 2;
+                int valueEnd = valueStart;
+                while (valueEnd < end && record[valueEnd] != SUBFIELD_DELIMITER
+                        && record[valueEnd] != FIELD_TERMINATOR) {
+                    valueEnd++;
+                }
+                String value = new String(record, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8).trim();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Strip the ISBD punctuation MARC leaves at the end of fields (" /", " :", ",", ".")
+     */
+    private String trimPunctuation(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        while (!trimmed.isEmpty()) {
+            int last = trimmed.length() - 1;
+            char c = trimmed.charAt(last);
+            // Keep the period of a trailing initial ("Tolkien, J. R. R.")
+            boolean initial = c == '.' && last > 0 && Character.isUpperCase(trimmed.charAt(last - 1));
+            if ("/:;,=.".indexOf(c) < 0 || initial) {
+                break;
+            }
+            trimmed = trimmed.substring(0, last).trim();
+        }
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
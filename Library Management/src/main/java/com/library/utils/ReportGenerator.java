@@ -3,6 +3,7 @@ package com.library.utils;
 import com.library.entities.Book;
 import com.library.entities.Transaction;
 import com.library.entities.User;
+import com.library.jfr.ReportGenerationEvent;
 import com.library.services.BookService;
 import com.library.services.TransactionService;
 import com.library.services.UserService;
@@ -32,8 +33,13 @@ public class ReportGenerator {
      * Generate books inventory report
      */
     public String generateBooksReport() {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.begin();
+        event.reportType = "books";
+        
         try {
             List<Book> books = bookService.getAllBooks();
+            event.rowCount = books.size();
             StringBuilder report = new StringBuilder();
             
             report.append("LIBRARY BOOKS INVENTORY REPORT\n");
@@ -60,10 +66,10 @@ public class ReportGenerator {
             report.append("Total Available: ").append(books.stream().mapToInt(Book::getAvailableCopies).sum()).append("\n");
             report.append("Total Copies: ").append(books.stream().mapToInt(Book::getTotalCopies).sum()).append("\n");
             
-            return report.toString();
+            return finish(event, report.toString());
             
         } catch (Exception e) {
-            return "Error generating books report: " + e.getMessage();
+            return finish(event, "Error generating books report: " + e.getMessage());
         }
     }
     
@@ -71,8 +77,13 @@ public class ReportGenerator {
      * Generate users report
      */
     public String generateUsersReport() {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.begin();
+        event.reportType = "users";
+        
         try {
             List<User> users = userService.getAllUsers();
+            event.rowCount = users.size();
             StringBuilder report = new StringBuilder();
             
             report.append("LIBRARY USERS REPORT\n");
@@ -98,10 +109,10 @@ public class ReportGenerator {
             report.append("Admins: ").append(users.stream().mapToInt(u -> u.isAdmin() ? 1 : 0).sum()).append("\n");
             report.append("Regular Users: ").append(users.stream().mapToInt(u -> !u.isAdmin() ? 1 : 0).sum()).append("\n");
             
-            return report.toString();
+            return finish(event, report.toString());
             
         } catch (Exception e) {
-            return "Error generating users report: " + e.getMessage();
+            return finish(event, "Error generating users report: " + e.getMessage());
         }
     }
     
@@ -109,8 +120,13 @@ public class ReportGenerator {
      * Generate transactions report
      */
     public String generateTransactionsReport() {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.begin();
+        event.reportType = "transactions";
+        
         try {
             List<Transaction> transactions = transactionService.getAllTransactions();
+            event.rowCount = transactions.size();
             StringBuilder report = new StringBuilder();
             
             report.append("LIBRARY TRANSACTIONS REPORT\n");
@@ -139,10 +155,10 @@ public class ReportGenerator {
             report.append("Returned: ").append(transactions.stream().mapToInt(t -> t.isReturned() ? 1 : 0).sum()).append("\n");
             report.append("Overdue: ").append(transactions.stream().mapToInt(t -> t.isOverdue() ? 1 : 0).sum()).append("\n");
             
-            return report.toString();
+            return finish(event, report.toString());
             
         } catch (Exception e) {
-            return "Error generating transactions report: " + e.getMessage();
+            return finish(event, "Error generating transactions report: " + e.getMessage());
         }
     }
     
@@ -150,8 +166,13 @@ public class ReportGenerator {
      * Generate overdue books report
      */
     public String generateOverdueReport() {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.begin();
+        event.reportType = "overdue";
+        
         try {
             List<Transaction> overdueTransactions = transactionService.getOverdueTransactions();
+            event.rowCount = overdueTransactions.size();
             StringBuilder report = new StringBuilder();
             
             report.append("OVERDUE BOOKS REPORT\n");
@@ -181,13 +202,22 @@ public class ReportGenerator {
             report.append("\n").append("=".repeat(100)).append("\n");
             report.append("Total Overdue: ").append(overdueTransactions.size()).append("\n");
             
-            return report.toString();
+            return finish(event, report.toString());
             
         } catch (Exception e) {
-            return "Error generating overdue report: " + e.getMessage();
+            return finish(event, "Error generating overdue report: " + e.getMessage());
         }
     }
     
+    /**
+     * Record the finished report on its flight recorder event
+     */
+    private String finish(ReportGenerationEvent event, String report) {
+        event.reportLength = report.length();
+        event.commit();
+        return report;
+    }
+    
     /**
      * Save report to file
      */
@@ -0,0 +1,209 @@
+package com.library.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable snapshot of every configuration value
+ *
+ * The library settings read on hot paths (issue limits, fines) are parsed once
+ * when the snapshot is built. Other numeric values are parsed on first lookup and
+ * remembered for the life of the snapshot. ConfigManager publishes a new snapshot
+ * on every change, so holders of an old one keep a consistent view.
+ */
+public class Settings {
+    private final Map<String, String> values;
+    // Parsed numbers by key; only values that parsed are cached so callers' defaults still apply
+    private final ConcurrentHashMap<String, Number> parsed = new ConcurrentHashMap<>();
+    
+    private final int maxIssueDays;
+    private final double finePerDay;
+    private final int maxBooksPerUser;
+    private final int archiveAfterMonths;
+    private final int archiveBatchSize;
+    private final int branchId;
+    private final boolean emailNotificationsEnabled;
+    private final boolean overdueAlertsEnabled;
+    private final boolean systemUpdatesEnabled;
+    
+    private Settings(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(values);
+        this.maxIssueDays = getInt("library.max_issue_days", 14);
+        this.finePerDay = getDouble("library.fine_per_day", 1.00);
+        this.maxBooksPerUser = getInt("library.max_books_per_user", 5);
+        this.archiveAfterMonths = getInt("library.archive_after_months", 12);
+        this.archiveBatchSize = getInt("library.archive_batch_size", 1000);
+        this.branchId = getInt("library.branch_id", 1);
+        this.emailNotificationsEnabled = getBoolean("notifications.email_enabled", false);
+        this.overdueAlertsEnabled = getBoolean("notifications.overdue_alerts", true);
+        this.systemUpdatesEnabled = getBoolean("notifications.system_updates", true);
+    }
+    
+    /**
+     * Snapshot of the given properties, including their defaults
+     */
+    public static Settings of(Properties properties) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key));
+        }
+        return new Settings(values);
+    }
+    
+    /**
+     * Copy of this snapshot with one value changed, or this snapshot if it already has that value
+     */
+    public Settings with(String key, String value) {
+        if (value.equals(values.get(key))) {
+            return this;
+        }
+        Map<String, String> copy = new HashMap<>(values);
+        copy.put(key, value);
+        return new Settings(copy);
+    }
+    
+    /**
+     * Copy of this snapshot without the key, or this snapshot if it has no such key
+     */
+    public Settings without(String key) {
+        if (!values.containsKey(key)) {
+            return this;
+        }
+        Map<String, String> copy = new HashMap<>(values);
+        copy.remove(key);
+        return new Settings(copy);
+    }
+    
+    public String get(String key) {
+        return values.get(key);
+    }
+    
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        Number cached = parsed.get(key);
+        if (cached instanceof Integer) {
+            return cached.intValue();
+        }
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            parsed.put(key, result);
+            return result;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    public double getDouble(String key, double defaultValue) {
+        Number cached = parsed.get(key);
+        if (cached instanceof Double) {
+            return cached.doubleValue();
+        }
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double result = Double.parseDouble(value.trim());
+            parsed.put(key, result);
+            return result;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+    
+    public int getMaxIssueDays() {
+        return maxIssueDays;
+    }
+    
+    public double getFinePerDay() {
+        return finePerDay;
+    }
+    
+    public int getMaxBooksPerUser() {
+        return maxBooksPerUser;
+    }
+    
+    public int getArchiveAfterMonths() {
+        return archiveAfterMonths;
+    }
+    
+    public int getArchiveBatchSize() {
+        return archiveBatchSize;
+    }
+    
+    /**
+     * Branch this desk belongs to
+     */
+    public int getBranchId() {
+        return branchId;
+    }
+    
+    public boolean isEmailNotificationsEnabled() {
+        return emailNotificationsEnabled;
+    }
+    
+    public boolean isOverdueAlertsEnabled() {
+        return overdueAlertsEnabled;
+    }
+    
+    public boolean isSystemUpdatesEnabled() {
+        return systemUpdatesEnabled;
+    }
+    
+    /**
+     * Keys whose values differ between this snapshot and the other, in key order
+     */
+    public Set<String> changedKeys(Settings other) {
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getValue().equals(other.values.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : other.values.keySet()) {
+            if (!values.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Whether any key with the given prefix, such as "db.", changed
+     */
+    public boolean changed(Settings other, String prefix) {
+        for (String key : changedKeys(other)) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.putAll(values);
+        return properties;
+    }
+    
+    public int size() {
+        return values.size();
+    }
+}
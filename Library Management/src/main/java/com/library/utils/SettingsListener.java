@@ -0,0 +1,13 @@
+package com.library.utils;
+
+/**
+ * Callback for configuration changes, fired by ConfigManager after a new
+ * Settings snapshot is published
+ *
+ * Callbacks run on the thread that made the change and must be quick.
+ */
+@FunctionalInterface
+public interface SettingsListener {
+    
+    void settingsChanged(Settings previous, Settings current);
+}
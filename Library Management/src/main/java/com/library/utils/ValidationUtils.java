@@ -49,6 +49,23 @@ public class ValidationUtils {
         return ISBN_PATTERN.matcher(isbn.trim()).matches();
     }
     
+    /**
+     * Normalize ISBN to its bare digits (and check character X) so that
+     * hyphenated and plain forms map to the same unique key
+     * Returns null for input without digits, which is no ISBN at all.
+     */
+    public static String normalizeISBN(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return null;
+        }
+        String trimmed = isbn.trim().toUpperCase();
+        if (trimmed.startsWith("ISBN")) {
+            trimmed = trimmed.replaceFirst("^ISBN(?:-1[03])?:?", "");
+        }
+        String bare = trimmed.replaceAll("[^0-9X]", "");
+        return bare.matches(".*[0-9].*") ? bare : null;
+    }
+    
     /**
      * Validate username (alphanumeric and underscore only, 3-20 characters)
      */
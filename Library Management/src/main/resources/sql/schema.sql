@@ -3,6 +3,13 @@
 CREATE DATABASE IF NOT EXISTS library_management;
 USE library_management;
 
+-- Branches: each branch's books and loans may live in its own database (see ShardRouter)
+CREATE TABLE IF NOT EXISTS branches (
+    id INT PRIMARY KEY,
+    code VARCHAR(20) UNIQUE NOT NULL,
+    name VARCHAR(100) NOT NULL
+);
+
 -- Users table
 CREATE TABLE IF NOT EXISTS users (
     id INT AUTO_INCREMENT PRIMARY KEY,
@@ -11,6 +18,7 @@ CREATE TABLE IF NOT EXISTS users (
     role ENUM('ADMIN', 'USER') NOT NULL DEFAULT 'USER',
     email VARCHAR(100),
     phone VARCHAR(20),
+    branch_id INT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -27,6 +35,7 @@ CREATE TABLE IF NOT EXISTS books (
     available_copies INT NOT NULL DEFAULT 0,
     total_copies INT NOT NULL DEFAULT 0,
     description TEXT,
+    branch_id INT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -41,21 +50,89 @@ CREATE TABLE IF NOT EXISTS transactions (
     return_date DATE NULL,
     status ENUM('ISSUED', 'RETURNED', 'OVERDUE') NOT NULL DEFAULT 'ISSUED',
     fine_amount DECIMAL(10,2) DEFAULT 0.00,
+    branch_id INT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
     FOREIGN KEY (book_id) REFERENCES books(id) ON DELETE CASCADE
 );
 
+-- Archived transactions (returned loans moved out of the live table)
+CREATE TABLE IF NOT EXISTS transactions_history (
+    id INT PRIMARY KEY,
+    user_id INT NOT NULL,
+    book_id INT NOT NULL,
+    issue_date DATE NOT NULL,
+    due_date DATE NOT NULL,
+    return_date DATE NULL,
+    status ENUM('ISSUED', 'RETURNED', 'OVERDUE') NOT NULL DEFAULT 'RETURNED',
+    fine_amount DECIMAL(10,2) DEFAULT 0.00,
+    created_at TIMESTAMP NULL,
+    updated_at TIMESTAMP NULL,
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Change event outbox, written in the same transaction as each change (see ChangeEventPoller)
+CREATE TABLE IF NOT EXISTS change_events (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    entity VARCHAR(20) NOT NULL,
+    entity_id INT NOT NULL,
+    action VARCHAR(10) NOT NULL,
+    origin VARCHAR(64) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Deleted row ids, so the *ChangedSince service methods can report deletes (see Tombstones)
+CREATE TABLE IF NOT EXISTS tombstones (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    entity VARCHAR(20) NOT NULL,
+    entity_id INT NOT NULL,
+    deleted_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Idempotency keys of replayed offline circulation operations (see JournalReplayer)
+CREATE TABLE IF NOT EXISTS applied_operations (
+    idempotency_key VARCHAR(36) PRIMARY KEY,
+    outcome VARCHAR(10) NOT NULL,
+    transaction_id INT NOT NULL DEFAULT 0,
+    applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- One-time data migrations already applied to this database (see DatabaseInitializer)
+CREATE TABLE IF NOT EXISTS schema_migrations (
+    name VARCHAR(100) PRIMARY KEY,
+    applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- Create indexes for better performance
 CREATE INDEX idx_users_username ON users(username);
 CREATE INDEX idx_books_title ON books(title);
 CREATE INDEX idx_books_author ON books(author);
 CREATE INDEX idx_books_category ON books(category);
+CREATE INDEX idx_books_category_title ON books(category, title);
+CREATE INDEX idx_books_publication_year ON books(publication_year);
+CREATE INDEX idx_books_branch_title_author ON books(branch_id, title, author);
 CREATE INDEX idx_transactions_user_id ON transactions(user_id);
 CREATE INDEX idx_transactions_book_id ON transactions(book_id);
 CREATE INDEX idx_transactions_status ON transactions(status);
 CREATE INDEX idx_transactions_due_date ON transactions(due_date);
+CREATE INDEX idx_transactions_status_return ON transactions(status, return_date);
+CREATE INDEX idx_transactions_status_due ON transactions(status, due_date);
+CREATE INDEX idx_transactions_issue_date ON transactions(issue_date);
+CREATE INDEX idx_transactions_created_at ON transactions(created_at);
+CREATE INDEX idx_transactions_user_created ON transactions(user_id, created_at);
+CREATE INDEX idx_transactions_branch_status ON transactions(branch_id, status);
+CREATE INDEX idx_history_user_id ON transactions_history(user_id);
+CREATE INDEX idx_history_book_id ON transactions_history(book_id);
+CREATE INDEX idx_history_return_date ON transactions_history(return_date);
+CREATE INDEX idx_change_events_created_at ON change_events(created_at);
+CREATE INDEX idx_users_updated_at ON users(updated_at);
+CREATE INDEX idx_books_updated_at ON books(updated_at);
+CREATE INDEX idx_transactions_updated_at ON transactions(updated_at);
+CREATE INDEX idx_tombstones_entity_deleted ON tombstones(entity, deleted_at);
+
+-- Insert default branch
+INSERT INTO branches (id, code, name) VALUES (1, 'MAIN', 'Main Library');
 
 -- Insert default admin user
 INSERT INTO users (username, password, role, email) VALUES 
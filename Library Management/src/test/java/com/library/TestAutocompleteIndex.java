@@ -0,0 +1,54 @@
+package com.library;
+
+import com.library.cache.AutocompleteIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the type-ahead autocomplete index
+ */
+public class TestAutocompleteIndex {
+    
+    @Test
+    void testAutocompleteRanksByWeightAndMatchesWordStarts() {
+        AutocompleteIndex index = new AutocompleteIndex();
+        int hobbit = index.add("The Hobbit", 5);
+        int rings = index.add("The Lord of the Rings", 9);
+        index.add("Tolkien: A Biography", 1);
+        index.add("Dune", 20);
+        
+        assertEquals(List.of("The Lord of the Rings", "The Hobbit"), index.suggest("the", 5));
+        assertEquals(List.of("Tolkien: A Biography"), index.suggest("TOL", 5));
+        assertEquals(List.of("The Hobbit"), index.suggest("hob", 5), "Later words should be searchable");
+        assertEquals(1, index.suggest("the", 1).size());
+        
+        index.addWeight(hobbit, 10);
+        assertEquals("The Hobbit", index.suggest("the", 5).get(0), "Weight changes should reorder suggestions");
+        
+        index.remove(rings, 9);
+        assertTrue(index.suggest("lord", 5).isEmpty());
+        assertTrue(index.suggest("xyz", 5).isEmpty());
+    }
+    
+    @Test
+    void testAutocompleteSharesTermsBetweenOwners() {
+        AutocompleteIndex index = new AutocompleteIndex();
+        for (int i = 0; i < 3_000; i++) {
+            index.add("Author " + i, i);
+        }
+        int first = index.add("J. K. Rowling", 2);
+        int second = index.add("j.k. rowling", 3);
+        assertEquals(first, second, "Terms that normalize alike should share an id");
+        assertEquals(5, index.getWeight(first));
+        assertEquals(List.of("Author 2999", "Author 2998"), index.suggest("auth", 2));
+        
+        index.remove(first, 2);
+        assertEquals(List.of("J. K. Rowling"), index.suggest("row", 5));
+        index.remove(second, 3);
+        assertTrue(index.suggest("row", 5).isEmpty());
+        assertEquals(3_000, index.size());
+    }
+}
@@ -0,0 +1,156 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.BookListRow;
+import com.library.services.BookQuery;
+import com.library.services.BookService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the book query spec: its shape keys, the SQL it generates and the
+ * order of its parameters, and BookService.findBooks against an embedded branch database
+ */
+public class TestBookQuery {
+    
+    private static final int BRANCH = 16;
+    
+    private final List<String> keys = new ArrayList<>();
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:bookquery_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testShapeIgnoresFilterValues() {
+        assertEquals(new BookQuery().text("Dune").category("Science Fiction").limit(10).shape(),
+                new BookQuery().text("Emma").category("Romance").limit(50).shape());
+        assertEquals(new BookQuery().publishedBetween(1900, 2000).shape(),
+                new BookQuery().publishedBetween(1800, 1850).shape());
+    }
+    
+    @Test
+    void testShapeDistinguishesFiltersAndSortOrder() {
+        List<BookQuery> queries = Arrays.asList(
+                new BookQuery(),
+                new BookQuery().text("Dune"),
+                new BookQuery().category("Romance"),
+                new BookQuery().publishedBetween(1900, null),
+                new BookQuery().publishedBetween(null, 1900),
+                new BookQuery().yearUnknown(),
+                new BookQuery().available(true),
+                new BookQuery().available(false),
+                new BookQuery().sortBy(BookQuery.SortKey.AUTHOR, false),
+                new BookQuery().sortBy(BookQuery.SortKey.TITLE, true));
+        Set<String> shapes = queries.stream().map(BookQuery::shape).collect(Collectors.toSet());
+        
+        assertEquals(queries.size(), shapes.size());
+    }
+    
+    @Test
+    void testClausesAndParametersLineUp() {
+        BookQuery query = new BookQuery().text("Du").category("Science Fiction").publishedBetween(1900, 2000)
+                .available(true).sortBy(BookQuery.SortKey.YEAR, true).limit(20);
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        query.appendClauses(sql, params);
+        
+        assertEquals(" WHERE (title LIKE ? OR author LIKE ?) AND category = ? AND publication_year >= ?" +
+                " AND publication_year <= ? AND available_copies > 0" +
+                " ORDER BY publication_year DESC, id DESC LIMIT ?", sql.toString());
+        assertEquals(Arrays.asList("Du%", "Du%", "Science Fiction", 1900, 2000, 20), params);
+        assertEquals(placeholders(sql), params.size());
+        
+        List<Object> valuesOnly = new ArrayList<>();
+        query.appendClauses(null, valuesOnly);
+        assertEquals(params, valuesOnly, "Collecting the values alone must give the same order");
+    }
+    
+    @Test
+    void testDefaultsAndValueFreeFilters() {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        new BookQuery().yearUnknown().available(false).appendClauses(sql, params);
+        
+        assertEquals(" WHERE (publication_year IS NULL OR publication_year <= 0) AND available_copies <= 0" +
+                " ORDER BY title ASC, id ASC LIMIT ?", sql.toString());
+        assertEquals(Arrays.asList(BookQuery.DEFAULT_LIMIT), params);
+    }
+    
+    @Test
+    void testTextWildcardsAreEscaped() {
+        List<Object> params = new ArrayList<>();
+        new BookQuery().text(" 50%_off\\ ").appendClauses(null, params);
+        
+        assertEquals("50\\%\\_off\\\\%", params.get(0));
+    }
+    
+    @Test
+    void testFindBooksFiltersSortsAndLimits() {
+        BookService books = new BookService(BRANCH);
+        create(books, "Emma", "Jane Austen", "Romance", 1815, 1);
+        create(books, "Persuasion", "Jane Austen", "Romance", 1817, 0);
+        create(books, "Pride and Prejudice", "Jane Austen", "Romance", 1813, 2);
+        create(books, "Dune", "Frank Herbert", "Science Fiction", 1965, 3);
+        create(books, "Anonymous Verse", "Unknown", "Poetry", null, 1);
+        
+        assertEquals(Arrays.asList("Pride and Prejudice", "Emma", "Persuasion"),
+                titles(books.findBooks(new BookQuery().category("Romance").sortBy(BookQuery.SortKey.YEAR, false))));
+        assertEquals(Arrays.asList("Persuasion", "Emma"),
+                titles(books.findBooks(new BookQuery().text("Jane").publishedBetween(1814, null)
+                        .sortBy(BookQuery.SortKey.YEAR, true))));
+        assertEquals(Arrays.asList("Persuasion"), titles(books.findBooks(new BookQuery().available(false))));
+        assertEquals(Arrays.asList("Anonymous Verse"), titles(books.findBooks(new BookQuery().yearUnknown())));
+        assertEquals(Arrays.asList("Anonymous Verse", "Dune"), titles(books.findBooks(new BookQuery().limit(2))));
+        assertEquals(Arrays.asList("Dune"), titles(books.findBooks(new BookQuery().text("D"))));
+    }
+    
+    private void create(BookService books, String title, String author, String category, Integer year, int available) {
+        Book book = new Book(title, author, category, Math.max(available, 1));
+        book.setPublicationYear(year);
+        book.setAvailableCopies(available);
+        assertTrue(books.createBook(book));
+    }
+    
+    private List<String> titles(List<BookListRow> rows) {
+        return rows.stream().map(BookListRow::getTitle).collect(Collectors.toList());
+    }
+    
+    private static int placeholders(CharSequence sql) {
+        return (int) sql.chars().filter(c -> c == '?').count();
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,198 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.services.BookService;
+import com.library.services.CatalogImportService;
+import com.library.services.CatalogImportService.ImportOptions;
+import com.library.services.CatalogImportService.ImportResult;
+import com.library.utils.ConfigManager;
+import com.library.utils.CsvCatalogReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for catalog import upserts and resume bookkeeping, against an embedded branch database
+ */
+public class TestCatalogImport {
+    
+    private static final int BRANCH = 10;
+    private static final String HEADER = "title,author,isbn,total_copies\n";
+    
+    private final List<String> keys = new ArrayList<>();
+    private Path directory;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:import_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        directory = Files.createTempDirectory("catalog-import");
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+    
+    @Test
+    void testImportMatchesBooksEnteredWithHyphenatedIsbns() throws Exception {
+        Book hobbit = new Book("The Hobbit", "J.R.R. Tolkien", "Fantasy", 1);
+        hobbit.setIsbn("978-0-547-92822-7");
+        assertTrue(new BookService(BRANCH).createBook(hobbit));
+        assertEquals("9780547928227", hobbit.getIsbn(), "The desk stores the normalized ISBN");
+        // A row written before ISBNs were normalized
+        execute("INSERT INTO books (title, author, isbn, available_copies, total_copies, branch_id) " +
+                "VALUES ('Dune', 'Frank Herbert', '978-0-441-17271-9', 1, 1, " + BRANCH + ")");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            assertEquals(1, DatabaseInitializer.normalizeIsbns(conn));
+        }
+        
+        importCsv(HEADER + "The Hobbit,J.R.R. Tolkien,978-0-547-92822-7,3\n" +
+                           "Dune,Frank Herbert,ISBN 978 0 441 17271 9,2\n", new ImportOptions());
+        
+        assertEquals(2, count("SELECT COUNT(*) FROM books"));
+        assertEquals(3, count("SELECT total_copies FROM books WHERE isbn = '9780547928227'"));
+        assertEquals(3, count("SELECT available_copies FROM books WHERE isbn = '9780547928227'"));
+        assertEquals(2, count("SELECT total_copies FROM books WHERE isbn = '9780441172719'"));
+    }
+    
+    @Test
+    void testIsbnsWithoutDigitsAreStoredAsNone() throws Exception {
+        BookService books = new BookService(BRANCH);
+        Book first = new Book("Beowulf", "Unknown", "Poetry", 1);
+        first.setIsbn("n/a");
+        Book second = new Book("The Wanderer", "Unknown", "Poetry", 1);
+        second.setIsbn("-");
+        assertTrue(books.createBook(first));
+        assertTrue(books.createBook(second), "Junk ISBNs must not collide on the unique key");
+        execute("INSERT INTO books (title, author, isbn, available_copies, total_copies, branch_id) " +
+                "VALUES ('The Seafarer', 'Unknown', '', 1, 1, " + BRANCH + ")");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            assertEquals(1, DatabaseInitializer.normalizeIsbns(conn));
+        }
+        
+        assertNull(first.getIsbn());
+        assertEquals(3, count("SELECT COUNT(*) FROM books WHERE isbn IS NULL"));
+    }
+    
+    @Test
+    void testIsbnsAreNormalizedOnlyOnce() throws Exception {
+        execute("INSERT INTO books (title, author, isbn, available_copies, total_copies, branch_id) " +
+                "VALUES ('Dune', 'Frank Herbert', '978-0-441-17271-9', 1, 1, " + BRANCH + ")");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.migrateBranchDatabase(conn);
+            assertEquals(1, count("SELECT COUNT(*) FROM books WHERE isbn = '9780441172719'"));
+            
+            // Written by hand after the upgrade; later startups do not scan for it
+            execute("INSERT INTO books (title, author, isbn, available_copies, total_copies, branch_id) " +
+                    "VALUES ('Emma', 'Jane Austen', '978-0-14-143958-7', 1, 1, " + BRANCH + ")");
+            DatabaseInitializer.migrateBranchDatabase(conn);
+            assertEquals(1, count("SELECT COUNT(*) FROM books WHERE isbn = '978-0-14-143958-7'"));
+        }
+    }
+    
+    @Test
+    void testReimportWithoutIsbnUpdatesInsteadOfDuplicating() throws Exception {
+        String csv = HEADER + "Beowulf,Unknown,,2\n";
+        importCsv(csv, new ImportOptions());
+        importCsv(csv.replace(",2\n", ",4\n"), new ImportOptions());
+        
+        assertEquals(1, count("SELECT COUNT(*) FROM books"));
+        assertEquals(4, count("SELECT total_copies FROM books"));
+        assertEquals(4, count("SELECT available_copies FROM books"));
+    }
+    
+    @Test
+    void testResumeDropsRejectsOfUncommittedBatches() throws Exception {
+        Path rejects = directory.resolve("catalog.rejects.csv");
+        Path checkpoint = directory.resolve("catalog.checkpoint");
+        String firstHalf = HEADER + "Emma,Jane Austen,,1\n" + ",No Title,,1\n";
+        String whole = firstHalf + "Persuasion,Jane Austen,,1\n" + "Sanditon,,,1\n";
+        
+        ImportResult first = importCsv(firstHalf, options(rejects, checkpoint, false));
+        assertEquals(2, first.getLastCommittedRecord());
+        // A crash after the rejects of the next batch were flushed but before it committed
+        Files.write(rejects, "4,\"Missing or too long author\"\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        
+        ImportResult resumed = importCsv(whole, options(rejects, checkpoint, true));
+        
+        assertEquals(2, resumed.getSkipped());
+        assertEquals(4, resumed.getLastCommittedRecord());
+        List<String> lines = Files.readAllLines(rejects, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size(), "Header plus one line per rejected record: " + lines);
+        assertTrue(lines.get(1).startsWith("2,"));
+        assertTrue(lines.get(2).startsWith("4,"));
+        assertEquals(2, count("SELECT COUNT(*) FROM books"));
+    }
+    
+    private ImportOptions options(Path rejects, Path checkpoint, boolean resume) {
+        ImportOptions options = new ImportOptions();
+        options.setBatchSize(1);
+        options.setCommitEveryBatches(1);
+        options.setValidationThreads(1);
+        options.setRejectsFile(rejects);
+        options.setCheckpointFile(checkpoint);
+        options.setResume(resume);
+        return options;
+    }
+    
+    private ImportResult importCsv(String csv, ImportOptions options) throws Exception {
+        try (CsvCatalogReader reader = new CsvCatalogReader(new StringReader(csv))) {
+            return new CatalogImportService(BRANCH).importCatalog(reader, options, null);
+        }
+    }
+    
+    private long count(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+    
+    private void execute(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,102 @@
+package com.library;
+
+import com.library.entities.Book;
+import com.library.utils.CatalogRecord;
+import com.library.utils.CsvCatalogReader;
+import com.library.utils.MarcCatalogReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the catalog import readers
+ */
+public class TestCatalogReaders {
+    
+    @Test
+    void testCsvReaderHandlesQuotingAndHeaderOrder() throws Exception {
+        String csv = "author,title,isbn,total_copies,description\r\n" +
+                     "J.R.R. Tolkien,The Hobbit,978-0-547-92822-7,2,\"There and back, again\"\r\n" +
+                     "\r\n" +
+                     "\"Lee, Harper\",\"To Kill a \"\"Mockingbird\"\"\",,,\"Line one\nLine two\"\n";
+        
+        try (CsvCatalogReader reader = new CsvCatalogReader(new StringReader(csv))) {
+            CatalogRecord first = reader.next();
+            assertEquals(1, first.getRecordNumber());
+            assertEquals("The Hobbit", first.getBook().getTitle());
+            assertEquals("There and back, again", first.getBook().getDescription());
+            assertEquals(2, first.getBook().getTotalCopies());
+            
+            CatalogRecord second = reader.next();
+            assertEquals(2, second.getRecordNumber(), "Blank lines should not count as records");
+            assertEquals("Lee, Harper", second.getBook().getAuthor());
+            assertEquals("To Kill a \"Mockingbird\"", second.getBook().getTitle());
+            assertNull(second.getBook().getIsbn());
+            assertEquals(1, second.getBook().getTotalCopies(), "Copies should default to one");
+            assertEquals("Line one\nLine two", second.getBook().getDescription());
+            
+            assertNull(reader.next());
+        }
+    }
+    
+    @Test
+    void testCsvReaderRejectsBadNumbers() throws Exception {
+        String csv = "title,author,publication_year\nDune,Frank Herbert,nineteen sixty-five\n";
+        
+        try (CsvCatalogReader reader = new CsvCatalogReader(new StringReader(csv))) {
+            CatalogRecord record = reader.next();
+            assertTrue(record.isRejected());
+        }
+    }
+    
+    @Test
+    void testMarcReaderMapsBibliographicFields() throws Exception {
+        byte[] record = marcRecord(
+            new String[] {"020", "100", "245", "264", "650"},
+            new String[] {
+                "  \u001Fa9780547928227 (pbk.)",
+                "1 \u001FaTolkien, J. R. R.,",
+                "14\u001FaThe hobbit :\u001Fbor, There and back again /",
+                " 1\u001FbHoughton Mifflin Harcourt,\u001Fc2012.",
+                " 0\u001FaFantasy fiction."
+            });
+        
+        try (MarcCatalogReader reader = new MarcCatalogReader(new ByteArrayInputStream(record))) {
+            Book book = reader.next().getBook();
+            assertEquals("9780547928227", book.getIsbn());
+            assertEquals("Tolkien, J. R. R.", book.getAuthor());
+            assertEquals("The hobbit: or, There and back again", book.getTitle());
+            assertEquals("Houghton Mifflin Harcourt", book.getPublisher());
+            assertEquals(2012, book.getPublicationYear());
+            assertEquals("Fantasy fiction", book.getCategory());
+            assertNull(reader.next());
+        }
+    }
+    
+    private byte[] marcRecord(String[] tags, String[] fields) {
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < tags.length; i++) {
+            byte[] field = (fields[i] + "\u001E").getBytes(StandardCharsets.UTF_8);
+            String entry = tags[i] + String.format("%04d%05d", field.length, data.size());
+            directory.writeBytes(entry.getBytes(StandardCharsets.US_ASCII));
+            data.writeBytes(field);
+        }
+        directory.write(0x1E);
+        
+        int baseAddress = 24 + directory.size();
+        int length = baseAddress + data.size() + 1;
+        String leader = String.format("%05dnam a22%05d   4500", length, baseAddress);
+        
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.writeBytes(leader.getBytes(StandardCharsets.US_ASCII));
+        record.writeBytes(directory.toByteArray());
+        record.writeBytes(data.toByteArray());
+        record.write(0x1D);
+        return record.toByteArray();
+    }
+}
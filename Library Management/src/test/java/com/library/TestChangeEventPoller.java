@@ -0,0 +1,196 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.services.BookService;
+import com.library.services.ChangeEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.services.ChangeEventPoller;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the change event outbox and its poller's offset and gap handling, against an embedded branch database
+ */
+public class TestChangeEventPoller {
+    
+    private static final int BRANCH = 12;
+    private static final int GAP_WAIT_MS = 300;
+    
+    private final List<String> keys = new ArrayList<>();
+    private final List<ChangeEvent> published = new ArrayList<>();
+    private Path offsetFile;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:outbox_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        
+        offsetFile = Files.createTempDirectory("outbox").resolve("change-events.offset");
+        set("outbox.offset_file", offsetFile.toString());
+        set("outbox.gap_wait_ms", Integer.toString(GAP_WAIT_MS));
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        Files.deleteIfExists(offsetFile);
+        Files.delete(offsetFile.getParent());
+    }
+    
+    @Test
+    void testFirstRunSkipsTheBacklogAndSavesTheOffset() throws Exception {
+        createBook("Dune");
+        createBook("Emma");
+        ChangeEventPoller poller = newPoller();
+        
+        assertEquals(0, poller.poll(), "Events from before the first run are of no use");
+        assertEquals(2, poller.getOffset());
+        
+        int persuasion = createBook("Persuasion");
+        assertEquals(1, poller.poll());
+        ChangeEvent event = published.get(0);
+        assertEquals(3, event.getId());
+        assertEquals(Entity.BOOK, event.getEntity());
+        assertEquals(persuasion, event.getEntityId());
+        assertEquals(Action.INSERT, event.getAction());
+        assertFalse(event.isRemote(), "The outbox records this process as the origin");
+        assertEquals("3", readOffsetFile());
+    }
+    
+    @Test
+    void testRestartResumesFromTheOffsetFile() throws Exception {
+        ChangeEventPoller first = newPoller();
+        assertEquals(0, first.poll());
+        createBook("Dune");
+        assertEquals(1, first.poll());
+        
+        // Changes made while the process was down
+        createBook("Emma");
+        createBook("Persuasion");
+        ChangeEventPoller restarted = newPoller();
+        assertEquals(2, restarted.poll());
+        assertEquals(List.of(1L, 2L, 3L), publishedIds());
+        assertEquals(3, restarted.getOffset());
+    }
+    
+    @Test
+    void testUnreadableOffsetFileFallsBackToTheNewestEvent() throws Exception {
+        createBook("Dune");
+        Files.write(offsetFile, "not a number".getBytes(StandardCharsets.UTF_8));
+        
+        ChangeEventPoller poller = newPoller();
+        assertEquals(0, poller.poll());
+        assertEquals(1, poller.getOffset());
+    }
+    
+    @Test
+    void testGapIsHeldBackUntilItsTransactionCommits() throws Exception {
+        ChangeEventPoller poller = newPoller();
+        assertEquals(0, poller.poll());
+        
+        // Id 2 committed while id 1 is still in flight
+        insertEvent(2);
+        assertEquals(0, poller.poll());
+        assertEquals(0, poller.poll(), "Still within outbox.gap_wait_ms");
+        
+        insertEvent(1);
+        assertEquals(2, poller.poll());
+        assertEquals(List.of(1L, 2L), publishedIds(), "Events are published in id order");
+    }
+    
+    @Test
+    void testGapIsSkippedAfterTheWait() throws Exception {
+        ChangeEventPoller poller = newPoller();
+        assertEquals(0, poller.poll());
+        
+        insertEvent(1);
+        insertEvent(3);
+        assertEquals(1, poller.poll(), "Events before the gap go out at once");
+        assertEquals(0, poller.poll());
+        
+        Thread.sleep(GAP_WAIT_MS + 100);
+        assertEquals(1, poller.poll(), "A gap outliving the wait is taken for a rollback");
+        assertEquals(List.of(1L, 3L), publishedIds());
+        assertEquals("3", readOffsetFile());
+    }
+    
+    @Test
+    void testFailingListenerDoesNotStopTheOthers() throws Exception {
+        ChangeEventPoller poller = new ChangeEventPoller(DatabaseConnection.forBranch(BRANCH));
+        poller.addListener(events -> {
+            throw new IllegalStateException("listener failure");
+        });
+        poller.addListener(published::addAll);
+        assertEquals(0, poller.poll());
+        
+        createBook("Dune");
+        assertEquals(1, poller.poll());
+        assertEquals(List.of(1L), publishedIds());
+        assertEquals(1, poller.getOffset());
+    }
+    
+    private ChangeEventPoller newPoller() {
+        ChangeEventPoller poller = new ChangeEventPoller(DatabaseConnection.forBranch(BRANCH));
+        poller.addListener(published::addAll);
+        return poller;
+    }
+    
+    private int createBook(String title) {
+        Book book = new Book(title, "Jane Austen", "Fiction", 1);
+        assertTrue(new BookService(BRANCH).createBook(book));
+        return book.getId();
+    }
+    
+    /**
+     * Insert an event with a chosen id, to stand in for transactions committing out of order
+     */
+    private void insertEvent(long id) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO change_events (id, entity, entity_id, action, origin) VALUES (?, 'BOOK', 1, 'UPDATE', 'other')")) {
+            stmt.setLong(1, id);
+            stmt.executeUpdate();
+        }
+    }
+    
+    private List<Long> publishedIds() {
+        List<Long> ids = new ArrayList<>();
+        for (ChangeEvent event : published) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+    
+    private String readOffsetFile() throws Exception {
+        return new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8);
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
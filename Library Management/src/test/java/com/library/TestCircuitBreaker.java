@@ -0,0 +1,185 @@
+package com.library;
+
+import com.library.db.CircuitBreaker;
+import com.library.db.DatabaseConnection;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the per-pool circuit breaker, the per-borrow timeouts and read retries,
+ * against a branch pool pointed at an unreachable server or an embedded database
+ */
+public class TestCircuitBreaker {
+    
+    private static final String UNREACHABLE_URL = "jdbc:h2:tcp://127.0.0.1:1/mem:unreachable";
+    private static final int OPEN_MS = 300;
+    
+    private static int nextBranch = 900;
+    
+    private final List<String> keys = new ArrayList<>();
+    private int branch;
+    
+    @BeforeEach
+    void setUp() {
+        branch = nextBranch++;
+        set("db.breaker.failure_threshold", "2");
+        set("db.breaker.open_ms", Integer.toString(OPEN_MS));
+        set("db.read_retries", "2");
+        set("db.retry_backoff_ms", "1");
+        set("db.retry_max_backoff_ms", "5");
+        set("db.shard." + branch + ".username", "sa");
+        set("db.shard." + branch + ".password", "");
+    }
+    
+    @AfterEach
+    void tearDown() {
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testOpensAfterConsecutiveConnectionFailures() {
+        DatabaseConnection pool = pool(UNREACHABLE_URL);
+        CircuitBreaker breaker = pool.getCircuitBreaker();
+        
+        assertThrows(SQLException.class, pool::getConnection);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getCurrentState());
+        assertThrows(SQLException.class, pool::getConnection);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getCurrentState());
+        assertEquals(1, breaker.getOpenCount());
+        
+        // Refused without trying the server, and handled by the callers' SQLException catch blocks
+        assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        assertThrows(SQLTransientConnectionException.class, pool::getReadConnection);
+        assertEquals(2, breaker.getRejections());
+        assertFalse(pool.testConnection());
+    }
+    
+    @Test
+    void testFailedProbeOpensAgain() throws Exception {
+        DatabaseConnection pool = pool(UNREACHABLE_URL);
+        CircuitBreaker breaker = pool.getCircuitBreaker();
+        trip(pool);
+        
+        Thread.sleep(OPEN_MS + 50);
+        SQLException probe = assertThrows(SQLException.class, pool::getConnection);
+        assertFalse(probe instanceof SQLTransientConnectionException, "The probe should reach the server");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getCurrentState());
+        assertEquals(2, breaker.getOpenCount());
+        assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+    }
+    
+    @Test
+    void testSuccessfulProbeCloses() throws Exception {
+        DatabaseConnection pool = pool(UNREACHABLE_URL);
+        CircuitBreaker breaker = pool.getCircuitBreaker();
+        List<CircuitBreaker.State> seen = new ArrayList<>();
+        breaker.addListener(seen::add);
+        trip(pool);
+        
+        // The database comes back
+        set("db.shard." + branch + ".url", embeddedUrl());
+        Thread.sleep(OPEN_MS + 50);
+        try (Connection conn = pool.getConnection()) {
+            assertNotNull(conn);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getCurrentState());
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), seen);
+    }
+    
+    @Test
+    void testSqlErrorsDoNotOpenTheBreaker() throws Exception {
+        DatabaseConnection pool = pool(embeddedUrl());
+        for (int i = 0; i < 5; i++) {
+            try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                assertThrows(SQLSyntaxErrorException.class, () -> stmt.execute("SELECT FROM nowhere"));
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitBreaker().getCurrentState());
+        assertEquals(0, pool.getCircuitBreaker().getFailures());
+    }
+    
+    @Test
+    void testReadAndWriteTimeoutsApplyToStatements() throws Exception {
+        set("db.read_timeout_ms", "2500");
+        set("db.write_timeout_ms", "1000");
+        DatabaseConnection pool = pool(embeddedUrl());
+        
+        try (Connection conn = pool.getReadConnection(); Statement stmt = conn.createStatement()) {
+            assertEquals(3, stmt.getQueryTimeout(), "Rounded up to whole seconds");
+        }
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.prepareStatement("SELECT 1")) {
+            assertEquals(1, stmt.getQueryTimeout());
+        }
+    }
+    
+    @Test
+    void testReadRetriesTransientFailures() throws Exception {
+        DatabaseConnection pool = pool(embeddedUrl());
+        AtomicInteger attempts = new AtomicInteger();
+        
+        String result = pool.read(conn -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new SQLTransientConnectionException("Connection reset");
+            }
+            return "read";
+        });
+        assertEquals("read", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, pool.getCircuitBreaker().getRetries());
+        
+        attempts.set(0);
+        assertThrows(SQLTransientConnectionException.class, () -> pool.read(conn -> {
+            attempts.incrementAndGet();
+            throw new SQLTransientConnectionException("Connection reset");
+        }));
+        assertEquals(3, attempts.get(), "One attempt plus db.read_retries");
+    }
+    
+    @Test
+    void testReadDoesNotRetryOtherErrors() {
+        DatabaseConnection pool = pool(embeddedUrl());
+        AtomicInteger attempts = new AtomicInteger();
+        
+        assertThrows(SQLSyntaxErrorException.class, () -> pool.read(conn -> {
+            attempts.incrementAndGet();
+            throw new SQLSyntaxErrorException("Bad SQL");
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(0, pool.getCircuitBreaker().getRetries());
+    }
+    
+    private DatabaseConnection pool(String url) {
+        set("db.shard." + branch + ".url", url);
+        return DatabaseConnection.forBranch(branch);
+    }
+    
+    private void trip(DatabaseConnection pool) {
+        assertThrows(SQLException.class, pool::getConnection);
+        assertThrows(SQLException.class, pool::getConnection);
+        assertTrue(pool.getCircuitBreaker().isOpen());
+    }
+    
+    private String embeddedUrl() {
+        return "jdbc:h2:mem:breaker_" + branch + ";DB_CLOSE_DELAY=-1";
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
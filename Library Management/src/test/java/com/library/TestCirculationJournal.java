@@ -0,0 +1,264 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.CirculationJournal;
+import com.library.services.JournalEntry;
+import com.library.services.JournalReplayer;
+import com.library.services.ReplayReport;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the offline circulation journal and its idempotent replay, against an embedded branch database
+ */
+public class TestCirculationJournal {
+    
+    private static final int BRANCH = 11;
+    private static final LocalDate TODAY = LocalDate.now();
+    
+    private final List<String> keys = new ArrayList<>();
+    private Path file;
+    private JournalReplayer replayer;
+    private BookService books;
+    private TransactionService loans;
+    private int userId;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:journal_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        
+        file = Files.createTempFile("circulation", ".journal");
+        replayer = new JournalReplayer(BRANCH);
+        books = new BookService(BRANCH);
+        loans = new TransactionService(BRANCH);
+        User member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(new UserService(BRANCH).createUser(member));
+        userId = member.getId();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        Files.deleteIfExists(file);
+    }
+    
+    @Test
+    void testReplayingTheSameJournalTwiceAppliesItOnce() throws Exception {
+        int bookId = createBook("Dune", 2);
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            journal.append(JournalEntry.issue("issue-1", userId, bookId, TODAY, TODAY.plusDays(14)));
+            ReplayReport first = new ReplayReport();
+            replayer.replay(journal.getPending(), first);
+            assertEquals(1, first.getApplied());
+            // Committed, but the desk stopped before acknowledging it in the journal
+        }
+        
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            assertEquals(1, journal.getPendingCount());
+            ReplayReport second = new ReplayReport();
+            journal.acknowledge(replayer.replay(journal.getPending(), second));
+            assertEquals(0, second.getApplied());
+            assertEquals(1, second.getDuplicates());
+            assertEquals(0, journal.getPendingCount());
+        }
+        assertEquals(1, loans.getTransactionsByBookId(bookId).size());
+        assertEquals(1, availableCopies(bookId));
+        
+        int loanId = loans.getTransactionsByBookId(bookId).get(0).getId();
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            journal.append(JournalEntry.returned("return-1", loanId, bookId, TODAY));
+            replayer.replay(journal.getPending(), new ReplayReport());
+            ReplayReport again = new ReplayReport();
+            replayer.replay(journal.getPending(), again);
+            assertEquals(1, again.getDuplicates());
+        }
+        assertEquals(Transaction.TransactionStatus.RETURNED, loans.getTransactionById(loanId).get().getStatus());
+        assertEquals(2, availableCopies(bookId), "The copy is released once");
+    }
+    
+    @Test
+    void testTornLastRecordIsDroppedOnOpen() throws Exception {
+        long firstRecordEnd;
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            journal.append(JournalEntry.issue("issue-1", userId, 1, TODAY, TODAY.plusDays(14)));
+            firstRecordEnd = Files.size(file);
+            journal.append(JournalEntry.issue("issue-2", userId, 2, TODAY, TODAY.plusDays(14)));
+        }
+        // A crash part way through the second append
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+        
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            assertEquals(List.of("issue-1"), pendingKeys(journal));
+            assertEquals(firstRecordEnd, Files.size(file), "The torn bytes are cut off");
+            journal.append(JournalEntry.issue("issue-3", userId, 3, TODAY, TODAY.plusDays(14)));
+        }
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            assertEquals(List.of("issue-1", "issue-3"), pendingKeys(journal));
+        }
+    }
+    
+    @Test
+    void testCorruptLastRecordIsDroppedOnOpen() throws Exception {
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            journal.append(JournalEntry.issue("issue-1", userId, 1, TODAY, TODAY.plusDays(14)));
+            journal.append(JournalEntry.issue("issue-2", userId, 2, TODAY, TODAY.plusDays(14)));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0x01));
+            last.rewind();
+            channel.write(last, channel.size() - 1);
+        }
+        
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            assertEquals(List.of("issue-1"), pendingKeys(journal), "The record failing its CRC is dropped");
+        }
+    }
+    
+    @Test
+    void testAcknowledgedRecordsStayAcknowledged() throws Exception {
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            journal.append(JournalEntry.issue("issue-1", userId, 1, TODAY, TODAY.plusDays(14)));
+            journal.append(JournalEntry.issue("issue-2", userId, 2, TODAY, TODAY.plusDays(14)));
+            journal.acknowledge(List.of("issue-1"));
+        }
+        try (CirculationJournal journal = new CirculationJournal(file)) {
+            assertEquals(List.of("issue-2"), pendingKeys(journal));
+            journal.acknowledge(List.of("issue-2"));
+            assertEquals(0, Files.size(file), "An empty journal is truncated");
+        }
+    }
+    
+    @Test
+    void testConflictsAreReportedAndNotRetried() throws Exception {
+        int lastCopy = createBook("Emma", 1);
+        User other = new User("jessica", "secret", User.UserRole.USER);
+        assertTrue(new UserService(BRANCH).createUser(other));
+        int returnedLoan = issueAndReturn(createBook("Persuasion", 1));
+        
+        List<JournalEntry> batch = List.of(
+                JournalEntry.issue("issue-1", userId, lastCopy, TODAY, TODAY.plusDays(14)),
+                // Another desk's offline issue of the same last copy
+                JournalEntry.issue("issue-2", other.getId(), lastCopy, TODAY, TODAY.plusDays(14)),
+                JournalEntry.returned("return-1", returnedLoan, 0, TODAY),
+                JournalEntry.issue("issue-3", 9999, lastCopy, TODAY, TODAY.plusDays(14)));
+        ReplayReport report = new ReplayReport();
+        List<String> settled = replayer.replay(batch, report);
+        
+        assertEquals(List.of("issue-1", "issue-2", "return-1", "issue-3"), settled, "Conflicts are settled too");
+        assertEquals(1, report.getApplied());
+        assertEquals(3, report.getConflicts().size());
+        assertTrue(report.getConflicts().get(0).contains("no copies left"), report.getConflicts().get(0));
+        assertTrue(report.getConflicts().get(1).contains("already returned"), report.getConflicts().get(1));
+        assertTrue(report.getConflicts().get(2).contains("no longer exists"), report.getConflicts().get(2));
+        
+        ReplayReport retried = new ReplayReport();
+        replayer.replay(batch, retried);
+        assertEquals(4, retried.getDuplicates(), "Conflicts are recorded and not retried");
+        assertTrue(retried.getConflicts().isEmpty());
+        assertEquals(0, availableCopies(lastCopy));
+        assertEquals(1, loans.getTransactionsByBookId(lastCopy).size());
+    }
+    
+    @Test
+    void testLoansAreStampedWithTheirBooksBranch() throws Exception {
+        int local = createBook("Dune", 1);
+        int elsewhere = createBook("Emma", 1);
+        // A book of a branch whose loans live in another database
+        execute("UPDATE books SET branch_id = 99 WHERE id = " + elsewhere);
+        
+        ReplayReport report = new ReplayReport();
+        replayer.replay(List.of(
+                JournalEntry.issue("issue-1", userId, local, TODAY, TODAY.plusDays(14)),
+                JournalEntry.issue("issue-2", userId, elsewhere, TODAY, TODAY.plusDays(14))), report);
+        
+        assertEquals(1, report.getApplied());
+        assertEquals(1, report.getConflicts().size());
+        assertTrue(report.getConflicts().get(0).contains("kept in another database"), report.getConflicts().get(0));
+        assertEquals(BRANCH, queryInt("SELECT branch_id FROM transactions WHERE book_id = " + local));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM transactions WHERE book_id = " + elsewhere));
+        assertEquals(1, availableCopies(elsewhere), "The copy is not reserved");
+    }
+    
+    private int createBook(String title, int copies) {
+        Book book = new Book(title, "Jane Austen", "Fiction", copies);
+        assertTrue(books.createBook(book));
+        return book.getId();
+    }
+    
+    private int issueAndReturn(int bookId) {
+        assertTrue(loans.issueBook(userId, bookId, TODAY.plusDays(14)));
+        int loanId = loans.getTransactionsByBookId(bookId).get(0).getId();
+        assertTrue(loans.returnBook(loanId));
+        return loanId;
+    }
+    
+    private int availableCopies(int bookId) {
+        return books.getBookById(bookId).get().getAvailableCopies();
+    }
+    
+    private int queryInt(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+    
+    private void execute(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+    
+    private List<String> pendingKeys(CirculationJournal journal) {
+        List<String> pending = new ArrayList<>();
+        for (JournalEntry entry : journal.getPending()) {
+            pending.add(entry.getKey());
+        }
+        return pending;
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,79 @@
+package com.library;
+
+import com.library.cache.CompactLoanStore;
+import com.library.cache.IntIntHashMap;
+import com.library.entities.Transaction;
+import com.library.entities.Transaction.TransactionStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the compact primitive stores
+ */
+public class TestCompactStores {
+    
+    @Test
+    void testIntIntHashMapPutRemoveAndGrow() {
+        IntIntHashMap map = new IntIntHashMap(4, -1);
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 7, i);
+        }
+        assertEquals(10_000, map.size());
+        assertEquals(1234, map.get(1234 * 7));
+        assertEquals(-1, map.get(3), "Absent keys should return the missing value");
+        
+        for (int i = 0; i < 10_000; i += 2) {
+            assertEquals(i, map.remove(i * 7));
+        }
+        assertEquals(5_000, map.size());
+        for (int i = 1; i < 10_000; i += 2) {
+            assertEquals(i, map.get(i * 7), "Removal must not break probe chains");
+        }
+        
+        map.addTo(0, 5);
+        map.addTo(0, 5);
+        assertEquals(10, map.get(0));
+    }
+    
+    @Test
+    void testLoanStoreRoundTrip() {
+        CompactLoanStore store = new CompactLoanStore(2);
+        Transaction loan = new Transaction(42, 7, 9, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15),
+                null, TransactionStatus.ISSUED, 1.25, LocalDateTime.of(2024, 3, 1, 10, 30, 5), null);
+        loan.setUserName("alice");
+        loan.setBookTitle("Dune");
+        store.put(loan);
+        
+        Transaction copy = store.get(42);
+        assertEquals(LocalDate.of(2024, 3, 15), copy.getDueDate());
+        assertNull(copy.getReturnDate());
+        assertEquals(1.25, copy.getFineAmount(), 0.0001);
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 30, 5), copy.getCreatedAt());
+        assertEquals("alice", copy.getUserName());
+        assertEquals(1, store.findOverdue(LocalDate.of(2024, 4, 1)).size());
+        
+        store.setStatus(42, TransactionStatus.RETURNED, LocalDate.of(2024, 3, 10));
+        assertEquals(TransactionStatus.RETURNED, store.getStatus(42));
+        assertTrue(store.findOverdue(LocalDate.of(2024, 4, 1)).isEmpty());
+        assertTrue(store.remove(42));
+        assertNull(store.get(42));
+    }
+    
+    @Test
+    void testMillionLoansFitInTensOfMegabytes() {
+        int loans = 1_000_000;
+        CompactLoanStore store = new CompactLoanStore(loans);
+        int day = CompactLoanStore.toEpochDay(LocalDate.of(2024, 1, 1));
+        for (int id = 1; id <= loans; id++) {
+            store.put(id, id % 5_000, id % 20_000, day, day + 14, Integer.MIN_VALUE, TransactionStatus.ISSUED,
+                    0, 0, 0, "user" + (id % 5_000), "Title " + (id % 20_000), "Author " + (id % 3_000));
+        }
+        assertEquals(loans, store.size());
+        assertEquals(loans, store.countByStatus(TransactionStatus.ISSUED));
+        assertTrue(store.estimateBytes() < 100L * 1024 * 1024,
+                "Estimated footprint was " + store.estimateBytes() / (1024 * 1024) + " MB");
+    }
+}
@@ -0,0 +1,212 @@
+package com.library;
+
+import com.library.db.DatabaseBackup;
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for backup export and restore round trips, against an embedded branch database
+ */
+public class TestDatabaseBackup {
+    
+    private static final int BRANCH = 8;
+    private static final String[] TABLES = {"branches", "users", "books", "transactions", "transactions_history",
+                                            "applied_operations"};
+    
+    private final List<String> keys = new ArrayList<>();
+    private Path file;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:backup_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        file = Files.createTempFile("library", ".lmsbak");
+        
+        execute("INSERT INTO branches (id, code, name) VALUES (" + BRANCH + ", 'EAST', 'East Branch')");
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        Book emma = new Book("Emma", "Jane Austen", "Romance", 1);
+        emma.setDescription("\u00dcn\u00efc\u00f6d\u00e9 and a very long description ".repeat(3000));
+        User member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(new BookService(BRANCH).createBook(dune));
+        assertTrue(new BookService(BRANCH).createBook(emma));
+        assertTrue(new UserService(BRANCH).createUser(member));
+        TransactionService loans = new TransactionService(BRANCH);
+        assertTrue(loans.issueBook(member.getId(), dune.getId(), LocalDate.now().plusDays(14)));
+        assertTrue(loans.issueBook(member.getId(), emma.getId(), LocalDate.now().minusDays(3)));
+        assertTrue(loans.returnBook(loans.getActiveTransactions().get(0).getId()));
+        execute("INSERT INTO transactions_history (id, user_id, book_id, issue_date, due_date, return_date, status, " +
+                "fine_amount) VALUES (100, " + member.getId() + ", " + dune.getId() + ", DATE '2020-01-01', " +
+                "DATE '2020-01-15', DATE '2020-01-20', 'RETURNED', 2.50)");
+        execute("INSERT INTO applied_operations (idempotency_key, outcome, transaction_id) VALUES ('key-1', 'APPLIED', 1)");
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        Files.deleteIfExists(file);
+    }
+    
+    @Test
+    void testRestoreReproducesTheExportedTables() throws Exception {
+        Map<String, List<String>> before = snapshot();
+        DatabaseBackup backup = new DatabaseBackup(BRANCH);
+        backup.export(file);
+        
+        new BookService(BRANCH).createBook(new Book("Persuasion", "Jane Austen", "Romance", 1));
+        execute("DELETE FROM transactions_history");
+        execute("UPDATE users SET email = 'changed@example.com'");
+        execute("DELETE FROM applied_operations");
+        assertNotEquals(before, snapshot());
+        long lastEvent = maxEventId();
+        assertTrue(lastEvent > 0);
+        
+        backup.restore(file);
+        
+        assertEquals(before, snapshot());
+        assertFalse(restoreInterrupted());
+        assertEquals(0, count("change_events"), "Events describe the replaced rows");
+        assertEquals(0, count("tombstones"));
+        
+        // Pollers' saved offsets stay below the ids of new events
+        new BookService(BRANCH).createBook(new Book("Mansfield Park", "Jane Austen", "Romance", 1));
+        assertTrue(maxEventId() > lastEvent);
+    }
+    
+    @Test
+    void testCorruptBackupLeavesTheDatabaseUnchanged() throws Exception {
+        DatabaseBackup backup = new DatabaseBackup(BRANCH);
+        backup.export(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 20);
+        }
+        new BookService(BRANCH).createBook(new Book("Persuasion", "Jane Austen", "Romance", 1));
+        Map<String, List<String>> before = snapshot();
+        long events = count("change_events");
+        
+        assertThrows(IOException.class, () -> backup.restore(file));
+        
+        assertEquals(before, snapshot(), "A corrupt file is rejected before anything is deleted");
+        assertEquals(events, count("change_events"));
+        assertFalse(restoreInterrupted());
+    }
+    
+    @Test
+    void testInterruptedRestoreIsFinishedByRunningItAgain() throws Exception {
+        Map<String, List<String>> before = snapshot();
+        DatabaseBackup backup = new DatabaseBackup(BRANCH);
+        backup.export(file);
+        
+        // The database fails part way: the earlier tables are restored and committed, transactions_history is not
+        execute("ALTER TABLE transactions_history ALTER COLUMN fine_amount RENAME TO fine");
+        assertThrows(SQLException.class, () -> backup.restore(file));
+        assertTrue(restoreInterrupted());
+        assertEquals(0, count("transactions_history"));
+        
+        execute("ALTER TABLE transactions_history ALTER COLUMN fine RENAME TO fine_amount");
+        backup.restore(file);
+        assertEquals(before, snapshot());
+        assertFalse(restoreInterrupted());
+    }
+    
+    @Test
+    void testRejectsFilesThatAreNotBackups() throws Exception {
+        Files.write(file, "title,author\nDune,Frank Herbert\n".getBytes());
+        Map<String, List<String>> before = snapshot();
+        
+        assertThrows(IOException.class, () -> new DatabaseBackup(BRANCH).restore(file));
+        assertEquals(before, snapshot());
+    }
+    
+    private Map<String, List<String>> snapshot() throws Exception {
+        Map<String, List<String>> tables = new LinkedHashMap<>();
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                List<String> rows = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY 1")) {
+                    int columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        StringBuilder row = new StringBuilder();
+                        for (int i = 1; i <= columns; i++) {
+                            row.append(rs.getString(i)).append('|');
+                        }
+                        rows.add(row.toString());
+                    }
+                }
+                tables.put(table, rows);
+            }
+        }
+        return tables;
+    }
+    
+    private boolean restoreInterrupted() throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            return DatabaseBackup.isRestoreInterrupted(conn);
+        }
+    }
+    
+    private long count(String table) throws Exception {
+        return queryLong("SELECT COUNT(*) FROM " + table);
+    }
+    
+    private long maxEventId() throws Exception {
+        return queryLong("SELECT COALESCE(MAX(id), 0) FROM change_events");
+    }
+    
+    private long queryLong(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    private void execute(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,194 @@
+package com.library;
+
+import com.library.db.DatabaseConfig;
+import com.library.db.DatabaseConfigWatcher;
+import com.library.db.DatabaseConnection;
+import com.library.db.ShardRouter;
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the database settings snapshot, its shard and replica overrides,
+ * and applying changed settings to a running pool
+ */
+public class TestDatabaseConfig {
+    
+    private static final int BRANCH = 18;
+    
+    private final List<String> keys = new ArrayList<>();
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testDefaultsAndInvalidValues() {
+        DatabaseConfig config = DatabaseConfig.from(settings(
+                "db.pool_size", "0",
+                "db.pool_timeout_ms", "-5",
+                "db.read_retries", "many",
+                "cache.index_ttl_seconds", "30"));
+        
+        assertEquals(DatabaseConfig.DEFAULT_URL, config.getUrl());
+        assertEquals(DatabaseConfig.DEFAULT_USERNAME, config.getUsername());
+        assertEquals(1, config.getPoolSize(), "A pool needs at least one connection");
+        assertEquals(0, config.getPoolTimeoutMillis(), "Negative values are clamped");
+        assertEquals(2, config.getReadRetries(), "Invalid values fall back to the default");
+        assertEquals(30_000, config.getIndexTtlMillis());
+        assertTrue(config.isMySql());
+        assertFalse(config.toString().contains(DatabaseConfig.DEFAULT_PASSWORD), "The password is never printed");
+    }
+    
+    @Test
+    void testShardOverridesConnectionSettingsAndSharesTheRest() {
+        Settings settings = settings(
+                "db.username", "library",
+                "db.password", "shared",
+                "db.pool_size", "10",
+                "db.read_retries", "4",
+                "db.shard.5.url", "jdbc:h2:mem:branch5",
+                "db.shard.5.pool_size", "3");
+        DatabaseConfig shard = DatabaseConfig.forShard(settings, 5);
+        
+        assertTrue(DatabaseConfig.hasShard(settings, 5));
+        assertFalse(DatabaseConfig.hasShard(settings, 6));
+        assertEquals("jdbc:h2:mem:branch5", shard.getUrl());
+        assertEquals("library", shard.getUsername(), "Unset connection settings come from db.*");
+        assertEquals("shared", shard.getPassword());
+        assertEquals(3, shard.getPoolSize());
+        assertEquals(4, shard.getReadRetries(), "Everything else is shared");
+        assertFalse(shard.isMySql());
+        assertEquals(DatabaseConfig.DEFAULT_URL, DatabaseConfig.forShard(settings, 6).getUrl());
+    }
+    
+    @Test
+    void testReplicaOverridesConnectionSettings() {
+        Settings settings = settings(
+                "db.url", "jdbc:mysql://primary/library",
+                "db.pool_size", "10",
+                "db.replica.url", "jdbc:mysql://replica/library",
+                "db.replica.username", "reader",
+                "db.replica.pool_size", "20");
+        DatabaseConfig replica = DatabaseConfig.forReplica(settings);
+        
+        assertTrue(DatabaseConfig.hasReplica(settings));
+        assertFalse(DatabaseConfig.hasReplica(settings.with("db.replica.url", " ")), "A blank URL means no replica");
+        assertEquals("jdbc:mysql://replica/library", replica.getUrl());
+        assertEquals("reader", replica.getUsername());
+        assertEquals(DatabaseConfig.DEFAULT_PASSWORD, replica.getPassword());
+        assertEquals(20, replica.getPoolSize());
+        assertEquals(10, DatabaseConfig.from(settings).getPoolSize());
+    }
+    
+    @Test
+    void testSameAsAndConnectionSettingsDiffer() {
+        Settings settings = settings("db.url", "jdbc:h2:mem:a", "db.pool_size", "5");
+        DatabaseConfig config = DatabaseConfig.from(settings);
+        
+        assertTrue(config.sameAs(DatabaseConfig.from(settings)));
+        assertFalse(config.connectionSettingsDiffer(DatabaseConfig.from(settings)));
+        
+        DatabaseConfig resized = DatabaseConfig.from(settings.with("db.pool_size", "8"));
+        assertFalse(config.sameAs(resized));
+        assertFalse(config.connectionSettingsDiffer(resized), "Resizing keeps the open connections");
+        
+        DatabaseConfig ttl = DatabaseConfig.from(settings.with("cache.index_ttl_seconds", "60"));
+        assertFalse(config.sameAs(ttl));
+        assertFalse(config.connectionSettingsDiffer(ttl));
+        
+        for (String key : new String[] {"db.url", "db.username", "db.password", "db.connect_timeout_ms",
+                "db.socket_timeout_ms", "db.statement_cache_size", "db.statement_cache_sql_limit"}) {
+            DatabaseConfig changed = DatabaseConfig.from(settings.with(key, "7"));
+            assertTrue(config.connectionSettingsDiffer(changed), key);
+            assertFalse(config.sameAs(changed), key);
+        }
+    }
+    
+    @Test
+    void testPoolResizesWhenSettingsChange() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:config_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        set("db.shard." + BRANCH + ".pool_size", "2");
+        set("db.pool_timeout_ms", "100");
+        DatabaseConnection pool = DatabaseConnection.forBranch(BRANCH);
+        assertEquals(2, pool.getPoolSize());
+        
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            borrowed.add(pool.getConnection());
+            borrowed.add(pool.getConnection());
+            assertThrows(SQLException.class, pool::getConnection, "Two connections fill a pool of two");
+            
+            set("db.shard." + BRANCH + ".pool_size", "3");
+            assertSame(pool, DatabaseConnection.forBranch(BRANCH), "The pool is resized in place");
+            assertEquals(3, pool.getPoolSize());
+            borrowed.add(pool.getConnection());
+            assertEquals(3, pool.getActiveConnections());
+            
+            set("db.shard." + BRANCH + ".pool_size", "1");
+            assertEquals(1, pool.getPoolSize());
+            closeAll(borrowed);
+            assertEquals(1, pool.getIdleConnections(), "Connections beyond the smaller pool are closed on return");
+            borrowed.add(pool.getConnection());
+            assertThrows(SQLException.class, pool::getConnection, "One connection fills the shrunk pool");
+            closeAll(borrowed);
+            
+            set("db.statement_cache_size", "100");
+            assertEquals(0, pool.getIdleConnections(), "New connection settings close the idle connections");
+            try (Connection conn = pool.getConnection()) {
+                assertTrue(conn.isValid(1));
+            }
+        } finally {
+            closeAll(borrowed);
+        }
+    }
+    
+    @Test
+    void testWatcherStartsOnce() {
+        DatabaseConfigWatcher watcher = DatabaseConfigWatcher.getInstance();
+        assertSame(watcher, DatabaseConfigWatcher.getInstance());
+        try {
+            assertTrue(watcher.start());
+            assertTrue(watcher.start(), "Starting again keeps the running watcher");
+        } finally {
+            watcher.stop();
+            watcher.stop();
+        }
+    }
+    
+    private static Settings settings(String... pairs) {
+        Properties properties = new Properties();
+        for (int i = 0; i < pairs.length; i += 2) {
+            properties.setProperty(pairs[i], pairs[i + 1]);
+        }
+        return Settings.of(properties);
+    }
+    
+    private static void closeAll(List<Connection> connections) throws SQLException {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,193 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.ChangeSet;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the changed-since queries and their tombstones, against an embedded branch database
+ */
+public class TestDeltaSync {
+    
+    private static final int BRANCH = 7;
+    
+    private final List<String> keys = new ArrayList<>();
+    private String originalShards;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        originalShards = ConfigManager.getProperty("db.shards", "");
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:delta_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        ConfigManager.setProperty("db.shards", Integer.toString(BRANCH));
+        
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        ConfigManager.setProperty("db.shards", originalShards);
+    }
+    
+    @Test
+    void testChangesAndDeletesSinceWatermark() {
+        BookService books = new BookService(BRANCH);
+        assertTrue(books.createBook(new Book("Dune", "Frank Herbert", "Science Fiction", 2)));
+        
+        ChangeSet<Book> first = books.getBooksChangedSince(null);
+        assertNotNull(first);
+        assertTrue(first.isFull(), "No watermark should get every row");
+        assertEquals(1, first.getChanged().size());
+        int duneId = first.getChanged().get(0).getId();
+        
+        assertTrue(books.createBook(new Book("Emma", "Jane Austen", "Romance", 1)));
+        assertTrue(books.deleteBook(duneId));
+        
+        ChangeSet<Book> second = books.getBooksChangedSince(first.getWatermark());
+        assertNotNull(second);
+        assertFalse(second.isFull());
+        assertEquals(1, second.getChanged().size());
+        assertEquals("Emma", second.getChanged().get(0).getTitle());
+        assertEquals(List.of(duneId), second.getDeletedIds());
+        assertFalse(second.getWatermark().isBefore(first.getWatermark()));
+    }
+    
+    @Test
+    void testOldWatermarkGetsFullSet() {
+        BookService books = new BookService(BRANCH);
+        assertTrue(books.createBook(new Book("Persuasion", "Jane Austen", "Romance", 1)));
+        
+        ChangeSet<Book> current = books.getBooksChangedSince(null);
+        ChangeSet<Book> changes = books.getBooksChangedSince(current.getWatermark().minusDays(30));
+        
+        assertTrue(changes.isFull(), "A watermark older than the tombstones should get every row");
+        assertEquals(1, changes.getChanged().size());
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+    
+    @Test
+    void testCascadingDeletesTombstoneTheirLoans() {
+        BookService books = new BookService(BRANCH);
+        UserService users = new UserService(BRANCH);
+        TransactionService loans = new TransactionService(BRANCH);
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        Book emma = new Book("Emma", "Jane Austen", "Romance", 1);
+        User paul = new User("paul", "secret", User.UserRole.USER);
+        User jessica = new User("jessica", "secret", User.UserRole.USER);
+        assertTrue(books.createBook(dune));
+        assertTrue(books.createBook(emma));
+        assertTrue(users.createUser(paul));
+        assertTrue(users.createUser(jessica));
+        assertTrue(loans.issueBook(paul.getId(), dune.getId(), LocalDate.now().plusDays(14)));
+        assertTrue(loans.issueBook(jessica.getId(), emma.getId(), LocalDate.now().plusDays(14)));
+        int paulsLoan = loans.getTransactionsByBookId(dune.getId()).get(0).getId();
+        int emmasLoan = loans.getTransactionsByBookId(emma.getId()).get(0).getId();
+        LocalDateTime userWatermark = users.getUsersChangedSince(null).getWatermark();
+        LocalDateTime loanWatermark = loans.getTransactionsChangedSince(null).getWatermark();
+        
+        assertTrue(users.deleteUser(paul.getId()));
+        assertTrue(books.deleteBook(emma.getId()));
+        
+        ChangeSet<User> userChanges = users.getUsersChangedSince(userWatermark);
+        assertFalse(userChanges.isFull());
+        assertEquals(List.of(paul.getId()), userChanges.getDeletedIds());
+        assertEquals(List.of(paul.getId()), users.getUserListRowsChangedSince(userWatermark).getDeletedIds());
+        ChangeSet<Transaction> loanChanges = loans.getTransactionsChangedSince(loanWatermark);
+        assertFalse(loanChanges.isFull());
+        assertEquals(List.of(paulsLoan, emmasLoan), sorted(loanChanges.getDeletedIds()));
+        assertTrue(loanChanges.getChanged().isEmpty(), "Both loans went with their user and book");
+    }
+    
+    @Test
+    void testWatermarkPastRetentionGetsFullSetWithoutDeletes() {
+        set("sync.tombstone_retention_days", "2");
+        BookService books = new BookService(BRANCH);
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        assertTrue(books.createBook(dune));
+        assertTrue(books.createBook(new Book("Emma", "Jane Austen", "Romance", 1)));
+        LocalDateTime now = books.getBooksChangedSince(null).getWatermark();
+        assertTrue(books.deleteBook(dune.getId()));
+        
+        ChangeSet<Book> withinRetention = books.getBooksChangedSince(now.minusDays(1));
+        assertFalse(withinRetention.isFull());
+        assertEquals(List.of(dune.getId()), withinRetention.getDeletedIds());
+        
+        ChangeSet<Book> pastRetention = books.getBooksChangedSince(now.minusDays(3));
+        assertTrue(pastRetention.isFull(), "Tombstones this old may have been pruned");
+        assertTrue(pastRetention.getDeletedIds().isEmpty());
+        assertEquals(1, pastRetention.getChanged().size(), "The caller drops rows missing from a full set");
+        assertEquals("Emma", pastRetention.getChanged().get(0).getTitle());
+    }
+    
+    @Test
+    void testWithoutTombstonesEveryCallGetsFullSet() {
+        set("sync.tombstones_enabled", "false");
+        BookService books = new BookService(BRANCH);
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        assertTrue(books.createBook(dune));
+        LocalDateTime watermark = books.getBooksChangedSince(null).getWatermark();
+        assertTrue(books.deleteBook(dune.getId()));
+        
+        ChangeSet<Book> changes = books.getBooksChangedSince(watermark);
+        assertTrue(changes.isFull(), "Deletes cannot be tracked");
+        assertTrue(changes.getChanged().isEmpty());
+    }
+    
+    @Test
+    void testWatermarkOverlapsRecentCommits() {
+        set("sync.overlap_seconds", "60");
+        BookService books = new BookService(BRANCH);
+        assertTrue(books.createBook(new Book("Dune", "Frank Herbert", "Science Fiction", 2)));
+        
+        LocalDateTime before = LocalDateTime.now();
+        ChangeSet<Book> first = books.getBooksChangedSince(null);
+        LocalDateTime after = LocalDateTime.now();
+        assertFalse(first.getWatermark().isBefore(before.minusSeconds(61)));
+        assertFalse(first.getWatermark().isAfter(after.minusSeconds(59)), "Set back by sync.overlap_seconds");
+        
+        assertTrue(books.createBook(new Book("Emma", "Jane Austen", "Romance", 1)));
+        ChangeSet<Book> second = books.getBooksChangedSince(first.getWatermark());
+        assertFalse(second.isFull());
+        assertEquals(2, second.getChanged().size(), "Rows within the overlap arrive again");
+        assertEquals("Dune", second.getChanged().get(0).getTitle());
+        assertEquals("Emma", second.getChanged().get(1).getTitle());
+    }
+    
+    private List<Integer> sorted(List<Integer> ids) {
+        List<Integer> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
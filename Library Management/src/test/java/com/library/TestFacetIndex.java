@@ -0,0 +1,43 @@
+package com.library;
+
+import com.library.cache.FacetIndex;
+import com.library.cache.FacetResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the bitset facet index and its counts
+ */
+public class TestFacetIndex {
+    
+    @Test
+    void testFacetCountsIgnoreOwnSelection() {
+        FacetIndex index = new FacetIndex(2);
+        index.put(1, "Fiction", 1994, 2);
+        index.put(2, "Fiction", 2003, 0);
+        index.put(3, "History", 1998, 1);
+        index.put(4, null, null, 1);
+        
+        FacetResult all = index.query(null, null, null);
+        assertEquals(4, all.getMatchCount());
+        assertEquals(Integer.valueOf(2), all.getCategoryCounts().get("Fiction"));
+        assertEquals(Integer.valueOf(2), all.getDecadeCounts().get(1990));
+        assertEquals(Integer.valueOf(1), all.getDecadeCounts().get(FacetIndex.UNKNOWN_DECADE));
+        assertEquals(3, all.getAvailableCount());
+        assertEquals(1, all.getUnavailableCount());
+        
+        FacetResult fiction = index.query("Fiction", null, true);
+        assertArrayEquals(new int[] {1}, fiction.getBookIds());
+        assertEquals(Integer.valueOf(1), fiction.getCategoryCounts().get("History"), "Category counts should ignore the category selection");
+        assertEquals(1, fiction.getUnavailableCount(), "Availability counts should ignore the availability selection");
+        
+        index.adjustAvailable(2, 1);
+        index.remove(3);
+        index.put(1, "Poetry", 1994, 2);
+        FacetResult updated = index.query(null, 1990, null);
+        assertArrayEquals(new int[] {1}, updated.getBookIds());
+        assertNull(updated.getCategoryCounts().get("History"), "Categories without books should disappear");
+        assertEquals(3, index.query(null, null, true).getMatchCount());
+    }
+}
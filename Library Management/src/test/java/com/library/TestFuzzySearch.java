@@ -0,0 +1,53 @@
+package com.library;
+
+import com.library.cache.TrigramIndex;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the typo-tolerant trigram index
+ */
+public class TestFuzzySearch {
+    
+    @Test
+    void testEditDistanceCountsTranspositionsOnce() {
+        assertEquals(1, TrigramIndex.editDistance("tolkein", "tolkien", 2));
+        assertEquals(3, TrigramIndex.editDistance("kitten", "sitting", 3));
+        assertEquals(2, TrigramIndex.editDistance("kitten", "sitting", 1), "Distances over the bound stop at bound + 1");
+        assertEquals(0, TrigramIndex.editDistance("dune", "dune", 0));
+    }
+    
+    @Test
+    void testMisspelledAuthorFindsBooks() {
+        TrigramIndex index = new TrigramIndex(16);
+        index.put(1, "The Hobbit", "J.R.R. Tolkien");
+        index.put(2, "The Lord of the Rings", "J. R. R. Tolkien");
+        index.put(3, "Dune", "Frank Herbert");
+        
+        assertEquals(2, index.search("Tolkein", TrigramIndex.AUTO, 10).length);
+        assertEquals(0, index.search("Tolkein", 0, 10).length, "Fuzziness 0 should only match exact words");
+        assertArrayEquals(new int[] {1}, index.search("hobit tolkein", TrigramIndex.AUTO, 10));
+        assertArrayEquals(new int[] {3}, index.search("frank herbrt", 1, 10));
+        assertEquals(0, index.search("dune tolkien", TrigramIndex.AUTO, 10).length, "Every word has to match");
+    }
+    
+    @Test
+    void testExactMatchesRankFirstAndUpdatesApply() {
+        TrigramIndex index = new TrigramIndex(16);
+        index.put(1, "Dune", "Frank Herbert");
+        index.put(2, "Dunes of Arrakis", "Someone Else");
+        index.put(3, "June Bride", "Anonymous");
+        
+        int[] ids = index.search("dune", 1, 10);
+        assertEquals(3, ids.length);
+        assertEquals(3, ids[2], "One edit away should rank after exact matches");
+        assertArrayEquals(new int[] {1}, index.search("dune", 1, 1));
+        
+        index.put(3, "Summer Bride", "Anonymous");
+        assertEquals(2, index.search("dune", 1, 10).length);
+        assertTrue(index.remove(1));
+        assertArrayEquals(new int[] {2}, index.search("dune", 1, 10));
+        assertEquals(2, index.size());
+    }
+}
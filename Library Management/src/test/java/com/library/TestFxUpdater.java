@@ -0,0 +1,85 @@
+package com.library;
+
+import com.library.utils.FxUpdater;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for FxUpdater's coalescing, with a queue standing in for the FX thread
+ */
+public class TestFxUpdater {
+    
+    private final List<Runnable> fxQueue = new ArrayList<>();
+    private final List<Integer> applied = new ArrayList<>();
+    
+    @Test
+    void testBurstAppliesOnlyTheLatestValue() {
+        FxUpdater<Integer> updater = new FxUpdater<>(applied::add, fxQueue::add);
+        updater.submit(1);
+        updater.submit(2);
+        updater.submit(3);
+        assertEquals(1, fxQueue.size(), "A burst costs one runLater");
+        
+        runQueued();
+        assertEquals(List.of(3), applied);
+    }
+    
+    @Test
+    void testValueAfterTheUpdateRanIsScheduledAgain() {
+        FxUpdater<Integer> updater = new FxUpdater<>(applied::add, fxQueue::add);
+        updater.submit(1);
+        runQueued();
+        updater.submit(2);
+        assertEquals(1, fxQueue.size());
+        
+        runQueued();
+        assertEquals(List.of(1, 2), applied);
+    }
+    
+    @Test
+    void testConcurrentSubmitsScheduleOnce() throws Exception {
+        FxUpdater<Integer> updater = new FxUpdater<>(applied::add, task -> {
+            synchronized (fxQueue) {
+                fxQueue.add(task);
+            }
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 10_000;
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    updater.submit(base + i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(1, fxQueue.size());
+        runQueued();
+        assertEquals(1, applied.size());
+        assertEquals(0, applied.get(0) % 10_000, "One of the threads' last values");
+    }
+    
+    @Test
+    void testRejectsNull() {
+        FxUpdater<Integer> updater = new FxUpdater<>(applied::add, fxQueue::add);
+        assertThrows(NullPointerException.class, () -> updater.submit(null));
+        assertTrue(fxQueue.isEmpty());
+    }
+    
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(fxQueue);
+        fxQueue.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.library;
+
+import com.library.utils.ListMerger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for merging refreshed rows into a list by id and version
+ */
+public class TestListMerger {
+    
+    private static final class Row {
+        final int id;
+        final int version;
+        
+        Row(int id, int version) {
+            this.id = id;
+            this.version = version;
+        }
+        
+        int getId() {
+            return id;
+        }
+        
+        Integer getVersion() {
+            return version;
+        }
+    }
+    
+    @Test
+    void testMergeKeepsUnchangedRows() {
+        Row a = new Row(1, 1);
+        Row b = new Row(2, 1);
+        Row c = new Row(3, 1);
+        List<Row> list = new ArrayList<>(Arrays.asList(a, b, c));
+        
+        Row bChanged = new Row(2, 2);
+        Row d = new Row(4, 1);
+        int changes = ListMerger.merge(list, Arrays.asList(new Row(1, 1), bChanged, d), Row::getId, Row::getVersion);
+        
+        assertEquals(3, changes, "One removed, one replaced, one added");
+        assertEquals(3, list.size());
+        assertSame(a, list.get(0), "Unchanged row should be left in place");
+        assertSame(bChanged, list.get(1));
+        assertSame(d, list.get(2));
+    }
+    
+    @Test
+    void testMergeFollowsNewOrder() {
+        List<Row> list = new ArrayList<>(Arrays.asList(new Row(1, 1), new Row(2, 1), new Row(3, 1)));
+        
+        ListMerger.merge(list, Arrays.asList(new Row(3, 1), new Row(1, 1), new Row(2, 1)), Row::getId, Row::getVersion);
+        
+        assertEquals(Arrays.asList(3, 1, 2), ids(list));
+        assertEquals(0, ListMerger.merge(list, new ArrayList<>(list), Row::getId, Row::getVersion));
+    }
+    
+    @Test
+    void testApplyDelta() {
+        Row a = new Row(1, 1);
+        List<Row> list = new ArrayList<>(Arrays.asList(a, new Row(2, 1), new Row(3, 1)));
+        
+        int changes = ListMerger.apply(list, Arrays.asList(new Row(3, 2), new Row(5, 1), new Row(5, 1)),
+                List.of(2), Row::getId, Row::getVersion, true);
+        
+        assertEquals(3, changes, "One removed, one replaced, one added once");
+        assertEquals(Arrays.asList(5, 1, 3), ids(list));
+        assertSame(a, list.get(1));
+        assertEquals(2, list.get(2).version);
+    }
+    
+    private static List<Integer> ids(List<Row> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Row row : rows) {
+            ids.add(row.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,172 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.LibraryStats;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.ChangeEvent;
+import com.library.services.ChangeEvent.Action;
+import com.library.services.ChangeEvent.Entity;
+import com.library.services.ChangeOutbox;
+import com.library.services.LiveStatsService;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the live dashboard counters and their coalesced publishing, against an embedded branch database
+ */
+public class TestLiveStatsService {
+    
+    private static final int BRANCH = 13;
+    private static final int INTERVAL_MS = 150;
+    private static final LocalDate TODAY = LocalDate.now();
+    
+    private final List<String> keys = new ArrayList<>();
+    private final List<LibraryStats> snapshots = new CopyOnWriteArrayList<>();
+    private BookService books;
+    private TransactionService loans;
+    private LiveStatsService stats;
+    private Book dune;
+    private Book emma;
+    private User member;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:stats_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        set("ui.live_stats_interval_ms", Integer.toString(INTERVAL_MS));
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        
+        books = new BookService(BRANCH);
+        loans = new TransactionService(BRANCH);
+        dune = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        emma = new Book("Emma", "Jane Austen", "Romance", 1);
+        member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(books.createBook(dune));
+        assertTrue(books.createBook(emma));
+        assertTrue(new UserService(BRANCH).createUser(member));
+        assertTrue(loans.issueBook(member.getId(), dune.getId(), TODAY.plusDays(14)));
+        assertTrue(loans.issueBook(member.getId(), emma.getId(), TODAY.minusDays(3)));
+        
+        stats = new LiveStatsService(DatabaseConnection.forBranch(BRANCH));
+        stats.addListener(snapshots::add);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testLoadCountsTheDatabase() throws Exception {
+        assertTrue(snapshots.isEmpty(), "Nothing to publish before the first load");
+        assertTrue(stats.load());
+        
+        awaitSnapshots(1);
+        assertCounts(snapshots.get(0), 2, 1, 1, 2, 1);
+        assertCounts(stats.getStats(), 2, 1, 1, 2, 1);
+    }
+    
+    @Test
+    void testBurstOfChangesPublishesOnce() throws Exception {
+        assertTrue(stats.load());
+        awaitSnapshots(1);
+        
+        Book persuasion = new Book("Persuasion", "Jane Austen", "Romance", 3);
+        persuasion.setId(1000);
+        stats.bookSaved(persuasion);
+        User other = new User("jessica", "secret", User.UserRole.USER);
+        other.setId(1000);
+        stats.userSaved(other);
+        stats.loanIssued(2000, 1000, 1000, TODAY.plusDays(7));
+        stats.loanIssued(2001, 1000, 1000, TODAY.minusDays(1));
+        
+        awaitSnapshots(2);
+        assertCounts(snapshots.get(1), 3, 2, 2, 4, 2);
+    }
+    
+    @Test
+    void testChangesThatCancelOutPublishNothing() throws Exception {
+        assertTrue(stats.load());
+        awaitSnapshots(1);
+        
+        stats.copiesChanged(dune.getId(), -1);
+        stats.copiesChanged(dune.getId(), 1);
+        stats.loanIssued(2000, member.getId(), emma.getId(), TODAY.plusDays(7));
+        stats.loanReturned(2000, emma.getId());
+        
+        awaitSnapshots(1);
+        assertCounts(stats.getStats(), 2, 1, 1, 2, 1);
+    }
+    
+    @Test
+    void testRemoteLoanEventsUpdateTheLoanCounters() throws Exception {
+        assertTrue(stats.load());
+        awaitSnapshots(1);
+        // Issued and returned on another desk
+        Book persuasion = new Book("Persuasion", "Jane Austen", "Romance", 1);
+        assertTrue(books.createBook(persuasion));
+        assertTrue(loans.issueBook(member.getId(), persuasion.getId(), TODAY.minusDays(1)));
+        int remoteLoan = loans.getTransactionsByBookId(persuasion.getId()).get(0).getId();
+        int duneLoan = loans.getTransactionsByBookId(dune.getId()).get(0).getId();
+        int emmaLoan = loans.getTransactionsByBookId(emma.getId()).get(0).getId();
+        
+        stats.changesPublished(List.of(
+                new ChangeEvent(100, Entity.TRANSACTION, remoteLoan, Action.INSERT, "other"),
+                new ChangeEvent(101, Entity.TRANSACTION, duneLoan, Action.UPDATE, "other"),
+                new ChangeEvent(102, Entity.TRANSACTION, emmaLoan, Action.UPDATE, ChangeOutbox.getNodeId())));
+        
+        awaitSnapshots(2);
+        LibraryStats current = snapshots.get(1);
+        assertEquals(2, current.getActiveLoans(), "One remote issue, one remote return, own events skipped");
+        assertEquals(2, current.getOverdueLoans());
+    }
+    
+    /**
+     * Wait for the given number of snapshots, then make sure no more follow within a few intervals
+     */
+    private void awaitSnapshots(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (snapshots.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(INTERVAL_MS * 3);
+        assertEquals(count, snapshots.size(), "Snapshots published: " + snapshots);
+    }
+    
+    private void assertCounts(LibraryStats actual, int totalBooks, int availableBooks, int totalUsers,
+                              int activeLoans, int overdueLoans) {
+        assertEquals(totalBooks, actual.getTotalBooks());
+        assertEquals(availableBooks, actual.getAvailableBooks());
+        assertEquals(totalUsers, actual.getTotalUsers());
+        assertEquals(activeLoans, actual.getActiveLoans());
+        assertEquals(overdueLoans, actual.getOverdueLoans());
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
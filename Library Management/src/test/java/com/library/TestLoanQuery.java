@@ -0,0 +1,173 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.LoanListRow;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.LoanQuery;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the loan query spec: its shape keys, the SQL it generates and the
+ * order of its parameters, and TransactionService.findLoans against an embedded branch database
+ */
+public class TestLoanQuery {
+    
+    private static final int BRANCH = 17;
+    
+    private final List<String> keys = new ArrayList<>();
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:loanquery_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testShapeIgnoresFilterValues() {
+        assertEquals(new LoanQuery().status(TransactionStatus.ISSUED).user(1).limit(10).shape(),
+                new LoanQuery().status(TransactionStatus.RETURNED).user(2).limit(50).shape());
+        assertEquals(new LoanQuery().dueBetween(LocalDate.of(2024, 1, 1), null).shape(),
+                new LoanQuery().dueBetween(LocalDate.of(2025, 6, 1), null).shape());
+    }
+    
+    @Test
+    void testShapeDistinguishesFiltersAndSortOrder() {
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        List<LoanQuery> queries = Arrays.asList(
+                new LoanQuery(),
+                new LoanQuery().status(TransactionStatus.ISSUED),
+                new LoanQuery().status(TransactionStatus.ISSUED, TransactionStatus.OVERDUE),
+                new LoanQuery().user(1),
+                new LoanQuery().book(1),
+                new LoanQuery().text("paul"),
+                new LoanQuery().issuedBetween(day, null),
+                new LoanQuery().issuedBetween(null, day),
+                new LoanQuery().dueBetween(day, null),
+                new LoanQuery().dueBetween(null, day),
+                new LoanQuery().returnedBetween(day, null),
+                new LoanQuery().returnedBetween(null, day),
+                new LoanQuery().includeHistory(true),
+                new LoanQuery().sortBy(LoanQuery.SortKey.DUE_DATE, true),
+                new LoanQuery().sortBy(LoanQuery.SortKey.CREATED, false));
+        Set<String> shapes = queries.stream().map(LoanQuery::shape).collect(Collectors.toSet());
+        
+        assertEquals(queries.size(), shapes.size(), "The IN list length is part of the shape");
+    }
+    
+    @Test
+    void testClausesAndParametersLineUp() {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        LoanQuery query = new LoanQuery().status(TransactionStatus.OVERDUE, TransactionStatus.ISSUED).user(3).book(4)
+                .text("pa").dueBetween(from, to).sortBy(LoanQuery.SortKey.DUE_DATE, false).limit(25);
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        query.appendClauses(sql, params);
+        
+        assertEquals(" WHERE t.status IN (?, ?) AND t.user_id = ? AND t.book_id = ?" +
+                " AND (u.username LIKE ? OR b.title LIKE ?) AND t.due_date >= ? AND t.due_date <= ?" +
+                " ORDER BY t.due_date ASC, t.id ASC LIMIT ?", sql.toString());
+        // Statuses are bound in declaration order, whatever order they were given in
+        assertEquals(Arrays.asList(TransactionStatus.ISSUED, TransactionStatus.OVERDUE, 3, 4, "pa%", "pa%", from, to, 25),
+                params);
+        assertEquals(placeholders(sql), params.size());
+        
+        List<Object> valuesOnly = new ArrayList<>();
+        query.appendClauses(null, valuesOnly);
+        assertEquals(params, valuesOnly, "Collecting the values alone must give the same order");
+    }
+    
+    @Test
+    void testDefaults() {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        new LoanQuery().status((TransactionStatus) null).appendClauses(sql, params);
+        
+        assertEquals(" ORDER BY t.created_at DESC, t.id DESC LIMIT ?", sql.toString());
+        assertEquals(Arrays.asList(LoanQuery.DEFAULT_LIMIT), params);
+    }
+    
+    @Test
+    void testFindLoansFiltersSortsAndLimits() {
+        BookService books = new BookService(BRANCH);
+        UserService users = new UserService(BRANCH);
+        TransactionService loans = new TransactionService(BRANCH);
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 3);
+        Book emma = new Book("Emma", "Jane Austen", "Romance", 3);
+        assertTrue(books.createBook(dune));
+        assertTrue(books.createBook(emma));
+        User paul = new User("paul", "secret", User.UserRole.USER);
+        User jessica = new User("jessica", "secret", User.UserRole.USER);
+        assertTrue(users.createUser(paul));
+        assertTrue(users.createUser(jessica));
+        LocalDate today = LocalDate.now();
+        assertTrue(loans.issueBook(paul.getId(), dune.getId(), today.plusDays(7)));
+        assertTrue(loans.issueBook(paul.getId(), emma.getId(), today.plusDays(21)));
+        assertTrue(loans.issueBook(jessica.getId(), dune.getId(), today.plusDays(14)));
+        int returned = loans.findLoans(new LoanQuery().user(jessica.getId())).get(0).getId();
+        assertTrue(loans.returnBook(returned));
+        
+        List<LoanListRow> issued = loans.findLoans(new LoanQuery().status(TransactionStatus.ISSUED)
+                .sortBy(LoanQuery.SortKey.DUE_DATE, true));
+        assertEquals(Arrays.asList("Emma", "Dune"), titles(issued));
+        
+        assertEquals(Arrays.asList(returned),
+                ids(loans.findLoans(new LoanQuery().status(TransactionStatus.RETURNED, TransactionStatus.OVERDUE))));
+        assertEquals(Arrays.asList("Dune", "Emma"), titles(loans.findLoans(new LoanQuery().text("pa")
+                .sortBy(LoanQuery.SortKey.DUE_DATE, false))));
+        assertEquals(2, loans.findLoans(new LoanQuery().book(dune.getId())).size());
+        assertEquals(Arrays.asList("Dune"), titles(loans.findLoans(new LoanQuery()
+                .dueBetween(today.plusDays(7), today.plusDays(14)).status(TransactionStatus.ISSUED))));
+        assertEquals(1, loans.findLoans(new LoanQuery().limit(1)).size());
+    }
+    
+    private List<String> titles(List<LoanListRow> rows) {
+        return rows.stream().map(LoanListRow::getBookTitle).collect(Collectors.toList());
+    }
+    
+    private List<Integer> ids(List<LoanListRow> rows) {
+        return rows.stream().map(LoanListRow::getId).collect(Collectors.toList());
+    }
+    
+    private static int placeholders(CharSequence sql) {
+        return (int) sql.chars().filter(c -> c == '?').count();
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
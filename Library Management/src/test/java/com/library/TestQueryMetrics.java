@@ -0,0 +1,171 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.QueryMetrics;
+import com.library.db.ShardRouter;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for SQL template normalization and the per-template statement metrics,
+ * against an embedded branch database
+ */
+public class TestQueryMetrics {
+    
+    private static final int BRANCH = 15;
+    
+    private final List<String> keys = new ArrayList<>();
+    private final QueryMetrics metrics = QueryMetrics.getInstance();
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:metrics_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testNormalizeReplacesLiterals() {
+        assertEquals("SELECT * FROM books WHERE id = ?", QueryMetrics.normalize("SELECT * FROM books WHERE id = 42"));
+        assertEquals("SELECT * FROM users WHERE name = ? AND note = ? AND x = ?",
+                QueryMetrics.normalize("SELECT * FROM users WHERE name = 'O''Brien' AND note = 'it\\'s' AND x = \"a\""));
+        assertEquals("SELECT * FROM books LIMIT ? OFFSET ?", QueryMetrics.normalize("SELECT * FROM books LIMIT 10 OFFSET 20"));
+    }
+    
+    @Test
+    void testNormalizeKeepsDigitsInIdentifiers() {
+        assertEquals("SELECT col1 FROM t2 WHERE a.b2 = ?", QueryMetrics.normalize("SELECT col1 FROM t2 WHERE a.b2 = 3.5"));
+    }
+    
+    @Test
+    void testNormalizeCollapsesWhitespace() {
+        assertEquals("SELECT id FROM books WHERE id = ?", QueryMetrics.normalize("  SELECT  id\n  FROM\tbooks\r\n WHERE id = ?  "));
+    }
+    
+    @Test
+    void testNormalizeFoldsInLists() {
+        assertEquals("DELETE FROM books WHERE id IN (?...)", QueryMetrics.normalize("DELETE FROM books WHERE id IN (1, 2, 3)"));
+        assertEquals("DELETE FROM books WHERE id IN (?...)", QueryMetrics.normalize("DELETE FROM books WHERE id IN (?,?, ?)"));
+        assertEquals("DELETE FROM books WHERE id IN (?)", QueryMetrics.normalize("DELETE FROM books WHERE id IN (?)"));
+    }
+    
+    @Test
+    void testStatementsWithDifferentLiteralsShareATemplate() throws Exception {
+        assumeMetricsEnabled();
+        String template = "SELECT id FROM books WHERE total_copies > ? AND title <> ?";
+        long calls = calls(template);
+        long rows = rows(template);
+        
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO books (title, author, available_copies, total_copies) VALUES ('Dune', 'Frank Herbert', 3, 3)");
+            stmt.executeUpdate("INSERT INTO books (title, author, available_copies, total_copies) VALUES ('Emma', 'Jane Austen', 1, 1)");
+            assertEquals(2, drain(stmt.executeQuery("SELECT id FROM books WHERE total_copies > 0 AND title <> 'x'")));
+            assertEquals(1, drain(stmt.executeQuery("SELECT id FROM books WHERE total_copies > 2 AND title <> 'y'")));
+        }
+        
+        assertEquals(calls + 2, calls(template));
+        assertEquals(rows + 3, rows(template), "Rows are counted as the result sets are read");
+    }
+    
+    @Test
+    void testPreparedUpdatesBatchesAndErrorsAreRecorded() throws Exception {
+        assumeMetricsEnabled();
+        String insert = "INSERT INTO books (title, author, available_copies, total_copies) VALUES (?, ?, ?, ?)";
+        // Placeholder lists fold like IN lists
+        String insertTemplate = "INSERT INTO books (title, author, available_copies, total_copies) VALUES (?...)";
+        String failing = "SELECT no_such_column FROM books WHERE id = ?";
+        long insertCalls = calls(insertTemplate);
+        long insertRows = rows(insertTemplate);
+        long errors = errors(failing);
+        
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(insert)) {
+                for (String title : new String[] {"Dune", "Emma", "Persuasion"}) {
+                    stmt.setString(1, title);
+                    stmt.setString(2, "Author");
+                    stmt.setInt(3, 1);
+                    stmt.setInt(4, 1);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (Statement stmt = conn.createStatement()) {
+                assertThrows(SQLException.class, () -> stmt.executeQuery("SELECT no_such_column FROM books WHERE id = 7"));
+            }
+        }
+        
+        assertEquals(insertCalls + 1, calls(insertTemplate), "A batch is one execution");
+        assertEquals(insertRows + 3, rows(insertTemplate));
+        assertEquals(errors + 1, errors(failing));
+    }
+    
+    private void assumeMetricsEnabled() {
+        assumeTrue(metrics.isEnabled(), "db.metrics_enabled is false");
+    }
+    
+    private long drain(ResultSet rs) throws SQLException {
+        long count = 0;
+        try (ResultSet rows = rs) {
+            while (rows.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private QueryMetrics.QueryStats stats(String template) {
+        for (QueryMetrics.QueryStats stats : metrics.getStats()) {
+            if (stats.getTemplate().equals(template)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+    
+    private long calls(String template) {
+        QueryMetrics.QueryStats stats = stats(template);
+        return stats == null ? 0 : stats.getCalls();
+    }
+    
+    private long rows(String template) {
+        QueryMetrics.QueryStats stats = stats(template);
+        return stats == null ? 0 : stats.getRows();
+    }
+    
+    private long errors(String template) {
+        QueryMetrics.QueryStats stats = stats(template);
+        return stats == null ? 0 : stats.getErrors();
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,65 @@
+package com.library;
+
+import com.library.db.QueryPlanCache;
+import com.library.entities.Transaction.TransactionStatus;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compiled SQL cache and its parameter binding
+ */
+public class TestQueryPlanCache {
+    
+    @Test
+    void testEachShapeIsCompiledOnce() {
+        QueryPlanCache cache = new QueryPlanCache(8);
+        AtomicInteger compiles = new AtomicInteger();
+        
+        assertEquals("SELECT 1", cache.get("a", () -> "SELECT " + compiles.incrementAndGet()));
+        assertEquals("SELECT 1", cache.get("a", () -> "SELECT " + compiles.incrementAndGet()));
+        assertEquals("SELECT 2", cache.get("b", () -> "SELECT " + compiles.incrementAndGet()));
+        
+        assertEquals(2, compiles.get());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+    
+    @Test
+    void testLeastRecentlyUsedShapeIsEvicted() {
+        QueryPlanCache cache = new QueryPlanCache(2);
+        cache.get("a", () -> "A");
+        cache.get("b", () -> "B");
+        cache.get("a", () -> "A");
+        cache.get("c", () -> "C");
+        
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a", () -> "recompiled"), "a was used after b, so b goes first");
+        assertEquals("recompiled", cache.get("b", () -> "recompiled"));
+    }
+    
+    @Test
+    void testBindConvertsDatesAndEnums() throws Exception {
+        LocalDate due = LocalDate.of(2024, 3, 15);
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT CAST(? AS DATE), CAST(? AS VARCHAR), CAST(? AS INT)")) {
+            QueryPlanCache.bind(stmt, Arrays.asList(due, TransactionStatus.OVERDUE, 7));
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(due, rs.getDate(1).toLocalDate());
+                assertEquals("OVERDUE", rs.getString(2));
+                assertEquals(7, rs.getInt(3));
+            }
+        }
+    }
+}
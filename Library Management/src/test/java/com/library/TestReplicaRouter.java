@@ -0,0 +1,124 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.ReplicaRouter;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for read routing between the default pool's primary and its replica, both embedded databases
+ */
+public class TestReplicaRouter {
+    
+    private static final int PIN_MS = 200;
+    
+    private final List<String> keys = new ArrayList<>();
+    private DatabaseConnection pool;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        String run = Long.toString(System.nanoTime());
+        String primaryUrl = createDatabase("primary_" + run, "primary");
+        String replicaUrl = createDatabase("replica_" + run, "replica");
+        
+        set("db.username", "sa");
+        set("db.password", "");
+        set("db.url", primaryUrl);
+        set("db.replica.pin_ms", Integer.toString(PIN_MS));
+        set("db.read_timeout_ms", "2500");
+        set("db.write_timeout_ms", "1000");
+        set("db.replica.url", replicaUrl);
+        pool = DatabaseConnection.getInstance();
+        Thread.sleep(PIN_MS + 50);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            ConfigManager.removeProperty(keys.get(i));
+        }
+    }
+    
+    @Test
+    void testWritePinsReadsToThePrimary() throws Exception {
+        ReplicaRouter router = pool.getReplicaRouter();
+        assertEquals("replica", readFrom(pool.getReadConnection()));
+        
+        try (Connection conn = pool.getConnection()) {
+            assertEquals("primary", whoami(conn));
+        }
+        assertTrue(router.isPinned());
+        long pinned = router.getPinnedReads();
+        assertEquals("primary", readFrom(pool.getReadConnection()), "The writer must see its own write");
+        assertEquals(pinned + 1, router.getPinnedReads());
+        
+        Thread.sleep(PIN_MS + 50);
+        assertEquals("replica", readFrom(pool.getReadConnection()));
+    }
+    
+    @Test
+    void testReplicaReadsGetTheReadTimeout() throws Exception {
+        try (Connection conn = pool.getReadConnection(); Statement stmt = conn.createStatement()) {
+            assertEquals("replica", whoami(conn));
+            assertEquals(3, stmt.getQueryTimeout(), "db.read_timeout_ms, not db.write_timeout_ms");
+        }
+    }
+    
+    @Test
+    void testPrimaryReadsDoNotPin() throws Exception {
+        assertEquals("primary", readFrom(pool.getPrimaryReadConnection()));
+        assertFalse(pool.getReplicaRouter().isPinned());
+        assertEquals("replica", readFrom(pool.getReadConnection()));
+    }
+    
+    @Test
+    void testFallsBackToThePrimaryWhenTheReplicaIsDown() throws Exception {
+        set("db.replica.url", "jdbc:h2:tcp://127.0.0.1:1/mem:unreachable");
+        ReplicaRouter router = pool.getReplicaRouter();
+        long fallbacks = router.getFallbackReads();
+        
+        assertEquals("primary", readFrom(pool.getReadConnection()));
+        assertEquals("primary", readFrom(pool.getReadConnection()), "The replica is skipped for a while");
+        assertEquals(fallbacks + 2, router.getFallbackReads());
+    }
+    
+    private String createDatabase(String name, String role) throws SQLException {
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE whoami (name VARCHAR(10))");
+            stmt.execute("INSERT INTO whoami VALUES ('" + role + "')");
+        }
+        return url;
+    }
+    
+    private String readFrom(Connection borrowed) throws SQLException {
+        try (Connection conn = borrowed) {
+            return whoami(conn);
+        }
+    }
+    
+    private String whoami(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT name FROM whoami")) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,57 @@
+package com.library;
+
+import com.library.utils.ConfigManager;
+import com.library.utils.Settings;
+import com.library.utils.SettingsListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the immutable settings snapshot and change notification
+ */
+public class TestSettings {
+    
+    @Test
+    void testSnapshotIsParsedAndImmutable() {
+        Properties properties = new Properties();
+        properties.setProperty("library.max_issue_days", "21");
+        properties.setProperty("library.fine_per_day", "0.50");
+        properties.setProperty("ui.list_limit", "not a number");
+        Settings settings = Settings.of(properties);
+        
+        assertEquals(21, settings.getMaxIssueDays());
+        assertEquals(0.50, settings.getFinePerDay(), 0.0001);
+        assertEquals(5, settings.getMaxBooksPerUser(), "Missing values fall back to defaults");
+        assertEquals(500, settings.getInt("ui.list_limit", 500), "Invalid values fall back to the caller's default");
+        
+        Settings changed = settings.with("library.max_issue_days", "7");
+        assertEquals(21, settings.getMaxIssueDays(), "The old snapshot keeps its values");
+        assertEquals(7, changed.getMaxIssueDays());
+        assertSame(changed, changed.with("library.max_issue_days", "7"));
+        assertEquals("[library.max_issue_days]", settings.changedKeys(changed).toString());
+    }
+    
+    @Test
+    void testListenersSeeEachChangeOnce() {
+        List<String> seen = new ArrayList<>();
+        SettingsListener listener = (previous, current) ->
+                seen.add(previous.getMaxBooksPerUser() + "->" + current.getMaxBooksPerUser());
+        int original = ConfigManager.getMaxBooksPerUser();
+        ConfigManager.addListener(listener);
+        try {
+            ConfigManager.setIntProperty("library.max_books_per_user", original + 1);
+            ConfigManager.setIntProperty("library.max_books_per_user", original + 1);
+            assertEquals(original + 1, ConfigManager.getSettings().getMaxBooksPerUser());
+            assertEquals(1, seen.size(), "Setting the same value again is not a change");
+            assertEquals(original + "->" + (original + 1), seen.get(0));
+        } finally {
+            ConfigManager.setIntProperty("library.max_books_per_user", original);
+            ConfigManager.removeListener(listener);
+        }
+    }
+}
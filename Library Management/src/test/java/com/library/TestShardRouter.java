@@ -0,0 +1,222 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.CatalogEvents;
+import com.library.services.CatalogListener;
+import com.library.services.SearchOptions;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for branch sharding across several embedded databases
+ */
+public class TestShardRouter {
+    
+    private static final int[] BRANCHES = {1, 2, 3};
+    
+    private final List<String> keys = new ArrayList<>();
+    private String originalBranch;
+    private String originalShards;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        originalBranch = ConfigManager.getProperty("library.branch_id", "1");
+        originalShards = ConfigManager.getProperty("db.shards", "");
+        // Fresh databases per run, since named in-memory databases outlive their connections
+        String run = Long.toString(System.nanoTime());
+        for (int branch : BRANCHES) {
+            set("db.shard." + branch + ".url",
+                    "jdbc:h2:mem:branch" + branch + "_" + run + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+            set("db.shard." + branch + ".username", "sa");
+            set("db.shard." + branch + ".password", "");
+        }
+        ConfigManager.setProperty("library.branch_id", "1");
+        ConfigManager.setProperty("db.shards", "1,2,3");
+        
+        for (int branch : BRANCHES) {
+            try (Connection conn = DatabaseConnection.forBranch(branch).getConnection()) {
+                DatabaseInitializer.initializeEmbeddedDatabase(conn);
+            }
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+        ConfigManager.setProperty("library.branch_id", originalBranch);
+        ConfigManager.setProperty("db.shards", originalShards);
+    }
+    
+    @Test
+    void testBranchesUseSeparateDatabases() {
+        assertNotSame(DatabaseConnection.forBranch(1), DatabaseConnection.forBranch(2));
+        assertSame(DatabaseConnection.forBranch(2), DatabaseConnection.forBranch(2));
+        
+        assertTrue(new BookService(2).createBook(new Book("Dune", "Frank Herbert", "Science Fiction", 2)));
+        assertEquals(1, new BookService(2).getAllBooks().size());
+        assertTrue(new BookService(3).getAllBooks().isEmpty(), "Branch 3 must not see branch 2's books");
+    }
+    
+    @Test
+    void testCrossBranchSearchMergesByTitle() {
+        new BookService(1).createBook(new Book("Dune Messiah", "Frank Herbert", "Science Fiction", 1));
+        new BookService(2).createBook(new Book("Dune", "Frank Herbert", "Science Fiction", 2));
+        new BookService(3).createBook(new Book("Children of Dune", "Frank Herbert", "Science Fiction", 1));
+        new BookService(3).createBook(new Book("Emma", "Jane Austen", "Romance", 1));
+        
+        List<Book> books = new BookService(1).searchAllBranches("Dune", 10);
+        
+        assertEquals(3, books.size());
+        assertEquals("Children of Dune", books.get(0).getTitle());
+        assertEquals(3, books.get(0).getBranchId());
+        assertEquals("Dune", books.get(1).getTitle());
+        assertEquals(2, books.get(1).getBranchId());
+        assertEquals("Dune Messiah", books.get(2).getTitle());
+        assertEquals(1, books.get(2).getBranchId());
+        
+        assertEquals(2, new BookService(1).searchAllBranches("Dune", 2).size());
+    }
+    
+    @Test
+    void testBranchesSharingADatabaseAreSearchedOnce() {
+        new BookService(3).createBook(new Book("Persuasion", "Jane Austen", "Romance", 1));
+        set("db.shard.4.url", ConfigManager.getProperty("db.shard.3.url"));
+        set("db.shard.4.username", "sa");
+        set("db.shard.4.password", "");
+        ConfigManager.setProperty("db.shards", "1,2,3,4");
+        
+        assertEquals(1, new BookService(1).searchAllBranches("Persuasion", 10).size());
+    }
+    
+    @Test
+    void testDeskServicesUseTheDeskBranchDatabase() throws Exception {
+        ConfigManager.setProperty("library.branch_id", "2");
+        assertSame(DatabaseConnection.forBranch(2), DatabaseConnection.forDesk());
+        
+        Book book = new Book("Dune", "Frank Herbert", "Science Fiction", 2);
+        User member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(new BookService().createBook(book));
+        assertTrue(new UserService().createUser(member));
+        assertTrue(new TransactionService().issueBook(member.getId(), book.getId(), LocalDate.now().plusDays(14)));
+        
+        assertEquals(1, new TransactionService(2).getActiveTransactions().size());
+        assertTrue(new TransactionService(1).getActiveTransactions().isEmpty(), "The loan belongs in branch 2's database");
+        assertTrue(new UserService(1).getUserByUsername("paul").isEmpty());
+        try (Connection conn = DatabaseConnection.forBranch(2).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT branch_id FROM transactions")) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+        }
+    }
+    
+    @Test
+    void testLoanOnAnotherDatabasesBookIsRefused() {
+        // A row left behind in branch 1's database for a book that branch 2 now keeps
+        Book book = new Book("Dune", "Frank Herbert", "Science Fiction", 1);
+        book.setBranchId(2);
+        assertTrue(new BookService(1).createBook(book));
+        User member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(new UserService(1).createUser(member));
+        
+        assertFalse(new TransactionService(1).issueBook(member.getId(), book.getId(), LocalDate.now().plusDays(14)));
+        assertTrue(new TransactionService(1).getActiveTransactions().isEmpty());
+        assertEquals(1, new BookService(1).getBookById(book.getId()).get().getAvailableCopies(), "The copy is not reserved");
+    }
+    
+    @Test
+    void testCatalogEventsReachOnlyListenersOfTheirDatabase() {
+        set("db.shard.4.url", ConfigManager.getProperty("db.shard.1.url"));
+        set("db.shard.4.username", "sa");
+        set("db.shard.4.password", "");
+        List<String> saved = new ArrayList<>();
+        CatalogListener listener = new CatalogListener() {
+            @Override
+            public void bookSaved(Book book) {
+                saved.add(book.getTitle());
+            }
+        };
+        CatalogEvents.addListener(listener, DatabaseConnection.forBranch(1));
+        try {
+            new BookService(1).createBook(new Book("Dune", "Frank Herbert", "Science Fiction", 1));
+            new BookService(2).createBook(new Book("Emma", "Jane Austen", "Romance", 1));
+            new BookService(4).createBook(new Book("Persuasion", "Jane Austen", "Romance", 1));
+        } finally {
+            CatalogEvents.removeListener(listener);
+        }
+        
+        assertEquals(List.of("Dune", "Persuasion"), saved, "Branch 2's book is in another database");
+    }
+    
+    @Test
+    void testFuzzySearchOnAnotherBranchSearchesItsOwnDatabase() {
+        new BookService(1).createBook(new Book("Emma", "Jane Austen", "Romance", 1));
+        new BookService(1).createBook(new Book("Dune Messiah", "Frank Herbert", "Science Fiction", 1));
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 1);
+        new BookService(2).createBook(dune);
+        
+        // The fuzzy index holds the desk's database, so branch 2 is searched with SQL
+        List<Book> books = new BookService(2).searchBooks("Dune", new SearchOptions(1, 10));
+        
+        assertEquals(1, books.size());
+        assertEquals(dune.getId(), books.get(0).getId());
+        assertEquals("Dune", books.get(0).getTitle());
+    }
+    
+    @Test
+    void testBranchColumnsAreAddedToOlderDatabases() throws Exception {
+        String url = "jdbc:h2:mem:unbranched_" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255), " +
+                    "status VARCHAR(20))");
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50))");
+            stmt.execute("CREATE TABLE transactions (id INT AUTO_INCREMENT PRIMARY KEY, status VARCHAR(20))");
+            stmt.execute("INSERT INTO books (title) VALUES ('Dune')");
+            
+            DatabaseInitializer.addBranchColumns(conn);
+            DatabaseInitializer.addBranchColumns(conn);
+            
+            try (ResultSet rs = stmt.executeQuery("SELECT branch_id FROM books")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1), "Existing rows belong to the default branch");
+            }
+            stmt.executeQuery("SELECT branch_id FROM users").close();
+            stmt.executeQuery("SELECT branch_id FROM transactions").close();
+            try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, "books", false, true)) {
+                boolean indexed = false;
+                while (rs.next()) {
+                    indexed |= "idx_books_branch_title_author".equalsIgnoreCase(rs.getString("INDEX_NAME"));
+                }
+                assertTrue(indexed, "Imports look up books without an ISBN by branch, title and author");
+            }
+        }
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
@@ -0,0 +1,29 @@
+package com.library;
+
+import com.library.cache.StringCanonicalizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the bounded string canonicalizer
+ */
+public class TestStringCanonicalizer {
+    
+    @Test
+    void testCanonicalizerSharesInstancesAndStaysBounded() {
+        StringCanonicalizer strings = new StringCanonicalizer(2);
+        String first = strings.canonicalize(new String("Fiction"));
+        String second = strings.canonicalize(new String("Fiction"));
+        assertSame(first, second);
+        assertEquals(1, strings.getHits());
+        assertTrue(strings.getBytesSaved() > 0);
+        
+        strings.canonicalize("Science");
+        String overflow = new String("History");
+        assertSame(overflow, strings.canonicalize(overflow), "A full dictionary should pass values through");
+        assertEquals(2, strings.getSize());
+        assertEquals(1, strings.getRejected());
+        assertNull(strings.canonicalize(null));
+    }
+}
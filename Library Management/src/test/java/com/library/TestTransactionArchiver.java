@@ -0,0 +1,188 @@
+package com.library;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.db.ShardRouter;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.User;
+import com.library.services.BookService;
+import com.library.services.ChangeSet;
+import com.library.services.TransactionArchiver;
+import com.library.services.TransactionService;
+import com.library.services.UserService;
+import com.library.utils.ConfigManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for moving returned loans to transactions_history, against an embedded branch database
+ */
+public class TestTransactionArchiver {
+    
+    private static final int BRANCH = 14;
+    private static final String COLUMNS = "id, user_id, book_id, issue_date, due_date, return_date, status, " +
+                                          "fine_amount, created_at, updated_at";
+    
+    private final List<String> keys = new ArrayList<>();
+    private TransactionService loans;
+    private List<Integer> oldLoans;
+    private int recentLoan;
+    private int openLoan;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        set("db.shard." + BRANCH + ".url", "jdbc:h2:mem:archive_" + System.nanoTime() +
+                ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        set("db.shard." + BRANCH + ".username", "sa");
+        set("db.shard." + BRANCH + ".password", "");
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+        }
+        
+        loans = new TransactionService(BRANCH);
+        Book dune = new Book("Dune", "Frank Herbert", "Science Fiction", 1);
+        User member = new User("paul", "secret", User.UserRole.USER);
+        assertTrue(new BookService(BRANCH).createBook(dune));
+        assertTrue(new UserService(BRANCH).createUser(member));
+        oldLoans = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            oldLoans.add(issueAndReturn(member.getId(), dune.getId()));
+        }
+        recentLoan = issueAndReturn(member.getId(), dune.getId());
+        assertTrue(loans.issueBook(member.getId(), dune.getId(), LocalDate.now().plusDays(14)));
+        openLoan = loans.getActiveTransactions().get(0).getId();
+        execute("UPDATE transactions SET return_date = DATE '2020-01-15', fine_amount = 1.50 WHERE id IN (" +
+                join(oldLoans) + ")");
+    }
+    
+    @AfterEach
+    void tearDown() {
+        ShardRouter.getInstance().closeAll();
+        for (String key : keys) {
+            ConfigManager.removeProperty(key);
+        }
+    }
+    
+    @Test
+    void testMovesOldReturnedLoansInBatches() throws Exception {
+        List<String> before = rows("transactions", oldLoans);
+        LocalDateTime watermark = loans.getTransactionsChangedSince(null).getWatermark();
+        
+        assertEquals(5, new TransactionArchiver(BRANCH).archiveReturnedTransactions(12, 2));
+        
+        assertEquals(before, rows("transactions_history", oldLoans), "Rows are copied column for column");
+        assertTrue(rows("transactions", oldLoans).isEmpty());
+        assertEquals(List.of(recentLoan, openLoan), ids("transactions"), "Recent and open loans stay live");
+        ChangeSet<Transaction> changes = loans.getTransactionsChangedSince(watermark);
+        assertEquals(oldLoans, sorted(changes.getDeletedIds()), "Archived loans are tombstoned");
+        assertEquals(oldLoans, deleteEvents(), "Other nodes hear of archived loans");
+        
+        assertEquals(0, new TransactionArchiver(BRANCH).archiveReturnedTransactions(12, 2));
+    }
+    
+    @Test
+    void testFailedBatchIsRolledBack() throws Exception {
+        // A history row left behind by an earlier failed run, clashing with the third loan
+        execute("INSERT INTO transactions_history (" + COLUMNS + ") SELECT " + COLUMNS +
+                " FROM transactions WHERE id = " + oldLoans.get(2));
+        
+        assertEquals(2, new TransactionArchiver(BRANCH).archiveReturnedTransactions(12, 2),
+                "Batches committed before the failure stay archived");
+        
+        assertEquals(oldLoans.subList(2, 5), sorted(idsIn("transactions", oldLoans)));
+        assertEquals(oldLoans.subList(0, 3), ids("transactions_history"));
+        assertEquals(2, count("SELECT COUNT(*) FROM tombstones"));
+        assertEquals(oldLoans.subList(0, 2), deleteEvents(), "The failed batch's events are rolled back too");
+    }
+    
+    private int issueAndReturn(int userId, int bookId) {
+        assertTrue(loans.issueBook(userId, bookId, LocalDate.now().plusDays(14)));
+        int loanId = loans.getActiveTransactions().get(0).getId();
+        assertTrue(loans.returnBook(loanId));
+        return loanId;
+    }
+    
+    private List<String> rows(String table, List<Integer> ids) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + COLUMNS + " FROM " + table + " WHERE id IN (" + join(ids) +
+                                              ") ORDER BY id")) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    row.append(rs.getString(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+    
+    private List<Integer> ids(String table) throws Exception {
+        return query("SELECT id FROM " + table + " ORDER BY id");
+    }
+    
+    private List<Integer> idsIn(String table, List<Integer> ids) throws Exception {
+        return query("SELECT id FROM " + table + " WHERE id IN (" + join(ids) + ")");
+    }
+    
+    private List<Integer> deleteEvents() throws Exception {
+        return query("SELECT entity_id FROM change_events WHERE entity = 'TRANSACTION' AND action = 'DELETE' ORDER BY id");
+    }
+    
+    private long count(String sql) throws Exception {
+        return query(sql).get(0);
+    }
+    
+    private List<Integer> query(String sql) throws Exception {
+        List<Integer> values = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getInt(1));
+            }
+        }
+        return values;
+    }
+    
+    private void execute(String sql) throws Exception {
+        try (Connection conn = DatabaseConnection.forBranch(BRANCH).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+    
+    private String join(List<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (int id : ids) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(id);
+        }
+        return sb.toString();
+    }
+    
+    private List<Integer> sorted(List<Integer> ids) {
+        List<Integer> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+    
+    private void set(String key, String value) {
+        keys.add(key);
+        ConfigManager.setProperty(key, value);
+    }
+}
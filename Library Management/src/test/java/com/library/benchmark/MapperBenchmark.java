@@ -0,0 +1,197 @@
+package com.library.benchmark;
+
+import com.library.db.DatabaseConnection;
+import com.library.db.DatabaseInitializer;
+import com.library.entities.Book;
+import com.library.entities.Transaction;
+import com.library.entities.Transaction.TransactionStatus;
+import com.library.services.BookService;
+import com.library.services.TransactionService;
+import com.library.utils.ConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the index-based service mappers with the previous by-name mappers
+ * (SELECT *, getObject and eager timestamp conversion) on an embedded database
+ *
+ * Each invocation maps ROWS rows and is counted as ROWS operations, so with the GC
+ * profiler gc.alloc.rate.norm reads as bytes allocated per row:
+ *
+ *   mvn -Pbenchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+    private static final int ROWS = 2000;
+    private static final String EMBEDDED_URL = "jdbc:h2:mem:mapperbench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    
+    private BookService bookService;
+    private TransactionService transactionService;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        ConfigManager.setProperty("db.url", EMBEDDED_URL);
+        ConfigManager.setProperty("db.username", "sa");
+        ConfigManager.setProperty("db.password", "");
+        ConfigManager.setBooleanProperty("db.metrics_enabled", false);
+        
+        try (Connection conn = DatabaseConnection.getInstance().getConnection()) {
+            DatabaseInitializer.initializeEmbeddedDatabase(conn);
+            conn.setAutoCommit(false);
+            try (PreparedStatement books = conn.prepareStatement(
+                    "INSERT INTO books (title, author, isbn, category, publisher, publication_year, available_copies, total_copies) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, 1, 2)");
+                 PreparedStatement users = conn.prepareStatement(
+                    "INSERT INTO users (username, password, role, email) VALUES (?, 'secret', 'USER', ?)");
+                 PreparedStatement loans = conn.prepareStatement(
+                    "INSERT INTO transactions (user_id, book_id, issue_date, due_date, status) VALUES (?, ?, ?, ?, 'ISSUED')")) {
+                for (int i = 1; i <= ROWS; i++) {
+                    books.setString(1, "Title " + i);
+                    books.setString(2, "Author " + (i % 200));
+                    books.setString(3, String.format("978%010d", i));
+                    books.setString(4, "Category " + (i % 25));
+                    books.setString(5, "Publisher " + (i % 40));
+                    books.setInt(6, 1900 + i % 120);
+                    books.addBatch();
+                    
+                    users.setString(1, "patron" + i);
+                    users.setString(2, "patron" + i + "@library.test");
+                    users.addBatch();
+                }
+                books.executeBatch();
+                users.executeBatch();
+                
+                LocalDate today = LocalDate.now();
+                for (int i = 1; i <= ROWS; i++) {
+                    loans.setInt(1, i);
+                    loans.setInt(2, i);
+                    loans.setDate(3, Date.valueOf(today));
+                    loans.setDate(4, Date.valueOf(today.plusDays(14)));
+                    loans.addBatch();
+                }
+                loans.executeBatch();
+            }
+            conn.commit();
+        }
+        
+        bookService = new BookService();
+        transactionService = new TransactionService();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Book> booksByIndex() {
+        return bookService.getAllBooks();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Book> booksByName() throws SQLException {
+        List<Book> books = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM books ORDER BY title");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Book book = new Book();
+                book.setId(rs.getInt("id"));
+                book.setTitle(rs.getString("title"));
+                book.setAuthor(rs.getString("author"));
+                book.setIsbn(rs.getString("isbn"));
+                book.setCategory(rs.getString("category"));
+                book.setPublisher(rs.getString("publisher"));
+                book.setPublicationYear(rs.getObject("publication_year", Integer.class));
+                book.setAvailableCopies(rs.getInt("available_copies"));
+                book.setTotalCopies(rs.getInt("total_copies"));
+                book.setDescription(rs.getString("description"));
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                if (createdAt != null) {
+                    book.setCreatedAt(createdAt.toLocalDateTime());
+                }
+                Timestamp updatedAt = rs.getTimestamp("updated_at");
+                if (updatedAt != null) {
+                    book.setUpdatedAt(updatedAt.toLocalDateTime());
+                }
+                books.add(book);
+            }
+        }
+        return books;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Transaction> loansByIndex() {
+        return transactionService.getAllTransactions();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Transaction> loansByName() throws SQLException {
+        List<Transaction> transactions = new ArrayList<>();
+        String sql = "SELECT t.*, u.username, b.title, b.author FROM transactions t " +
+                     "LEFT JOIN users u ON t.user_id = u.id LEFT JOIN books b ON t.book_id = b.id " +
+                     "ORDER BY t.created_at DESC";
+        try (Connection conn = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Transaction transaction = new Transaction();
+                transaction.setId(rs.getInt("id"));
+                transaction.setUserId(rs.getInt("user_id"));
+                transaction.setBookId(rs.getInt("book_id"));
+                Date issueDate = rs.getDate("issue_date");
+                if (issueDate != null) {
+                    transaction.setIssueDate(issueDate.toLocalDate());
+                }
+                Date dueDate = rs.getDate("due_date");
+                if (dueDate != null) {
+                    transaction.setDueDate(dueDate.toLocalDate());
+                }
+                Date returnDate = rs.getDate("return_date");
+                if (returnDate != null) {
+                    transaction.setReturnDate(returnDate.toLocalDate());
+                }
+                transaction.setStatus(TransactionStatus.valueOf(rs.getString("status")));
+                transaction.setFineAmount(rs.getDouble("fine_amount"));
+                transaction.setUserName(rs.getString("username"));
+                transaction.setBookTitle(rs.getString("title"));
+                transaction.setBookAuthor(rs.getString("author"));
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                if (createdAt != null) {
+                    transaction.setCreatedAt(createdAt.toLocalDateTime());
+                }
+                Timestamp updatedAt = rs.getTimestamp("updated_at");
+                if (updatedAt != null) {
+                    transaction.setUpdatedAt(updatedAt.toLocalDateTime());
+                }
+                transactions.add(transaction);
+            }
+        }
+        return transactions;
+    }
+}